@@ -3,7 +3,9 @@ package net.ttddyy.evernote.rest;
 import com.evernote.auth.EvernoteService;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import net.ttddyy.evernote.rest.response.ResponseConfiguration;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
@@ -38,6 +40,12 @@ public class Application {
 	@Autowired
 	public EvernotePropertiesConfiguration evernotePropertiesConfiguration;
 
+	@Autowired
+	public ResponseConfiguration.ResponsePropertiesConfiguration responsePropertiesConfiguration;
+
+	@Autowired
+	public ResponseConfiguration.RequestPropertiesConfiguration requestPropertiesConfiguration;
+
 
 	@Configuration
 	@ConfigurationProperties("evernote")
@@ -92,6 +100,30 @@ public class Application {
 			return customHeaders;
 		}
 
+		/**
+		 * Decide the access token to use for the given token from request header.
+		 *
+		 * @param requestedToken access token sent by client. can be null.
+		 * @return access token to talk to evernote. null if not available.
+		 */
+		public String resolveAccessToken(String requestedToken) {
+			if (this.alwaysUseTokenFromConfig) {
+				return this.accessToken;
+			}
+			if (requestedToken == null && this.fallbackToTokenFromConfig) {
+				return this.accessToken; // fallback to accesstoken from config
+			}
+			return requestedToken;
+		}
+
+		/**
+		 * @param requestedToken access token sent by client. can be null.
+		 * @return true if {@link #resolveAccessToken(String)} returns the access token from config.
+		 */
+		public boolean isTokenFromConfig(String requestedToken) {
+			return this.alwaysUseTokenFromConfig || (requestedToken == null && this.fallbackToTokenFromConfig);
+		}
+
 	}
 
 
@@ -113,14 +145,11 @@ public class Application {
 		if (config.alwaysUseTokenFromConfig) {
 			evernote = new EvernoteTemplate(evernoteService, config.accessToken);
 		} else {
-			String accessToken = request.getHeader("evernote-rest-accesstoken");
-			if (accessToken == null && config.fallbackToTokenFromConfig) {
-				accessToken = config.accessToken; // fallback to accesstoken from config
-			}
+			final String accessToken = config.resolveAccessToken(request.getHeader(RequestIdentity.ACCESS_TOKEN_HEADER));
 
-			final String noteStoreUrl = request.getHeader("evernote-rest-notestoreurl");
-			final String webApiUrlPrefix = request.getHeader("evernote-rest-webapiurlprefix");
-			final String userId = request.getHeader("evernote-rest-userid");
+			final String noteStoreUrl = request.getHeader(RequestIdentity.NOTE_STORE_URL_HEADER);
+			final String webApiUrlPrefix = request.getHeader(RequestIdentity.WEB_API_URL_PREFIX_HEADER);
+			final String userId = request.getHeader(RequestIdentity.USER_ID_HEADER);
 
 			if (noteStoreUrl != null && webApiUrlPrefix != null && userId != null) {
 				evernote = new EvernoteTemplate(evernoteService, accessToken, noteStoreUrl, webApiUrlPrefix, userId);
@@ -152,13 +181,40 @@ public class Application {
 	 */
 	@Bean
 	public ObjectMapper jacksonObjectMapper() {
+		return createObjectMapper(null, this.responsePropertiesConfiguration.skipUnsetFields,
+				this.requestPropertiesConfiguration.generatedMutators);
+	}
+
+	/**
+	 * Create ObjectMapper with the serialization rules of this app for given data format.
+	 *
+	 * @param jsonFactory factory for the data format(e.g. smile, cbor). null for json.
+	 */
+	public static ObjectMapper createObjectMapper(JsonFactory jsonFactory) {
+		return createObjectMapper(jsonFactory, false);
+	}
+
+	/**
+	 * @param jsonFactory     factory for the data format(e.g. smile, cbor). null for json.
+	 * @param skipUnsetFields true to omit unset fields of thrift structs
+	 * @see ThriftIsSetSerializerModifier
+	 */
+	public static ObjectMapper createObjectMapper(JsonFactory jsonFactory, boolean skipUnsetFields) {
+		return createObjectMapper(jsonFactory, skipUnsetFields, false);
+	}
+
+	/**
+	 * @param generatedMutators true to deserialize thrift structs through generated mutators instead of reflection
+	 * @see ThriftMutatorModule
+	 */
+	public static ObjectMapper createObjectMapper(JsonFactory jsonFactory, boolean skipUnsetFields, boolean generatedMutators) {
 
 		// use different visibility for serialization(output json)
 		// I want to ONLY change the visibility for serialization, but couldn't find nice way to do it.
 		// maybe related to this issue: https://github.com/FasterXML/jackson-databind/issues/352
 		// for now, override ObjectMapper and set new SerializationConfig in instance initializer.
 		// TODO: find correct way to do this.
-		final ObjectMapper mapper = new ObjectMapper() {
+		final ObjectMapper mapper = new ObjectMapper(jsonFactory) {
 			{
 				// use instance fields for output json
 				_serializationConfig = _serializationConfig.with(
@@ -176,6 +232,13 @@ public class Application {
 		// mix-in to ignore thrift specific fields for serialization.
 		mapper.addMixInAnnotations(Object.class, ThriftPropertyJacksonFilter.class);
 
+		if (skipUnsetFields) {
+			mapper.setSerializerFactory(mapper.getSerializerFactory().withSerializerModifier(new ThriftIsSetSerializerModifier()));
+		}
+		if (generatedMutators) {
+			mapper.registerModule(new ThriftMutatorModule());
+		}
+
 		return mapper;
 	}
 
@@ -0,0 +1,77 @@
+package net.ttddyy.evernote.rest;
+
+/**
+ * Single byte range of HTTP "Range" header, resolved against the content length.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class ByteRange {
+
+	private final int first;
+	private final int last;  // inclusive
+
+	ByteRange(int first, int last) {
+		this.first = first;
+		this.last = last;
+	}
+
+	/**
+	 * Parse "Range" header value.
+	 *
+	 * Only a single range is supported. Multiple ranges and unknown units are treated as no range, which means whole
+	 * content is returned, as HTTP allows a server to ignore "Range".
+	 *
+	 * @return range, or null to return whole content
+	 * @throws IllegalArgumentException when range is not satisfiable
+	 */
+	static ByteRange parse(String header, int length) {
+		if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+			return null;
+		}
+		final String spec = header.substring("bytes=".length()).trim();
+		final int dash = spec.indexOf('-');
+		if (dash < 0) {
+			return null;
+		}
+		try {
+			final String firstValue = spec.substring(0, dash).trim();
+			final String lastValue = spec.substring(dash + 1).trim();
+			if (firstValue.length() == 0) {
+				// suffix range: last N bytes
+				final long suffix = Long.parseLong(lastValue);
+				if (suffix <= 0 || length == 0) {
+					throw new IllegalArgumentException("Unsatisfiable range: " + header);
+				}
+				return new ByteRange((int) Math.max(0, length - suffix), length - 1);
+			}
+			final long first = Long.parseLong(firstValue);
+			final long last = lastValue.length() == 0 ? length - 1 : Math.min(Long.parseLong(lastValue), length - 1);
+			if (first < 0 || last < first) {
+				if (first >= length) {
+					throw new IllegalArgumentException("Unsatisfiable range: " + header);
+				}
+				return null;  // syntactically invalid
+			}
+			return new ByteRange((int) first, (int) last);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	int getFirst() {
+		return first;
+	}
+
+	int getLast() {
+		return last;
+	}
+
+	int getLength() {
+		return this.last - this.first + 1;
+	}
+
+	String toContentRange(int length) {
+		return "bytes " + this.first + "-" + this.last + "/" + length;
+	}
+
+}
@@ -0,0 +1,134 @@
+package net.ttddyy.evernote.rest;
+
+import com.evernote.edam.type.Data;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.Resource;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Populates resource {@link Data} from multipart file parts.
+ *
+ * Part is read straight into the body byte array computing MD5 body hash at the same time, so that only one copy of
+ * the resource bytes is on heap.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class MultipartResourceData {
+
+	private static final Pattern RESOURCE_PART_NAME = Pattern.compile("resources\\[(\\d+)\\]");
+
+	/**
+	 * Set "resources[i]" parts to data of i-th resource of the note. Missing resources are created with the mime of
+	 * the part content type.
+	 *
+	 * @throws IllegalArgumentException when an index is beyond the resources of the note and the parts, or leaves a gap
+	 */
+	static void attach(Note note, Map<String, MultipartFile> files) throws IOException {
+		final SortedMap<Integer, MultipartFile> parts = resourceParts(files);
+		if (parts.isEmpty()) {
+			return;
+		}
+
+		List<Resource> resources = note.getResources();
+		if (resources == null) {
+			resources = new ArrayList<Resource>();
+			note.setResources(resources);
+		}
+
+		// new resources must follow the existing ones without a gap
+		int next = resources.size();
+		for (Integer index : parts.tailMap(resources.size()).keySet()) {
+			if (index != next) {
+				throw new IllegalArgumentException("Resource part leaves a gap. name=[resources[" + index + "]] expected=[resources[" + next + "]]");
+			}
+			next++;
+		}
+
+		for (Map.Entry<Integer, MultipartFile> entry : parts.entrySet()) {
+			final int index = entry.getKey();
+			final MultipartFile file = entry.getValue();
+			if (index == resources.size()) {
+				resources.add(null);
+			}
+			Resource resource = resources.get(index);
+			if (resource == null) {
+				resource = new Resource();
+				resources.set(index, resource);
+			}
+			if (resource.getMime() == null && file.getContentType() != null) {
+				resource.setMime(file.getContentType());
+			}
+			resource.setData(read(file));
+		}
+	}
+
+	private static SortedMap<Integer, MultipartFile> resourceParts(Map<String, MultipartFile> files) {
+		final SortedMap<Integer, MultipartFile> parts = new TreeMap<Integer, MultipartFile>();
+		for (Map.Entry<String, MultipartFile> entry : files.entrySet()) {
+			final Matcher matcher = RESOURCE_PART_NAME.matcher(entry.getKey());
+			if (!matcher.matches()) {
+				continue;
+			}
+			final int index;
+			try {
+				index = Integer.parseInt(matcher.group(1));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid resource part index. name=[" + entry.getKey() + "]");
+			}
+			parts.put(index, entry.getValue());
+		}
+		return parts;
+	}
+
+	static Data read(MultipartFile file) throws IOException {
+		final long size = file.getSize();
+		if (size > Integer.MAX_VALUE) {
+			throw new EvernoteRestException("Part is too large. name=[" + file.getName() + "] size=[" + size + "]");
+		}
+
+		final MessageDigest md5;
+		try {
+			md5 = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		final byte[] body = new byte[(int) size];
+		final InputStream in = file.getInputStream();
+		try {
+			int offset = 0;
+			while (offset < body.length) {
+				final int read = in.read(body, offset, body.length - offset);
+				if (read < 0) {
+					break;
+				}
+				md5.update(body, offset, read);
+				offset += read;
+			}
+			if (offset != body.length) {
+				throw new EvernoteRestException("Part is truncated. name=[" + file.getName() + "] size=[" + size + "]");
+			}
+		} finally {
+			in.close();
+		}
+
+		final Data data = new Data();
+		data.setBody(body);
+		data.setBodyHash(md5.digest());
+		data.setSize(body.length);
+		return data;
+	}
+
+}
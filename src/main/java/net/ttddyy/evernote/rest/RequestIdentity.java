@@ -0,0 +1,78 @@
+package net.ttddyy.evernote.rest;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Identifies who is calling, based on the same request headers {@link Application#evernote} reads.
+ *
+ * Raw access token is never kept. Only its hash is exposed, so that it can be used as a key for per-user data.
+ * The identity is resolved once per request and kept as a request attribute.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class RequestIdentity {
+
+	public static final String ACCESS_TOKEN_HEADER = "evernote-rest-accesstoken";
+	public static final String NOTE_STORE_URL_HEADER = "evernote-rest-notestoreurl";
+	public static final String WEB_API_URL_PREFIX_HEADER = "evernote-rest-webapiurlprefix";
+	public static final String USER_ID_HEADER = "evernote-rest-userid";
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final String ATTRIBUTE = RequestIdentity.class.getName();
+	private static final ThreadLocal<MessageDigest> SHA1 = new ThreadLocal<MessageDigest>();
+
+	private final String tokenHash;
+
+	public RequestIdentity(String tokenHash) {
+		this.tokenHash = tokenHash;
+	}
+
+	/**
+	 * @return identity of the request. hashed on first call.
+	 */
+	public static RequestIdentity resolve(HttpServletRequest request, Application.EvernotePropertiesConfiguration config) {
+		RequestIdentity identity = (RequestIdentity) request.getAttribute(ATTRIBUTE);
+		if (identity == null) {
+			final String accessToken = config.resolveAccessToken(request.getHeader(ACCESS_TOKEN_HEADER));
+			identity = new RequestIdentity(accessToken == null ? null : hash(accessToken));
+			request.setAttribute(ATTRIBUTE, identity);
+		}
+		return identity;
+	}
+
+	/**
+	 * @return hex encoded SHA-1 of the access token. null if request does not have access token.
+	 */
+	public String getTokenHash() {
+		return tokenHash;
+	}
+
+	public boolean isAnonymous() {
+		return this.tokenHash == null;
+	}
+
+	static String hash(String value) {
+		try {
+			MessageDigest digest = SHA1.get();
+			if (digest == null) {
+				digest = MessageDigest.getInstance("SHA-1");
+				SHA1.set(digest);
+			}
+			final byte[] bytes = digest.digest(value.getBytes("UTF-8"));
+			final char[] chars = new char[bytes.length * 2];
+			for (int i = 0; i < bytes.length; i++) {
+				chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+				chars[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+			}
+			return new String(chars);
+		} catch (NoSuchAlgorithmException e) {
+			throw new EvernoteRestException("SHA-1 is not available.", e);
+		} catch (UnsupportedEncodingException e) {
+			throw new EvernoteRestException("UTF-8 is not available.", e);
+		}
+	}
+
+}
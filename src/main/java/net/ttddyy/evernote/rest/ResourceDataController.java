@@ -0,0 +1,196 @@
+package net.ttddyy.evernote.rest;
+
+import com.evernote.edam.type.Data;
+import com.evernote.edam.type.Resource;
+import net.ttddyy.evernote.rest.metrics.InFlightCalls;
+import net.ttddyy.evernote.rest.metrics.RequestTiming;
+import net.ttddyy.evernote.rest.metrics.StoreMethodMetrics;
+import net.ttddyy.evernote.rest.metrics.StoreMetrics;
+import net.ttddyy.evernote.rest.thrift.CountingTransport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.web.ErrorAttributes;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.social.evernote.api.Evernote;
+import org.springframework.social.evernote.api.EvernoteException;
+import org.springframework.social.evernote.api.NoteStoreOperations;
+import org.springframework.social.evernote.api.StoreClientHolder;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+import org.springframework.web.servlet.view.InternalResourceView;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Returns resource bytes as they are, instead of base64 encoded in json.
+ *
+ * Content-Type is the resource mime and ETag is the body hash(MD5). Supports single range "Range" requests.
+ * The call to evernote is recorded to "getResource" metrics of the note store, same as {@link StoreOperationController}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+@RestController
+@RequestMapping("/noteStore/resource/{guid}")
+public class ResourceDataController {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	@Autowired
+	private Evernote evernote;
+
+	@Autowired
+	private ErrorAttributes errorAttributes;
+
+	@Autowired
+	private StoreMetrics storeMetrics;
+
+	@Autowired
+	private InFlightCalls inFlightCalls;
+
+	@Autowired
+	private Application.EvernotePropertiesConfiguration evernotePropertiesConfiguration;
+
+
+	@RequestMapping(value = "/data", method = {RequestMethod.GET, RequestMethod.HEAD})
+	public Object data(@PathVariable String guid, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		return write(guid, false, request, response);
+	}
+
+	@RequestMapping(value = "/alternateData", method = {RequestMethod.GET, RequestMethod.HEAD})
+	public Object alternateData(@PathVariable String guid, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		return write(guid, true, request, response);
+	}
+
+	private Object write(String guid, boolean alternate, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		final Resource resource;
+		try {
+			resource = getResource(guid, alternate, request);
+		} catch (EvernoteException e) {
+			if (e.isEDAMException()) {
+				// same as StoreOperationController, return status=BAD_REQUEST(400) for EDAM*Exception
+				((HandlerExceptionResolver) errorAttributes).resolveException(request, response, null, e);
+				request.setAttribute(WebUtils.ERROR_STATUS_CODE_ATTRIBUTE, HttpStatus.BAD_REQUEST.value());
+				return new InternalResourceView("/error");
+			}
+			throw new EvernoteRestException("Failed to get resource. guid=[" + guid + "] caused-by=[" + e.getMessage() + "]", e);
+		}
+
+		final Data data = alternate ? resource.getAlternateData() : resource.getData();
+		if (data == null || data.getBody() == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return null;
+		}
+
+		final byte[] body = data.getBody();
+		final String etag = data.getBodyHash() == null ? null : "\"" + toHex(data.getBodyHash()) + "\"";
+		response.setContentType(resource.getMime() == null ? MediaType.APPLICATION_OCTET_STREAM_VALUE : resource.getMime());
+		response.setHeader("Accept-Ranges", "bytes");
+		if (etag != null) {
+			response.setHeader("ETag", etag);
+			if (matches(request.getHeader("If-None-Match"), etag)) {
+				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return null;
+			}
+		}
+
+		ByteRange range = null;
+		final String ifRange = request.getHeader("If-Range");
+		if (ifRange == null || ifRange.equals(etag)) {  // partial only when client still has the same content
+			try {
+				range = ByteRange.parse(request.getHeader("Range"), body.length);
+			} catch (IllegalArgumentException e) {
+				response.setHeader("Content-Range", "bytes */" + body.length);
+				response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return null;
+			}
+		}
+
+		final int offset = range == null ? 0 : range.getFirst();
+		final int length = range == null ? body.length : range.getLength();
+		if (range != null) {
+			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			response.setHeader("Content-Range", range.toContentRange(body.length));
+		}
+		response.setContentLength(length);
+		if (!RequestMethod.HEAD.name().equals(request.getMethod())) {
+			response.getOutputStream().write(body, offset, length);  // straight from the thrift byte[]
+		}
+		return null;  // response is already written
+	}
+
+	private Resource getResource(String guid, boolean alternate, HttpServletRequest request) {
+		final RequestTiming timing = RequestTiming.get(request);
+		final StoreMethodMetrics metrics = this.storeMetrics.get("noteStore", "getResource");
+		timing.setMetrics(metrics);
+
+		long start = System.nanoTime();
+		final NoteStoreOperations noteStoreOperations = this.evernote.noteStoreOperations();
+		final CountingTransport transport = noteStoreOperations instanceof StoreClientHolder ?
+				CountingTransport.install(((StoreClientHolder) noteStoreOperations).getStoreClient()) : null;
+		timing.add(RequestTiming.Phase.CLIENT, System.nanoTime() - start);
+
+		final String tokenHash = RequestIdentity.resolve(request, this.evernotePropertiesConfiguration).getTokenHash();
+		final InFlightCalls.Call call = this.inFlightCalls.start("noteStore", "getResource",
+				request.getHeader(RequestIdentity.NOTE_STORE_URL_HEADER), tokenHash);
+		final Resource resource;
+		long elapsed;
+		start = System.nanoTime();
+		try {
+			// one call for mime, hash and body
+			resource = noteStoreOperations.getResource(guid, !alternate, false, false, alternate);
+		} catch (RuntimeException e) {
+			metrics.failed();
+			timing.failed(e);
+			throw e;
+		} finally {
+			elapsed = System.nanoTime() - start;
+			this.inFlightCalls.end(call);
+			timing.add(RequestTiming.Phase.UPSTREAM, elapsed);
+			if (transport != null) {
+				metrics.recordPayload(StoreMethodMetrics.Payload.UPSTREAM_SENT, transport.getSentBytes());
+				metrics.recordPayload(StoreMethodMetrics.Payload.UPSTREAM_RECEIVED, transport.getReceivedBytes());
+				timing.upstreamCall(transport.getSentBytes(), transport.getReceivedBytes());
+			} else {
+				timing.upstreamCall(0, 0);
+			}
+		}
+		metrics.succeeded(elapsed);
+		timing.setOutcome(RequestTiming.Outcome.SUCCEEDED);
+		return resource;
+	}
+
+	/**
+	 * Weak comparison, so the weak ETag sent with a compressed body also matches.
+	 */
+	private static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String value : ifNoneMatch.split(",")) {
+			value = value.trim();
+			if (value.startsWith("W/")) {
+				value = value.substring(2);
+			}
+			if (value.equals("*") || value.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String toHex(byte[] bytes) {
+		final char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+			chars[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+		}
+		return new String(chars);
+	}
+
+}
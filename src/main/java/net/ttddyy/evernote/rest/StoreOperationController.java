@@ -1,22 +1,39 @@
 package net.ttddyy.evernote.rest;
 
+import com.evernote.clients.NoteStoreClient;
+import com.evernote.clients.UserStoreClient;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.Resource;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import net.ttddyy.evernote.rest.index.LocalNoteIndexService;
+import net.ttddyy.evernote.rest.jfr.FlightRecorderEvent;
+import net.ttddyy.evernote.rest.jfr.FlightRecorderEvents;
+import net.ttddyy.evernote.rest.metrics.HeavyHitters;
+import net.ttddyy.evernote.rest.metrics.InFlightCalls;
+import net.ttddyy.evernote.rest.metrics.MetricsConfiguration;
+import net.ttddyy.evernote.rest.metrics.RequestTiming;
+import net.ttddyy.evernote.rest.metrics.StoreMethodMetrics;
+import net.ttddyy.evernote.rest.metrics.StoreMetrics;
+import net.ttddyy.evernote.rest.response.FieldProjection;
+import net.ttddyy.evernote.rest.thrift.CountingTransport;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.actuate.metrics.CounterService;
-import org.springframework.boot.actuate.metrics.GaugeService;
 import org.springframework.boot.autoconfigure.web.ErrorAttributes;
 import org.springframework.core.ParameterNameDiscoverer;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.social.evernote.api.Evernote;
 import org.springframework.social.evernote.api.EvernoteException;
+import org.springframework.social.evernote.api.NoteStoreOperations;
 import org.springframework.social.evernote.api.StoreClientHolder;
 import org.springframework.social.evernote.api.StoreOperations;
+import org.springframework.social.evernote.api.UserStoreOperations;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.ReflectionUtils;
-import org.springframework.util.StopWatch;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
 import org.springframework.web.servlet.HandlerExceptionResolver;
 import org.springframework.web.servlet.view.InternalResourceView;
 import org.springframework.web.util.WebUtils;
@@ -24,7 +41,10 @@ import org.springframework.web.util.WebUtils;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author Tadaya Tsuyukubo
@@ -33,6 +53,8 @@ import java.lang.reflect.Method;
 @RequestMapping("/{storeName:noteStore|userStore}")
 public class StoreOperationController {
 
+	public static final String COST_HEADER = "evernote-rest-cost";
+
 	@Autowired
 	private Evernote evernote;
 
@@ -46,31 +68,57 @@ public class StoreOperationController {
 	private ParameterJavaTypeDiscoverer parameterJavaTypeDiscoverer;
 
 	@Autowired
-	private CounterService counterService;
+	private StoreMetrics storeMetrics;
+
+	@Autowired
+	private InFlightCalls inFlightCalls;
 
 	@Autowired
-	private GaugeService gaugeService;
+	private MetricsConfiguration.MetricsPropertiesConfiguration metricsPropertiesConfiguration;
 
 	@Autowired
 	private ErrorAttributes errorAttributes;
 
+	@Autowired
+	private Application.EvernotePropertiesConfiguration evernotePropertiesConfiguration;
+
+	@Autowired(required = false)
+	private LocalNoteIndexService localNoteIndexService;
+
+	@Autowired(required = false)
+	private FlightRecorderEvents flightRecorderEvents;
+
+	private final ConcurrentMap<String, StoreMethod> noteStoreMethods = new ConcurrentHashMap<String, StoreMethod>();
+	private final ConcurrentMap<String, StoreMethod> userStoreMethods = new ConcurrentHashMap<String, StoreMethod>();
+
+	/**
+	 * Methods and metrics handle of a store method, resolved once per method.
+	 */
+	private static class StoreMethod {
+		private final Method method;  // ~StoreOperations method to invoke
+		private final Method actualMethod;  // ~StoreClient method to resolve parameter names and types
+		private final StoreMethodMetrics metrics;
+
+		private StoreMethod(Method method, Method actualMethod, StoreMethodMetrics metrics) {
+			this.method = method;
+			this.actualMethod = actualMethod;
+			this.metrics = metrics;
+		}
+	}
+
 
 	@RequestMapping(value = "/{methodName}", method = RequestMethod.POST)
 	public Object invoke(@PathVariable String storeName, @PathVariable String methodName,
 						 @RequestBody(required = false) JsonNode jsonNode,
 						 HttpServletRequest request, HttpServletResponse response) {
 
-		final StoreOperations storeOperations = getStoreOperations(storeName);
-		final Class<?> storeOperationsClass = storeOperations.getClass();
-		final Class<?> actualStoreClientClass = resolveStoreClientClass(storeOperations);  // underlying ~StoreClient class.
+		// request body has been read by message converter, which adds its time to BIND phase
+		final RequestTiming timing = RequestTiming.get(request);
 
-		// In ~StoreClient class, method names are currently unique. passing null to paramTypes arg means find method by name.
-		final Method method = ReflectionUtils.findMethod(storeOperationsClass, methodName, null);
-		final Method actualMethod = ReflectionUtils.findMethod(actualStoreClientClass, methodName, null);
-		if (method == null || actualMethod == null) {
-			final String message = String.format("Cannot find methodName=[%s] on [%s].", methodName, actualStoreClientClass);
-			throw new EvernoteRestException(message);
-		}
+		long start = System.nanoTime();
+		final StoreMethod storeMethod = findStoreMethod(storeName, methodName);
+		timing.add(RequestTiming.Phase.LOOKUP, System.nanoTime() - start);
+		timing.setMetrics(storeMethod.metrics);
 
 		Object[] params = null;
 		if (jsonNode != null) {
@@ -80,36 +128,206 @@ public class StoreOperationController {
 			// names and types. Thus, for now, use underlying actual ~StoreClient class to resolve names and types.
 			// Java8 with StandardReflectionParameterNameDiscoverer class, it may be possible to retrieve param names from
 			// interface. (haven't checked)
-			params = resolveParameters(actualMethod, jsonNode);
+			final FlightRecorderEvent.Bind bindEvent = this.flightRecorderEvents == null ? null : this.flightRecorderEvents.beginBind();
+			start = System.nanoTime();
+			params = resolveParameters(storeMethod.actualMethod, jsonNode);
+			timing.add(RequestTiming.Phase.BIND, System.nanoTime() - start);
+			timing.setParameters(jsonNode);
+			if (bindEvent != null) {
+				this.flightRecorderEvents.commitBind(bindEvent, storeName, methodName, request.getContentLength());
+			}
 		}
 
-		// metric format:
-		//   evernote.api.[userStore|noteStore].<method>.[succeeded|failed]
-		//   evernote.api.[userStore|noteStore].<method>.response
-		final String metricNamePrefix = "evernote.api." + storeName + "." + methodName; // evernote.api.[userStore|noteStore].<method>
+		return invoke(storeName, storeMethod, params, request, response);
+	}
 
-		final StopWatch stopWatch = new StopWatch();
-		try {
+	/**
+	 * Multipart variant of note/resource uploading operations. Resource bodies are sent as binary parts instead of
+	 * base64 in json.
+	 *
+	 * "json" part(form field or file) is the same json as the json request. Binary parts are:
+	 * <ul>
+	 * <li>createNote/updateNote: "resources[i]" for data body of i-th resource of the note</li>
+	 * <li>updateResource: "data" for data body of the resource</li>
+	 * </ul>
+	 * Parts larger than "multipart.fileSizeThreshold" are stored in temp files by the servlet container. MD5 body hash
+	 * and size are computed while the part is read into the resource body.
+	 */
+	@RequestMapping(value = "/{methodName:createNote|updateNote|updateResource}", method = RequestMethod.POST,
+			consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+	public Object invokeMultipart(@PathVariable String storeName, @PathVariable String methodName,
+								  MultipartHttpServletRequest request, HttpServletResponse response) throws IOException {
+
+		final RequestTiming timing = RequestTiming.get(request);
+
+		long start = System.nanoTime();
+		final StoreMethod storeMethod = findStoreMethod(storeName, methodName);
+		timing.add(RequestTiming.Phase.LOOKUP, System.nanoTime() - start);
+		timing.setMetrics(storeMethod.metrics);
+
+		final FlightRecorderEvent.Bind bindEvent = this.flightRecorderEvents == null ? null : this.flightRecorderEvents.beginBind();
+		start = System.nanoTime();
+		final JsonNode jsonNode = readJsonPart(request);
+		final Object[] params = jsonNode == null ? new Object[storeMethod.actualMethod.getParameterTypes().length] :
+				resolveParameters(storeMethod.actualMethod, jsonNode);
+
+		if ("updateResource".equals(methodName)) {
+			final Resource resource = params[0] == null ? new Resource() : (Resource) params[0];
+			final MultipartFile file = request.getFile("data");
+			if (file != null) {
+				resource.setData(MultipartResourceData.read(file));
+			}
+			params[0] = resource;
+		} else {
+			final Note note = params[0] == null ? new Note() : (Note) params[0];
+			try {
+				MultipartResourceData.attach(note, request.getFileMap());
+			} catch (IllegalArgumentException e) {
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+				return null;
+			}
+			params[0] = note;
+		}
+		timing.add(RequestTiming.Phase.BIND, System.nanoTime() - start);
+		timing.setParameters(jsonNode);
+		if (bindEvent != null) {
+			this.flightRecorderEvents.commitBind(bindEvent, storeName, methodName, request.getContentLength());
+		}
 
-			stopWatch.start();
-			Object result = ReflectionUtils.invokeMethod(method, storeOperations, params);
-			stopWatch.stop();
+		return invoke(storeName, storeMethod, params, request, response);
+	}
 
-			counterService.increment(metricNamePrefix + ".succeeded");
-			gaugeService.submit(metricNamePrefix + ".response", stopWatch.getTotalTimeMillis());
+	private JsonNode readJsonPart(MultipartHttpServletRequest request) throws IOException {
+		final String json = request.getParameter("json");
+		if (json != null) {
+			return this.objectMapper.readTree(json);
+		}
+		final MultipartFile file = request.getFile("json");
+		if (file != null) {
+			final InputStream in = file.getInputStream();
+			try {
+				return this.objectMapper.readTree(in);
+			} finally {
+				in.close();
+			}
+		}
+		return null;
+	}
 
-			return result;
-		} catch (Exception e) {
+	/**
+	 * Resolve methods from class of store name, so that store operations(evernote client) are only created when needed.
+	 * Unknown methods are not cached.
+	 */
+	private StoreMethod findStoreMethod(String storeName, String methodName) {
+		final ConcurrentMap<String, StoreMethod> storeMethods =
+				"noteStore".equals(storeName) ? this.noteStoreMethods : this.userStoreMethods;
+		StoreMethod storeMethod = storeMethods.get(methodName);
+		if (storeMethod != null) {
+			return storeMethod;
+		}
+
+		final Class<?> storeOperationsClass = resolveStoreOperationsClass(storeName);
+		final Class<?> actualStoreClientClass = resolveStoreClientClass(storeName);  // underlying ~StoreClient class.
+
+		// In ~StoreClient class, method names are currently unique. passing null to paramTypes arg means find method by name.
+		final Method method = ReflectionUtils.findMethod(storeOperationsClass, methodName, (Class<?>[]) null);
+		final Method actualMethod = ReflectionUtils.findMethod(actualStoreClientClass, methodName, (Class<?>[]) null);
+		if (method == null || actualMethod == null) {
+			final String message = String.format("Cannot find methodName=[%s] on [%s].", methodName, actualStoreClientClass);
+			throw new EvernoteRestException(message);
+		}
+
+		// metric names are built once per method. see StoreMethodMetrics for the format.
+		storeMethod = new StoreMethod(method, actualMethod, this.storeMetrics.get(storeName, methodName));
+		final StoreMethod existing = storeMethods.putIfAbsent(methodName, storeMethod);
+		return existing == null ? storeMethod : existing;
+	}
+
+	private Object invoke(String storeName, StoreMethod storeMethod, Object[] params,
+						  HttpServletRequest request, HttpServletResponse response) {
+
+		final RequestTiming timing = RequestTiming.get(request);
+		final Method method = storeMethod.method;
+		final String methodName = method.getName();
+		final StoreMethodMetrics metrics = storeMethod.metrics;
+
+		final String userKey = RequestIdentity.resolve(request, this.evernotePropertiesConfiguration).getTokenHash();
+
+		// answer from local note index when it can, without calling evernote
+		if (this.localNoteIndexService != null && "noteStore".equals(storeName)) {
+			final String indexKey = LocalNoteIndexService.userKey(userKey, request.getHeader(RequestIdentity.NOTE_STORE_URL_HEADER));
+			final Object localResult = this.localNoteIndexService.query(indexKey, methodName, params);
+			if (localResult != null) {
+				metrics.local();
+				timing.setOutcome(RequestTiming.Outcome.LOCAL);
+				timing.cacheHit();
+				if (this.flightRecorderEvents != null) {
+					this.flightRecorderEvents.localIndexHit(storeName, methodName);
+				}
+				addServerTiming(timing, response);
+				addCostHeader(timing, response);
+				return FieldProjection.of(localResult, request.getParameter("fields"));
+			}
+			if (this.localNoteIndexService.isQueryable(methodName)) {
+				timing.cacheMiss();
+			}
+		}
+
+		try {
+			long start = System.nanoTime();
+			final StoreOperations storeOperations = getStoreOperations(storeName);
+			final CountingTransport transport = storeOperations instanceof StoreClientHolder ?
+					CountingTransport.install(((StoreClientHolder) storeOperations).getStoreClient()) : null;
+			timing.add(RequestTiming.Phase.CLIENT, System.nanoTime() - start);
+
+			final String noteStoreUrl = "noteStore".equals(storeName) ? request.getHeader(RequestIdentity.NOTE_STORE_URL_HEADER) : null;
+			final InFlightCalls.Call call = this.inFlightCalls.start(storeName, methodName, noteStoreUrl, userKey);
+			final FlightRecorderEvent.Upstream upstreamEvent = this.flightRecorderEvents == null ? null : this.flightRecorderEvents.beginUpstream();
+			final Object result;
+			boolean succeeded = false;
+			long elapsed;
+			start = System.nanoTime();
+			try {
+				result = ReflectionUtils.invokeMethod(method, storeOperations, params);
+				succeeded = true;
+			} finally {
+				elapsed = System.nanoTime() - start;
+				this.inFlightCalls.end(call);
+				timing.add(RequestTiming.Phase.UPSTREAM, elapsed);  // failed calls cost upstream time as well
+				if (transport != null) {
+					metrics.recordPayload(StoreMethodMetrics.Payload.UPSTREAM_SENT, transport.getSentBytes());
+					metrics.recordPayload(StoreMethodMetrics.Payload.UPSTREAM_RECEIVED, transport.getReceivedBytes());
+					timing.upstreamCall(transport.getSentBytes(), transport.getReceivedBytes());
+				} else {
+					timing.upstreamCall(0, 0);
+				}
+				if (upstreamEvent != null) {
+					this.flightRecorderEvents.commitUpstream(upstreamEvent, storeName, methodName,
+							HeavyHitters.shardOf(noteStoreUrl), succeeded);
+				}
+			}
+
+			metrics.succeeded(elapsed);
+			timing.setOutcome(RequestTiming.Outcome.SUCCEEDED);
 
-			if (stopWatch.isRunning()) {
-				stopWatch.stop();
+			if (this.localNoteIndexService != null) {
+				this.localNoteIndexService.afterInvoke(userKey, methodName);
 			}
 
-			counterService.increment(metricNamePrefix + ".failed");
+			addServerTiming(timing, response);
+			addCostHeader(timing, response);
+
+			// "fields" parameter is applied while writing response
+			return FieldProjection.of(result, request.getParameter("fields"));
+		} catch (Exception e) {
+
+			metrics.failed();
+			timing.failed(e);
+			addCostHeader(timing, response);
 
 			final String message = String.format(
 					"Failed to invoke method. method=[%s], storeClient=[%s], params=[%s], caused-by=[%s] exception-message=[%s]",
-					method.getName(), actualStoreClientClass, ObjectUtils.nullSafeToString(params), e.getClass().getName(), e.getMessage()
+					methodName, resolveStoreClientClass(storeName), ObjectUtils.nullSafeToString(params), e.getClass().getName(), e.getMessage()
 			);
 
 			if (e instanceof EvernoteException && ((EvernoteException) e).isEDAMException()) {
@@ -128,6 +346,24 @@ public class StoreOperationController {
 		}
 	}
 
+	/**
+	 * Response body is written after the handler returns, so "serialize" phase is not in the header.
+	 */
+	private void addServerTiming(RequestTiming timing, HttpServletResponse response) {
+		if (this.metricsPropertiesConfiguration.serverTiming) {
+			response.setHeader("Server-Timing", timing.toServerTiming());
+		}
+	}
+
+	/**
+	 * Upstream calls, local note index hits/misses, upstream time and bytes of the request.
+	 */
+	private void addCostHeader(RequestTiming timing, HttpServletResponse response) {
+		if (this.metricsPropertiesConfiguration.costHeader) {
+			response.setHeader(COST_HEADER, timing.toCostHeader());
+		}
+	}
+
 	private StoreOperations getStoreOperations(String storeName) {
 		if ("noteStore".equals(storeName)) {
 			return evernote.noteStoreOperations();
@@ -152,8 +388,12 @@ public class StoreOperationController {
 		return resolveParameterValues(parameterNames, parameterJavaTypes, jsonNode);
 	}
 
-	private Class<?> resolveStoreClientClass(StoreOperations storeOperations) {
-		return ((StoreClientHolder) storeOperations).getStoreClient().getClass();
+	private Class<?> resolveStoreOperationsClass(String storeName) {
+		return "noteStore".equals(storeName) ? NoteStoreOperations.class : UserStoreOperations.class;
+	}
+
+	private Class<?> resolveStoreClientClass(String storeName) {
+		return "noteStore".equals(storeName) ? NoteStoreClient.class : UserStoreClient.class;
 	}
 
 	private Object[] resolveParameterValues(String[] parameterNames, JavaType[] javaTypes, JsonNode jsonNode) {
@@ -167,13 +407,14 @@ public class StoreOperationController {
 			final String parameterName = parameterNames[i];
 
 			if (jsonNode.has(parameterName)) {
-				final String subJson = jsonNode.get(parameterName).toString();
+				final JsonNode subNode = jsonNode.get(parameterName);
 				try {
-					final Object param = this.objectMapper.readValue(subJson, javaType);
+					// bind from the tree directly. request body may not be json text.(smile, cbor)
+					final Object param = this.objectMapper.readValue(this.objectMapper.treeAsTokens(subNode), javaType);
 					params[i] = param;
 				} catch (IOException e) {
 					final String message =
-							e.getMessage() + ". parameter=[" + parameterName + "] json=[" + subJson + "]";
+							e.getMessage() + ". parameter=[" + parameterName + "] json=[" + subNode + "]";
 					throw new EvernoteRestException(message, e);
 				}
 			} else {
@@ -0,0 +1,29 @@
+package net.ttddyy.evernote.rest;
+
+/**
+ * Sets fields of a thrift struct by calling its setters directly.
+ *
+ * Subclass for each struct is generated at runtime by {@link ThriftFieldMutatorGenerator}. Field is specified by
+ * its index in the list of setters given to the generator. Primitive setters do not unbox values.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public abstract class ThriftFieldMutator {
+
+	protected ThriftFieldMutator() {
+	}
+
+	/**
+	 * @param value field value. primitives are boxed.
+	 */
+	public abstract void set(Object bean, int index, Object value);
+
+	public abstract void setInt(Object bean, int index, int value);
+
+	public abstract void setLong(Object bean, int index, long value);
+
+	public abstract void setDouble(Object bean, int index, double value);
+
+	public abstract void setBoolean(Object bean, int index, boolean value);
+
+}
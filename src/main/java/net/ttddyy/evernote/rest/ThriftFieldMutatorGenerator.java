@@ -0,0 +1,205 @@
+package net.ttddyy.evernote.rest;
+
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.Label;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates {@link ThriftFieldMutator} subclasses for a thrift struct with spring's repackaged ASM.
+ *
+ * Each method is a switch on the field index that calls the setter of the struct:
+ * <pre>
+ * public void setLong(Object bean, int index, long value) {
+ *     switch (index) {
+ *         case 5: ((Note) bean).setCreated(value); return;
+ *         case 6: ((Note) bean).setUpdated(value); return;
+ *         default: throw new IllegalArgumentException();
+ *     }
+ * }
+ * </pre>
+ *
+ * @author Tadaya Tsuyukubo
+ */
+final class ThriftFieldMutatorGenerator implements Opcodes {
+
+	private static final String MUTATOR = Type.getInternalName(ThriftFieldMutator.class);
+	private static final Type OBJECT_TYPE = Type.getType(Object.class);
+	private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+	private ThriftFieldMutatorGenerator() {
+	}
+
+	/**
+	 * @param setters void setter taking one argument for each field index
+	 * @return generated mutator, or null if the struct is not visible from this class loader
+	 */
+	static ThriftFieldMutator generateMutator(Class<?> beanClass, Method[] setters) {
+		if (!isVisible(beanClass)) {
+			return null;
+		}
+		final String className = ThriftFieldMutator.class.getName() + "$$" + beanClass.getSimpleName() + "$$" + SEQUENCE.incrementAndGet();
+		final String beanClassName = Type.getInternalName(beanClass);
+
+		final ClassWriter cw = beginClass(className, MUTATOR);
+		generateSetter(cw, "set", OBJECT_TYPE, beanClassName, setters, null);
+		generateSetter(cw, "setInt", Type.INT_TYPE, beanClassName, setters, int.class);
+		generateSetter(cw, "setLong", Type.LONG_TYPE, beanClassName, setters, long.class);
+		generateSetter(cw, "setDouble", Type.DOUBLE_TYPE, beanClassName, setters, double.class);
+		generateSetter(cw, "setBoolean", Type.BOOLEAN_TYPE, beanClassName, setters, boolean.class);
+		cw.visitEnd();
+
+		return (ThriftFieldMutator) instantiate(className, cw.toByteArray(), beanClass);
+	}
+
+	private static boolean isVisible(Class<?> beanClass) {
+		try {
+			return Class.forName(beanClass.getName(), false, ThriftFieldMutator.class.getClassLoader()) == beanClass;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	private static Object instantiate(String className, byte[] bytecode, Class<?> beanClass) {
+		try {
+			return new MutatorClassLoader(ThriftFieldMutator.class.getClassLoader()).define(className, bytecode).newInstance();
+		} catch (InstantiationException e) {
+			throw new IllegalStateException("Failed to instantiate " + className + " for " + beanClass, e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Failed to instantiate " + className + " for " + beanClass, e);
+		}
+	}
+
+	private static ClassWriter beginClass(String className, String superClassName) {
+		final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+		cw.visit(V1_6, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className.replace('.', '/'), null, superClassName, null);
+
+		final MethodVisitor constructor = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+		constructor.visitCode();
+		constructor.visitVarInsn(ALOAD, 0);
+		constructor.visitMethodInsn(INVOKESPECIAL, superClassName, "<init>", "()V");
+		constructor.visitInsn(RETURN);
+		constructor.visitMaxs(0, 0);
+		constructor.visitEnd();
+		return cw;
+	}
+
+	/**
+	 * Start {@code method(Object bean, int index, ...)} with switch on index.
+	 *
+	 * @return labels for the given indexes. the last element is the default label.
+	 */
+	private static Label[] beginSwitch(MethodVisitor mv, List<Integer> indexes) {
+		final Label[] labels = new Label[indexes.size() + 1];
+		final int[] keys = new int[indexes.size()];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = indexes.get(i);
+			labels[i] = new Label();
+		}
+		final Label defaultLabel = new Label();
+		labels[keys.length] = defaultLabel;
+
+		mv.visitCode();
+		mv.visitVarInsn(ILOAD, 2);
+		final Label[] caseLabels = new Label[keys.length];
+		System.arraycopy(labels, 0, caseLabels, 0, keys.length);
+		mv.visitLookupSwitchInsn(defaultLabel, keys, caseLabels);
+		return labels;
+	}
+
+	private static void endSwitch(MethodVisitor mv, Label defaultLabel) {
+		mv.visitLabel(defaultLabel);
+		mv.visitTypeInsn(NEW, "java/lang/IllegalArgumentException");
+		mv.visitInsn(DUP);
+		mv.visitMethodInsn(INVOKESPECIAL, "java/lang/IllegalArgumentException", "<init>", "()V");
+		mv.visitInsn(ATHROW);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/**
+	 * @param methods       method to call for each index
+	 * @param parameterType only generate cases for methods taking this type. null for all methods.
+	 */
+	private static void generateSetter(ClassWriter cw, String name, Type valueType, String beanClassName,
+									   Method[] methods, Class<?> parameterType) {
+		final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, name,
+				Type.getMethodDescriptor(Type.VOID_TYPE, OBJECT_TYPE, Type.INT_TYPE, valueType), null, null);
+
+		final List<Integer> indexes = new ArrayList<Integer>();
+		for (int i = 0; i < methods.length; i++) {
+			if (parameterType == null || methods[i].getParameterTypes()[0] == parameterType) {
+				indexes.add(i);
+			}
+		}
+
+		final Label[] labels = beginSwitch(mv, indexes);
+		for (int i = 0; i < indexes.size(); i++) {
+			mv.visitLabel(labels[i]);
+			final Method method = methods[indexes.get(i)];
+			final Type type = Type.getType(method.getParameterTypes()[0]);
+			mv.visitVarInsn(ALOAD, 1);
+			mv.visitTypeInsn(CHECKCAST, beanClassName);
+			mv.visitVarInsn(valueType.getOpcode(ILOAD), 3);
+			if (valueType.getSort() == Type.OBJECT) {
+				if (isPrimitive(type)) {
+					unbox(mv, type);
+				} else {
+					mv.visitTypeInsn(CHECKCAST, type.getSort() == Type.ARRAY ? type.getDescriptor() : type.getInternalName());
+				}
+			}
+			mv.visitMethodInsn(INVOKEVIRTUAL, beanClassName, method.getName(), Type.getMethodDescriptor(method));
+			mv.visitInsn(RETURN);
+		}
+		endSwitch(mv, labels[indexes.size()]);
+	}
+
+	private static boolean isPrimitive(Type type) {
+		return type.getSort() != Type.OBJECT && type.getSort() != Type.ARRAY;
+	}
+
+	private static String boxedClassName(Type type) {
+		switch (type.getSort()) {
+			case Type.BOOLEAN:
+				return "java/lang/Boolean";
+			case Type.BYTE:
+				return "java/lang/Byte";
+			case Type.SHORT:
+				return "java/lang/Short";
+			case Type.INT:
+				return "java/lang/Integer";
+			case Type.LONG:
+				return "java/lang/Long";
+			case Type.FLOAT:
+				return "java/lang/Float";
+			case Type.DOUBLE:
+				return "java/lang/Double";
+			default:
+				return "java/lang/Character";
+		}
+	}
+
+	private static void unbox(MethodVisitor mv, Type type) {
+		final String owner = boxedClassName(type);
+		mv.visitTypeInsn(CHECKCAST, owner);
+		mv.visitMethodInsn(INVOKEVIRTUAL, owner, type.getClassName() + "Value", "()" + type.getDescriptor());
+	}
+
+	private static class MutatorClassLoader extends ClassLoader {
+
+		private MutatorClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		private Class<?> define(String name, byte[] bytecode) {
+			return defineClass(name, bytecode, 0, bytecode.length);
+		}
+	}
+
+}
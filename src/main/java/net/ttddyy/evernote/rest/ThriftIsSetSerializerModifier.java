@@ -0,0 +1,148 @@
+package net.ttddyy.evernote.rest;
+
+import com.evernote.thrift.TBase;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.ser.impl.PropertySerializerMap;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Omit unset fields of thrift structs in serialization.
+ *
+ * Without this, unset primitive fields are written as 0 or false and unset objects as null, which client cannot
+ * tell from actual values. Generated {@code isSetXxx()} methods read the isset bit vector for primitives and null
+ * check for objects, so the same checks are resolved once per property when jackson builds its serializer: the
+ * "__isset_vector" field and the "__XXX_ISSET_ID" index for primitives, and the property value for objects.
+ * {@code isSetXxx()} is invoked only for fields that do not follow the generated layout.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class ThriftIsSetSerializerModifier extends BeanSerializerModifier {
+
+	@Override
+	public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription beanDesc,
+													 List<BeanPropertyWriter> beanProperties) {
+		final Class<?> beanClass = beanDesc.getBeanClass();
+		if (!TBase.class.isAssignableFrom(beanClass)) {
+			return beanProperties;
+		}
+
+		final Field issetVector = findIssetVector(beanClass);
+		final List<BeanPropertyWriter> result = new ArrayList<BeanPropertyWriter>(beanProperties.size());
+		for (BeanPropertyWriter writer : beanProperties) {
+			final Method isSetMethod = ReflectionUtils.findMethod(beanClass, "isSet" + StringUtils.capitalize(writer.getName()));
+			if (isSetMethod == null || isSetMethod.getReturnType() != boolean.class) {
+				result.add(writer);
+			} else if (!writer.getPropertyType().isPrimitive()) {
+				result.add(new IsSetPropertyWriter(writer, null, -1, null));
+			} else {
+				final int issetIndex = issetVector == null ? -1 : findIssetIndex(beanClass, writer.getName());
+				if (issetIndex < 0) {
+					result.add(new IsSetPropertyWriter(writer, null, -1, isSetMethod));
+				} else {
+					result.add(new IsSetPropertyWriter(writer, issetVector, issetIndex, null));
+				}
+			}
+		}
+		return result;
+	}
+
+	private static Field findIssetVector(Class<?> beanClass) {
+		final Field field = ReflectionUtils.findField(beanClass, "__isset_vector", boolean[].class);
+		if (field != null) {
+			ReflectionUtils.makeAccessible(field);
+		}
+		return field;
+	}
+
+	/**
+	 * @return index of the field in the isset bit vector, -1 if not found
+	 */
+	private static int findIssetIndex(Class<?> beanClass, String fieldName) {
+		final Field field = ReflectionUtils.findField(beanClass, "__" + fieldName.toUpperCase(Locale.ENGLISH) + "_ISSET_ID", int.class);
+		if (field == null || !Modifier.isStatic(field.getModifiers())) {
+			return -1;
+		}
+		ReflectionUtils.makeAccessible(field);
+		return (Integer) ReflectionUtils.getField(field, null);
+	}
+
+	private static class IsSetPropertyWriter extends BeanPropertyWriter {
+
+		private final Field issetVector;
+		private final int issetIndex;
+		private final Method isSetMethod;
+
+		/**
+		 * @param issetVector "__isset_vector" for primitive fields, null otherwise
+		 * @param issetIndex  index of the field in the vector
+		 * @param isSetMethod {@code isSetXxx()} for primitive fields without the vector, null otherwise
+		 */
+		private IsSetPropertyWriter(BeanPropertyWriter base, Field issetVector, int issetIndex, Method isSetMethod) {
+			super(base);
+			this.issetVector = issetVector;
+			this.issetIndex = issetIndex;
+			this.isSetMethod = isSetMethod;
+		}
+
+		@Override
+		public void serializeAsField(Object bean, JsonGenerator jgen, SerializerProvider prov) throws Exception {
+			if (this.issetVector != null) {
+				if (((boolean[]) this.issetVector.get(bean))[this.issetIndex]) {
+					super.serializeAsField(bean, jgen, prov);
+				}
+			} else if (this.isSetMethod != null) {
+				if ((Boolean) this.isSetMethod.invoke(bean)) {
+					super.serializeAsField(bean, jgen, prov);
+				}
+			} else {
+				final Object value = get(bean);  // null is unset
+				if (value != null) {
+					serializeValue(bean, value, jgen, prov);
+				}
+			}
+		}
+
+		/**
+		 * Same as {@link BeanPropertyWriter#serializeAsField} for non-null value, without reading the value again.
+		 */
+		private void serializeValue(Object bean, Object value, JsonGenerator jgen, SerializerProvider prov) throws Exception {
+			JsonSerializer<Object> serializer = this._serializer;
+			if (serializer == null) {
+				final Class<?> type = value.getClass();
+				final PropertySerializerMap serializers = this._dynamicSerializers;
+				serializer = serializers.serializerFor(type);
+				if (serializer == null) {
+					serializer = _findAndAddDynamic(serializers, type, prov);
+				}
+			}
+			if (this._suppressableValue != null && (MARKER_FOR_EMPTY == this._suppressableValue ?
+					serializer.isEmpty(value) : this._suppressableValue.equals(value))) {
+				return;
+			}
+			if (value == bean) {
+				_handleSelfReference(bean, serializer);
+			}
+			jgen.writeFieldName(this._name);
+			if (this._typeSerializer == null) {
+				serializer.serialize(value, jgen, prov);
+			} else {
+				serializer.serializeWithType(value, jgen, prov, this._typeSerializer);
+			}
+		}
+	}
+
+}
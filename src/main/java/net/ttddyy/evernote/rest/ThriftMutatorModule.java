@@ -0,0 +1,306 @@
+package net.ttddyy.evernote.rest;
+
+import com.evernote.thrift.TBase;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.PropertyName;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerBuilder;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+import com.fasterxml.jackson.databind.deser.SettableBeanProperty;
+import com.fasterxml.jackson.databind.deser.impl.MethodProperty;
+import com.fasterxml.jackson.databind.deser.std.NumberDeserializers;
+import com.fasterxml.jackson.databind.deser.std.StringDeserializer;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMethod;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Jackson module to deserialize thrift structs without reflection.
+ *
+ * Replaces setter based properties of thrift structs with properties calling setters through a generated
+ * {@link ThriftFieldMutator}. int, long, double, boolean and string values are read from the parser directly when the
+ * token is the one jackson's standard deserializer reads the same way. Other values, including collections such as
+ * {@code List<Long>} and {@code List<Short>}, are read by the assigned deserializer as before.
+ *
+ * Mutators are generated once per struct class and shared among ObjectMappers. They are not faster than reflection for
+ * every payload, so the module is opt-in. Serialization stays reflective.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class ThriftMutatorModule extends Module {
+
+	private static final ConcurrentMap<Class<?>, MutatorHolder> MUTATORS = new ConcurrentHashMap<Class<?>, MutatorHolder>();
+
+	@Override
+	public String getModuleName() {
+		return "ThriftMutatorModule";
+	}
+
+	@Override
+	public Version version() {
+		return Version.unknownVersion();
+	}
+
+	@Override
+	public void setupModule(SetupContext context) {
+		context.addBeanDeserializerModifier(new MutatorDeserializerModifier());
+	}
+
+	/**
+	 * Generated mutator and the setters in its index order.
+	 */
+	private static class MutatorHolder {
+		private final ThriftFieldMutator mutator;
+		private final List<Method> setters;
+
+		private MutatorHolder(ThriftFieldMutator mutator, List<Method> setters) {
+			this.mutator = mutator;
+			this.setters = setters;
+		}
+	}
+
+	private static class MutatorDeserializerModifier extends BeanDeserializerModifier {
+
+		@Override
+		public BeanDeserializerBuilder updateBuilder(DeserializationConfig config, BeanDescription beanDesc,
+													 BeanDeserializerBuilder builder) {
+			final Class<?> beanClass = beanDesc.getBeanClass();
+			if (!TBase.class.isAssignableFrom(beanClass) || !Modifier.isPublic(beanClass.getModifiers())) {
+				return builder;
+			}
+
+			final List<SettableBeanProperty> properties = new ArrayList<SettableBeanProperty>();
+			final Iterator<SettableBeanProperty> iterator = builder.getProperties();
+			while (iterator.hasNext()) {
+				properties.add(iterator.next());
+			}
+
+			final MutatorHolder holder = getMutator(beanClass, properties);
+			if (holder == null) {
+				return builder;
+			}
+			for (SettableBeanProperty property : properties) {
+				final int index = holder.setters.indexOf(setter(property));
+				if (index >= 0) {
+					builder.addOrReplaceProperty(new MutatorProperty(property, holder.mutator, index), true);
+				}
+			}
+			return builder;
+		}
+
+		private MutatorHolder getMutator(Class<?> beanClass, List<SettableBeanProperty> properties) {
+			MutatorHolder holder = MUTATORS.get(beanClass);
+			final List<Method> setters = new ArrayList<Method>();
+			for (SettableBeanProperty property : properties) {
+				final Method setter = setter(property);
+				if (setter != null) {
+					setters.add(setter);
+				}
+			}
+			if (holder != null && holder.setters.containsAll(setters)) {
+				return holder;
+			}
+
+			final ThriftFieldMutator mutator = ThriftFieldMutatorGenerator.generateMutator(beanClass,
+					setters.toArray(new Method[setters.size()]));
+			if (mutator == null) {
+				return null;
+			}
+			holder = new MutatorHolder(mutator, setters);
+			MUTATORS.put(beanClass, holder);
+			return holder;
+		}
+
+		/**
+		 * @return public void setter taking one argument, null for other kind of properties
+		 */
+		private Method setter(SettableBeanProperty property) {
+			if (!(property instanceof MethodProperty) || !(property.getMember() instanceof AnnotatedMethod)) {
+				return null;
+			}
+			final Method method = ((AnnotatedMethod) property.getMember()).getAnnotated();
+			if (method.getReturnType() != void.class || method.getParameterTypes().length != 1
+					|| !Modifier.isPublic(method.getModifiers())) {
+				return null;
+			}
+			return method;
+		}
+	}
+
+	private enum Kind {
+		INT(NumberDeserializers.IntegerDeserializer.class),
+		LONG(NumberDeserializers.LongDeserializer.class),
+		DOUBLE(NumberDeserializers.DoubleDeserializer.class),
+		BOOLEAN(NumberDeserializers.BooleanDeserializer.class),
+		STRING(StringDeserializer.class),
+		OTHER(null);
+
+		private final Class<?> standardDeserializerClass;
+
+		private Kind(Class<?> standardDeserializerClass) {
+			this.standardDeserializerClass = standardDeserializerClass;
+		}
+
+		private static Kind of(Class<?> type) {
+			if (type == int.class) {
+				return INT;
+			} else if (type == long.class) {
+				return LONG;
+			} else if (type == double.class) {
+				return DOUBLE;
+			} else if (type == boolean.class) {
+				return BOOLEAN;
+			} else if (type == String.class) {
+				return STRING;
+			}
+			return OTHER;
+		}
+	}
+
+	/**
+	 * {@link SettableBeanProperty} calling the setter through generated mutator.
+	 *
+	 * Other than setting the value, behaves as the original {@link MethodProperty}.
+	 */
+	private static class MutatorProperty extends SettableBeanProperty {
+
+		private final SettableBeanProperty delegate;
+		private final ThriftFieldMutator mutator;
+		private final int index;
+		private final Kind kind;
+		private final boolean readDirectly;
+
+		private MutatorProperty(SettableBeanProperty delegate, ThriftFieldMutator mutator, int index) {
+			super(delegate);
+			this.delegate = delegate;
+			this.mutator = mutator;
+			this.index = index;
+			this.kind = Kind.of(delegate.getType().getRawClass());
+			this.readDirectly = canReadDirectly();
+		}
+
+		private MutatorProperty(MutatorProperty src, JsonDeserializer<?> deserializer) {
+			super(src, deserializer);
+			this.delegate = src.delegate.withValueDeserializer(deserializer);
+			this.mutator = src.mutator;
+			this.index = src.index;
+			this.kind = src.kind;
+			this.readDirectly = canReadDirectly();
+		}
+
+		private MutatorProperty(MutatorProperty src, PropertyName name) {
+			super(src, name);
+			this.delegate = src.delegate.withName(name);
+			this.mutator = src.mutator;
+			this.index = src.index;
+			this.kind = src.kind;
+			this.readDirectly = src.readDirectly;
+		}
+
+		/**
+		 * Only when the value would be read by jackson's standard deserializer for the type.
+		 */
+		private boolean canReadDirectly() {
+			return this._valueDeserializer != null && this._valueTypeDeserializer == null
+					&& this._valueDeserializer.getClass() == this.kind.standardDeserializerClass;
+		}
+
+		@Override
+		public SettableBeanProperty withValueDeserializer(JsonDeserializer<?> deser) {
+			return new MutatorProperty(this, deser);
+		}
+
+		@Override
+		public SettableBeanProperty withName(PropertyName newName) {
+			return new MutatorProperty(this, newName);
+		}
+
+		@Override
+		public <A extends Annotation> A getAnnotation(Class<A> acls) {
+			return this.delegate.getAnnotation(acls);
+		}
+
+		@Override
+		public AnnotatedMember getMember() {
+			return this.delegate.getMember();
+		}
+
+		@Override
+		public void deserializeAndSet(JsonParser jp, DeserializationContext ctxt, Object instance) throws IOException {
+			if (this.readDirectly) {
+				final JsonToken token = jp.getCurrentToken();
+				switch (this.kind) {
+					case INT:
+						if (token == JsonToken.VALUE_NUMBER_INT) {
+							this.mutator.setInt(instance, this.index, jp.getIntValue());
+							return;
+						}
+						break;
+					case LONG:
+						if (token == JsonToken.VALUE_NUMBER_INT) {
+							this.mutator.setLong(instance, this.index, jp.getLongValue());
+							return;
+						}
+						break;
+					case DOUBLE:
+						if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+							this.mutator.setDouble(instance, this.index, jp.getDoubleValue());
+							return;
+						}
+						break;
+					case BOOLEAN:
+						if (token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE) {
+							this.mutator.setBoolean(instance, this.index, token == JsonToken.VALUE_TRUE);
+							return;
+						}
+						break;
+					case STRING:
+						if (token == JsonToken.VALUE_STRING) {
+							this.mutator.set(instance, this.index, jp.getText());
+							return;
+						}
+						break;
+					default:
+				}
+			}
+			set(instance, deserialize(jp, ctxt));
+		}
+
+		@Override
+		public Object deserializeSetAndReturn(JsonParser jp, DeserializationContext ctxt, Object instance) throws IOException {
+			deserializeAndSet(jp, ctxt, instance);
+			return instance;
+		}
+
+		@Override
+		public void set(Object instance, Object value) throws IOException {
+			try {
+				this.mutator.set(instance, this.index, value);
+			} catch (Exception e) {
+				_throwAsIOE(e, value);
+			}
+		}
+
+		@Override
+		public Object setAndReturn(Object instance, Object value) throws IOException {
+			set(instance, value);
+			return instance;
+		}
+	}
+
+}
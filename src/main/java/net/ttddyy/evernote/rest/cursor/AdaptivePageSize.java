@@ -0,0 +1,47 @@
+package net.ttddyy.evernote.rest.cursor;
+
+/**
+ * Page size for {@code findNotesMetadata} that follows observed evernote latency.
+ *
+ * Doubles the page size while pages come back well within the target latency, and halves it when a page takes longer
+ * than the target. Always stays within min and max page size.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class AdaptivePageSize {
+
+	private final int minPageSize;
+	private final int maxPageSize;
+	private final long targetLatencyMillis;
+
+	private int pageSize;
+
+	public AdaptivePageSize(int initialPageSize, int minPageSize, int maxPageSize, long targetLatencyMillis) {
+		this.minPageSize = minPageSize;
+		this.maxPageSize = maxPageSize;
+		this.targetLatencyMillis = targetLatencyMillis;
+		this.pageSize = clamp(initialPageSize);
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * @param latencyMillis time taken to fetch the last page
+	 * @return page size for the next page
+	 */
+	public int update(long latencyMillis) {
+		if (latencyMillis > this.targetLatencyMillis) {
+			this.pageSize = clamp(this.pageSize / 2);
+		} else if (latencyMillis * 2 < this.targetLatencyMillis) {
+			this.pageSize = clamp(this.pageSize * 2);
+		}
+		return this.pageSize;
+	}
+
+	private int clamp(int size) {
+		return Math.max(this.minPageSize, Math.min(this.maxPageSize, size));
+	}
+
+}
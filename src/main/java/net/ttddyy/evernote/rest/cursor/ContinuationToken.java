@@ -0,0 +1,48 @@
+package net.ttddyy.evernote.rest.cursor;
+
+import net.ttddyy.evernote.rest.EvernoteRestException;
+
+/**
+ * Opaque token to resume a cursor: next offset, and fingerprint of the query it belongs to.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class ContinuationToken {
+
+	private static final char SEPARATOR = '-';
+
+	private final int offset;
+	private final String fingerprint;
+
+	public ContinuationToken(int offset, String fingerprint) {
+		this.offset = offset;
+		this.fingerprint = fingerprint;
+	}
+
+	public static ContinuationToken parse(String token) {
+		final int index = token.indexOf(SEPARATOR);
+		if (index > 0) {
+			try {
+				return new ContinuationToken(Integer.parseInt(token.substring(0, index), Character.MAX_RADIX),
+						token.substring(index + 1));
+			} catch (NumberFormatException e) {
+				// fall through
+			}
+		}
+		throw new EvernoteRestException("Invalid continuation token. token=[" + token + "]");
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	@Override
+	public String toString() {
+		return Integer.toString(this.offset, Character.MAX_RADIX) + SEPARATOR + this.fingerprint;
+	}
+
+}
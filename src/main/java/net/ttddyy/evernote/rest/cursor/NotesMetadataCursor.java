@@ -0,0 +1,244 @@
+package net.ttddyy.evernote.rest.cursor;
+
+import com.evernote.edam.notestore.NoteFilter;
+import com.evernote.edam.notestore.NoteMetadata;
+import com.evernote.edam.notestore.NotesMetadataList;
+import com.evernote.edam.notestore.NotesMetadataResultSpec;
+import net.ttddyy.evernote.rest.EvernoteRestException;
+import net.ttddyy.evernote.rest.metrics.InFlightCalls;
+import net.ttddyy.evernote.rest.thrift.CountingTransport;
+import org.springframework.social.evernote.api.NoteStoreOperations;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Iterates all notes matching a filter by calling {@code findNotesMetadata} page by page.
+ *
+ * While the caller consumes a page, the next page is fetched in background(one page read-ahead). Page size follows
+ * evernote latency by {@link AdaptivePageSize}. Each page carries the time and bytes of its call to evernote, so that the
+ * caller can record them on the request thread. Not thread safe.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class NotesMetadataCursor {
+
+	private final NoteStoreOperations noteStoreOperations;
+	private final NoteFilter filter;
+	private final NotesMetadataResultSpec resultSpec;
+	private final AdaptivePageSize pageSize;
+	private final ExecutorService executorService;
+	private final CountingTransport transport;
+	private InFlightCalls inFlightCalls;
+	private String noteStoreUrl;
+	private String tokenHash;
+
+	private int offset;
+	private boolean finished;
+	private Future<FetchedPage> readAhead;
+
+	public NotesMetadataCursor(NoteStoreOperations noteStoreOperations, NoteFilter filter,
+							   NotesMetadataResultSpec resultSpec, int offset, AdaptivePageSize pageSize,
+							   ExecutorService executorService) {
+		this(noteStoreOperations, filter, resultSpec, offset, pageSize, executorService, null);
+	}
+
+	/**
+	 * @param transport counting transport installed to the client of the note store operations. can be null.
+	 */
+	public NotesMetadataCursor(NoteStoreOperations noteStoreOperations, NoteFilter filter,
+							   NotesMetadataResultSpec resultSpec, int offset, AdaptivePageSize pageSize,
+							   ExecutorService executorService, CountingTransport transport) {
+		this.noteStoreOperations = noteStoreOperations;
+		this.filter = filter;
+		this.resultSpec = resultSpec;
+		this.offset = offset;
+		this.pageSize = pageSize;
+		this.executorService = executorService;
+		this.transport = transport;
+	}
+
+	/**
+	 * Add calls to evernote, including read-ahead ones, to the calls in progress.
+	 *
+	 * @param noteStoreUrl note store url of the calls. null for default.
+	 * @param tokenHash    hashed access token. null for anonymous.
+	 */
+	public void trackInFlight(InFlightCalls inFlightCalls, String noteStoreUrl, String tokenHash) {
+		this.inFlightCalls = inFlightCalls;
+		this.noteStoreUrl = noteStoreUrl;
+		this.tokenHash = tokenHash;
+	}
+
+	/**
+	 * @return next page, or null when all notes have been returned.
+	 */
+	public Page next() {
+		if (this.finished) {
+			return null;
+		}
+
+		final FetchedPage fetched;
+		if (this.readAhead == null) {
+			fetched = new FetchTask(this.offset, this.pageSize.getPageSize()).call();  // first page on caller thread
+		} else {
+			fetched = await(this.readAhead);
+			this.readAhead = null;
+		}
+
+		final List<NoteMetadata> notes = fetched.list.getNotes() == null ?
+				Collections.<NoteMetadata>emptyList() : fetched.list.getNotes();
+		this.offset = fetched.list.getStartIndex() + notes.size();
+		this.finished = notes.isEmpty() || this.offset >= fetched.list.getTotalNotes();
+
+		final int nextPageSize = this.pageSize.update(TimeUnit.NANOSECONDS.toMillis(fetched.upstreamNanos));
+		if (!this.finished) {
+			this.readAhead = this.executorService.submit(new FetchTask(this.offset, nextPageSize));
+		}
+		return new Page(notes, this.offset, fetched.list.getTotalNotes(), this.finished, fetched.upstreamNanos,
+				fetched.sentBytes, fetched.receivedBytes);
+	}
+
+	/**
+	 * Stop read-ahead in progress.
+	 */
+	public void close() {
+		this.finished = true;
+		if (this.readAhead != null) {
+			this.readAhead.cancel(true);
+			this.readAhead = null;
+		}
+	}
+
+	private static FetchedPage await(Future<FetchedPage> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new EvernoteRestException("Interrupted while waiting for findNotesMetadata.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();  // EvernoteException, etc
+			}
+			throw new EvernoteRestException("Failed to call findNotesMetadata.", e.getCause());
+		}
+	}
+
+	private class FetchTask implements Callable<FetchedPage> {
+
+		private final int offset;
+		private final int maxNotes;
+
+		private FetchTask(int offset, int maxNotes) {
+			this.offset = offset;
+			this.maxNotes = maxNotes;
+		}
+
+		@Override
+		public FetchedPage call() {
+			// one call at a time, so the difference of the transport counts is of this call
+			final long sentBefore = transport == null ? 0 : transport.getSentBytes();
+			final long receivedBefore = transport == null ? 0 : transport.getReceivedBytes();
+			final InFlightCalls.Call call = inFlightCalls == null ? null :
+					inFlightCalls.start("noteStore", "findNotesMetadata", noteStoreUrl, tokenHash);
+			final long start = System.nanoTime();
+			final NotesMetadataList list;
+			try {
+				list = noteStoreOperations.findNotesMetadata(filter, this.offset, this.maxNotes, resultSpec);
+			} finally {
+				if (call != null) {
+					inFlightCalls.end(call);
+				}
+			}
+			final long elapsed = System.nanoTime() - start;
+			return new FetchedPage(list, elapsed, transport == null ? 0 : transport.getSentBytes() - sentBefore,
+					transport == null ? 0 : transport.getReceivedBytes() - receivedBefore);
+		}
+	}
+
+	private static class FetchedPage {
+
+		private final NotesMetadataList list;
+		private final long upstreamNanos;
+		private final long sentBytes;
+		private final long receivedBytes;
+
+		private FetchedPage(NotesMetadataList list, long upstreamNanos, long sentBytes, long receivedBytes) {
+			this.list = list;
+			this.upstreamNanos = upstreamNanos;
+			this.sentBytes = sentBytes;
+			this.receivedBytes = receivedBytes;
+		}
+	}
+
+	/**
+	 * A page of note metadata.
+	 */
+	public static class Page {
+
+		private final List<NoteMetadata> notes;
+		private final int nextOffset;
+		private final int totalNotes;
+		private final boolean last;
+		private final long upstreamNanos;
+		private final long sentBytes;
+		private final long receivedBytes;
+
+		public Page(List<NoteMetadata> notes, int nextOffset, int totalNotes, boolean last, long upstreamNanos,
+					long sentBytes, long receivedBytes) {
+			this.notes = notes;
+			this.nextOffset = nextOffset;
+			this.totalNotes = totalNotes;
+			this.last = last;
+			this.upstreamNanos = upstreamNanos;
+			this.sentBytes = sentBytes;
+			this.receivedBytes = receivedBytes;
+		}
+
+		public List<NoteMetadata> getNotes() {
+			return notes;
+		}
+
+		/**
+		 * @return offset to pass to {@code findNotesMetadata} to get notes after this page.
+		 */
+		public int getNextOffset() {
+			return nextOffset;
+		}
+
+		public int getTotalNotes() {
+			return totalNotes;
+		}
+
+		public boolean isLast() {
+			return last;
+		}
+
+		/**
+		 * @return time of the {@code findNotesMetadata} call for this page
+		 */
+		public long getUpstreamNanos() {
+			return upstreamNanos;
+		}
+
+		/**
+		 * @return bytes sent to evernote for this page. 0 if not counted.
+		 */
+		public long getSentBytes() {
+			return sentBytes;
+		}
+
+		/**
+		 * @return bytes received from evernote for this page. 0 if not counted.
+		 */
+		public long getReceivedBytes() {
+			return receivedBytes;
+		}
+	}
+
+}
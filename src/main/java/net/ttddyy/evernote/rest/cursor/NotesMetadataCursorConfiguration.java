@@ -0,0 +1,60 @@
+package net.ttddyy.evernote.rest.cursor;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Configuration for cursor endpoints.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+@Configuration
+public class NotesMetadataCursorConfiguration {
+
+	@Configuration
+	@ConfigurationProperties("evernote.cursor")
+	public static class CursorPropertiesConfiguration {
+
+		public int initialPageSize = 50;
+		public int minPageSize = 10;
+		public int maxPageSize = 250;  // evernote does not return more than 250 notes at once
+		public long targetPageLatencyMillis = 1000;  // page size grows while pages are faster than half of this
+
+		public void setInitialPageSize(int initialPageSize) {
+			this.initialPageSize = initialPageSize;
+		}
+
+		public void setMinPageSize(int minPageSize) {
+			this.minPageSize = minPageSize;
+		}
+
+		public void setMaxPageSize(int maxPageSize) {
+			this.maxPageSize = maxPageSize;
+		}
+
+		public void setTargetPageLatencyMillis(long targetPageLatencyMillis) {
+			this.targetPageLatencyMillis = targetPageLatencyMillis;
+		}
+
+		public AdaptivePageSize newAdaptivePageSize() {
+			return new AdaptivePageSize(this.initialPageSize, this.minPageSize, this.maxPageSize, this.targetPageLatencyMillis);
+		}
+
+	}
+
+	/**
+	 * Threads to read next page ahead while current page is written to client.
+	 */
+	@Bean(destroyMethod = "shutdownNow")
+	public ExecutorService cursorReadAheadExecutor() {
+		final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("cursor-read-ahead-");
+		threadFactory.setDaemon(true);
+		return Executors.newCachedThreadPool(threadFactory);
+	}
+
+}
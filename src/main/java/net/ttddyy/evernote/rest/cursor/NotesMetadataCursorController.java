@@ -0,0 +1,225 @@
+package net.ttddyy.evernote.rest.cursor;
+
+import com.evernote.edam.notestore.NoteFilter;
+import com.evernote.edam.notestore.NoteMetadata;
+import com.evernote.edam.notestore.NotesMetadataResultSpec;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import net.ttddyy.evernote.rest.Application;
+import net.ttddyy.evernote.rest.EvernoteRestException;
+import net.ttddyy.evernote.rest.RequestIdentity;
+import net.ttddyy.evernote.rest.metrics.InFlightCalls;
+import net.ttddyy.evernote.rest.metrics.RequestTiming;
+import net.ttddyy.evernote.rest.metrics.StoreMethodMetrics;
+import net.ttddyy.evernote.rest.metrics.StoreMetrics;
+import net.ttddyy.evernote.rest.thrift.CountingTransport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.web.ErrorAttributes;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.social.evernote.api.Evernote;
+import org.springframework.social.evernote.api.EvernoteException;
+import org.springframework.social.evernote.api.NoteStoreOperations;
+import org.springframework.social.evernote.api.StoreClientHolder;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+import org.springframework.web.servlet.view.InternalResourceView;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Streams all note metadata matching a filter, paging {@code findNotesMetadata} on server side.
+ *
+ * Request body takes "filter", "resultSpec" and optional "continuationToken". Response is a JSON array, or NDJSON(one
+ * json per line) when "Accept: application/x-ndjson" is requested. After each page except the last one, an element
+ * {@code {"continuationToken":"..."}} is written. Sending it back with the same filter and resultSpec resumes listing
+ * after that page.
+ *
+ * Each page is recorded to "findNotesMetadata" metrics of the note store as a call to evernote, and to the
+ * {@link RequestTiming} of the request.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+@RestController
+@RequestMapping("/noteStore/cursor")
+public class NotesMetadataCursorController {
+
+	public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+	@Autowired
+	private Evernote evernote;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private ErrorAttributes errorAttributes;
+
+	@Autowired
+	private NotesMetadataCursorConfiguration.CursorPropertiesConfiguration cursorPropertiesConfiguration;
+
+	@Autowired
+	private ExecutorService cursorReadAheadExecutor;
+
+	@Autowired
+	private StoreMetrics storeMetrics;
+
+	@Autowired
+	private InFlightCalls inFlightCalls;
+
+	@Autowired
+	private Application.EvernotePropertiesConfiguration evernotePropertiesConfiguration;
+
+
+	@RequestMapping(value = "/findNotesMetadata", method = RequestMethod.POST)
+	public Object findNotesMetadata(@RequestBody(required = false) JsonNode jsonNode,
+									HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+		final NoteFilter filter = readParameter(jsonNode, "filter", NoteFilter.class);
+		final NotesMetadataResultSpec resultSpec = readParameter(jsonNode, "resultSpec", NotesMetadataResultSpec.class);
+		final String fingerprint = fingerprint(filter, resultSpec);
+
+		int offset = 0;
+		if (jsonNode != null && jsonNode.hasNonNull("continuationToken")) {
+			final ContinuationToken token = ContinuationToken.parse(jsonNode.get("continuationToken").asText());
+			if (!fingerprint.equals(token.getFingerprint())) {
+				throw new EvernoteRestException("Continuation token does not match the filter and resultSpec.");
+			}
+			offset = token.getOffset();
+		}
+
+		final RequestTiming timing = RequestTiming.get(request);
+		final StoreMethodMetrics metrics = this.storeMetrics.get("noteStore", "findNotesMetadata");
+		timing.setMetrics(metrics);
+
+		final long start = System.nanoTime();
+		final NoteStoreOperations noteStoreOperations = this.evernote.noteStoreOperations();
+		final CountingTransport transport = noteStoreOperations instanceof StoreClientHolder ?
+				CountingTransport.install(((StoreClientHolder) noteStoreOperations).getStoreClient()) : null;
+		timing.add(RequestTiming.Phase.CLIENT, System.nanoTime() - start);
+
+		final NotesMetadataCursor cursor = new NotesMetadataCursor(noteStoreOperations, filter, resultSpec, offset,
+				this.cursorPropertiesConfiguration.newAdaptivePageSize(), this.cursorReadAheadExecutor, transport);
+		cursor.trackInFlight(this.inFlightCalls, request.getHeader(RequestIdentity.NOTE_STORE_URL_HEADER),
+				RequestIdentity.resolve(request, this.evernotePropertiesConfiguration).getTokenHash());
+		try {
+			// fetch first page before writing anything, so that errors can still be returned as error response.
+			NotesMetadataCursor.Page page;
+			try {
+				page = next(cursor, timing, metrics);
+			} catch (EvernoteException e) {
+				if (e.isEDAMException()) {
+					// same as StoreOperationController, return status=BAD_REQUEST(400) for EDAM*Exception
+					((HandlerExceptionResolver) errorAttributes).resolveException(request, response, null, e);
+					request.setAttribute(WebUtils.ERROR_STATUS_CODE_ATTRIBUTE, HttpStatus.BAD_REQUEST.value());
+					return new InternalResourceView("/error");
+				}
+				throw new EvernoteRestException("Failed to invoke findNotesMetadata. caused-by=[" + e.getMessage() + "]", e);
+			}
+
+			final boolean ndjson = acceptsNdjson(request);
+			response.setContentType(ndjson ? NDJSON_CONTENT_TYPE : MediaType.APPLICATION_JSON_VALUE);
+			response.setCharacterEncoding("UTF-8");
+			writePages(cursor, page, fingerprint, ndjson, timing, metrics, response);
+			timing.setOutcome(RequestTiming.Outcome.SUCCEEDED);
+			return null;  // response is already written
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Next page of the cursor, recording its call to evernote. Read-ahead calls are recorded when their pages are taken.
+	 */
+	private static NotesMetadataCursor.Page next(NotesMetadataCursor cursor, RequestTiming timing, StoreMethodMetrics metrics) {
+		final NotesMetadataCursor.Page page;
+		try {
+			page = cursor.next();
+		} catch (RuntimeException e) {
+			metrics.failed();
+			timing.failed(e);
+			throw e;
+		}
+		if (page != null) {
+			metrics.succeeded(page.getUpstreamNanos());
+			timing.add(RequestTiming.Phase.UPSTREAM, page.getUpstreamNanos());
+			timing.upstreamCall(page.getSentBytes(), page.getReceivedBytes());
+			if (page.getSentBytes() > 0 || page.getReceivedBytes() > 0) {
+				metrics.recordPayload(StoreMethodMetrics.Payload.UPSTREAM_SENT, page.getSentBytes());
+				metrics.recordPayload(StoreMethodMetrics.Payload.UPSTREAM_RECEIVED, page.getReceivedBytes());
+			}
+		}
+		return page;
+	}
+
+	private void writePages(NotesMetadataCursor cursor, NotesMetadataCursor.Page firstPage, String fingerprint,
+							boolean ndjson, RequestTiming timing, StoreMethodMetrics metrics,
+							HttpServletResponse response) throws IOException {
+		final JsonGenerator generator = this.objectMapper.getFactory().createGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+		generator.setRootValueSeparator(null);  // NDJSON writes new line by itself
+		final ObjectWriter writer = this.objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+		if (!ndjson) {
+			generator.writeStartArray();
+		}
+		NotesMetadataCursor.Page page = firstPage;
+		while (page != null) {
+			for (NoteMetadata note : page.getNotes()) {
+				writer.writeValue(generator, note);
+				endElement(generator, ndjson);
+			}
+			if (!page.isLast()) {
+				generator.writeStartObject();
+				generator.writeStringField("continuationToken", new ContinuationToken(page.getNextOffset(), fingerprint).toString());
+				generator.writeEndObject();
+				endElement(generator, ndjson);
+			}
+			generator.flush();  // send the page to client while waiting for next one
+			page = page.isLast() ? null : next(cursor, timing, metrics);
+		}
+		if (!ndjson) {
+			generator.writeEndArray();
+		}
+		generator.close();
+	}
+
+	private static void endElement(JsonGenerator generator, boolean ndjson) throws IOException {
+		if (ndjson) {
+			generator.writeRaw('\n');
+		}
+	}
+
+	private static boolean acceptsNdjson(HttpServletRequest request) {
+		final String accept = request.getHeader("Accept");
+		return accept != null && accept.contains(NDJSON_CONTENT_TYPE);
+	}
+
+	private <T> T readParameter(JsonNode jsonNode, String name, Class<T> type) {
+		try {
+			if (jsonNode != null && jsonNode.has(name)) {
+				return this.objectMapper.treeToValue(jsonNode.get(name), type);
+			}
+			return type.newInstance();
+		} catch (Exception e) {
+			throw new EvernoteRestException(e.getMessage() + ". parameter=[" + name + "]", e);
+		}
+	}
+
+	private String fingerprint(NoteFilter filter, NotesMetadataResultSpec resultSpec) throws IOException {
+		final byte[] bytes = this.objectMapper.writeValueAsBytes(new Object[]{filter, resultSpec});
+		return DigestUtils.md5DigestAsHex(bytes).substring(0, 16);
+	}
+
+}
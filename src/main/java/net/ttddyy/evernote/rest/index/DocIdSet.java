@@ -0,0 +1,74 @@
+package net.ttddyy.evernote.rest.index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Set of doc ids for a term posting list.
+ *
+ * Most terms appear in a few notes only, and a {@link BitSet} for them costs one bit per doc up to the highest doc id.
+ * So ids are kept in a sorted int array until that array becomes larger than a bitset would be.
+ * Not thread safe.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class DocIdSet {
+
+	private int[] ids = new int[2];
+	private int size;
+	private BitSet bits;  // non-null once converted
+
+	void add(int docId) {
+		if (this.bits != null) {
+			this.bits.set(docId);
+			return;
+		}
+		int index = Arrays.binarySearch(this.ids, 0, this.size, docId);
+		if (index >= 0) {
+			return;
+		}
+		index = -index - 1;
+		if (this.size == this.ids.length) {
+			this.ids = Arrays.copyOf(this.ids, this.size * 2);
+		}
+		System.arraycopy(this.ids, index, this.ids, index + 1, this.size - index);
+		this.ids[index] = docId;
+		this.size++;
+
+		// 32 bits per id in array vs 1 bit per doc id in bitset
+		final int highest = this.ids[this.size - 1];
+		if (this.size > 64 && this.size * 32L > highest) {
+			this.bits = new BitSet(highest + 1);
+			for (int i = 0; i < this.size; i++) {
+				this.bits.set(this.ids[i]);
+			}
+			this.ids = null;
+		}
+	}
+
+	void remove(int docId) {
+		if (this.bits != null) {
+			this.bits.clear(docId);
+			return;
+		}
+		final int index = Arrays.binarySearch(this.ids, 0, this.size, docId);
+		if (index >= 0) {
+			System.arraycopy(this.ids, index + 1, this.ids, index, this.size - index - 1);
+			this.size--;
+		}
+	}
+
+	/**
+	 * Add doc ids in this set to the given bitset.
+	 */
+	void orInto(BitSet result) {
+		if (this.bits != null) {
+			result.or(this.bits);
+			return;
+		}
+		for (int i = 0; i < this.size; i++) {
+			result.set(this.ids[i]);
+		}
+	}
+
+}
@@ -0,0 +1,341 @@
+package net.ttddyy.evernote.rest.index;
+
+import com.evernote.edam.notestore.NoteCollectionCounts;
+import com.evernote.edam.notestore.NoteMetadata;
+import com.evernote.edam.notestore.NotesMetadataList;
+import com.evernote.edam.notestore.NotesMetadataResultSpec;
+import com.evernote.edam.notestore.SyncChunk;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.Tag;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Per-user inverted index over synced note titles, tag names and note search text.
+ *
+ * Built from {@link SyncChunk}s and {@code getNoteSearchText}. Answers the subset of {@code findNotesMetadata} and
+ * {@code findNoteCounts} described by {@link NoteFilterQuery}; query methods return null when they cannot answer.
+ *
+ * Note metadata is kept in {@link NoteMetadataColumns}, and terms as {@link StringDictionary} ids with one
+ * {@link DocIdSet} per term.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class LocalNoteIndex {
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Lock syncLock = new ReentrantLock();
+
+	private final NoteMetadataColumns columns = new NoteMetadataColumns();
+	private final StringDictionary terms = new StringDictionary(true);
+	private final List<DocIdSet> termDocs = new ArrayList<DocIdSet>();  // index is term id
+	private final Map<String, List<String>> tagTerms = new HashMap<String, List<String>>();  // tag guid -> tag name terms
+
+	private int updateCount;
+	private int highUsn;
+	private volatile long syncedAt;  // 0 means never synced or invalidated
+	private int generation;  // incremented on invalidation, guarded by this
+
+	/**
+	 * Apply a sync chunk. Notes in the chunk replace indexed ones, and their search text needs to be given again by
+	 * {@link #putSearchText(String, String)}.
+	 */
+	public void apply(SyncChunk chunk) {
+		this.lock.writeLock().lock();
+		try {
+			if (chunk.isSetTags()) {
+				for (Tag tag : chunk.getTags()) {
+					this.tagTerms.put(tag.getGuid(), NoteFilterQuery.tokenize(tag.getName()));
+				}
+			}
+			if (chunk.isSetExpungedTags()) {
+				for (String tagGuid : chunk.getExpungedTags()) {
+					this.tagTerms.remove(tagGuid);
+				}
+			}
+			if (chunk.isSetNotes()) {
+				for (Note note : chunk.getNotes()) {
+					remove(note.getGuid());
+					add(note);
+				}
+			}
+			if (chunk.isSetExpungedNotes()) {
+				for (String noteGuid : chunk.getExpungedNotes()) {
+					remove(noteGuid);
+				}
+			}
+			if (chunk.isSetExpungedNotebooks()) {
+				for (String notebookGuid : chunk.getExpungedNotebooks()) {
+					final BitSet notebookDocs = this.columns.notebookDocs(notebookGuid);
+					if (notebookDocs != null) {
+						final BitSet bits = (BitSet) notebookDocs.clone();
+						for (int docId = bits.nextSetBit(0); docId >= 0; docId = bits.nextSetBit(docId + 1)) {
+							remove(this.columns.getGuid(docId));
+						}
+					}
+				}
+			}
+			if (chunk.isSetChunkHighUSN()) {
+				this.highUsn = Math.max(this.highUsn, chunk.getChunkHighUSN());
+			}
+			this.updateCount = chunk.getUpdateCount();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Add terms of the note search text(result of {@code getNoteSearchText}) to the indexed note.
+	 */
+	public void putSearchText(String noteGuid, String searchText) {
+		this.lock.writeLock().lock();
+		try {
+			final int docId = this.columns.docId(noteGuid);
+			if (docId < 0) {
+				return;
+			}
+			final Set<String> texts = new LinkedHashSet<String>(NoteFilterQuery.tokenize(searchText));
+			final int[] current = this.columns.getTermIds(docId);
+			final Set<Integer> ids = new LinkedHashSet<Integer>(current.length + texts.size());
+			for (int termId : current) {
+				ids.add(termId);
+			}
+			for (String text : texts) {
+				ids.add(this.terms.add(text));
+			}
+			setTerms(docId, ids);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	private void add(Note note) {
+		final int docId = this.columns.add(note);
+		final Set<Integer> ids = new LinkedHashSet<Integer>();
+		for (String term : NoteFilterQuery.tokenize(note.getTitle())) {
+			ids.add(this.terms.add(term));
+		}
+		setTerms(docId, ids);
+	}
+
+	private void setTerms(int docId, Set<Integer> ids) {
+		final int[] termIds = new int[ids.size()];
+		int i = 0;
+		for (Integer termId : ids) {
+			termIds[i++] = termId;
+			while (this.termDocs.size() <= termId) {
+				this.termDocs.add(new DocIdSet());
+			}
+			this.termDocs.get(termId).add(docId);
+		}
+		this.columns.setTermIds(docId, termIds);
+	}
+
+	private void remove(String noteGuid) {
+		final int docId = this.columns.docId(noteGuid);
+		if (docId < 0) {
+			return;
+		}
+		for (int termId : this.columns.getTermIds(docId)) {
+			this.termDocs.get(termId).remove(docId);
+		}
+		this.columns.remove(noteGuid);
+	}
+
+	/**
+	 * @return result in the same shape as {@code findNotesMetadata}. null if this index cannot answer it exactly.
+	 */
+	public NotesMetadataList findNotesMetadata(NoteFilterQuery query, int offset, int maxNotes,
+											   NotesMetadataResultSpec resultSpec) {
+		if (query.getOrder() == null || (resultSpec != null && resultSpec.isIncludeAttributes())) {
+			return null;  // default order is up to evernote, and note attributes are not indexed
+		}
+
+		this.lock.readLock().lock();
+		try {
+			final BitSet matched = evaluate(query, query.isInactive());
+			if (matched == null) {
+				return null;
+			}
+			final int total = matched.cardinality();
+			final int from = Math.min(Math.max(offset, 0), total);
+			final int to = (int) Math.min((long) from + Math.max(maxNotes, 0), total);
+			final int[] docs = this.columns.sort(matched, query.getOrder(), query.isAscending(), to);
+
+			final List<NoteMetadata> page = new ArrayList<NoteMetadata>(to - from);
+			for (int i = from; i < to; i++) {
+				page.add(this.columns.toNoteMetadata(docs[i], resultSpec));
+			}
+
+			final NotesMetadataList result = new NotesMetadataList();
+			result.setStartIndex(from);
+			result.setTotalNotes(total);
+			result.setNotes(page);
+			result.setSearchedWords(query.getSearchedWords());
+			result.setUpdateCount(this.updateCount);
+			return result;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return result in the same shape as {@code findNoteCounts}. null if this index cannot answer it exactly.
+	 */
+	public NoteCollectionCounts findNoteCounts(NoteFilterQuery query, boolean withTrash) {
+		this.lock.readLock().lock();
+		try {
+			final BitSet matched = evaluate(query, query.isInactive());
+			if (matched == null) {
+				return null;
+			}
+			final NoteCollectionCounts counts = new NoteCollectionCounts();
+			counts.setNotebookCounts(this.columns.countByNotebook(matched));
+			counts.setTagCounts(this.columns.countByTag(matched));
+			if (withTrash) {
+				counts.setTrashCount(evaluate(query, true).cardinality());
+			}
+			return counts;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return matched docs. null when the query refers to a notebook or tag this index does not know, which may exist
+	 * without notes or be shared from other accounts.
+	 */
+	private BitSet evaluate(NoteFilterQuery query, boolean inactive) {
+		final BitSet result = this.columns.docs(inactive);
+		if (query.getNotebookGuid() != null) {
+			final BitSet bits = this.columns.notebookDocs(query.getNotebookGuid());
+			if (bits == null) {
+				return null;  // notebooks are only known through their notes
+			}
+			result.and(bits);
+		}
+		for (String tagGuid : query.getTagGuids()) {
+			final BitSet bits = this.columns.tagDocs(tagGuid);
+			if (bits != null) {
+				result.and(bits);
+			} else if (this.tagTerms.containsKey(tagGuid)) {
+				result.clear();  // synchronized tag without notes
+			} else {
+				return null;
+			}
+		}
+		for (String term : query.getTerms()) {
+			final BitSet bits = new BitSet();
+			final int termId = this.terms.find(term);
+			if (termId >= 0) {
+				this.termDocs.get(termId).orInto(bits);
+			}
+			orTagsMatching(bits, term, false);
+			result.and(bits);
+		}
+		for (String prefix : query.getPrefixes()) {
+			final BitSet bits = new BitSet();
+			for (Integer termId : this.terms.findByPrefix(prefix)) {
+				this.termDocs.get(termId).orInto(bits);
+			}
+			orTagsMatching(bits, prefix, true);
+			result.and(bits);
+		}
+		return result;
+	}
+
+	// notes match a word when one of their tag names contains it
+	private void orTagsMatching(BitSet bits, String word, boolean prefix) {
+		for (Map.Entry<String, List<String>> entry : this.tagTerms.entrySet()) {
+			for (String term : entry.getValue()) {
+				if (prefix ? term.startsWith(word) : term.equals(word)) {
+					orIfPresent(bits, this.columns.tagDocs(entry.getKey()));
+					break;
+				}
+			}
+		}
+	}
+
+	private static void orIfPresent(BitSet result, BitSet bits) {
+		if (bits != null) {
+			result.or(bits);
+		}
+	}
+
+	/**
+	 * Lock to serialize synchronization of this index.
+	 */
+	public Lock getSyncLock() {
+		return syncLock;
+	}
+
+	public int getHighUsn() {
+		this.lock.readLock().lock();
+		try {
+			return highUsn;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	public int getUpdateCount() {
+		this.lock.readLock().lock();
+		try {
+			return updateCount;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	public int getNoteCount() {
+		this.lock.readLock().lock();
+		try {
+			return this.columns.size();
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return number of invalidations so far. pass to {@link #markSynced(long, int)} when a sync starts.
+	 */
+	public synchronized int getGeneration() {
+		return this.generation;
+	}
+
+	/**
+	 * Mark this index as up to date as of the timestamp, unless it has been invalidated since the sync started.
+	 *
+	 * @param generation {@link #getGeneration()} when the sync started
+	 * @return false if invalidated during the sync
+	 */
+	public synchronized boolean markSynced(long timestamp, int generation) {
+		if (this.generation != generation) {
+			return false;
+		}
+		this.syncedAt = timestamp;
+		return true;
+	}
+
+	/**
+	 * Mark this index as not up to date, for example when a note has been modified through this webapp.
+	 */
+	public synchronized void invalidate() {
+		this.generation++;
+		this.syncedAt = 0;
+	}
+
+	public boolean isFresh(long now, long maxStalenessMillis) {
+		final long synced = this.syncedAt;
+		return synced != 0 && now - synced <= maxStalenessMillis;
+	}
+
+	public long getSyncedAt() {
+		return syncedAt;
+	}
+
+}
@@ -0,0 +1,59 @@
+package net.ttddyy.evernote.rest.index;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Optional local note index. Enabled by "evernote.localIndex.enabled=true".
+ *
+ * @author Tadaya Tsuyukubo
+ */
+@Configuration
+@ConditionalOnExpression("${evernote.localIndex.enabled:false}")
+public class LocalNoteIndexConfiguration {
+
+	@Autowired
+	public LocalNoteIndexPropertiesConfiguration localNoteIndexPropertiesConfiguration;
+
+
+	@Configuration
+	@ConfigurationProperties("evernote.localIndex")
+	public static class LocalNoteIndexPropertiesConfiguration {
+
+		public boolean enabled;
+		public int maxUsers = 100;  // number of per-user indexes to keep
+		public int maxStalenessSeconds = 60;  // index older than this falls back to evernote
+		public int syncChunkSize = 250;
+		public boolean indexSearchText = true;  // call getNoteSearchText for each synced note
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public void setMaxUsers(int maxUsers) {
+			this.maxUsers = maxUsers;
+		}
+
+		public void setMaxStalenessSeconds(int maxStalenessSeconds) {
+			this.maxStalenessSeconds = maxStalenessSeconds;
+		}
+
+		public void setSyncChunkSize(int syncChunkSize) {
+			this.syncChunkSize = syncChunkSize;
+		}
+
+		public void setIndexSearchText(boolean indexSearchText) {
+			this.indexSearchText = indexSearchText;
+		}
+
+	}
+
+	@Bean
+	public LocalNoteIndexService localNoteIndexService() {
+		return new LocalNoteIndexService(this.localNoteIndexPropertiesConfiguration);
+	}
+
+}
@@ -0,0 +1,54 @@
+package net.ttddyy.evernote.rest.index;
+
+import net.ttddyy.evernote.rest.Application;
+import net.ttddyy.evernote.rest.EvernoteRestException;
+import net.ttddyy.evernote.rest.RequestIdentity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.social.evernote.api.Evernote;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Synchronize caller's {@link LocalNoteIndex} with evernote.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+@RestController
+@RequestMapping("/noteStore/localIndex")
+@ConditionalOnExpression("${evernote.localIndex.enabled:false}")
+public class LocalNoteIndexController {
+
+	@Autowired
+	private Evernote evernote;
+
+	@Autowired
+	private Application.EvernotePropertiesConfiguration evernotePropertiesConfiguration;
+
+	@Autowired
+	private LocalNoteIndexService localNoteIndexService;
+
+	@RequestMapping(value = "/sync", method = RequestMethod.POST)
+	public Map<String, Object> sync(HttpServletRequest request) {
+		final RequestIdentity identity = RequestIdentity.resolve(request, this.evernotePropertiesConfiguration);
+		if (identity.isAnonymous()) {
+			throw new EvernoteRestException("Access token is required to build local index.");
+		}
+
+		final String userKey = LocalNoteIndexService.userKey(identity.getTokenHash(),
+				request.getHeader(RequestIdentity.NOTE_STORE_URL_HEADER));
+		final LocalNoteIndex index = this.localNoteIndexService.sync(userKey, this.evernote.noteStoreOperations());
+
+		final Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("notes", index.getNoteCount());
+		map.put("updateCount", index.getUpdateCount());
+		map.put("syncedAt", index.getSyncedAt());
+		return map;
+	}
+
+}
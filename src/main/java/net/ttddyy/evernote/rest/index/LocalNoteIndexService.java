@@ -0,0 +1,168 @@
+package net.ttddyy.evernote.rest.index;
+
+import com.evernote.edam.notestore.NoteFilter;
+import com.evernote.edam.notestore.NotesMetadataResultSpec;
+import com.evernote.edam.notestore.SyncChunk;
+import com.evernote.edam.notestore.SyncChunkFilter;
+import com.evernote.edam.type.Note;
+import org.springframework.social.evernote.api.NoteStoreOperations;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds {@link LocalNoteIndex} per user and answers {@code findNotesMetadata} and {@code findNoteCounts} from it.
+ *
+ * Users are identified by {@link #userKey(String, String)}. Index is only used while it is fresh: it has been synchronized
+ * within {@code maxStalenessSeconds} and no note modifying operation went through this webapp since then.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class LocalNoteIndexService {
+
+	private final LocalNoteIndexConfiguration.LocalNoteIndexPropertiesConfiguration properties;
+
+	private final Map<String, LocalNoteIndex> indexes;
+
+	public LocalNoteIndexService(LocalNoteIndexConfiguration.LocalNoteIndexPropertiesConfiguration properties) {
+		this.properties = properties;
+		final int maxUsers = properties.maxUsers;
+		this.indexes = Collections.synchronizedMap(new LinkedHashMap<String, LocalNoteIndex>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, LocalNoteIndex> eldest) {
+				return size() > maxUsers;
+			}
+		});
+	}
+
+	/**
+	 * Key of the index. The same token may be used against another note store(e.g. a linked notebook's shard) by
+	 * "evernote-rest-notestoreurl" header, so the url is part of the key.
+	 *
+	 * @param tokenHash    hash of the access token. null if unknown
+	 * @param noteStoreUrl note store url from the request header. can be null.
+	 * @return null if the token is unknown
+	 */
+	public static String userKey(String tokenHash, String noteStoreUrl) {
+		if (tokenHash == null || noteStoreUrl == null) {
+			return tokenHash;
+		}
+		return tokenHash + " " + noteStoreUrl;
+	}
+
+	/**
+	 * Try to answer the note store operation from local index.
+	 *
+	 * @param userKey    key of the user. null if unknown
+	 * @param methodName note store method name
+	 * @param params     resolved parameters for the method
+	 * @return result of the operation. null if it needs to be sent to evernote.
+	 */
+	public Object query(String userKey, String methodName, Object[] params) {
+		if (userKey == null || params == null) {
+			return null;
+		}
+		final LocalNoteIndex index = this.indexes.get(userKey);
+		if (index == null || !index.isFresh(System.currentTimeMillis(), this.properties.maxStalenessSeconds * 1000L)) {
+			return null;
+		}
+		// without search text only titles and tags are indexed, which would not match evernote's results for words
+		if (!this.properties.indexSearchText && params.length > 0 && params[0] instanceof NoteFilter &&
+				((NoteFilter) params[0]).isSetWords()) {
+			return null;
+		}
+
+		if ("findNotesMetadata".equals(methodName) && params.length == 4 && params[1] != null && params[2] != null) {
+			final NoteFilterQuery query = NoteFilterQuery.parse((NoteFilter) params[0]);
+			if (query != null) {
+				return index.findNotesMetadata(query, (Integer) params[1], (Integer) params[2],
+						(NotesMetadataResultSpec) params[3]);
+			}
+		} else if ("findNoteCounts".equals(methodName) && params.length == 2 && params[1] != null) {
+			final NoteFilterQuery query = NoteFilterQuery.parse((NoteFilter) params[0]);
+			if (query != null) {
+				return index.findNoteCounts(query, (Boolean) params[1]);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if the method may be answered by {@link #query(String, String, Object[])}
+	 */
+	public boolean isQueryable(String methodName) {
+		return "findNotesMetadata".equals(methodName) || "findNoteCounts".equals(methodName);
+	}
+
+	/**
+	 * Called for every note store operation sent to evernote, so that modifications made through this webapp make the
+	 * index stale. Indexes of the token for all note store urls are invalidated.
+	 *
+	 * @param tokenHash hash of the access token. null if unknown
+	 */
+	public void afterInvoke(String tokenHash, String methodName) {
+		if (tokenHash == null || isReadOnly(methodName)) {
+			return;
+		}
+		final String urlKeyPrefix = userKey(tokenHash, "");
+		synchronized (this.indexes) {
+			for (Map.Entry<String, LocalNoteIndex> entry : this.indexes.entrySet()) {
+				if (entry.getKey().equals(tokenHash) || entry.getKey().startsWith(urlKeyPrefix)) {
+					entry.getValue().invalidate();
+				}
+			}
+		}
+	}
+
+	private static boolean isReadOnly(String methodName) {
+		return methodName.startsWith("get") || methodName.startsWith("find") || methodName.startsWith("list");
+	}
+
+	/**
+	 * Bring user's index up to date by incremental sync from evernote.
+	 *
+	 * @return synchronized index
+	 */
+	public LocalNoteIndex sync(String userKey, NoteStoreOperations noteStoreOperations) {
+		LocalNoteIndex index;
+		synchronized (this.indexes) {
+			index = this.indexes.get(userKey);
+			if (index == null) {
+				index = new LocalNoteIndex();
+				this.indexes.put(userKey, index);
+			}
+		}
+
+		final SyncChunkFilter filter = new SyncChunkFilter();
+		filter.setIncludeNotes(true);
+		filter.setIncludeNoteResources(true);  // for largest resource mime and size
+		filter.setIncludeTags(true);
+		filter.setIncludeExpunged(true);
+
+		index.getSyncLock().lock();
+		try {
+			final long startedAt = System.currentTimeMillis();
+			final int generation = index.getGeneration();  // writes during the sync may not be in the chunks
+			int afterUsn = index.getHighUsn();
+			while (true) {
+				final SyncChunk chunk = noteStoreOperations.getFilteredSyncChunk(afterUsn, this.properties.syncChunkSize, filter);
+				index.apply(chunk);
+				if (this.properties.indexSearchText && chunk.isSetNotes()) {
+					for (Note note : chunk.getNotes()) {
+						index.putSearchText(note.getGuid(), noteStoreOperations.getNoteSearchText(note.getGuid(), false, true));
+					}
+				}
+				if (!chunk.isSetChunkHighUSN() || chunk.getChunkHighUSN() >= chunk.getUpdateCount()) {
+					break;
+				}
+				afterUsn = chunk.getChunkHighUSN();
+			}
+			index.markSynced(startedAt, generation);
+		} finally {
+			index.getSyncLock().unlock();
+		}
+		return index;
+	}
+
+}
@@ -0,0 +1,154 @@
+package net.ttddyy.evernote.rest.index;
+
+import com.evernote.edam.notestore.NoteFilter;
+import com.evernote.edam.type.NoteSortOrder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Subset of {@link NoteFilter} that {@link LocalNoteIndex} can evaluate exactly.
+ *
+ * Supported: plain words and trailing wildcard words ("foo*"), notebookGuid, tagGuids, inactive, and ordering by
+ * created, updated, update sequence number or title.
+ * Anything else (search grammar such as "tag:", "-foo", quoted phrases, relevance ordering, emphasized, ...) is not
+ * supported and {@link #parse(NoteFilter)} returns null so that the request goes to evernote.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class NoteFilterQuery {
+
+	private final List<String> terms;
+	private final List<String> prefixes;
+	private final String notebookGuid;
+	private final List<String> tagGuids;
+	private final boolean inactive;
+	private final NoteSortOrder order;
+	private final boolean ascending;
+
+	private NoteFilterQuery(List<String> terms, List<String> prefixes, String notebookGuid, List<String> tagGuids,
+							boolean inactive, NoteSortOrder order, boolean ascending) {
+		this.terms = terms;
+		this.prefixes = prefixes;
+		this.notebookGuid = notebookGuid;
+		this.tagGuids = tagGuids;
+		this.inactive = inactive;
+		this.order = order;
+		this.ascending = ascending;
+	}
+
+	/**
+	 * @return query, or null when the filter contains something local index cannot answer exactly.
+	 */
+	public static NoteFilterQuery parse(NoteFilter filter) {
+		if (filter == null || filter.isSetEmphasized()) {
+			return null;
+		}
+
+		NoteSortOrder order = null;
+		if (filter.isSetOrder()) {
+			order = NoteSortOrder.findByValue(filter.getOrder());
+			if (order == null || order == NoteSortOrder.RELEVANCE) {
+				return null;
+			}
+		} else if (filter.isSetWords()) {
+			return null;  // evernote sorts by relevance when words are given
+		}
+
+		final List<String> terms = new ArrayList<String>();
+		final List<String> prefixes = new ArrayList<String>();
+		if (filter.isSetWords()) {
+			for (String word : filter.getWords().trim().split("\\s+")) {
+				if (word.length() == 0) {
+					continue;
+				}
+				final boolean prefix = word.endsWith("*");
+				final String body = prefix ? word.substring(0, word.length() - 1) : word;
+				if (body.length() == 0 || !isPlainWord(body)) {
+					return null;  // search grammar, phrases, punctuation...
+				}
+				if (prefix) {
+					prefixes.add(body.toLowerCase(Locale.ENGLISH));
+				} else {
+					terms.add(body.toLowerCase(Locale.ENGLISH));
+				}
+			}
+		}
+
+		final List<String> tagGuids = filter.isSetTagGuids() ? filter.getTagGuids() : Collections.<String>emptyList();
+		return new NoteFilterQuery(terms, prefixes, filter.getNotebookGuid(), tagGuids,
+				filter.isSetInactive() && filter.isInactive(), order, filter.isSetAscending() && filter.isAscending());
+	}
+
+	private static boolean isPlainWord(String word) {
+		for (int i = 0; i < word.length(); i++) {
+			if (!Character.isLetterOrDigit(word.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Split text into lower-cased index terms.
+	 */
+	public static List<String> tokenize(String text) {
+		final List<String> tokens = new ArrayList<String>();
+		if (text == null) {
+			return tokens;
+		}
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			final boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (letter && start < 0) {
+				start = i;
+			} else if (!letter && start >= 0) {
+				tokens.add(text.substring(start, i).toLowerCase(Locale.ENGLISH));
+				start = -1;
+			}
+		}
+		return tokens;
+	}
+
+	public List<String> getTerms() {
+		return terms;
+	}
+
+	public List<String> getPrefixes() {
+		return prefixes;
+	}
+
+	public List<String> getSearchedWords() {
+		final List<String> words = new ArrayList<String>(this.terms);
+		for (String prefix : this.prefixes) {
+			words.add(prefix + "*");
+		}
+		return words;
+	}
+
+	public String getNotebookGuid() {
+		return notebookGuid;
+	}
+
+	public List<String> getTagGuids() {
+		return tagGuids;
+	}
+
+	public boolean isInactive() {
+		return inactive;
+	}
+
+	/**
+	 * @return sort order. null when the filter does not specify one (only allowed without words).
+	 */
+	public NoteSortOrder getOrder() {
+		return order;
+	}
+
+	public boolean isAscending() {
+		return ascending;
+	}
+
+}
@@ -0,0 +1,397 @@
+package net.ttddyy.evernote.rest.index;
+
+import com.evernote.edam.notestore.NoteMetadata;
+import com.evernote.edam.notestore.NotesMetadataResultSpec;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.NoteSortOrder;
+import com.evernote.edam.type.Resource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column oriented store of note metadata kept by {@link LocalNoteIndex}.
+ *
+ * A note is a doc id, an index into primitive arrays. Notebook, tag and resource mime guids/strings are held as
+ * {@link StringDictionary} ids, and notebook and tag membership as one {@link BitSet} per notebook/tag. Slots of
+ * removed notes are reused. Not thread safe.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class NoteMetadataColumns {
+
+	private static final int[] NO_IDS = new int[0];
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final Map<String, Integer> docIds = new HashMap<String, Integer>();
+	private final BitSet liveDocs = new BitSet();
+	private final BitSet activeDocs = new BitSet();
+
+	private final StringDictionary notebooks = new StringDictionary(false);
+	private final StringDictionary tags = new StringDictionary(false);
+	private final StringDictionary mimes = new StringDictionary(false);
+	private final List<BitSet> notebookDocs = new ArrayList<BitSet>();  // index is notebook id
+	private final List<BitSet> tagDocs = new ArrayList<BitSet>();  // index is tag id
+
+	private String[] guids = new String[INITIAL_CAPACITY];
+	private String[] titles = new String[INITIAL_CAPACITY];
+	private int[] contentLengths = new int[INITIAL_CAPACITY];
+	private long[] created = new long[INITIAL_CAPACITY];
+	private long[] updated = new long[INITIAL_CAPACITY];
+	private long[] deleted = new long[INITIAL_CAPACITY];
+	private int[] updateSequenceNums = new int[INITIAL_CAPACITY];
+	private int[] notebookIds = new int[INITIAL_CAPACITY];  // -1 if none
+	private int[][] tagIds = new int[INITIAL_CAPACITY][];
+	private int[] largestResourceMimeIds = new int[INITIAL_CAPACITY];  // -1 if note does not have resources
+	private int[] largestResourceSizes = new int[INITIAL_CAPACITY];
+	private int[][] termIds = new int[INITIAL_CAPACITY][];
+
+	/**
+	 * @return doc id assigned to the note
+	 */
+	int add(Note note) {
+		final int docId = this.liveDocs.nextClearBit(0);
+		ensureCapacity(docId + 1);
+
+		this.guids[docId] = note.getGuid();
+		this.titles[docId] = note.getTitle();
+		this.contentLengths[docId] = note.getContentLength();
+		this.created[docId] = note.getCreated();
+		this.updated[docId] = note.getUpdated();
+		this.deleted[docId] = note.getDeleted();
+		this.updateSequenceNums[docId] = note.getUpdateSequenceNum();
+
+		if (note.getNotebookGuid() != null) {
+			final int notebookId = this.notebooks.add(note.getNotebookGuid());
+			this.notebookIds[docId] = notebookId;
+			postings(this.notebookDocs, notebookId).set(docId);
+		} else {
+			this.notebookIds[docId] = -1;
+		}
+
+		int[] noteTagIds = NO_IDS;
+		if (note.getTagGuidsSize() > 0) {
+			noteTagIds = new int[note.getTagGuidsSize()];
+			for (int i = 0; i < noteTagIds.length; i++) {
+				noteTagIds[i] = this.tags.add(note.getTagGuids().get(i));
+				postings(this.tagDocs, noteTagIds[i]).set(docId);
+			}
+		}
+		this.tagIds[docId] = noteTagIds;
+
+		int mimeId = -1;
+		int size = -1;
+		if (note.isSetResources()) {
+			for (Resource resource : note.getResources()) {
+				if (resource.isSetData() && resource.getData().getSize() > size) {
+					size = resource.getData().getSize();
+					mimeId = resource.getMime() == null ? -1 : this.mimes.add(resource.getMime());
+				}
+			}
+		}
+		this.largestResourceMimeIds[docId] = mimeId;
+		this.largestResourceSizes[docId] = size;
+		this.termIds[docId] = NO_IDS;
+
+		this.docIds.put(note.getGuid(), docId);
+		this.liveDocs.set(docId);
+		if (note.isActive()) {
+			this.activeDocs.set(docId);
+		}
+		return docId;
+	}
+
+	/**
+	 * @return doc id of the removed note. -1 if the note is not in this store.
+	 */
+	int remove(String noteGuid) {
+		final Integer docId = this.docIds.remove(noteGuid);
+		if (docId == null) {
+			return -1;
+		}
+		if (this.notebookIds[docId] >= 0) {
+			this.notebookDocs.get(this.notebookIds[docId]).clear(docId);
+		}
+		for (int tagId : this.tagIds[docId]) {
+			this.tagDocs.get(tagId).clear(docId);
+		}
+		this.liveDocs.clear(docId);
+		this.activeDocs.clear(docId);
+		this.guids[docId] = null;
+		this.titles[docId] = null;
+		this.tagIds[docId] = null;
+		this.termIds[docId] = null;
+		return docId;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= this.guids.length) {
+			return;
+		}
+		final int newCapacity = Math.max(capacity, this.guids.length * 2);
+		this.guids = Arrays.copyOf(this.guids, newCapacity);
+		this.titles = Arrays.copyOf(this.titles, newCapacity);
+		this.contentLengths = Arrays.copyOf(this.contentLengths, newCapacity);
+		this.created = Arrays.copyOf(this.created, newCapacity);
+		this.updated = Arrays.copyOf(this.updated, newCapacity);
+		this.deleted = Arrays.copyOf(this.deleted, newCapacity);
+		this.updateSequenceNums = Arrays.copyOf(this.updateSequenceNums, newCapacity);
+		this.notebookIds = Arrays.copyOf(this.notebookIds, newCapacity);
+		this.tagIds = Arrays.copyOf(this.tagIds, newCapacity);
+		this.largestResourceMimeIds = Arrays.copyOf(this.largestResourceMimeIds, newCapacity);
+		this.largestResourceSizes = Arrays.copyOf(this.largestResourceSizes, newCapacity);
+		this.termIds = Arrays.copyOf(this.termIds, newCapacity);
+	}
+
+	private static BitSet postings(List<BitSet> postings, int id) {
+		while (postings.size() <= id) {
+			postings.add(new BitSet());
+		}
+		return postings.get(id);
+	}
+
+	int docId(String noteGuid) {
+		final Integer docId = this.docIds.get(noteGuid);
+		return docId == null ? -1 : docId;
+	}
+
+	int size() {
+		return this.docIds.size();
+	}
+
+	String getGuid(int docId) {
+		return this.guids[docId];
+	}
+
+	int[] getTermIds(int docId) {
+		return this.termIds[docId];
+	}
+
+	void setTermIds(int docId, int[] ids) {
+		this.termIds[docId] = ids;
+	}
+
+	/**
+	 * @return live docs, either active or inactive ones. Returned bitset is a copy.
+	 */
+	BitSet docs(boolean inactive) {
+		final BitSet docs = (BitSet) this.liveDocs.clone();
+		if (inactive) {
+			docs.andNot(this.activeDocs);
+		} else {
+			docs.and(this.activeDocs);
+		}
+		return docs;
+	}
+
+	/**
+	 * @return docs in the notebook, null if none. Returned bitset must not be modified.
+	 */
+	BitSet notebookDocs(String notebookGuid) {
+		final int notebookId = this.notebooks.find(notebookGuid);
+		return notebookId < 0 || notebookId >= this.notebookDocs.size() ? null : this.notebookDocs.get(notebookId);
+	}
+
+	/**
+	 * @return docs having the tag, null if none. Returned bitset must not be modified.
+	 */
+	BitSet tagDocs(String tagGuid) {
+		final int tagId = this.tags.find(tagGuid);
+		return tagId < 0 || tagId >= this.tagDocs.size() ? null : this.tagDocs.get(tagId);
+	}
+
+	/**
+	 * @return number of matched docs per notebook guid. Notebooks without matched docs are not included.
+	 */
+	Map<String, Integer> countByNotebook(BitSet matched) {
+		final int[] counts = new int[this.notebooks.size()];
+		for (int docId = matched.nextSetBit(0); docId >= 0; docId = matched.nextSetBit(docId + 1)) {
+			final int notebookId = this.notebookIds[docId];
+			if (notebookId >= 0) {
+				counts[notebookId]++;
+			}
+		}
+		return toMap(this.notebooks, counts);
+	}
+
+	/**
+	 * @return number of matched docs per tag guid. Tags without matched docs are not included.
+	 */
+	Map<String, Integer> countByTag(BitSet matched) {
+		final int[] counts = new int[this.tags.size()];
+		for (int docId = matched.nextSetBit(0); docId >= 0; docId = matched.nextSetBit(docId + 1)) {
+			for (int tagId : this.tagIds[docId]) {
+				counts[tagId]++;
+			}
+		}
+		return toMap(this.tags, counts);
+	}
+
+	private static Map<String, Integer> toMap(StringDictionary dictionary, int[] counts) {
+		final Map<String, Integer> map = new HashMap<String, Integer>();
+		for (int id = 0; id < counts.length; id++) {
+			if (counts[id] > 0) {
+				map.put(dictionary.get(id), counts[id]);
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * @return first {@code limit} matched doc ids in the given order. Ties are broken by note guid.
+	 */
+	int[] sort(BitSet matched, NoteSortOrder order, boolean ascending, int limit) {
+		final int sign = ascending ? 1 : -1;
+		final int count = matched.cardinality();
+		if (limit >= count / 4) {
+			final int[] docs = new int[count];
+			int i = 0;
+			for (int docId = matched.nextSetBit(0); docId >= 0; docId = matched.nextSetBit(docId + 1)) {
+				docs[i++] = docId;
+			}
+			mergeSort(docs, docs.clone(), 0, docs.length, order, sign);
+			return limit < count ? Arrays.copyOf(docs, limit) : docs;
+		}
+
+		// small page out of many matches: keep the best "limit" docs in a heap whose root is the worst of them
+		final int[] heap = new int[limit];
+		int size = 0;
+		for (int docId = matched.nextSetBit(0); docId >= 0; docId = matched.nextSetBit(docId + 1)) {
+			if (size < limit) {
+				heap[size] = docId;
+				siftUp(heap, size++, order, sign);
+			} else if (limit > 0 && sign * compare(docId, heap[0], order) < 0) {
+				heap[0] = docId;
+				siftDown(heap, size, order, sign);
+			}
+		}
+		mergeSort(heap, heap.clone(), 0, size, order, sign);
+		return heap;
+	}
+
+	private void siftUp(int[] heap, int index, NoteSortOrder order, int sign) {
+		final int docId = heap[index];
+		while (index > 0) {
+			final int parent = (index - 1) >>> 1;
+			if (sign * compare(heap[parent], docId, order) >= 0) {
+				break;
+			}
+			heap[index] = heap[parent];
+			index = parent;
+		}
+		heap[index] = docId;
+	}
+
+	private void siftDown(int[] heap, int size, NoteSortOrder order, int sign) {
+		final int docId = heap[0];
+		int index = 0;
+		while (true) {
+			int child = index * 2 + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && sign * compare(heap[child + 1], heap[child], order) > 0) {
+				child++;
+			}
+			if (sign * compare(docId, heap[child], order) >= 0) {
+				break;
+			}
+			heap[index] = heap[child];
+			index = child;
+		}
+		heap[index] = docId;
+	}
+
+	// sorts "docs" in place using "work" which starts as a copy of "docs"
+	private void mergeSort(int[] docs, int[] work, int from, int to, NoteSortOrder order, int sign) {
+		if (to - from < 2) {
+			return;
+		}
+		final int middle = (from + to) >>> 1;
+		mergeSort(work, docs, from, middle, order, sign);
+		mergeSort(work, docs, middle, to, order, sign);
+		int left = from;
+		int right = middle;
+		for (int i = from; i < to; i++) {
+			if (right >= to || (left < middle && sign * compare(work[left], work[right], order) <= 0)) {
+				docs[i] = work[left++];
+			} else {
+				docs[i] = work[right++];
+			}
+		}
+	}
+
+	private int compare(int left, int right, NoteSortOrder order) {
+		int result;
+		switch (order) {
+			case CREATED:
+				result = compareLong(this.created[left], this.created[right]);
+				break;
+			case UPDATED:
+				result = compareLong(this.updated[left], this.updated[right]);
+				break;
+			case UPDATE_SEQUENCE_NUMBER:
+				result = compareLong(this.updateSequenceNums[left], this.updateSequenceNums[right]);
+				break;
+			default:  // TITLE
+				result = String.CASE_INSENSITIVE_ORDER.compare(nullToEmpty(this.titles[left]), nullToEmpty(this.titles[right]));
+		}
+		return result != 0 ? result : this.guids[left].compareTo(this.guids[right]);
+	}
+
+	private static int compareLong(long left, long right) {
+		return left < right ? -1 : (left == right ? 0 : 1);
+	}
+
+	private static String nullToEmpty(String value) {
+		return value == null ? "" : value;
+	}
+
+	NoteMetadata toNoteMetadata(int docId, NotesMetadataResultSpec spec) {
+		final NoteMetadata metadata = new NoteMetadata();
+		metadata.setGuid(this.guids[docId]);
+		if (spec == null) {
+			return metadata;
+		}
+		if (spec.isIncludeTitle()) {
+			metadata.setTitle(this.titles[docId]);
+		}
+		if (spec.isIncludeContentLength()) {
+			metadata.setContentLength(this.contentLengths[docId]);
+		}
+		if (spec.isIncludeCreated()) {
+			metadata.setCreated(this.created[docId]);
+		}
+		if (spec.isIncludeUpdated()) {
+			metadata.setUpdated(this.updated[docId]);
+		}
+		if (spec.isIncludeDeleted() && this.deleted[docId] != 0) {
+			metadata.setDeleted(this.deleted[docId]);
+		}
+		if (spec.isIncludeUpdateSequenceNum()) {
+			metadata.setUpdateSequenceNum(this.updateSequenceNums[docId]);
+		}
+		if (spec.isIncludeNotebookGuid() && this.notebookIds[docId] >= 0) {
+			metadata.setNotebookGuid(this.notebooks.get(this.notebookIds[docId]));
+		}
+		if (spec.isIncludeTagGuids() && this.tagIds[docId].length > 0) {
+			final List<String> tagGuids = new ArrayList<String>(this.tagIds[docId].length);
+			for (int tagId : this.tagIds[docId]) {
+				tagGuids.add(this.tags.get(tagId));
+			}
+			metadata.setTagGuids(tagGuids);
+		}
+		if (spec.isIncludeLargestResourceMime() && this.largestResourceMimeIds[docId] >= 0) {
+			metadata.setLargestResourceMime(this.mimes.get(this.largestResourceMimeIds[docId]));
+		}
+		if (spec.isIncludeLargestResourceSize() && this.largestResourceSizes[docId] >= 0) {
+			metadata.setLargestResourceSize(this.largestResourceSizes[docId]);
+		}
+		return metadata;
+	}
+
+}
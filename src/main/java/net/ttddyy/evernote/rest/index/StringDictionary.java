@@ -0,0 +1,66 @@
+package net.ttddyy.evernote.rest.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Assigns dense int ids to strings so that columns can hold ints instead of string references.
+ *
+ * Ids are never reused, so the dictionary only grows. Not thread safe.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class StringDictionary {
+
+	private final Map<String, Integer> ids;
+	private final List<String> values = new ArrayList<String>();
+
+	/**
+	 * @param sorted keep keys sorted to support {@link #findByPrefix(String)}
+	 */
+	StringDictionary(boolean sorted) {
+		this.ids = sorted ? new TreeMap<String, Integer>() : new HashMap<String, Integer>();
+	}
+
+	/**
+	 * @return id of the value, newly assigned if the value is not in this dictionary yet.
+	 */
+	int add(String value) {
+		final Integer id = this.ids.get(value);
+		if (id != null) {
+			return id;
+		}
+		final int newId = this.values.size();
+		this.values.add(value);
+		this.ids.put(value, newId);
+		return newId;
+	}
+
+	/**
+	 * @return id of the value. -1 if the value is not in this dictionary.
+	 */
+	int find(String value) {
+		final Integer id = value == null ? null : this.ids.get(value);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * @return ids of values starting with the prefix. Only for sorted dictionary.
+	 */
+	Collection<Integer> findByPrefix(String prefix) {
+		return ((TreeMap<String, Integer>) this.ids).subMap(prefix, prefix + Character.MAX_VALUE).values();
+	}
+
+	String get(int id) {
+		return this.values.get(id);
+	}
+
+	int size() {
+		return this.values.size();
+	}
+
+}
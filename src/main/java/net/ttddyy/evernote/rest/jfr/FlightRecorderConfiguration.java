@@ -0,0 +1,36 @@
+package net.ttddyy.evernote.rest.jfr;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Java Flight Recorder events of store operations. Enabled by "evernote.jfr.enabled=true".
+ *
+ * When disabled, there is no {@link FlightRecorderEvents} bean and callers only check for null.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+@Configuration
+@ConditionalOnExpression("${evernote.jfr.enabled:false}")
+public class FlightRecorderConfiguration {
+
+	@Configuration
+	@ConfigurationProperties("evernote.jfr")
+	public static class FlightRecorderPropertiesConfiguration {
+
+		public boolean enabled = false;
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+	}
+
+	@Bean
+	public FlightRecorderEvents flightRecorderEvents() {
+		return new FlightRecorderEvents();
+	}
+
+}
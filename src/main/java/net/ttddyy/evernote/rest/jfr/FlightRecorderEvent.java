@@ -0,0 +1,80 @@
+package net.ttddyy.evernote.rest.jfr;
+
+/**
+ * Java Flight Recorder event. Implemented by {@code jdk.jfr.Event} subclasses generated at runtime, so that this
+ * application still compiles and runs on JVMs without JFR.
+ *
+ * {@link #begin()}, {@link #end()}, {@link #shouldCommit()} and {@link #commit()} are the ones of
+ * {@code jdk.jfr.Event}. Setters of sub-interfaces become event fields of the same name.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see FlightRecorderEventGenerator
+ */
+public interface FlightRecorderEvent {
+
+	void begin();
+
+	void end();
+
+	boolean shouldCommit();
+
+	void commit();
+
+	/**
+	 * @return new event of the same type
+	 */
+	FlightRecorderEvent newEvent();
+
+
+	/**
+	 * Call to evernote.
+	 */
+	interface Upstream extends FlightRecorderEvent {
+
+		void setStore(String store);
+
+		void setMethod(String method);
+
+		void setShard(String shard);
+
+		/**
+		 * @param outcome "succeeded" or "failed"
+		 */
+		void setOutcome(String outcome);
+	}
+
+	/**
+	 * Binding json request to store method parameters.
+	 */
+	interface Bind extends FlightRecorderEvent {
+
+		void setStore(String store);
+
+		void setMethod(String method);
+
+		void setBytes(long bytes);
+	}
+
+	/**
+	 * Writing response body.
+	 */
+	interface Serialize extends FlightRecorderEvent {
+
+		void setType(String type);
+
+		void setMediaType(String mediaType);
+
+		void setBytes(long bytes);
+	}
+
+	/**
+	 * Store method answered from local note index, without calling evernote.
+	 */
+	interface LocalIndexHit extends FlightRecorderEvent {
+
+		void setStore(String store);
+
+		void setMethod(String method);
+	}
+
+}
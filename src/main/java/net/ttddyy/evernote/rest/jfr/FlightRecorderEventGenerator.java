@@ -0,0 +1,127 @@
+package net.ttddyy.evernote.rest.jfr;
+
+import org.springframework.asm.AnnotationVisitor;
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.FieldVisitor;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.Type;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates a {@code jdk.jfr.Event} subclass implementing a {@link FlightRecorderEvent} interface with spring's
+ * repackaged ASM, same as {@code ThriftFieldMutatorGenerator}.
+ * <pre>
+ * &#064;Name("net.ttddyy.evernote.Upstream") &#064;Label("Evernote Upstream") &#064;Category("Evernote REST")
+ * public final class FlightRecorderEvent$$Upstream$$1 extends jdk.jfr.Event implements FlightRecorderEvent.Upstream {
+ *     String method;
+ *     public void setMethod(String method) { this.method = method; }
+ *     ...
+ *     public FlightRecorderEvent newEvent() { return new FlightRecorderEvent$$Upstream$$1(); }
+ * }
+ * </pre>
+ * begin(), end(), shouldCommit() and commit() of the interface are implemented by the ones inherited from
+ * {@code jdk.jfr.Event}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+final class FlightRecorderEventGenerator implements Opcodes {
+
+	static final String EVENT = "jdk/jfr/Event";
+	static final String CATEGORY = "Evernote REST";
+	private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+	private FlightRecorderEventGenerator() {
+	}
+
+	/**
+	 * @param eventInterface sub-interface of {@link FlightRecorderEvent}
+	 * @param label          human readable name of the event
+	 * @return generated event class
+	 */
+	static Class<?> generate(Class<? extends FlightRecorderEvent> eventInterface, String label) {
+		final String className = FlightRecorderEvent.class.getName() + "$$" + eventInterface.getSimpleName() + "$$" + SEQUENCE.incrementAndGet();
+		final String internalName = className.replace('.', '/');
+
+		final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+		cw.visit(V1_6, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, internalName, null, EVENT,
+				new String[]{Type.getInternalName(eventInterface)});
+		annotate(cw.visitAnnotation("Ljdk/jfr/Name;", true), "net.ttddyy.evernote." + eventInterface.getSimpleName());
+		annotate(cw.visitAnnotation("Ljdk/jfr/Label;", true), label);
+		final AnnotationVisitor category = cw.visitAnnotation("Ljdk/jfr/Category;", true);
+		final AnnotationVisitor categories = category.visitArray("value");
+		categories.visit(null, CATEGORY);
+		categories.visitEnd();
+		category.visitEnd();
+
+		final MethodVisitor constructor = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+		constructor.visitCode();
+		constructor.visitVarInsn(ALOAD, 0);
+		constructor.visitMethodInsn(INVOKESPECIAL, EVENT, "<init>", "()V");
+		constructor.visitInsn(RETURN);
+		constructor.visitMaxs(0, 0);
+		constructor.visitEnd();
+
+		for (Method method : eventInterface.getMethods()) {
+			if (method.getName().startsWith("set") && method.getParameterTypes().length == 1) {
+				generateField(cw, internalName, method);
+			}
+		}
+
+		final MethodVisitor newEvent = cw.visitMethod(ACC_PUBLIC, "newEvent",
+				"()" + Type.getDescriptor(FlightRecorderEvent.class), null, null);
+		newEvent.visitCode();
+		newEvent.visitTypeInsn(NEW, internalName);
+		newEvent.visitInsn(DUP);
+		newEvent.visitMethodInsn(INVOKESPECIAL, internalName, "<init>", "()V");
+		newEvent.visitInsn(ARETURN);
+		newEvent.visitMaxs(0, 0);
+		newEvent.visitEnd();
+
+		cw.visitEnd();
+		return new EventClassLoader(FlightRecorderEvent.class.getClassLoader()).define(className, cw.toByteArray());
+	}
+
+	/**
+	 * Field and its setter. "bytes" field is annotated as data amount in bytes.
+	 */
+	private static void generateField(ClassWriter cw, String internalName, Method setter) {
+		final String fieldName = Character.toLowerCase(setter.getName().charAt(3)) + setter.getName().substring(4);
+		final Type type = Type.getType(setter.getParameterTypes()[0]);
+
+		final FieldVisitor fv = cw.visitField(ACC_PRIVATE, fieldName, type.getDescriptor(), null, null);
+		annotate(fv.visitAnnotation("Ljdk/jfr/Label;", true), fieldName);
+		if ("bytes".equals(fieldName)) {
+			annotate(fv.visitAnnotation("Ljdk/jfr/DataAmount;", true), "BYTES");
+		}
+		fv.visitEnd();
+
+		final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, setter.getName(), Type.getMethodDescriptor(setter), null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitVarInsn(type.getOpcode(ILOAD), 1);
+		mv.visitFieldInsn(PUTFIELD, internalName, fieldName, type.getDescriptor());
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	private static void annotate(AnnotationVisitor av, String value) {
+		av.visit("value", value);
+		av.visitEnd();
+	}
+
+	private static class EventClassLoader extends ClassLoader {
+
+		private EventClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		private Class<?> define(String name, byte[] bytecode) {
+			return defineClass(name, bytecode, 0, bytecode.length);
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+package net.ttddyy.evernote.rest.jfr;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.reflect.Method;
+
+/**
+ * Creates Java Flight Recorder events of store operations.
+ *
+ * Only exists when "evernote.jfr.enabled=true", callers skip events when this is null. {@code begin~} methods return
+ * null if the JVM does not have JFR({@code jdk.jfr}).
+ * Events are only written while a recording with them enabled is running, e.g. {@code jcmd <pid> JFR.start}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class FlightRecorderEvents {
+
+	private static final Log logger = LogFactory.getLog(FlightRecorderEvents.class);
+
+	private final FlightRecorderEvent.Upstream upstream;
+	private final FlightRecorderEvent.Bind bind;
+	private final FlightRecorderEvent.Serialize serialize;
+	private final FlightRecorderEvent.LocalIndexHit localIndexHit;
+
+	public FlightRecorderEvents() {
+		if (isAvailable()) {
+			// prototypes to create events from, without reflection
+			this.upstream = (FlightRecorderEvent.Upstream) create(FlightRecorderEvent.Upstream.class, "Evernote Upstream Call");
+			this.bind = (FlightRecorderEvent.Bind) create(FlightRecorderEvent.Bind.class, "Evernote Parameter Binding");
+			this.serialize = (FlightRecorderEvent.Serialize) create(FlightRecorderEvent.Serialize.class, "Evernote Response Serialization");
+			this.localIndexHit = (FlightRecorderEvent.LocalIndexHit) create(FlightRecorderEvent.LocalIndexHit.class, "Evernote Local Index Hit");
+		} else {
+			logger.warn("Java Flight Recorder(jdk.jfr) is not available. Store operation events are not recorded.");
+			this.upstream = null;
+			this.bind = null;
+			this.serialize = null;
+			this.localIndexHit = null;
+		}
+	}
+
+	static boolean isAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event", false, FlightRecorderEvents.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	private static FlightRecorderEvent create(Class<? extends FlightRecorderEvent> eventInterface, String label) {
+		final Class<?> eventClass = FlightRecorderEventGenerator.generate(eventInterface, label);
+		try {
+			// make the event type known to recordings before the first event
+			final Class<?> flightRecorderClass = Class.forName("jdk.jfr.FlightRecorder");
+			final Method register = flightRecorderClass.getMethod("register", Class.class);
+			register.invoke(null, eventClass);
+			return (FlightRecorderEvent) eventClass.newInstance();
+		} catch (Exception e) {
+			throw new IllegalStateException("Failed to create flight recorder event " + eventClass, e);
+		}
+	}
+
+	/**
+	 * @return started event, or null if JFR is not available
+	 */
+	public FlightRecorderEvent.Upstream beginUpstream() {
+		return this.upstream == null ? null : begin((FlightRecorderEvent.Upstream) this.upstream.newEvent());
+	}
+
+	/**
+	 * @param shard null for default note store
+	 */
+	public void commitUpstream(FlightRecorderEvent.Upstream event, String storeName, String methodName, String shard,
+							   boolean succeeded) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.setStore(storeName);
+			event.setMethod(methodName);
+			event.setShard(shard);
+			event.setOutcome(succeeded ? "succeeded" : "failed");
+			event.commit();
+		}
+	}
+
+	public FlightRecorderEvent.Bind beginBind() {
+		return this.bind == null ? null : begin((FlightRecorderEvent.Bind) this.bind.newEvent());
+	}
+
+	/**
+	 * @param bytes size of the request body. -1 if unknown.
+	 */
+	public void commitBind(FlightRecorderEvent.Bind event, String storeName, String methodName, long bytes) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.setStore(storeName);
+			event.setMethod(methodName);
+			event.setBytes(bytes);
+			event.commit();
+		}
+	}
+
+	public FlightRecorderEvent.Serialize beginSerialize() {
+		return this.serialize == null ? null : begin((FlightRecorderEvent.Serialize) this.serialize.newEvent());
+	}
+
+	/**
+	 * @param value serialized object
+	 */
+	public void commitSerialize(FlightRecorderEvent.Serialize event, Object value, String mediaType, long bytes) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.setType(value == null ? null : value.getClass().getName());
+			event.setMediaType(mediaType);
+			event.setBytes(bytes);
+			event.commit();
+		}
+	}
+
+	public void localIndexHit(String storeName, String methodName) {
+		if (this.localIndexHit == null) {
+			return;
+		}
+		final FlightRecorderEvent.LocalIndexHit event = (FlightRecorderEvent.LocalIndexHit) this.localIndexHit.newEvent();
+		if (event.shouldCommit()) {
+			event.setStore(storeName);
+			event.setMethod(methodName);
+			event.commit();
+		}
+	}
+
+	private static <T extends FlightRecorderEvent> T begin(T event) {
+		event.begin();
+		return event;
+	}
+
+}
@@ -0,0 +1,111 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Upstream cost of store operation requests, summed per calling client since start.
+ *
+ * Clients are identified by "evernote-rest-clientid" request header. Since it is sent by clients, the number of
+ * clients kept is bounded, and requests of clients beyond the bound are summed as "other".
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class ClientCosts {
+
+	public static final String CLIENT_ID_HEADER = "evernote-rest-clientid";
+
+	static final String UNKNOWN_CLIENT = "unknown";  // no client id header
+	static final String OTHER_CLIENTS = "other";  // clients beyond maxClients
+	static final int MAX_CLIENT_ID_LENGTH = 64;
+
+	private final int maxClients;
+	private final ConcurrentMap<String, Cost> costs = new ConcurrentHashMap<String, Cost>();
+
+	/**
+	 * @param maxClients number of client ids to keep separately
+	 */
+	public ClientCosts(int maxClients) {
+		this.maxClients = maxClients;
+	}
+
+	/**
+	 * @param clientId client id header. null if not given.
+	 */
+	public void record(String clientId, RequestTiming timing) {
+		final long upstreamNanos = timing.getNanos(RequestTiming.Phase.UPSTREAM);
+		final Cost cost = getCost(clientId);
+		cost.requests.incrementAndGet();
+		cost.upstreamCalls.addAndGet(timing.getUpstreamCalls());
+		cost.cacheHits.addAndGet(timing.getCacheHits());
+		cost.cacheMisses.addAndGet(timing.getCacheMisses());
+		cost.upstreamMicros.addAndGet(upstreamNanos < 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(upstreamNanos));
+		cost.sentBytes.addAndGet(timing.getUpstreamSentBytes());
+		cost.receivedBytes.addAndGet(timing.getUpstreamReceivedBytes());
+	}
+
+	private Cost getCost(String clientId) {
+		String key = clientId == null || clientId.isEmpty() ? UNKNOWN_CLIENT : clientId;
+		if (key.length() > MAX_CLIENT_ID_LENGTH) {
+			key = key.substring(0, MAX_CLIENT_ID_LENGTH);
+		}
+		Cost cost = this.costs.get(key);
+		if (cost == null) {
+			if (this.costs.size() >= this.maxClients) {
+				key = OTHER_CLIENTS;  // may go over maxClients by the number of concurrent new clients, and "other"
+				cost = this.costs.get(key);
+			}
+			if (cost == null) {
+				cost = new Cost();
+				final Cost existing = this.costs.putIfAbsent(key, cost);
+				if (existing != null) {
+					cost = existing;
+				}
+			}
+		}
+		return cost;
+	}
+
+	/**
+	 * @return costs keyed by client id, in client id order
+	 */
+	public Map<String, Object> snapshot() {
+		final Map<String, Object> result = new TreeMap<String, Object>();
+		for (Map.Entry<String, Cost> entry : this.costs.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().toMap());
+		}
+		return result;
+	}
+
+	/**
+	 * Plain atomics rather than {@link StripedCounter}, which is too large to keep per client.
+	 */
+	private static class Cost {
+
+		private final AtomicLong requests = new AtomicLong();
+		private final AtomicLong upstreamCalls = new AtomicLong();
+		private final AtomicLong cacheHits = new AtomicLong();
+		private final AtomicLong cacheMisses = new AtomicLong();
+		private final AtomicLong upstreamMicros = new AtomicLong();
+		private final AtomicLong sentBytes = new AtomicLong();
+		private final AtomicLong receivedBytes = new AtomicLong();
+
+		private Map<String, Object> toMap() {
+			final Map<String, Object> map = new LinkedHashMap<String, Object>();
+			map.put("requests", this.requests.get());
+			map.put("upstreamCalls", this.upstreamCalls.get());
+			map.put("cacheHits", this.cacheHits.get());
+			map.put("cacheMisses", this.cacheMisses.get());
+			map.put("upstreamMillis", this.upstreamMicros.get() / 1000.0);
+			map.put("sentBytes", this.sentBytes.get());
+			map.put("receivedBytes", this.receivedBytes.get());
+			return map;
+		}
+	}
+
+}
@@ -0,0 +1,26 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+
+import java.util.Map;
+
+/**
+ * "/management/clientcosts": upstream calls, local note index hits/misses, upstream time and bytes per client.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class ClientCostsEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+	private final ClientCosts clientCosts;
+
+	public ClientCostsEndpoint(ClientCosts clientCosts) {
+		super("clientcosts");
+		this.clientCosts = clientCosts;
+	}
+
+	@Override
+	public Map<String, Object> invoke() {
+		return this.clientCosts.snapshot();
+	}
+
+}
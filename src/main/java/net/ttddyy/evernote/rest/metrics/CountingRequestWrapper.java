@@ -0,0 +1,98 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * Counts bytes read from the request body.
+ *
+ * Multipart requests parsed by the servlet container are read bypassing this wrapper.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class CountingRequestWrapper extends HttpServletRequestWrapper {
+
+	private CountingInputStream inputStream;
+	private BufferedReader reader;
+
+	public CountingRequestWrapper(HttpServletRequest request) {
+		super(request);
+	}
+
+	@Override
+	public ServletInputStream getInputStream() throws IOException {
+		if (this.reader != null) {
+			throw new IllegalStateException("getReader() has already been called.");
+		}
+		return getCountingInputStream();
+	}
+
+	@Override
+	public BufferedReader getReader() throws IOException {
+		if (this.reader == null) {
+			if (this.inputStream != null) {
+				throw new IllegalStateException("getInputStream() has already been called.");
+			}
+			final String encoding = getCharacterEncoding() == null ? "ISO-8859-1" : getCharacterEncoding();
+			this.reader = new BufferedReader(new InputStreamReader(getCountingInputStream(), encoding));
+		}
+		return this.reader;
+	}
+
+	private CountingInputStream getCountingInputStream() throws IOException {
+		if (this.inputStream == null) {
+			this.inputStream = new CountingInputStream(getRequest().getInputStream());
+		}
+		return this.inputStream;
+	}
+
+	/**
+	 * @return number of bytes read so far. Bytes buffered by the reader are counted.
+	 */
+	public long getByteCount() {
+		return this.inputStream == null ? 0 : this.inputStream.count;
+	}
+
+	private static class CountingInputStream extends ServletInputStream {
+
+		private final ServletInputStream in;
+		private long count;
+
+		private CountingInputStream(ServletInputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = this.in.read();
+			if (b >= 0) {
+				this.count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			final int read = this.in.read(b, off, len);
+			if (read > 0) {
+				this.count += read;
+			}
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return this.in.available();
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.in.close();
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * Counts bytes written to the response body.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class CountingResponseWrapper extends HttpServletResponseWrapper {
+
+	private CountingOutputStream outputStream;
+	private PrintWriter writer;
+
+	public CountingResponseWrapper(HttpServletResponse response) {
+		super(response);
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() throws IOException {
+		if (this.writer != null) {
+			throw new IllegalStateException("getWriter() has already been called.");
+		}
+		return getCountingOutputStream();
+	}
+
+	@Override
+	public PrintWriter getWriter() throws IOException {
+		if (this.writer == null) {
+			if (this.outputStream != null) {
+				throw new IllegalStateException("getOutputStream() has already been called.");
+			}
+			this.writer = new PrintWriter(new OutputStreamWriter(getCountingOutputStream(), getCharacterEncoding()));
+		}
+		return this.writer;
+	}
+
+	@Override
+	public void flushBuffer() throws IOException {
+		if (this.writer != null) {
+			this.writer.flush();
+		}
+		super.flushBuffer();
+	}
+
+	private CountingOutputStream getCountingOutputStream() throws IOException {
+		if (this.outputStream == null) {
+			this.outputStream = new CountingOutputStream(getResponse().getOutputStream());
+		}
+		return this.outputStream;
+	}
+
+	/**
+	 * @return number of bytes written so far. Characters buffered in the writer are not counted until flushed.
+	 */
+	public long getByteCount() {
+		if (this.writer != null) {
+			this.writer.flush();
+		}
+		return this.outputStream == null ? 0 : this.outputStream.count;
+	}
+
+	private static class CountingOutputStream extends ServletOutputStream {
+
+		private final ServletOutputStream out;
+		private long count;
+
+		private CountingOutputStream(ServletOutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			this.out.write(b);
+			this.count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+			this.count += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			this.out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.out.close();
+		}
+	}
+
+}
@@ -0,0 +1,59 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram with fixed bucket bounds, counting values since start.
+ *
+ * Unlike {@link LatencyHistogram}, counts never decrease, as prometheus histograms require. A value is counted in the
+ * first bucket whose upper bound is equal to or above the value, or in the last bucket("+Inf").
+ *
+ * @author Tadaya Tsuyukubo
+ * @see PrometheusFormat#histogram(StringBuilder, String, String, CumulativeHistogram, String[], double)
+ */
+class CumulativeHistogram {
+
+	private final long[] upperBounds;
+	private final AtomicLongArray counts;
+	private final AtomicLong sum = new AtomicLong();
+
+	/**
+	 * @param upperBounds ascending values
+	 */
+	CumulativeHistogram(long[] upperBounds) {
+		this.upperBounds = upperBounds;
+		this.counts = new AtomicLongArray(upperBounds.length + 1);
+	}
+
+	void record(long value) {
+		final long recorded = value < 0 ? 0 : value;
+		int bucket = 0;
+		while (bucket < this.upperBounds.length && recorded > this.upperBounds[bucket]) {
+			bucket++;
+		}
+		this.counts.incrementAndGet(bucket);
+		this.sum.addAndGet(recorded);
+	}
+
+	/**
+	 * @return number of recorded values equal to or below each bound, followed by the number of all values
+	 */
+	long[] getCumulativeCounts() {
+		final long[] result = new long[this.counts.length()];
+		long cumulative = 0;
+		for (int i = 0; i < result.length; i++) {
+			cumulative += this.counts.get(i);
+			result[i] = cumulative;
+		}
+		return result;
+	}
+
+	/**
+	 * Read separately from the counts, so it may include values recorded after the counts were read.
+	 */
+	long getSum() {
+		return this.sum.get();
+	}
+
+}
@@ -0,0 +1,96 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Access tokens(hashed) and note store shards that drive most requests, upstream time and bytes.
+ *
+ * Instead of per-token metrics, each of them is a summary of one {@link RollingTopK}, so memory stays bounded by the
+ * number of counters regardless of the number of users. A request updates all summaries under one lock.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class HeavyHitters {
+
+	static final String DEFAULT_SHARD = "default";  // note store url is not given by the client
+
+	// summaries of the RollingTopK
+	private static final int TOKEN_REQUESTS = 0;
+	private static final int TOKEN_UPSTREAM_MICROS = 1;
+	private static final int TOKEN_BYTES = 2;
+	private static final int SHARD_REQUESTS = 3;
+	private static final int SHARD_UPSTREAM_MICROS = 4;
+	private static final int SHARD_BYTES = 5;
+
+	private final int k;
+	private final RollingTopK topK;
+
+	/**
+	 * @param k        number of keys to report
+	 * @param capacity counters per interval of each summary
+	 * @see RollingTopK#RollingTopK(long, int, int, int)
+	 */
+	public HeavyHitters(int k, int capacity, long windowMillis, int intervals) {
+		this.k = k;
+		this.topK = new RollingTopK(windowMillis, intervals, capacity, 6);
+	}
+
+	/**
+	 * @param tokenHash      hashed access token. null for anonymous requests.
+	 * @param noteStoreUrl   note store url header. null when not given.
+	 * @param upstreamMicros time spent calling evernote
+	 * @param bytes          request and response body bytes
+	 */
+	public void record(String tokenHash, String noteStoreUrl, long upstreamMicros, long bytes) {
+		final String shard = shardOf(noteStoreUrl);
+		this.topK.add(new String[]{tokenHash, tokenHash, tokenHash, shard, shard, shard},
+				new long[]{1, upstreamMicros, bytes, 1, upstreamMicros, bytes});
+	}
+
+	/**
+	 * "https://www.evernote.com/shard/s1/notestore" to "s1". Host of the url if it doesn't have a shard path.
+	 */
+	public static String shardOf(String noteStoreUrl) {
+		if (noteStoreUrl == null || noteStoreUrl.isEmpty()) {
+			return DEFAULT_SHARD;
+		}
+		final int shardIndex = noteStoreUrl.indexOf("/shard/");
+		if (shardIndex >= 0) {
+			final int start = shardIndex + "/shard/".length();
+			final int end = noteStoreUrl.indexOf('/', start);
+			return end < 0 ? noteStoreUrl.substring(start) : noteStoreUrl.substring(start, end);
+		}
+		final int hostStart = noteStoreUrl.indexOf("://");
+		final int start = hostStart < 0 ? 0 : hostStart + 3;
+		final int end = noteStoreUrl.indexOf('/', start);
+		return end < 0 ? noteStoreUrl.substring(start) : noteStoreUrl.substring(start, end);
+	}
+
+	public Map<String, Object> snapshot() {
+		final Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("windowSeconds", this.topK.getWindowMillis() / 1000);
+		result.put("tokens", snapshot(TOKEN_REQUESTS, TOKEN_UPSTREAM_MICROS, TOKEN_BYTES));
+		result.put("shards", snapshot(SHARD_REQUESTS, SHARD_UPSTREAM_MICROS, SHARD_BYTES));
+		return result;
+	}
+
+	private Map<String, Object> snapshot(int requests, int upstreamMicros, int bytes) {
+		final Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("requests", toMaps(this.topK.topOf(requests, this.k)));
+		result.put("upstreamMicros", toMaps(this.topK.topOf(upstreamMicros, this.k)));
+		result.put("bytes", toMaps(this.topK.topOf(bytes, this.k)));
+		return result;
+	}
+
+	private static List<Map<String, Object>> toMaps(List<RollingTopK.Entry> entries) {
+		final List<Map<String, Object>> result = new ArrayList<Map<String, Object>>(entries.size());
+		for (RollingTopK.Entry entry : entries) {
+			result.add(entry.toMap());
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,69 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Top access tokens and shards by load, on "/management/heavyhitters". Disabled by
+ * "evernote.heavyHitters.enabled=false".
+ *
+ * Requests are recorded by {@link PayloadMetricsFilter}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+@Configuration
+@ConditionalOnExpression("${evernote.heavyHitters.enabled:true}")
+public class HeavyHittersConfiguration {
+
+	@Autowired
+	public HeavyHittersPropertiesConfiguration heavyHittersPropertiesConfiguration;
+
+
+	@Configuration
+	@ConfigurationProperties("evernote.heavyHitters")
+	public static class HeavyHittersPropertiesConfiguration {
+
+		public boolean enabled = true;
+		public int top = 10;  // number of tokens/shards to report
+		public int capacity = 100;  // counters per interval. keys with more than 1/capacity of the load are always kept.
+		public int windowSeconds = 300;
+		public int intervals = 5;  // window moves by windowSeconds / intervals
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public void setTop(int top) {
+			this.top = top;
+		}
+
+		public void setCapacity(int capacity) {
+			this.capacity = capacity;
+		}
+
+		public void setWindowSeconds(int windowSeconds) {
+			this.windowSeconds = windowSeconds;
+		}
+
+		public void setIntervals(int intervals) {
+			this.intervals = intervals;
+		}
+
+	}
+
+	@Bean
+	public HeavyHitters heavyHitters() {
+		final HeavyHittersPropertiesConfiguration properties = this.heavyHittersPropertiesConfiguration;
+		return new HeavyHitters(properties.top, Math.max(properties.top, properties.capacity),
+				properties.windowSeconds * 1000L, properties.intervals);
+	}
+
+	@Bean
+	public HeavyHittersEndpoint heavyHittersEndpoint() {
+		return new HeavyHittersEndpoint(heavyHitters());
+	}
+
+}
@@ -0,0 +1,26 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+
+import java.util.Map;
+
+/**
+ * "/management/heavyhitters": top access tokens(hashed) and shards by requests, upstream time and bytes.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class HeavyHittersEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+	private final HeavyHitters heavyHitters;
+
+	public HeavyHittersEndpoint(HeavyHitters heavyHitters) {
+		super("heavyhitters");
+		this.heavyHitters = heavyHitters;
+	}
+
+	@Override
+	public Map<String, Object> invoke() {
+		return this.heavyHitters.snapshot();
+	}
+
+}
@@ -0,0 +1,138 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Calls to evernote currently in progress.
+ *
+ * Calls are added before and removed after invoking ~StoreOperations(or forwarding thrift request). Counts per method
+ * and shard are computed when read, so starting and ending a call is only an add and a remove on a concurrent set.
+ * <pre>
+ * gauge.evernote.api.inflight
+ * gauge.evernote.api.[userStore|noteStore].[method].inflight
+ * gauge.evernote.api.shard.[shard].inflight
+ * </pre>
+ * Per method and shard gauges are published while they have calls in progress.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class InFlightCalls {
+
+	private static final Comparator<Call> OLDEST_FIRST = new Comparator<Call>() {
+		@Override
+		public int compare(Call o1, Call o2) {
+			final long diff = o1.startNanos - o2.startNanos;  // nanoTime may wrap, compare by difference
+			return diff < 0 ? -1 : (diff == 0 ? 0 : 1);
+		}
+	};
+
+	private final Set<Call> calls = Collections.newSetFromMap(new ConcurrentHashMap<Call, Boolean>());
+
+	/**
+	 * @param noteStoreUrl note store url of the call, shard is taken from it. null for default.
+	 * @param tokenHash    hashed access token. null for anonymous.
+	 * @return handle to pass to {@link #end(Call)}
+	 */
+	public Call start(String storeName, String methodName, String noteStoreUrl, String tokenHash) {
+		final Call call = new Call(storeName, methodName, HeavyHitters.shardOf(noteStoreUrl), tokenHash,
+				Thread.currentThread().getName());
+		this.calls.add(call);
+		return call;
+	}
+
+	public void end(Call call) {
+		this.calls.remove(call);
+	}
+
+	/**
+	 * @return calls in progress, oldest first
+	 */
+	public List<Call> getCalls() {
+		final List<Call> result = new ArrayList<Call>(this.calls);
+		Collections.sort(result, OLDEST_FIRST);
+		return result;
+	}
+
+	void addMetrics(Collection<Metric<?>> result) {
+		final Map<String, int[]> methodCounts = new HashMap<String, int[]>();
+		final Map<String, int[]> shardCounts = new HashMap<String, int[]>();
+		int total = 0;
+		for (Call call : this.calls) {
+			increment(methodCounts, call.storeName + "." + call.methodName);
+			increment(shardCounts, call.shard);
+			total++;
+		}
+		result.add(new Metric<Integer>("gauge.evernote.api.inflight", total));
+		for (Map.Entry<String, int[]> entry : methodCounts.entrySet()) {
+			result.add(new Metric<Integer>("gauge.evernote.api." + entry.getKey() + ".inflight", entry.getValue()[0]));
+		}
+		for (Map.Entry<String, int[]> entry : shardCounts.entrySet()) {
+			result.add(new Metric<Integer>("gauge.evernote.api.shard." + entry.getKey() + ".inflight", entry.getValue()[0]));
+		}
+	}
+
+	void writePrometheus(StringBuilder sb) {
+		final Map<String, int[]> counts = new HashMap<String, int[]>();
+		for (Call call : this.calls) {
+			increment(counts, "store=\"" + call.storeName + "\",method=\"" + call.methodName + "\",shard=\"" +
+					PrometheusFormat.escape(call.shard) + "\"");
+		}
+		PrometheusFormat.family(sb, PrometheusEndpoint.INFLIGHT, "gauge", "Calls to evernote currently in progress.");
+		for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+			PrometheusFormat.sample(sb, PrometheusEndpoint.INFLIGHT + "{" + entry.getKey() + "}", entry.getValue()[0]);
+		}
+	}
+
+	private static void increment(Map<String, int[]> counts, String key) {
+		final int[] count = counts.get(key);
+		if (count == null) {
+			counts.put(key, new int[]{1});
+		} else {
+			count[0]++;
+		}
+	}
+
+	public static class Call {
+
+		private final String storeName;
+		private final String methodName;
+		private final String shard;
+		private final String tokenHash;
+		private final String threadName;
+		private final long startNanos = System.nanoTime();
+		private final long startTimestamp = System.currentTimeMillis();
+
+		private Call(String storeName, String methodName, String shard, String tokenHash, String threadName) {
+			this.storeName = storeName;
+			this.methodName = methodName;
+			this.shard = shard;
+			this.tokenHash = tokenHash;
+			this.threadName = threadName;
+		}
+
+		public Map<String, Object> toMap() {
+			final Map<String, Object> map = new LinkedHashMap<String, Object>();
+			map.put("store", this.storeName);
+			map.put("method", this.methodName);
+			map.put("shard", this.shard);
+			map.put("token", this.tokenHash);
+			map.put("thread", this.threadName);
+			map.put("start", new Date(this.startTimestamp));
+			map.put("ageMillis", (System.nanoTime() - this.startNanos) / 1000 / 1000.0);
+			return map;
+		}
+	}
+
+}
@@ -0,0 +1,33 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * "/management/inflight": calls to evernote currently in progress, oldest first.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class InFlightCallsEndpoint extends AbstractEndpoint<List<Map<String, Object>>> {
+
+	private final InFlightCalls inFlightCalls;
+
+	public InFlightCallsEndpoint(InFlightCalls inFlightCalls) {
+		super("inflight");
+		this.inFlightCalls = inFlightCalls;
+	}
+
+	@Override
+	public List<Map<String, Object>> invoke() {
+		final List<InFlightCalls.Call> calls = this.inFlightCalls.getCalls();
+		final List<Map<String, Object>> result = new ArrayList<Map<String, Object>>(calls.size());
+		for (InFlightCalls.Call call : calls) {
+			result.add(call.toMap());
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,185 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram over a rolling time window.
+ *
+ * Buckets are log-linear like HdrHistogram: values below 64 have their own bucket, larger values share a bucket with
+ * values of the same 6 most significant bits. Reported values are the highest value of a bucket, at most ~3% above
+ * the recorded value. Values are in microseconds, up to one hour.
+ *
+ * The window is split into intervals, each with its own bucket array. Recording increments the buckets of the current
+ * interval, and the first recording in a new interval clears the array it reuses. Recording does not allocate or
+ * lock. Values recorded by other threads while the array is being cleared may be lost.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKET_HALF = 1 << SUB_BUCKET_BITS;  // 32
+	private static final int SUB_BUCKET_COUNT = SUB_BUCKET_HALF << 1;  // 64
+	static final long MAX_VALUE = 60L * 60 * 1000 * 1000;  // one hour in microseconds
+	private static final int BUCKET_COUNT = index(MAX_VALUE) + 1;
+
+	private final long intervalMillis;
+	private final Interval[] intervals;
+
+	/**
+	 * @param windowMillis length of the window
+	 * @param intervals    number of intervals in the window. the window moves by {@code windowMillis / intervals}.
+	 */
+	public LatencyHistogram(long windowMillis, int intervals) {
+		this.intervals = new Interval[Math.max(1, intervals)];
+		this.intervalMillis = Math.max(1, windowMillis / this.intervals.length);
+		for (int i = 0; i < this.intervals.length; i++) {
+			this.intervals[i] = new Interval();
+		}
+	}
+
+	static int index(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+	}
+
+	/**
+	 * @return the highest value that falls in the bucket
+	 */
+	static long highestValue(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		final int shift = index / SUB_BUCKET_HALF - 1;
+		final long subBucket = index - shift * SUB_BUCKET_HALF;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	public void record(long micros) {
+		record(micros, System.currentTimeMillis());
+	}
+
+	void record(long micros, long nowMillis) {
+		final long value = micros < 0 ? 0 : Math.min(micros, MAX_VALUE);
+		final long epoch = nowMillis / this.intervalMillis;
+		final Interval interval = this.intervals[(int) (epoch % this.intervals.length)];
+
+		final long intervalEpoch = interval.epoch.get();
+		if (intervalEpoch < epoch && interval.epoch.compareAndSet(intervalEpoch, epoch)) {
+			interval.clear();
+		}
+
+		interval.counts.incrementAndGet(index(value));
+		interval.count.incrementAndGet();
+		interval.sum.addAndGet(value);
+		long max = interval.max.get();
+		while (value > max && !interval.max.compareAndSet(max, value)) {
+			max = interval.max.get();
+		}
+	}
+
+	public Snapshot snapshot() {
+		return snapshot(System.currentTimeMillis());
+	}
+
+	Snapshot snapshot(long nowMillis) {
+		final long epoch = nowMillis / this.intervalMillis;
+		final long[] counts = new long[BUCKET_COUNT];
+		long count = 0;
+		long sum = 0;
+		long max = 0;
+		for (Interval interval : this.intervals) {
+			final long intervalEpoch = interval.epoch.get();
+			if (intervalEpoch > epoch || intervalEpoch <= epoch - this.intervals.length) {
+				continue;  // outside of the window
+			}
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] += interval.counts.get(i);
+			}
+			count += interval.count.get();
+			sum += interval.sum.get();
+			max = Math.max(max, interval.max.get());
+		}
+		return new Snapshot(counts, count, sum, max);
+	}
+
+	private static class Interval {
+
+		private final AtomicLong epoch = new AtomicLong(-1);
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong sum = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+
+		private void clear() {
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				this.counts.set(i, 0);
+			}
+			this.count.set(0);
+			this.sum.set(0);
+			this.max.set(0);
+		}
+	}
+
+	/**
+	 * Values recorded in the window.
+	 */
+	public static class Snapshot {
+
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		private Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return this.count;
+		}
+
+		public long getMax() {
+			return this.max;
+		}
+
+		public long getSum() {
+			return this.sum;
+		}
+
+		public double getMean() {
+			return this.count == 0 ? 0 : (double) this.sum / this.count;
+		}
+
+		/**
+		 * @param percentile e.g. 99.9
+		 * @return the value which the given percent of recorded values are equal to or below
+		 */
+		public long getValueAtPercentile(double percentile) {
+			long total = 0;
+			for (long bucketCount : this.counts) {
+				total += bucketCount;  // may differ from count while recording
+			}
+			if (total == 0) {
+				return 0;
+			}
+			final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+			long cumulative = 0;
+			for (int i = 0; i < this.counts.length; i++) {
+				cumulative += this.counts[i];
+				if (cumulative >= rank) {
+					return Math.min(highestValue(i), this.max);
+				}
+			}
+			return this.max;
+		}
+	}
+
+}
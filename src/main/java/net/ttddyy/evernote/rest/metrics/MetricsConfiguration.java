@@ -0,0 +1,191 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import net.ttddyy.evernote.rest.Application;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.reader.MetricReader;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.embedded.FilterRegistrationBean;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counters, response time gauges, latency histograms, per-phase request timing, payload sizes, slow requests,
+ * in-flight calls and per client upstream cost of store operations. Also exposed in prometheus text format on "/management/prometheus".
+ *
+ * @author Tadaya Tsuyukubo
+ */
+@Configuration
+public class MetricsConfiguration extends WebMvcConfigurerAdapter {
+
+	@Autowired
+	public MetricsPropertiesConfiguration metricsPropertiesConfiguration;
+
+	@Autowired
+	private Application.EvernotePropertiesConfiguration evernotePropertiesConfiguration;
+
+	@Autowired(required = false)
+	private SlowRequestRecorder slowRequestRecorder;
+
+	@Autowired(required = false)
+	private HeavyHitters heavyHitters;
+
+	@Autowired(required = false)
+	private ClientCosts clientCosts;
+
+
+	@Configuration
+	@ConfigurationProperties("evernote.metrics")
+	public static class MetricsPropertiesConfiguration {
+
+		public int histogramWindowSeconds = 60;  // percentiles are of the values recorded in this window
+		public int histogramIntervals = 6;  // window moves by histogramWindowSeconds / histogramIntervals
+		public List<Double> histogramPercentiles = Arrays.asList(50.0, 90.0, 99.0, 99.9);
+		public boolean serverTiming = false;  // add "Server-Timing" response header with per-phase durations
+		public int slowRequestThresholdMillis = 1000;
+		public int slowRequestBufferSize = 128;  // latest slow requests to keep. 0 disables recording.
+		public boolean costHeader = true;  // add "evernote-rest-cost" response header with upstream cost of the request
+		public int clientCostMaxClients = 1000;  // clients to sum costs separately. 0 disables per client costs.
+
+		public void setHistogramWindowSeconds(int histogramWindowSeconds) {
+			this.histogramWindowSeconds = histogramWindowSeconds;
+		}
+
+		public void setHistogramIntervals(int histogramIntervals) {
+			this.histogramIntervals = histogramIntervals;
+		}
+
+		public void setHistogramPercentiles(List<Double> histogramPercentiles) {
+			this.histogramPercentiles = histogramPercentiles;
+		}
+
+		public void setServerTiming(boolean serverTiming) {
+			this.serverTiming = serverTiming;
+		}
+
+		public void setSlowRequestThresholdMillis(int slowRequestThresholdMillis) {
+			this.slowRequestThresholdMillis = slowRequestThresholdMillis;
+		}
+
+		public void setSlowRequestBufferSize(int slowRequestBufferSize) {
+			this.slowRequestBufferSize = slowRequestBufferSize;
+		}
+
+		public void setCostHeader(boolean costHeader) {
+			this.costHeader = costHeader;
+		}
+
+		public void setClientCostMaxClients(int clientCostMaxClients) {
+			this.clientCostMaxClients = clientCostMaxClients;
+		}
+
+	}
+
+	/**
+	 * Slow request flight recorder, dumped by "/management/slowrequests".
+	 */
+	@Configuration
+	@ConditionalOnExpression("${evernote.metrics.slowRequestBufferSize:128} > 0")
+	public static class SlowRequestConfiguration {
+
+		@Autowired
+		public MetricsPropertiesConfiguration metricsPropertiesConfiguration;
+
+		@Bean
+		public SlowRequestRecorder slowRequestRecorder() {
+			final MetricsPropertiesConfiguration properties = this.metricsPropertiesConfiguration;
+			return new SlowRequestRecorder(TimeUnit.MILLISECONDS.toNanos(properties.slowRequestThresholdMillis),
+					properties.slowRequestBufferSize);
+		}
+
+		@Bean
+		public SlowRequestEndpoint slowRequestEndpoint() {
+			return new SlowRequestEndpoint(slowRequestRecorder());
+		}
+
+	}
+
+	/**
+	 * Upstream cost per client, on "/management/clientcosts".
+	 */
+	@Configuration
+	@ConditionalOnExpression("${evernote.metrics.clientCostMaxClients:1000} > 0")
+	public static class ClientCostsConfiguration {
+
+		@Autowired
+		public MetricsPropertiesConfiguration metricsPropertiesConfiguration;
+
+		@Bean
+		public ClientCosts clientCosts() {
+			return new ClientCosts(this.metricsPropertiesConfiguration.clientCostMaxClients);
+		}
+
+		@Bean
+		public ClientCostsEndpoint clientCostsEndpoint() {
+			return new ClientCostsEndpoint(clientCosts());
+		}
+
+	}
+
+	@Bean
+	public StoreMetrics storeMetrics() {
+		final MetricsPropertiesConfiguration properties = this.metricsPropertiesConfiguration;
+		return new StoreMetrics(properties.histogramWindowSeconds * 1000L, properties.histogramIntervals,
+				properties.histogramPercentiles);
+	}
+
+	/**
+	 * Records per-phase {@link RequestTiming} of store operations.
+	 */
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(new RequestTimingInterceptor(this.slowRequestRecorder, this.clientCosts));
+	}
+
+	@Bean
+	public FilterRegistrationBean payloadMetricsFilterRegistration() {
+		final PayloadMetricsFilter filter = new PayloadMetricsFilter(this.heavyHitters, this.evernotePropertiesConfiguration);
+		final FilterRegistrationBean registration = new FilterRegistrationBean(filter);
+		registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 5);  // outside of compression filter, to count sent bytes
+		return registration;
+	}
+
+	/**
+	 * Used by "/management/metrics" instead of spring-boot's default {@code VanillaPublicMetrics}.
+	 *
+	 * @see org.springframework.boot.actuate.autoconfigure.EndpointAutoConfiguration#metricsEndpoint()
+	 */
+	@Bean
+	public PublicMetrics storeMetricsPublicMetrics(MetricReader metricReader) {
+		return new StoreMetricsPublicMetrics(metricReader, storeMetrics(), inFlightCalls());
+	}
+
+	@Bean
+	public PrometheusEndpoint prometheusEndpoint() {
+		return new PrometheusEndpoint(storeMetrics(), inFlightCalls());
+	}
+
+	@Bean
+	public PrometheusMvcEndpoint prometheusMvcEndpoint() {
+		return new PrometheusMvcEndpoint(prometheusEndpoint());
+	}
+
+	@Bean
+	public InFlightCalls inFlightCalls() {
+		return new InFlightCalls();
+	}
+
+	@Bean
+	public InFlightCallsEndpoint inFlightCallsEndpoint() {
+		return new InFlightCallsEndpoint(inFlightCalls());
+	}
+
+}
@@ -0,0 +1,75 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import net.ttddyy.evernote.rest.Application;
+import net.ttddyy.evernote.rest.RequestIdentity;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts request and response body bytes of store operation requests, and records them to the byte histograms of the
+ * store method. Also records the request to {@link HeavyHitters}, keyed by the same headers
+ * {@link Application#evernote} reads.
+ *
+ * Response bytes are as sent, outside of compression. Request bytes are the larger of bytes read and
+ * "Content-Length", since multipart bodies are read by the servlet container.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class PayloadMetricsFilter extends OncePerRequestFilter {
+
+	private final HeavyHitters heavyHitters;
+	private final Application.EvernotePropertiesConfiguration evernotePropertiesConfiguration;
+
+	/**
+	 * @param heavyHitters null not to record heavy hitters
+	 */
+	public PayloadMetricsFilter(HeavyHitters heavyHitters,
+								Application.EvernotePropertiesConfiguration evernotePropertiesConfiguration) {
+		this.heavyHitters = heavyHitters;
+		this.evernotePropertiesConfiguration = evernotePropertiesConfiguration;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		final CountingRequestWrapper requestWrapper = new CountingRequestWrapper(request);
+		final CountingResponseWrapper responseWrapper = new CountingResponseWrapper(response);
+		try {
+			filterChain.doFilter(requestWrapper, responseWrapper);
+		} finally {
+			// only store operations have request timing
+			final RequestTiming timing = RequestTiming.find(request);
+			if (timing != null) {
+				record(request, requestWrapper, responseWrapper, timing);
+			}
+		}
+	}
+
+	private void record(HttpServletRequest request, CountingRequestWrapper requestWrapper,
+						CountingResponseWrapper responseWrapper, RequestTiming timing) {
+		final long requestBytes = Math.max(requestWrapper.getByteCount(), request.getContentLength());
+		final long responseBytes = responseWrapper.getByteCount();
+
+		final StoreMethodMetrics metrics = timing.getMetrics();
+		if (metrics != null) {
+			metrics.recordPayload(StoreMethodMetrics.Payload.REQUEST_IN, requestBytes);
+			metrics.recordPayload(StoreMethodMetrics.Payload.RESPONSE_OUT, responseBytes);
+		}
+
+		if (this.heavyHitters != null) {
+			final String tokenHash = RequestIdentity.resolve(request, this.evernotePropertiesConfiguration).getTokenHash();
+			final String noteStoreUrl = request.getHeader(RequestIdentity.NOTE_STORE_URL_HEADER);
+			final long upstreamNanos = timing.getNanos(RequestTiming.Phase.UPSTREAM);
+			final long upstreamMicros = upstreamNanos < 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(upstreamNanos);
+			this.heavyHitters.record(tokenHash, noteStoreUrl, upstreamMicros, requestBytes + responseBytes);
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+
+/**
+ * "/management/prometheus": store operation metrics in prometheus text format.
+ * <pre>
+ * evernote_api_requests_total{store, method, outcome}   counter of succeeded, failed and local requests
+ * evernote_api_response_seconds{store, method}          response time of evernote
+ * evernote_api_phase_seconds{store, method, phase}      time spent in each phase of a request
+ * evernote_api_payload_bytes{store, method, payload}    request, response and upstream payload sizes
+ * evernote_api_inflight{store, method, shard}           calls to evernote in progress
+ * </pre>
+ * Histogram buckets are counted since start, separately from the rolling window histograms of "/management/metrics",
+ * so they can be used with {@code rate()}, e.g.
+ * {@code histogram_quantile(0.99, rate(evernote_api_response_seconds_bucket[5m]))}.
+ *
+ * Samples are written from {@link StoreMetrics} and {@link InFlightCalls} with labels built once per method,
+ * instead of parsing metric names from the metric repository on each scrape.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class PrometheusEndpoint extends AbstractEndpoint<String> {
+
+	static final String REQUESTS = "evernote_api_requests_total";
+	static final String RESPONSE_SECONDS = "evernote_api_response_seconds";
+	static final String PHASE_SECONDS = "evernote_api_phase_seconds";
+	static final String PAYLOAD_BYTES = "evernote_api_payload_bytes";
+	static final String INFLIGHT = "evernote_api_inflight";
+
+	private final StoreMetrics storeMetrics;
+	private final InFlightCalls inFlightCalls;
+
+	private volatile int lastLength = 4096;
+
+	public PrometheusEndpoint(StoreMetrics storeMetrics, InFlightCalls inFlightCalls) {
+		super("prometheus");
+		this.storeMetrics = storeMetrics;
+		this.inFlightCalls = inFlightCalls;
+	}
+
+	@Override
+	public String invoke() {
+		final StringBuilder sb = new StringBuilder(this.lastLength + this.lastLength / 4);  // avoid resizing
+		this.storeMetrics.writePrometheus(sb);
+		this.inFlightCalls.writePrometheus(sb);
+		this.lastLength = sb.length();
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,78 @@
+package net.ttddyy.evernote.rest.metrics;
+
+/**
+ * Prometheus text format(0.0.4) of metric families.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see PrometheusEndpoint
+ */
+final class PrometheusFormat {
+
+	static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	// bucket bounds of latency histograms(recorded in microseconds, published in seconds)
+	static final long[] SECONDS_BOUNDS = {1000, 5000, 10000, 25000, 50000, 100000, 250000, 500000,
+			1000000, 2500000, 5000000, 10000000};
+	static final String[] SECONDS_LE = toLe(SECONDS_BOUNDS, 1000000);
+	static final double MICROS_PER_SECOND = 1000000;
+
+	// bucket bounds of byte histograms
+	static final long[] BYTES_BOUNDS = {256, 1024, 4096, 16384, 65536, 262144, 1048576, 4194304, 16777216};
+	static final String[] BYTES_LE = toLe(BYTES_BOUNDS, 1);
+
+	private PrometheusFormat() {
+	}
+
+	private static String[] toLe(long[] bounds, double unit) {
+		final String[] result = new String[bounds.length + 1];
+		for (int i = 0; i < bounds.length; i++) {
+			result[i] = unit == 1 ? Long.toString(bounds[i]) : Double.toString(bounds[i] / unit);
+		}
+		result[bounds.length] = "+Inf";
+		return result;
+	}
+
+	/**
+	 * Escape a label value.
+	 */
+	static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	/**
+	 * "HELP" and "TYPE" lines. Samples of the family follow.
+	 */
+	static void family(StringBuilder sb, String name, String type, String help) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	/**
+	 * @param sample metric name with labels, e.g. {@code name{store="noteStore"}}
+	 */
+	static void sample(StringBuilder sb, String sample, long value) {
+		sb.append(sample).append(' ').append(value).append('\n');
+	}
+
+	/**
+	 * "_bucket", "_sum" and "_count" samples of the histogram. Nothing is written when it has no values.
+	 *
+	 * @param labels labels of the samples without braces, e.g. {@code store="noteStore",method="getNote"}
+	 * @param les    "le" label values of the histogram bounds, followed by "+Inf"
+	 * @param unit   recorded values per published unit
+	 */
+	static void histogram(StringBuilder sb, String name, String labels, CumulativeHistogram histogram, String[] les,
+						  double unit) {
+		final long[] counts = histogram.getCumulativeCounts();
+		if (counts[counts.length - 1] == 0) {
+			return;
+		}
+		for (int i = 0; i < counts.length; i++) {
+			sb.append(name).append("_bucket{").append(labels).append(",le=\"").append(les[i]).append("\"} ")
+					.append(counts[i]).append('\n');
+		}
+		sb.append(name).append("_sum{").append(labels).append("} ").append(histogram.getSum() / unit).append('\n');
+		sb.append(name).append("_count{").append(labels).append("} ").append(counts[counts.length - 1]).append('\n');
+	}
+
+}
@@ -0,0 +1,26 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import org.springframework.boot.actuate.endpoint.mvc.EndpointMvcAdapter;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Serves {@link PrometheusEndpoint} as "text/plain" instead of json.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class PrometheusMvcEndpoint extends EndpointMvcAdapter {
+
+	public PrometheusMvcEndpoint(PrometheusEndpoint delegate) {
+		super(delegate);
+	}
+
+	@RequestMapping(method = RequestMethod.GET, produces = PrometheusFormat.CONTENT_TYPE)
+	@ResponseBody
+	@Override
+	public Object invoke() {
+		return super.invoke();
+	}
+
+}
@@ -0,0 +1,273 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Time spent in each phase of a store operation request, kept as a request attribute.
+ *
+ * Phases are measured where they happen: message converters(reading body, writing response) and the controller.
+ * {@link RequestTimingInterceptor} records them to the histograms of the store method when the request completes,
+ * and keeps the request in {@link SlowRequestRecorder} when it took longer than the threshold.
+ *
+ * Outcome and parameters are kept as references, and only looked at for slow requests.
+ *
+ * Also counts what the request cost upstream: calls to evernote, local note index hits and misses, and bytes sent to
+ * and received from evernote. They are sent back in "evernote-rest-cost" header and aggregated by {@link ClientCosts}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class RequestTiming {
+
+	public enum Outcome {
+		SUCCEEDED, FAILED, LOCAL
+	}
+
+	public enum Phase {
+		/**
+		 * finding store method
+		 */
+		LOOKUP,
+		/**
+		 * reading request body and binding parameters
+		 */
+		BIND,
+		/**
+		 * creating ~StoreOperations(evernote client) for the request
+		 */
+		CLIENT,
+		/**
+		 * calling evernote
+		 */
+		UPSTREAM,
+		/**
+		 * writing response body
+		 */
+		SERIALIZE;
+
+		private final String label = name().toLowerCase(Locale.ENGLISH);
+
+		public String getLabel() {
+			return this.label;
+		}
+	}
+
+	static final Phase[] PHASES = Phase.values();
+	private static final String ATTRIBUTE = RequestTiming.class.getName();
+
+	private final long startNanos = System.nanoTime();
+	private final long[] nanos = new long[PHASES.length];
+	private StoreMethodMetrics metrics;
+	private Outcome outcome;
+	private Exception exception;
+	private JsonNode parameters;
+	private int upstreamCalls;
+	private int cacheHits;
+	private int cacheMisses;
+	private long upstreamSentBytes;
+	private long upstreamReceivedBytes;
+
+	RequestTiming() {
+		Arrays.fill(this.nanos, -1);
+	}
+
+	/**
+	 * @return timing of the request. created on first call.
+	 */
+	public static RequestTiming get(HttpServletRequest request) {
+		RequestTiming timing = (RequestTiming) request.getAttribute(ATTRIBUTE);
+		if (timing == null) {
+			timing = new RequestTiming();
+			request.setAttribute(ATTRIBUTE, timing);
+		}
+		return timing;
+	}
+
+	/**
+	 * @return timing of the request bound to the current thread. null if not in a request.
+	 */
+	public static RequestTiming current() {
+		final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (attributes == null) {
+			return null;
+		}
+		RequestTiming timing = (RequestTiming) attributes.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+		if (timing == null) {
+			timing = new RequestTiming();
+			attributes.setAttribute(ATTRIBUTE, timing, RequestAttributes.SCOPE_REQUEST);
+		}
+		return timing;
+	}
+
+	/**
+	 * Add elapsed time to the phase of the request bound to the current thread. Does nothing if not in a request.
+	 */
+	public static void addCurrent(Phase phase, long elapsedNanos) {
+		final RequestTiming timing = current();
+		if (timing != null) {
+			timing.add(phase, elapsedNanos);
+		}
+	}
+
+	/**
+	 * @return timing of the request, or null if nothing has been measured
+	 */
+	static RequestTiming find(HttpServletRequest request) {
+		return (RequestTiming) request.getAttribute(ATTRIBUTE);
+	}
+
+	/**
+	 * Add elapsed time to the phase. A phase may be measured in multiple parts.
+	 */
+	public void add(Phase phase, long elapsedNanos) {
+		final int index = phase.ordinal();
+		this.nanos[index] = this.nanos[index] < 0 ? elapsedNanos : this.nanos[index] + elapsedNanos;
+	}
+
+	/**
+	 * @return elapsed time of the phase, or -1 if not measured
+	 */
+	public long getNanos(Phase phase) {
+		return this.nanos[phase.ordinal()];
+	}
+
+	/**
+	 * @param metrics store method to record the phases to
+	 */
+	public void setMetrics(StoreMethodMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public StoreMethodMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setOutcome(Outcome outcome) {
+		this.outcome = outcome;
+	}
+
+	public Outcome getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * Marks the request failed by the exception.
+	 */
+	public void failed(Exception exception) {
+		this.outcome = Outcome.FAILED;
+		this.exception = exception;
+	}
+
+	public Exception getException() {
+		return exception;
+	}
+
+	/**
+	 * @param parameters json request of the store method
+	 */
+	public void setParameters(JsonNode parameters) {
+		this.parameters = parameters;
+	}
+
+	public JsonNode getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * @param sentBytes     bytes sent to evernote. 0 if not counted.
+	 * @param receivedBytes bytes received from evernote. 0 if not counted.
+	 */
+	public void upstreamCall(long sentBytes, long receivedBytes) {
+		this.upstreamCalls++;
+		this.upstreamSentBytes += sentBytes;
+		this.upstreamReceivedBytes += receivedBytes;
+	}
+
+	/**
+	 * Answered from local note index.
+	 */
+	public void cacheHit() {
+		this.cacheHits++;
+	}
+
+	/**
+	 * Could have been answered from local note index, but sent to evernote.
+	 */
+	public void cacheMiss() {
+		this.cacheMisses++;
+	}
+
+	public int getUpstreamCalls() {
+		return upstreamCalls;
+	}
+
+	public int getCacheHits() {
+		return cacheHits;
+	}
+
+	public int getCacheMisses() {
+		return cacheMisses;
+	}
+
+	public long getUpstreamSentBytes() {
+		return upstreamSentBytes;
+	}
+
+	public long getUpstreamReceivedBytes() {
+		return upstreamReceivedBytes;
+	}
+
+	/**
+	 * @return nanoseconds since the timing was created(request body started to be read, or the handler was called)
+	 */
+	public long getElapsedNanos() {
+		return System.nanoTime() - this.startNanos;
+	}
+
+	void record() {
+		if (this.metrics == null) {
+			return;
+		}
+		for (Phase phase : PHASES) {
+			final long elapsed = this.nanos[phase.ordinal()];
+			if (elapsed >= 0) {
+				this.metrics.recordPhase(phase, elapsed);
+			}
+		}
+	}
+
+	/**
+	 * @return "Server-Timing" header value of the measured phases, e.g. {@code lookup;dur=0.012, upstream;dur=120.5}
+	 */
+	public String toServerTiming() {
+		final StringBuilder sb = new StringBuilder();
+		for (Phase phase : PHASES) {
+			final long elapsed = this.nanos[phase.ordinal()];
+			if (elapsed < 0) {
+				continue;
+			}
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(phase.getLabel()).append(";dur=").append(elapsed / 1000 / 1000.0);  // milliseconds, 3 decimals
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return "evernote-rest-cost" header value, e.g.
+	 * {@code calls=1, hits=0, misses=1, upstreamMillis=120.5, sentBytes=312, receivedBytes=2048}
+	 */
+	public String toCostHeader() {
+		final long upstreamNanos = this.nanos[Phase.UPSTREAM.ordinal()];
+		return "calls=" + this.upstreamCalls + ", hits=" + this.cacheHits + ", misses=" + this.cacheMisses +
+				", upstreamMillis=" + (upstreamNanos < 0 ? 0 : upstreamNanos / 1000 / 1000.0) +
+				", sentBytes=" + this.upstreamSentBytes + ", receivedBytes=" + this.upstreamReceivedBytes;
+	}
+
+}
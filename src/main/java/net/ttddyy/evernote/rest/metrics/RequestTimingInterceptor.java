@@ -0,0 +1,56 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Records {@link RequestTiming} of the request to the phase histograms, after the response has been written.
+ * Store operation requests slower than the threshold are also kept in {@link SlowRequestRecorder}, and the upstream cost
+ * of store operation requests is summed per client in {@link ClientCosts}.
+ *
+ * Forward to "/error" for EDAM errors and error dispatches run the interceptors again with the same request timing, so
+ * only the completion of the original dispatch is recorded.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class RequestTimingInterceptor extends HandlerInterceptorAdapter {
+
+	private final SlowRequestRecorder slowRequestRecorder;
+	private final ClientCosts clientCosts;
+
+	/**
+	 * @param slowRequestRecorder null not to record slow requests
+	 * @param clientCosts         null not to sum costs per client
+	 */
+	public RequestTimingInterceptor(SlowRequestRecorder slowRequestRecorder, ClientCosts clientCosts) {
+		this.slowRequestRecorder = slowRequestRecorder;
+		this.clientCosts = clientCosts;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+		final RequestTiming timing = RequestTiming.find(request);
+		if (timing == null || request.getDispatcherType() != DispatcherType.REQUEST) {
+			return;
+		}
+		timing.record();
+
+		if (this.clientCosts != null && timing.getMetrics() != null) {
+			this.clientCosts.record(request.getHeader(ClientCosts.CLIENT_ID_HEADER), timing);
+		}
+
+		if (this.slowRequestRecorder != null && timing.getMetrics() != null) {
+			final long elapsedNanos = timing.getElapsedNanos();
+			if (this.slowRequestRecorder.isSlow(elapsedNanos)) {
+				if (ex != null && timing.getOutcome() == null) {
+					timing.failed(ex);
+				}
+				this.slowRequestRecorder.record(timing, elapsedNanos, request.getContentLength());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Heaviest keys of a rolling time window, as {@link SpaceSaving} summaries of fixed intervals.
+ *
+ * Like {@link LatencyHistogram}, the window moves by one interval. Each interval has its own lock, so adding only
+ * contends with requests in the same interval. An interval may hold several summaries(e.g. requests and bytes of the
+ * same keys), which are updated together under one lock.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class RollingTopK {
+
+	private static final Comparator<Map.Entry<String, long[]>> BY_COUNT_DESC = new Comparator<Map.Entry<String, long[]>>() {
+		@Override
+		public int compare(Map.Entry<String, long[]> o1, Map.Entry<String, long[]> o2) {
+			final long c1 = o1.getValue()[0];
+			final long c2 = o2.getValue()[0];
+			return c1 < c2 ? 1 : (c1 == c2 ? 0 : -1);
+		}
+	};
+
+	private final long intervalMillis;
+	private final Interval[] intervals;
+
+	/**
+	 * @param windowMillis length of the window
+	 * @param intervals    number of intervals in the window
+	 * @param capacity     number of counters in an interval. keys heavier than 1/capacity of the interval are kept.
+	 */
+	public RollingTopK(long windowMillis, int intervals, int capacity) {
+		this(windowMillis, intervals, capacity, 1);
+	}
+
+	/**
+	 * @param summaries number of summaries in an interval
+	 */
+	public RollingTopK(long windowMillis, int intervals, int capacity, int summaries) {
+		this.intervalMillis = Math.max(1, windowMillis / intervals);
+		this.intervals = new Interval[intervals];
+		for (int i = 0; i < intervals; i++) {
+			this.intervals[i] = new Interval(capacity, summaries);
+		}
+	}
+
+	public void add(String key, long weight) {
+		add(key, weight, System.currentTimeMillis());
+	}
+
+	void add(String key, long weight, long now) {
+		add(new String[]{key}, new long[]{weight}, now);
+	}
+
+	/**
+	 * Add to every summary in one lock.
+	 *
+	 * @param keys    key per summary. null to skip the summary.
+	 * @param weights weight per summary. 0 or less to skip the summary.
+	 */
+	public void add(String[] keys, long[] weights) {
+		add(keys, weights, System.currentTimeMillis());
+	}
+
+	void add(String[] keys, long[] weights, long now) {
+		final long epoch = now / this.intervalMillis;
+		final Interval interval = this.intervals[(int) (epoch % this.intervals.length)];
+		synchronized (interval) {
+			if (interval.epoch != epoch) {
+				for (SpaceSaving summary : interval.summaries) {
+					summary.clear();
+				}
+				interval.epoch = epoch;
+			}
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] != null && weights[i] > 0) {
+					interval.summaries[i].add(keys[i], weights[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return up to k heaviest keys in the window, heaviest first
+	 */
+	public List<Entry> top(int k) {
+		return topOf(0, k);
+	}
+
+	/**
+	 * @return up to k heaviest keys of the summary in the window, heaviest first
+	 */
+	public List<Entry> topOf(int summary, int k) {
+		return topOf(summary, k, System.currentTimeMillis());
+	}
+
+	List<Entry> top(int k, long now) {
+		return topOf(0, k, now);
+	}
+
+	List<Entry> topOf(int summary, int k, long now) {
+		final long oldestEpoch = now / this.intervalMillis - this.intervals.length + 1;
+		final Map<String, long[]> merged = new HashMap<String, long[]>();
+		for (Interval interval : this.intervals) {
+			synchronized (interval) {
+				if (interval.epoch >= oldestEpoch) {
+					interval.summaries[summary].mergeTo(merged);
+				}
+			}
+		}
+
+		final List<Map.Entry<String, long[]>> sorted = new ArrayList<Map.Entry<String, long[]>>(merged.entrySet());
+		Collections.sort(sorted, BY_COUNT_DESC);
+		final int size = Math.min(k, sorted.size());
+		final List<Entry> result = new ArrayList<Entry>(size);
+		for (int i = 0; i < size; i++) {
+			final Map.Entry<String, long[]> entry = sorted.get(i);
+			result.add(new Entry(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+		}
+		return result;
+	}
+
+	public long getWindowMillis() {
+		return this.intervalMillis * this.intervals.length;
+	}
+
+	private static class Interval {
+		private long epoch = -1;
+		private final SpaceSaving[] summaries;
+
+		private Interval(int capacity, int summaries) {
+			this.summaries = new SpaceSaving[summaries];
+			for (int i = 0; i < summaries; i++) {
+				this.summaries[i] = new SpaceSaving(capacity);
+			}
+		}
+	}
+
+	public static class Entry {
+
+		private final String key;
+		private final long count;
+		private final long error;
+
+		Entry(String key, long count, long error) {
+			this.key = key;
+			this.count = count;
+			this.error = error;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * @return estimated count, which is at most {@link #getError()} larger than the actual count
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		public long getError() {
+			return error;
+		}
+
+		public Map<String, Object> toMap() {
+			final Map<String, Object> map = new LinkedHashMap<String, Object>();
+			map.put("key", this.key);
+			map.put("count", this.count);
+			map.put("error", this.error);
+			return map;
+		}
+	}
+
+}
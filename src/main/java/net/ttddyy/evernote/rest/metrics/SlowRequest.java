@@ -0,0 +1,87 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.social.evernote.api.EvernoteException;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A request kept by {@link SlowRequestRecorder}.
+ *
+ * Parameter values and headers are not kept. Only the size of each parameter in json is, so that access tokens or
+ * note contents never end up in the dump.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class SlowRequest {
+
+	private final long sequence;
+	private final long timestamp;
+	private final String storeName;
+	private final String methodName;
+	private final double elapsedMillis;
+	private final Map<String, Double> phaseMillis = new LinkedHashMap<String, Double>();
+	private final int requestBytes;
+	private final Map<String, Integer> parameterSizes = new LinkedHashMap<String, Integer>();
+	private final String outcome;
+	private final String exception;
+	private final String cause;
+
+	SlowRequest(long sequence, RequestTiming timing, long elapsedNanos, int requestBytes) {
+		this.sequence = sequence;
+		this.timestamp = System.currentTimeMillis();
+		this.storeName = timing.getMetrics().getStoreName();
+		this.methodName = timing.getMetrics().getMethodName();
+		this.elapsedMillis = toMillis(elapsedNanos);
+		for (RequestTiming.Phase phase : RequestTiming.PHASES) {
+			final long nanos = timing.getNanos(phase);
+			if (nanos >= 0) {
+				this.phaseMillis.put(phase.getLabel(), toMillis(nanos));
+			}
+		}
+		this.requestBytes = requestBytes;
+
+		final JsonNode parameters = timing.getParameters();
+		if (parameters != null) {
+			for (Iterator<Map.Entry<String, JsonNode>> fields = parameters.fields(); fields.hasNext(); ) {
+				final Map.Entry<String, JsonNode> field = fields.next();
+				this.parameterSizes.put(field.getKey(), field.getValue().toString().length());
+			}
+		}
+
+		this.outcome = timing.getOutcome() == null ? null : timing.getOutcome().name().toLowerCase(Locale.ENGLISH);
+		final Exception exception = timing.getException();
+		this.exception = exception == null ? null : exception.getClass().getName();
+		// EDAM*Exception or thrift transport exception from evernote
+		final Throwable cause = exception instanceof EvernoteException ? exception.getCause() : null;
+		this.cause = cause == null ? null : cause.getClass().getName();
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1000 / 1000.0;
+	}
+
+	long getSequence() {
+		return sequence;
+	}
+
+	public Map<String, Object> toMap() {
+		final Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("timestamp", new Date(this.timestamp));
+		map.put("store", this.storeName);
+		map.put("method", this.methodName);
+		map.put("elapsedMillis", this.elapsedMillis);
+		map.put("phaseMillis", this.phaseMillis);
+		map.put("requestBytes", this.requestBytes);
+		map.put("parameterSizes", this.parameterSizes);
+		map.put("outcome", this.outcome);
+		map.put("exception", this.exception);
+		map.put("cause", this.cause);
+		return map;
+	}
+
+}
@@ -0,0 +1,33 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * "/management/slowrequests": latest store operation requests slower than the threshold, newest first.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class SlowRequestEndpoint extends AbstractEndpoint<List<Map<String, Object>>> {
+
+	private final SlowRequestRecorder slowRequestRecorder;
+
+	public SlowRequestEndpoint(SlowRequestRecorder slowRequestRecorder) {
+		super("slowrequests");
+		this.slowRequestRecorder = slowRequestRecorder;
+	}
+
+	@Override
+	public List<Map<String, Object>> invoke() {
+		final List<SlowRequest> slowRequests = this.slowRequestRecorder.dump();
+		final List<Map<String, Object>> result = new ArrayList<Map<String, Object>>(slowRequests.size());
+		for (SlowRequest slowRequest : slowRequests) {
+			result.add(slowRequest.toMap());
+		}
+		return result;
+	}
+
+}
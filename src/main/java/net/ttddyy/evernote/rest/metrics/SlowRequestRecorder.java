@@ -0,0 +1,66 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size ring buffer of the latest requests slower than the threshold.
+ *
+ * Fast requests only cost a comparison. Slow ones claim a slot by incrementing a sequence, and overwrite the oldest
+ * entry without locking.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class SlowRequestRecorder {
+
+	private static final Comparator<SlowRequest> NEWEST_FIRST = new Comparator<SlowRequest>() {
+		@Override
+		public int compare(SlowRequest o1, SlowRequest o2) {
+			return o1.getSequence() < o2.getSequence() ? 1 : (o1.getSequence() == o2.getSequence() ? 0 : -1);
+		}
+	};
+
+	private final long thresholdNanos;
+	private final AtomicReferenceArray<SlowRequest> slots;
+	private final int mask;
+	private final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * @param size rounded up to a power of two
+	 */
+	public SlowRequestRecorder(long thresholdNanos, int size) {
+		this.thresholdNanos = thresholdNanos;
+		final int slotSize = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+		this.slots = new AtomicReferenceArray<SlowRequest>(slotSize);
+		this.mask = slotSize - 1;
+	}
+
+	public boolean isSlow(long elapsedNanos) {
+		return elapsedNanos >= this.thresholdNanos;
+	}
+
+	public void record(RequestTiming timing, long elapsedNanos, int requestBytes) {
+		final long sequence = this.sequence.getAndIncrement();
+		this.slots.set((int) (sequence & this.mask), new SlowRequest(sequence, timing, elapsedNanos, requestBytes));
+	}
+
+	/**
+	 * @return recorded requests, newest first
+	 */
+	public List<SlowRequest> dump() {
+		final List<SlowRequest> result = new ArrayList<SlowRequest>(this.slots.length());
+		for (int i = 0; i < this.slots.length(); i++) {
+			final SlowRequest slowRequest = this.slots.get(i);
+			if (slowRequest != null) {
+				result.add(slowRequest);
+			}
+		}
+		Collections.sort(result, NEWEST_FIRST);
+		return result;
+	}
+
+}
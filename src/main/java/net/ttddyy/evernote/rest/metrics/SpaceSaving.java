@@ -0,0 +1,70 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Space-saving summary of the heaviest keys with a fixed number of counters. Not thread safe.
+ *
+ * When all counters are in use, a new key takes over the counter with the smallest count, and starts from that count.
+ * The count of a key is overestimated by at most its error, and any key heavier than total / capacity is kept.
+ *
+ * (Metwally et al., "Efficient Computation of Frequent and Top-k Elements in Data Streams")
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class SpaceSaving {
+
+	private final int capacity;
+	private final Map<String, long[]> counters;  // key -> [count, error]
+
+	SpaceSaving(int capacity) {
+		this.capacity = capacity;
+		this.counters = new HashMap<String, long[]>(capacity * 2);
+	}
+
+	void add(String key, long weight) {
+		long[] counter = this.counters.get(key);
+		if (counter != null) {
+			counter[0] += weight;
+			return;
+		}
+		if (this.counters.size() < this.capacity) {
+			this.counters.put(key, new long[]{weight, 0});
+			return;
+		}
+
+		// only when a new key comes in with all counters in use
+		String minKey = null;
+		for (Map.Entry<String, long[]> entry : this.counters.entrySet()) {
+			if (counter == null || entry.getValue()[0] < counter[0]) {
+				minKey = entry.getKey();
+				counter = entry.getValue();
+			}
+		}
+		this.counters.remove(minKey);
+		counter[1] = counter[0];
+		counter[0] += weight;
+		this.counters.put(key, counter);
+	}
+
+	void clear() {
+		this.counters.clear();
+	}
+
+	/**
+	 * Add counts and errors of this summary to given map.
+	 */
+	void mergeTo(Map<String, long[]> merged) {
+		for (Map.Entry<String, long[]> entry : this.counters.entrySet()) {
+			final long[] counter = merged.get(entry.getKey());
+			if (counter == null) {
+				merged.put(entry.getKey(), entry.getValue().clone());
+			} else {
+				counter[0] += entry.getValue()[0];
+				counter[1] += entry.getValue()[1];
+			}
+		}
+	}
+
+}
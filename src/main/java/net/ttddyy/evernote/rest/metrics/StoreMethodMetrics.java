@@ -0,0 +1,321 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of one store method. Metric names are built once, so recording does not allocate.
+ * <pre>
+ * counter.evernote.api.[userStore|noteStore].[method].[succeeded|failed|local]
+ * gauge.evernote.api.[userStore|noteStore].[method].response
+ * histogram.evernote.api.[userStore|noteStore].[method].response.[count|mean|p50|...|max]
+ * histogram.evernote.api.[userStore|noteStore].[method].phase.[lookup|bind|...].[count|mean|p50|...|max]
+ * histogram.evernote.api.[userStore|noteStore].[method].bytes.[requestIn|responseOut|...].[count|mean|p50|...|max]
+ * </pre>
+ * Latency histograms are in milliseconds, byte histograms in bytes.
+ *
+ * Labels of the prometheus exposition are built once as well. See {@link PrometheusEndpoint} for the families.
+ * Prometheus histograms are separate fixed bucket counters since start, recorded along with the window histograms.
+ * Counters and the gauge have the same names and values as the ones written by spring-boot's
+ * {@code CounterService} and {@code GaugeService}. They are published once they have a value.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class StoreMethodMetrics {
+
+	public enum Payload {
+		/**
+		 * request body read from the client
+		 */
+		REQUEST_IN("requestIn"),
+		/**
+		 * response body sent to the client, after compression
+		 */
+		RESPONSE_OUT("responseOut"),
+		/**
+		 * thrift request sent to evernote
+		 */
+		UPSTREAM_SENT("upstreamSent"),
+		/**
+		 * thrift response received from evernote
+		 */
+		UPSTREAM_RECEIVED("upstreamReceived");
+
+		private final String label;
+
+		Payload(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return this.label;
+		}
+	}
+
+	private static final Payload[] PAYLOADS = Payload.values();
+	private static final double MICROS_PER_MILLI = 1000;
+
+	private final String storeName;
+	private final String methodName;
+	private final String succeededName;
+	private final String failedName;
+	private final String localName;
+	private final String responseName;
+	private final String histogramPrefix;
+	private final String[] phasePrefixes = new String[RequestTiming.PHASES.length];
+	private final String[] payloadPrefixes = new String[PAYLOADS.length];
+	private final String labels;  // prometheus labels
+	private final String succeededSample;
+	private final String failedSample;
+	private final String localSample;
+	private final String[] phaseLabels = new String[RequestTiming.PHASES.length];
+	private final String[] payloadLabels = new String[PAYLOADS.length];
+
+	private final StripedCounter succeeded = new StripedCounter();
+	private final StripedCounter failed = new StripedCounter();
+	private final StripedCounter local = new StripedCounter();
+	private final long histogramWindowMillis;
+	private final int histogramIntervals;
+	private volatile LatencyHistogram histogram;  // created on first response, ~40KB each
+	private volatile LatencyHistogram[] phaseHistograms;  // created on first recorded request timing
+	private volatile LatencyHistogram[] payloadHistograms;  // created on first recorded payload size
+	private final CumulativeHistogram responseBuckets = new CumulativeHistogram(PrometheusFormat.SECONDS_BOUNDS);
+	private final CumulativeHistogram[] phaseBuckets = newBuckets(RequestTiming.PHASES.length, PrometheusFormat.SECONDS_BOUNDS);
+	private final CumulativeHistogram[] payloadBuckets = newBuckets(PAYLOADS.length, PrometheusFormat.BYTES_BOUNDS);
+
+	private volatile long lastResponseNanos = -1;
+	private volatile long lastResponseTimestamp;
+
+	/**
+	 * @see LatencyHistogram#LatencyHistogram(long, int)
+	 */
+	StoreMethodMetrics(String storeName, String methodName, long histogramWindowMillis, int histogramIntervals) {
+		this.storeName = storeName;
+		this.methodName = methodName;
+		final String prefix = "evernote.api." + storeName + "." + methodName;
+		this.succeededName = "counter." + prefix + ".succeeded";
+		this.failedName = "counter." + prefix + ".failed";
+		this.localName = "counter." + prefix + ".local";
+		this.responseName = "gauge." + prefix + ".response";
+		this.histogramPrefix = "histogram." + prefix + ".response.";
+		for (RequestTiming.Phase phase : RequestTiming.PHASES) {
+			this.phasePrefixes[phase.ordinal()] = "histogram." + prefix + ".phase." + phase.getLabel() + ".";
+		}
+		for (Payload payload : PAYLOADS) {
+			this.payloadPrefixes[payload.ordinal()] = "histogram." + prefix + ".bytes." + payload.getLabel() + ".";
+		}
+		this.labels = "store=\"" + storeName + "\",method=\"" + methodName + "\"";
+		this.succeededSample = PrometheusEndpoint.REQUESTS + "{" + this.labels + ",outcome=\"succeeded\"}";
+		this.failedSample = PrometheusEndpoint.REQUESTS + "{" + this.labels + ",outcome=\"failed\"}";
+		this.localSample = PrometheusEndpoint.REQUESTS + "{" + this.labels + ",outcome=\"local\"}";
+		for (RequestTiming.Phase phase : RequestTiming.PHASES) {
+			this.phaseLabels[phase.ordinal()] = this.labels + ",phase=\"" + phase.getLabel() + "\"";
+		}
+		for (Payload payload : PAYLOADS) {
+			this.payloadLabels[payload.ordinal()] = this.labels + ",payload=\"" + payload.getLabel() + "\"";
+		}
+		this.histogramWindowMillis = histogramWindowMillis;
+		this.histogramIntervals = histogramIntervals;
+	}
+
+	/**
+	 * @param elapsedNanos response time of evernote
+	 */
+	public void succeeded(long elapsedNanos) {
+		this.succeeded.increment();
+		this.lastResponseNanos = elapsedNanos;
+		this.lastResponseTimestamp = System.currentTimeMillis();
+		final long micros = TimeUnit.NANOSECONDS.toMicros(elapsedNanos);
+		getHistogram().record(micros);
+		this.responseBuckets.record(micros);
+	}
+
+	public void failed() {
+		this.failed.increment();
+	}
+
+	/**
+	 * Answered from local note index without calling evernote.
+	 */
+	public void local() {
+		this.local.increment();
+	}
+
+	public String getStoreName() {
+		return storeName;
+	}
+
+	public String getMethodName() {
+		return methodName;
+	}
+
+	public LatencyHistogram getHistogram() {
+		LatencyHistogram histogram = this.histogram;
+		if (histogram == null) {
+			synchronized (this) {
+				histogram = this.histogram;
+				if (histogram == null) {
+					histogram = new LatencyHistogram(this.histogramWindowMillis, this.histogramIntervals);
+					this.histogram = histogram;
+				}
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * @param elapsedNanos time spent in the phase of a request
+	 * @see RequestTiming
+	 */
+	public void recordPhase(RequestTiming.Phase phase, long elapsedNanos) {
+		LatencyHistogram[] histograms = this.phaseHistograms;
+		if (histograms == null) {
+			synchronized (this) {
+				histograms = this.phaseHistograms;
+				if (histograms == null) {
+					histograms = newHistograms(RequestTiming.PHASES.length);
+					this.phaseHistograms = histograms;
+				}
+			}
+		}
+		final long micros = TimeUnit.NANOSECONDS.toMicros(elapsedNanos);
+		histograms[phase.ordinal()].record(micros);
+		this.phaseBuckets[phase.ordinal()].record(micros);
+	}
+
+	/**
+	 * @param bytes size of the payload of a request
+	 */
+	public void recordPayload(Payload payload, long bytes) {
+		LatencyHistogram[] histograms = this.payloadHistograms;
+		if (histograms == null) {
+			synchronized (this) {
+				histograms = this.payloadHistograms;
+				if (histograms == null) {
+					histograms = newHistograms(PAYLOADS.length);
+					this.payloadHistograms = histograms;
+				}
+			}
+		}
+		histograms[payload.ordinal()].record(bytes);  // histogram takes any value up to its max, not only micros
+		this.payloadBuckets[payload.ordinal()].record(bytes);
+	}
+
+	private LatencyHistogram[] newHistograms(int size) {
+		final LatencyHistogram[] histograms = new LatencyHistogram[size];
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram(this.histogramWindowMillis, this.histogramIntervals);
+		}
+		return histograms;
+	}
+
+	private static CumulativeHistogram[] newBuckets(int size, long[] upperBounds) {
+		final CumulativeHistogram[] histograms = new CumulativeHistogram[size];
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new CumulativeHistogram(upperBounds);
+		}
+		return histograms;
+	}
+
+	void addMetrics(Collection<Metric<?>> result, List<Double> percentiles) {
+		addCounter(result, this.succeededName, this.succeeded);
+		addCounter(result, this.failedName, this.failed);
+		addCounter(result, this.localName, this.local);
+
+		final long lastResponseNanos = this.lastResponseNanos;
+		if (lastResponseNanos >= 0) {
+			// whole milliseconds, same as StopWatch#getTotalTimeMillis()
+			result.add(new Metric<Double>(this.responseName, (double) TimeUnit.NANOSECONDS.toMillis(lastResponseNanos),
+					new Date(this.lastResponseTimestamp)));
+		}
+
+		addHistogram(result, this.histogramPrefix, this.histogram, percentiles, MICROS_PER_MILLI);
+
+		final LatencyHistogram[] phaseHistograms = this.phaseHistograms;
+		if (phaseHistograms != null) {
+			for (int i = 0; i < phaseHistograms.length; i++) {
+				addHistogram(result, this.phasePrefixes[i], phaseHistograms[i], percentiles, MICROS_PER_MILLI);
+			}
+		}
+
+		final LatencyHistogram[] payloadHistograms = this.payloadHistograms;
+		if (payloadHistograms != null) {
+			for (int i = 0; i < payloadHistograms.length; i++) {
+				addHistogram(result, this.payloadPrefixes[i], payloadHistograms[i], percentiles, 1);
+			}
+		}
+	}
+
+	/**
+	 * @param unit recorded values per published unit
+	 */
+	private static void addHistogram(Collection<Metric<?>> result, String prefix, LatencyHistogram histogram,
+			List<Double> percentiles, double unit) {
+		final LatencyHistogram.Snapshot snapshot = histogram == null ? null : histogram.snapshot();
+		if (snapshot == null || snapshot.getCount() == 0) {
+			return;
+		}
+		result.add(new Metric<Long>(prefix + "count", snapshot.getCount()));
+		result.add(new Metric<Double>(prefix + "mean", snapshot.getMean() / unit));
+		for (Double percentile : percentiles) {
+			result.add(new Metric<Double>(prefix + "p" + percentileName(percentile),
+					snapshot.getValueAtPercentile(percentile) / unit));
+		}
+		result.add(new Metric<Double>(prefix + "max", snapshot.getMax() / unit));
+	}
+
+	void writeRequests(StringBuilder sb) {
+		writeCounter(sb, this.succeededSample, this.succeeded);
+		writeCounter(sb, this.failedSample, this.failed);
+		writeCounter(sb, this.localSample, this.local);
+	}
+
+	private static void writeCounter(StringBuilder sb, String sample, StripedCounter counter) {
+		final long count = counter.sum();
+		if (count > 0) {
+			PrometheusFormat.sample(sb, sample, count);
+		}
+	}
+
+	void writeResponseHistogram(StringBuilder sb) {
+		PrometheusFormat.histogram(sb, PrometheusEndpoint.RESPONSE_SECONDS, this.labels, this.responseBuckets,
+				PrometheusFormat.SECONDS_LE, PrometheusFormat.MICROS_PER_SECOND);
+	}
+
+	void writePhaseHistograms(StringBuilder sb) {
+		for (int i = 0; i < this.phaseBuckets.length; i++) {
+			PrometheusFormat.histogram(sb, PrometheusEndpoint.PHASE_SECONDS, this.phaseLabels[i], this.phaseBuckets[i],
+					PrometheusFormat.SECONDS_LE, PrometheusFormat.MICROS_PER_SECOND);
+		}
+	}
+
+	void writePayloadHistograms(StringBuilder sb) {
+		for (int i = 0; i < this.payloadBuckets.length; i++) {
+			PrometheusFormat.histogram(sb, PrometheusEndpoint.PAYLOAD_BYTES, this.payloadLabels[i], this.payloadBuckets[i],
+					PrometheusFormat.BYTES_LE, 1);
+		}
+	}
+
+	private static void addCounter(Collection<Metric<?>> result, String name, StripedCounter counter) {
+		final long count = counter.sum();
+		if (count > 0) {
+			result.add(new Metric<Long>(name, count));
+		}
+	}
+
+	/**
+	 * 50 to "50", 99.9 to "999"
+	 */
+	static String percentileName(double percentile) {
+		String name = Double.toString(percentile);
+		if (name.endsWith(".0")) {
+			name = name.substring(0, name.length() - 2);
+		}
+		return name.replace(".", "");
+	}
+
+}
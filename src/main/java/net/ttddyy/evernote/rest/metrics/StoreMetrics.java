@@ -0,0 +1,107 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.social.evernote.api.NoteStoreOperations;
+import org.springframework.social.evernote.api.UserStoreOperations;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link StoreMethodMetrics} of every store method.
+ *
+ * Handles of all ~StoreOperations methods are created up front. Lookup is by store name and method name without
+ * building a metric name.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class StoreMetrics {
+
+	private final ConcurrentMap<String, StoreMethodMetrics> noteStoreMetrics = new ConcurrentHashMap<String, StoreMethodMetrics>();
+	private final ConcurrentMap<String, StoreMethodMetrics> userStoreMetrics = new ConcurrentHashMap<String, StoreMethodMetrics>();
+
+	private final long histogramWindowMillis;
+	private final int histogramIntervals;
+	private final List<Double> percentiles;
+
+	/**
+	 * @param percentiles percentiles of latency histograms to publish
+	 * @see LatencyHistogram#LatencyHistogram(long, int)
+	 */
+	public StoreMetrics(long histogramWindowMillis, int histogramIntervals, List<Double> percentiles) {
+		this.histogramWindowMillis = histogramWindowMillis;
+		this.histogramIntervals = histogramIntervals;
+		this.percentiles = percentiles;
+		for (Method method : NoteStoreOperations.class.getMethods()) {
+			get("noteStore", method.getName());
+		}
+		for (Method method : UserStoreOperations.class.getMethods()) {
+			get("userStore", method.getName());
+		}
+	}
+
+	/**
+	 * @param storeName "noteStore" or "userStore"
+	 * @return metrics of the method. created on first call if not a ~StoreOperations method.
+	 */
+	public StoreMethodMetrics get(String storeName, String methodName) {
+		final boolean noteStore = "noteStore".equals(storeName);
+		final ConcurrentMap<String, StoreMethodMetrics> metrics = noteStore ? this.noteStoreMetrics : this.userStoreMetrics;
+		StoreMethodMetrics methodMetrics = metrics.get(methodName);
+		if (methodMetrics == null) {
+			methodMetrics = new StoreMethodMetrics(noteStore ? "noteStore" : "userStore", methodName,
+					this.histogramWindowMillis, this.histogramIntervals);
+			final StoreMethodMetrics existing = metrics.putIfAbsent(methodName, methodMetrics);
+			if (existing != null) {
+				methodMetrics = existing;
+			}
+		}
+		return methodMetrics;
+	}
+
+	public Collection<Metric<?>> metrics() {
+		final List<Metric<?>> result = new ArrayList<Metric<?>>();
+		for (StoreMethodMetrics methodMetrics : this.userStoreMetrics.values()) {
+			methodMetrics.addMetrics(result, this.percentiles);
+		}
+		for (StoreMethodMetrics methodMetrics : this.noteStoreMetrics.values()) {
+			methodMetrics.addMetrics(result, this.percentiles);
+		}
+		return result;
+	}
+
+	/**
+	 * Write metric families of all store methods in prometheus text format.
+	 */
+	void writePrometheus(StringBuilder sb) {
+		final List<StoreMethodMetrics> all = new ArrayList<StoreMethodMetrics>(
+				this.userStoreMetrics.size() + this.noteStoreMetrics.size());
+		all.addAll(this.userStoreMetrics.values());
+		all.addAll(this.noteStoreMetrics.values());
+
+		PrometheusFormat.family(sb, PrometheusEndpoint.REQUESTS, "counter", "Store operation requests by outcome.");
+		for (StoreMethodMetrics methodMetrics : all) {
+			methodMetrics.writeRequests(sb);
+		}
+		PrometheusFormat.family(sb, PrometheusEndpoint.RESPONSE_SECONDS, "histogram",
+				"Response time of evernote since start.");
+		for (StoreMethodMetrics methodMetrics : all) {
+			methodMetrics.writeResponseHistogram(sb);
+		}
+		PrometheusFormat.family(sb, PrometheusEndpoint.PHASE_SECONDS, "histogram",
+				"Time spent in each phase of a request since start.");
+		for (StoreMethodMetrics methodMetrics : all) {
+			methodMetrics.writePhaseHistograms(sb);
+		}
+		PrometheusFormat.family(sb, PrometheusEndpoint.PAYLOAD_BYTES, "histogram",
+				"Payload sizes of requests since start.");
+		for (StoreMethodMetrics methodMetrics : all) {
+			methodMetrics.writePayloadHistograms(sb);
+		}
+	}
+
+}
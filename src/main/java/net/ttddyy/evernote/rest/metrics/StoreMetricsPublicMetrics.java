@@ -0,0 +1,33 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import org.springframework.boot.actuate.endpoint.VanillaPublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.actuate.metrics.reader.MetricReader;
+
+import java.util.Collection;
+
+/**
+ * Adds {@link StoreMetrics} and {@link InFlightCalls} to spring-boot's metrics in "/management/metrics".
+ *
+ * @author Tadaya Tsuyukubo
+ * @see StoreMethodMetrics
+ */
+public class StoreMetricsPublicMetrics extends VanillaPublicMetrics {
+
+	private final StoreMetrics storeMetrics;
+	private final InFlightCalls inFlightCalls;
+
+	public StoreMetricsPublicMetrics(MetricReader reader, StoreMetrics storeMetrics, InFlightCalls inFlightCalls) {
+		super(reader);
+		this.storeMetrics = storeMetrics;
+		this.inFlightCalls = inFlightCalls;
+	}
+
+	@Override
+	protected void addMetrics(Collection<Metric<?>> result) {
+		super.addMetrics(result);
+		result.addAll(this.storeMetrics.metrics());
+		this.inFlightCalls.addMetrics(result);
+	}
+
+}
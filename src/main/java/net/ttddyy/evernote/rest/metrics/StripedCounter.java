@@ -0,0 +1,45 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spread over cells indexed by thread id, like java 8's {@code LongAdder}.
+ *
+ * Threads incrementing at the same time mostly update different cells, instead of retrying CAS on one value. Cells
+ * are 64 bytes apart, so that they are not on the same cache line. {@link #sum()} adds up the cells.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class StripedCounter {
+
+	private static final int PADDING = 8;  // longs per cache line
+	private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+	/**
+	 * @return power of two, twice the processors at most 64
+	 */
+	static int stripes(int processors) {
+		final int stripes = Integer.highestOneBit(Math.max(1, processors) * 2 - 1) << 1;
+		return Math.min(stripes, 64);
+	}
+
+	public void increment() {
+		add(1);
+	}
+
+	public void add(long value) {
+		final int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+		this.cells.addAndGet(stripe * PADDING, value);
+	}
+
+	public long sum() {
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			sum += this.cells.get(i * PADDING);
+		}
+		return sum;
+	}
+
+}
@@ -0,0 +1,418 @@
+package net.ttddyy.evernote.rest.response;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses the response body once it reaches the minimum size.
+ *
+ * Up to "minSizeBytes" are buffered. When the body grows beyond that, and content type is compressible, compressed
+ * body is streamed with "Content-Encoding". Smaller bodies are written as they are with "Content-Length".
+ * Flushing before the size is known keeps the bytes buffered. A strong "ETag" becomes weak on compressed bodies, since
+ * the compressed bytes differ from the identity representation it was computed for.
+ * Buffers and deflaters are borrowed from {@link DeflaterPool}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class CompressingResponseWrapper extends HttpServletResponseWrapper {
+
+	static final String GZIP = "gzip";
+	static final String DEFLATE = "deflate";
+
+	// magic, CM=deflate, FLG, MTIME(4), XFL, OS=unknown
+	private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+	private final String encoding;
+	private final DeflaterPool deflaterPool;
+	private final int minSizeBytes;
+	private final Set<String> mimeTypes;
+
+	private CompressingOutputStream outputStream;
+	private PrintWriter writer;
+	private long contentLength = -1;  // deferred until the encoding is decided
+
+	CompressingResponseWrapper(HttpServletResponse response, String encoding, DeflaterPool deflaterPool,
+							   int minSizeBytes, Set<String> mimeTypes) {
+		super(response);
+		this.encoding = encoding;
+		this.deflaterPool = deflaterPool;
+		this.minSizeBytes = minSizeBytes;
+		this.mimeTypes = mimeTypes;
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() throws IOException {
+		if (this.writer != null) {
+			throw new IllegalStateException("getWriter() has already been called.");
+		}
+		return getCompressingOutputStream();
+	}
+
+	@Override
+	public PrintWriter getWriter() throws IOException {
+		if (this.writer == null) {
+			if (this.outputStream != null) {
+				throw new IllegalStateException("getOutputStream() has already been called.");
+			}
+			this.writer = new PrintWriter(new OutputStreamWriter(getCompressingOutputStream(), getCharacterEncoding()));
+		}
+		return this.writer;
+	}
+
+	private CompressingOutputStream getCompressingOutputStream() {
+		if (this.outputStream == null) {
+			this.outputStream = new CompressingOutputStream();
+		}
+		return this.outputStream;
+	}
+
+	@Override
+	public void setContentLength(int len) {
+		setLongContentLength(len);
+	}
+
+	private void setLongContentLength(long len) {
+		if (this.outputStream != null && this.outputStream.state == State.IDENTITY) {
+			writeContentLength(len);
+		} else {
+			this.contentLength = len;
+		}
+	}
+
+	/**
+	 * Servlet 3.0 has no long setter. Lengths over 2GB go as a header value.
+	 */
+	private void writeContentLength(long len) {
+		if (len <= Integer.MAX_VALUE) {
+			super.setContentLength((int) len);
+		} else {
+			super.setHeader("Content-Length", Long.toString(len));
+		}
+	}
+
+	@Override
+	public void setHeader(String name, String value) {
+		if ("Content-Length".equalsIgnoreCase(name) && isNumber(value)) {
+			setLongContentLength(Long.parseLong(value.trim()));
+		} else if ("ETag".equalsIgnoreCase(name) && isCompressed()) {
+			super.setHeader(name, weakETag(value));
+		} else {
+			super.setHeader(name, value);
+		}
+	}
+
+	@Override
+	public void addHeader(String name, String value) {
+		if ("Content-Length".equalsIgnoreCase(name) && isNumber(value)) {
+			setLongContentLength(Long.parseLong(value.trim()));
+		} else if ("ETag".equalsIgnoreCase(name) && isCompressed()) {
+			super.addHeader(name, weakETag(value));
+		} else {
+			super.addHeader(name, value);
+		}
+	}
+
+	/**
+	 * Values which are not a length are passed to the response as they are.
+	 */
+	private static boolean isNumber(String value) {
+		if (value == null) {
+			return false;
+		}
+		try {
+			return Long.parseLong(value.trim()) >= 0;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private static String weakETag(String etag) {
+		return etag == null || etag.startsWith("W/") ? etag : "W/" + etag;
+	}
+
+	@Override
+	public void setIntHeader(String name, int value) {
+		if ("Content-Length".equalsIgnoreCase(name)) {
+			setContentLength(value);
+		} else {
+			super.setIntHeader(name, value);
+		}
+	}
+
+	@Override
+	public void addIntHeader(String name, int value) {
+		if ("Content-Length".equalsIgnoreCase(name)) {
+			setContentLength(value);
+		} else {
+			super.addIntHeader(name, value);
+		}
+	}
+
+	@Override
+	public void flushBuffer() throws IOException {
+		if (this.writer != null) {
+			this.writer.flush();
+		} else if (this.outputStream != null) {
+			this.outputStream.flush();
+		}
+		if (this.outputStream == null || this.outputStream.state != State.UNDECIDED) {
+			super.flushBuffer();
+		}
+	}
+
+	@Override
+	public void resetBuffer() {
+		super.resetBuffer();
+		if (this.outputStream != null && this.outputStream.state == State.UNDECIDED) {
+			this.outputStream.count = 0;
+		}
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		this.contentLength = -1;
+		if (this.outputStream != null && this.outputStream.state == State.UNDECIDED) {
+			this.outputStream.count = 0;
+		}
+	}
+
+	/**
+	 * Write out buffered or remaining compressed bytes.
+	 */
+	void finish() throws IOException {
+		if (this.writer != null) {
+			this.writer.flush();
+		}
+		if (this.outputStream != null) {
+			this.outputStream.finish();
+		} else if (this.contentLength >= 0) {
+			writeContentLength(this.contentLength);
+		}
+	}
+
+	/**
+	 * Return deflater and buffers to the pool when they are still held. (e.g. exception while writing)
+	 */
+	void release() {
+		if (this.outputStream != null) {
+			this.outputStream.release();
+		}
+	}
+
+	boolean isCompressed() {
+		return this.outputStream != null && this.outputStream.state == State.COMPRESSED;
+	}
+
+	private boolean isCompressible() {
+		final int status = getStatus();
+		if (status == SC_PARTIAL_CONTENT || status == SC_NO_CONTENT || status == SC_NOT_MODIFIED) {
+			return false;
+		}
+		if (getHeader("Content-Encoding") != null) {
+			return false;
+		}
+		final String contentType = getContentType();
+		if (contentType == null) {
+			return false;
+		}
+		final int semicolon = contentType.indexOf(';');
+		final String mimeType = (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim().toLowerCase();
+		return this.mimeTypes.contains(mimeType);
+	}
+
+	private enum State {
+		UNDECIDED, IDENTITY, COMPRESSED
+	}
+
+	private class CompressingOutputStream extends ServletOutputStream {
+
+		private State state = State.UNDECIDED;
+		private byte[] buffer;  // body until the size is known, then single bytes waiting to be compressed
+		private int count;
+
+		private ServletOutputStream out;
+		private Deflater deflater;
+		private byte[] deflateBuffer;
+		private CRC32 crc;
+		private boolean finished;
+
+		@Override
+		public void write(int b) throws IOException {
+			if (this.finished) {
+				return;
+			}
+			if (this.state == State.UNDECIDED && this.count + 1 >= minSizeBytes) {
+				decide(true);
+			}
+			if (this.state == State.IDENTITY) {
+				this.out.write(b);
+				return;
+			}
+			if (this.buffer == null) {
+				this.buffer = deflaterPool.borrowBuffer(minSizeBytes);
+			} else if (this.count == this.buffer.length) {
+				compressBuffered();
+			}
+			this.buffer[this.count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len == 0 || this.finished) {
+				return;
+			}
+			if (this.state == State.UNDECIDED) {
+				if (this.count + len < minSizeBytes) {
+					if (this.buffer == null) {
+						this.buffer = deflaterPool.borrowBuffer(minSizeBytes);
+					}
+					System.arraycopy(b, off, this.buffer, this.count, len);
+					this.count += len;
+					return;
+				}
+				decide(true);
+			}
+			if (this.state == State.COMPRESSED) {
+				compressBuffered();
+				compress(b, off, len);
+			} else {
+				this.out.write(b, off, len);
+			}
+		}
+
+		private void decide(boolean large) throws IOException {
+			if (large && isCompressible()) {
+				this.state = State.COMPRESSED;
+				CompressingResponseWrapper.super.setHeader("Content-Encoding", encoding);
+				final String etag = getHeader("ETag");
+				if (etag != null) {
+					CompressingResponseWrapper.super.setHeader("ETag", weakETag(etag));
+				}
+				this.out = CompressingResponseWrapper.super.getOutputStream();
+				this.deflater = deflaterPool.borrow();
+				this.deflateBuffer = deflaterPool.borrowBuffer(DeflaterPool.BUFFER_BYTES);
+				if (GZIP.equals(encoding)) {
+					this.crc = new CRC32();
+					this.out.write(GZIP_HEADER);
+				}
+				compressBuffered();
+			} else {
+				this.state = State.IDENTITY;
+				if (contentLength >= 0) {
+					writeContentLength(contentLength);
+				} else if (!large) {
+					writeContentLength(this.count);  // whole body is buffered
+				}
+				this.out = CompressingResponseWrapper.super.getOutputStream();
+				if (this.count > 0) {
+					this.out.write(this.buffer, 0, this.count);
+				}
+				this.count = 0;
+				releaseBuffer();  // no more buffering
+			}
+		}
+
+		private void compressBuffered() throws IOException {
+			if (this.count > 0) {
+				compress(this.buffer, 0, this.count);
+				this.count = 0;
+			}
+		}
+
+		private void compress(byte[] b, int off, int len) throws IOException {
+			if (this.crc != null) {
+				this.crc.update(b, off, len);
+			}
+			this.deflater.setInput(b, off, len);
+			while (!this.deflater.needsInput()) {
+				deflate();
+			}
+		}
+
+		private void deflate() throws IOException {
+			final int length = this.deflater.deflate(this.deflateBuffer, 0, this.deflateBuffer.length);
+			if (length > 0) {
+				this.out.write(this.deflateBuffer, 0, length);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			// java6 deflater cannot sync-flush. compressed blocks are sent as zlib emits them.
+			if (this.state == State.COMPRESSED) {
+				compressBuffered();
+			}
+			if (this.state != State.UNDECIDED) {
+				this.out.flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			finish();
+		}
+
+		void finish() throws IOException {
+			if (this.finished) {
+				return;
+			}
+			this.finished = true;
+			if (this.state == State.UNDECIDED) {
+				decide(false);
+			}
+			if (this.state == State.COMPRESSED) {
+				try {
+					compressBuffered();
+					this.deflater.finish();
+					while (!this.deflater.finished()) {
+						deflate();
+					}
+					if (this.crc != null) {
+						// all deflated bytes are written, so the trailer reuses the deflate buffer
+						putIntLE(this.deflateBuffer, 0, (int) this.crc.getValue());
+						putIntLE(this.deflateBuffer, 4, this.deflater.getTotalIn());  // ISIZE: input size mod 2^32
+						this.out.write(this.deflateBuffer, 0, 8);
+					}
+				} finally {
+					release();
+				}
+			}
+		}
+
+		private void putIntLE(byte[] b, int off, int value) {
+			b[off] = (byte) value;
+			b[off + 1] = (byte) (value >> 8);
+			b[off + 2] = (byte) (value >> 16);
+			b[off + 3] = (byte) (value >> 24);
+		}
+
+		void release() {
+			if (this.deflater != null) {
+				deflaterPool.release(this.deflater);
+				this.deflater = null;
+			}
+			if (this.deflateBuffer != null) {
+				deflaterPool.releaseBuffer(this.deflateBuffer);
+				this.deflateBuffer = null;
+			}
+			releaseBuffer();
+		}
+
+		private void releaseBuffer() {
+			if (this.buffer != null) {
+				deflaterPool.releaseBuffer(this.buffer);
+				this.buffer = null;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,105 @@
+package net.ttddyy.evernote.rest.response;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.embedded.FilterRegistrationBean;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Response and request body compression. Disabled by "evernote.compression.enabled=false".
+ *
+ * @author Tadaya Tsuyukubo
+ */
+@Configuration
+@ConditionalOnExpression("${evernote.compression.enabled:true}")
+public class CompressionConfiguration {
+
+	@Autowired
+	public CompressionPropertiesConfiguration compressionPropertiesConfiguration;
+
+
+	@Configuration
+	@ConfigurationProperties("evernote.compression")
+	public static class CompressionPropertiesConfiguration {
+
+		public boolean enabled = true;
+		public int minSizeBytes = 1024;  // smaller responses are sent uncompressed
+		public Map<String, Integer> methodMinSizeBytes = new HashMap<String, Integer>();  // per operation. negative disables
+		public List<String> mimeTypes = Arrays.asList("application/json", "application/x-ndjson", "text/plain", "text/html");
+		public int level = Deflater.DEFAULT_COMPRESSION;
+		public int maxIdleDeflaters = 64;
+		public boolean requestDecompression = true;  // accept "Content-Encoding: gzip|deflate" request bodies
+		public long maxDecompressedRequestBytes = 200L * 1024 * 1024;
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public void setMinSizeBytes(int minSizeBytes) {
+			this.minSizeBytes = minSizeBytes;
+		}
+
+		public void setMethodMinSizeBytes(Map<String, Integer> methodMinSizeBytes) {
+			this.methodMinSizeBytes = methodMinSizeBytes;
+		}
+
+		public void setMimeTypes(List<String> mimeTypes) {
+			this.mimeTypes = mimeTypes;
+		}
+
+		public void setLevel(int level) {
+			this.level = level;
+		}
+
+		public void setMaxIdleDeflaters(int maxIdleDeflaters) {
+			this.maxIdleDeflaters = maxIdleDeflaters;
+		}
+
+		public void setRequestDecompression(boolean requestDecompression) {
+			this.requestDecompression = requestDecompression;
+		}
+
+		public void setMaxDecompressedRequestBytes(long maxDecompressedRequestBytes) {
+			this.maxDecompressedRequestBytes = maxDecompressedRequestBytes;
+		}
+
+	}
+
+	@Bean(destroyMethod = "destroy")
+	public DeflaterPool gzipDeflaterPool() {
+		final CompressionPropertiesConfiguration properties = this.compressionPropertiesConfiguration;
+		return new DeflaterPool(properties.level, true, properties.maxIdleDeflaters);
+	}
+
+	@Bean(destroyMethod = "destroy")
+	public DeflaterPool deflateDeflaterPool() {
+		final CompressionPropertiesConfiguration properties = this.compressionPropertiesConfiguration;
+		return new DeflaterPool(properties.level, false, properties.maxIdleDeflaters);
+	}
+
+	@Bean
+	public FilterRegistrationBean compressionFilterRegistration() {
+		final CompressionPropertiesConfiguration properties = this.compressionPropertiesConfiguration;
+		final CompressionFilter filter = new CompressionFilter(gzipDeflaterPool(), deflateDeflaterPool());
+		filter.setMinSizeBytes(properties.minSizeBytes);
+		filter.setMethodMinSizeBytes(properties.methodMinSizeBytes);
+		filter.setMimeTypes(new HashSet<String>(properties.mimeTypes));
+		filter.setRequestDecompression(properties.requestDecompression);
+		filter.setMaxDecompressedRequestBytes(properties.maxDecompressedRequestBytes);
+
+		final FilterRegistrationBean registration = new FilterRegistrationBean(filter);
+		registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);  // after metrics filter, before everything else
+		return registration;
+	}
+
+}
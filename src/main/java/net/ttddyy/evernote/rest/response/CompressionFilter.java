@@ -0,0 +1,156 @@
+package net.ttddyy.evernote.rest.response;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compresses responses by "Accept-Encoding"(gzip, deflate), and inflates "Content-Encoding" compressed request bodies.
+ *
+ * Minimum response size to compress can be overridden per operation, keyed by the last path segment of the request.
+ * (e.g. "getSyncChunk" for "/noteStore/getSyncChunk") Negative size disables compression for the operation.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class CompressionFilter extends OncePerRequestFilter {
+
+	private final DeflaterPool gzipDeflaterPool;
+	private final DeflaterPool deflateDeflaterPool;
+
+	private int minSizeBytes = 1024;
+	private Map<String, Integer> methodMinSizeBytes = new HashMap<String, Integer>();
+	private Set<String> mimeTypes = new HashSet<String>();
+	private boolean requestDecompression = true;
+	private long maxDecompressedRequestBytes = 200L * 1024 * 1024;
+
+	public CompressionFilter(DeflaterPool gzipDeflaterPool, DeflaterPool deflateDeflaterPool) {
+		this.gzipDeflaterPool = gzipDeflaterPool;
+		this.deflateDeflaterPool = deflateDeflaterPool;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		if (this.requestDecompression) {
+			final String contentEncoding = resolveEncoding(request.getHeader("Content-Encoding"));
+			if (contentEncoding != null) {
+				request = new DecompressingRequestWrapper(request, contentEncoding, this.maxDecompressedRequestBytes);
+			}
+		}
+
+		final int minSize = resolveMinSizeBytes(request);
+		if (minSize < 0) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+
+		response.addHeader("Vary", "Accept-Encoding");
+		final String encoding = selectEncoding(request.getHeader("Accept-Encoding"));
+		if (encoding == null) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+
+		final DeflaterPool pool = CompressingResponseWrapper.GZIP.equals(encoding) ? this.gzipDeflaterPool : this.deflateDeflaterPool;
+		final CompressingResponseWrapper wrapper = new CompressingResponseWrapper(response, encoding, pool, minSize, this.mimeTypes);
+		try {
+			filterChain.doFilter(request, wrapper);
+			wrapper.finish();
+		} finally {
+			wrapper.release();
+		}
+	}
+
+	private int resolveMinSizeBytes(HttpServletRequest request) {
+		final String uri = request.getRequestURI();
+		final String methodName = uri.substring(uri.lastIndexOf('/') + 1);
+		final Integer methodMinSize = this.methodMinSizeBytes.get(methodName);
+		return methodMinSize == null ? this.minSizeBytes : methodMinSize;
+	}
+
+	private static String resolveEncoding(String contentEncoding) {
+		if (contentEncoding == null) {
+			return null;
+		}
+		final String value = contentEncoding.trim().toLowerCase();
+		if (CompressingResponseWrapper.GZIP.equals(value) || "x-gzip".equals(value)) {
+			return CompressingResponseWrapper.GZIP;
+		} else if (CompressingResponseWrapper.DEFLATE.equals(value)) {
+			return CompressingResponseWrapper.DEFLATE;
+		}
+		return null;
+	}
+
+	/**
+	 * Prefer gzip, then deflate. Encodings with "q=0" are not acceptable.
+	 */
+	static String selectEncoding(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return null;
+		}
+		boolean gzip = false;
+		boolean deflate = false;
+		for (String token : acceptEncoding.split(",")) {
+			final String[] parts = token.split(";");
+			final String coding = parts[0].trim().toLowerCase();
+			if (!isAcceptable(parts)) {
+				continue;
+			}
+			if (CompressingResponseWrapper.GZIP.equals(coding) || "x-gzip".equals(coding) || "*".equals(coding)) {
+				gzip = true;
+			} else if (CompressingResponseWrapper.DEFLATE.equals(coding)) {
+				deflate = true;
+			}
+		}
+		return gzip ? CompressingResponseWrapper.GZIP : deflate ? CompressingResponseWrapper.DEFLATE : null;
+	}
+
+	private static boolean isAcceptable(String[] parts) {
+		for (int i = 1; i < parts.length; i++) {
+			final String param = parts[i].trim();
+			if (param.startsWith("q=")) {
+				try {
+					return Double.parseDouble(param.substring(2)) > 0;
+				} catch (NumberFormatException e) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	public void setMinSizeBytes(int minSizeBytes) {
+		this.minSizeBytes = minSizeBytes;
+	}
+
+	public void setMethodMinSizeBytes(Map<String, Integer> methodMinSizeBytes) {
+		this.methodMinSizeBytes = methodMinSizeBytes;
+	}
+
+	public void setMimeTypes(Set<String> mimeTypes) {
+		final Set<String> lowerCased = new HashSet<String>();
+		for (String mimeType : mimeTypes) {
+			lowerCased.add(mimeType.trim().toLowerCase());
+		}
+		this.mimeTypes = Collections.unmodifiableSet(lowerCased);
+	}
+
+	public void setRequestDecompression(boolean requestDecompression) {
+		this.requestDecompression = requestDecompression;
+	}
+
+	public void setMaxDecompressedRequestBytes(long maxDecompressedRequestBytes) {
+		this.maxDecompressedRequestBytes = maxDecompressedRequestBytes;
+	}
+
+}
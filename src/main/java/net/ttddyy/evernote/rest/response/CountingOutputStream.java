@@ -0,0 +1,36 @@
+package net.ttddyy.evernote.rest.response;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Counts bytes written to the underlying stream.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+	private long count;
+
+	public CountingOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		this.out.write(b);
+		this.count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		this.out.write(b, off, len);  // FilterOutputStream writes byte by byte
+		this.count += len;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+}
@@ -0,0 +1,132 @@
+package net.ttddyy.evernote.rest.response;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Inflates "Content-Encoding: gzip" or "deflate" request body while it is read.
+ *
+ * Inflated size is limited to protect from compression bombs.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class DecompressingRequestWrapper extends HttpServletRequestWrapper {
+
+	private final String encoding;
+	private final long maxBytes;
+	private ServletInputStream inputStream;
+	private BufferedReader reader;
+
+	DecompressingRequestWrapper(HttpServletRequest request, String encoding, long maxBytes) {
+		super(request);
+		this.encoding = encoding;
+		this.maxBytes = maxBytes;
+	}
+
+	@Override
+	public ServletInputStream getInputStream() throws IOException {
+		if (this.inputStream == null) {
+			final InputStream raw = super.getInputStream();
+			final InputStream in = CompressingResponseWrapper.GZIP.equals(this.encoding) ?
+					new GZIPInputStream(raw, 8 * 1024) : new InflaterInputStream(raw);
+			this.inputStream = new LimitedServletInputStream(in, this.maxBytes);
+		}
+		return this.inputStream;
+	}
+
+	@Override
+	public BufferedReader getReader() throws IOException {
+		if (this.reader == null) {
+			final String characterEncoding = getCharacterEncoding();
+			this.reader = new BufferedReader(new InputStreamReader(getInputStream(),
+					characterEncoding == null ? "ISO-8859-1" : characterEncoding));
+		}
+		return this.reader;
+	}
+
+	@Override
+	public int getContentLength() {
+		return -1;  // inflated length is unknown
+	}
+
+	@Override
+	public String getHeader(String name) {
+		if (isHiddenHeader(name)) {
+			return null;
+		}
+		return super.getHeader(name);
+	}
+
+	@Override
+	public Enumeration<String> getHeaders(String name) {
+		if (isHiddenHeader(name)) {
+			return Collections.enumeration(Collections.<String>emptyList());
+		}
+		return super.getHeaders(name);
+	}
+
+	@Override
+	public int getIntHeader(String name) {
+		if (isHiddenHeader(name)) {
+			return -1;
+		}
+		return super.getIntHeader(name);
+	}
+
+	private static boolean isHiddenHeader(String name) {
+		return "Content-Encoding".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name);
+	}
+
+	private static class LimitedServletInputStream extends ServletInputStream {
+
+		private final InputStream in;
+		private final long maxBytes;
+		private long read;
+
+		private LimitedServletInputStream(InputStream in, long maxBytes) {
+			this.in = in;
+			this.maxBytes = maxBytes;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = this.in.read();
+			if (b >= 0) {
+				count(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			final int length = this.in.read(b, off, len);
+			if (length > 0) {
+				count(length);
+			}
+			return length;
+		}
+
+		private void count(int length) throws IOException {
+			this.read += length;
+			if (this.maxBytes > 0 && this.read > this.maxBytes) {
+				throw new IOException("Decompressed request body exceeds " + this.maxBytes + " bytes.");
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.in.close();
+		}
+
+	}
+
+}
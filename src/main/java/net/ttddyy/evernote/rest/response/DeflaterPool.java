@@ -0,0 +1,102 @@
+package net.ttddyy.evernote.rest.response;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Keeps idle {@link Deflater}s and byte buffers for reuse.
+ *
+ * A deflater holds native zlib buffers(hundreds of KB) which are only freed by {@link Deflater#end()} or
+ * finalization. Reusing them avoids allocating those buffers for every compressed response.
+ * Byte buffers are at least {@link #BUFFER_BYTES}, so one pooled buffer fits any use up to that size.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class DeflaterPool {
+
+	public static final int BUFFER_BYTES = 8 * 1024;
+	private static final int MAX_IDLE_BUFFER_BYTES = 1024 * 1024;  // do not keep buffers for huge minimum sizes
+
+	private final int level;
+	private final boolean nowrap;
+	private final int maxIdle;
+
+	private final Queue<Deflater> idle = new ConcurrentLinkedQueue<Deflater>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+	private final Queue<byte[]> idleBuffers = new ConcurrentLinkedQueue<byte[]>();
+	private final AtomicInteger idleBufferCount = new AtomicInteger();
+
+	/**
+	 * @param nowrap true for raw deflate data(used by gzip), false for zlib format(used by "deflate" encoding)
+	 * @param maxIdle number of deflaters to keep. extra released deflaters are ended. twice as many buffers are kept.
+	 */
+	public DeflaterPool(int level, boolean nowrap, int maxIdle) {
+		this.level = level;
+		this.nowrap = nowrap;
+		this.maxIdle = maxIdle;
+	}
+
+	public Deflater borrow() {
+		final Deflater deflater = this.idle.poll();
+		if (deflater == null) {
+			return new Deflater(this.level, this.nowrap);
+		}
+		this.idleCount.decrementAndGet();
+		return deflater;
+	}
+
+	public void release(Deflater deflater) {
+		deflater.reset();
+		if (this.idleCount.incrementAndGet() <= this.maxIdle) {
+			this.idle.offer(deflater);
+		} else {
+			this.idleCount.decrementAndGet();
+			deflater.end();
+		}
+	}
+
+	/**
+	 * @return buffer of at least given length and {@link #BUFFER_BYTES}
+	 */
+	public byte[] borrowBuffer(int minLength) {
+		final int length = Math.max(minLength, BUFFER_BYTES);
+		final byte[] buffer = this.idleBuffers.poll();
+		if (buffer == null) {
+			return new byte[length];
+		}
+		this.idleBufferCount.decrementAndGet();
+		return buffer.length < length ? new byte[length] : buffer;
+	}
+
+	public void releaseBuffer(byte[] buffer) {
+		if (buffer.length > MAX_IDLE_BUFFER_BYTES) {
+			return;
+		}
+		if (this.idleBufferCount.incrementAndGet() <= this.maxIdle * 2) {  // two buffers per compressing response
+			this.idleBuffers.offer(buffer);
+		} else {
+			this.idleBufferCount.decrementAndGet();
+		}
+	}
+
+	public int getIdleCount() {
+		return this.idleCount.get();
+	}
+
+	public int getIdleBufferCount() {
+		return this.idleBufferCount.get();
+	}
+
+	public void destroy() {
+		Deflater deflater;
+		while ((deflater = this.idle.poll()) != null) {
+			this.idleCount.decrementAndGet();
+			deflater.end();
+		}
+		this.idleBuffers.clear();
+		this.idleBufferCount.set(0);
+	}
+
+}
@@ -0,0 +1,162 @@
+package net.ttddyy.evernote.rest.response;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsonFormatVisitors.JsonObjectFormatVisitor;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.PropertyFilter;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import net.ttddyy.evernote.rest.Application;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Result to be written with only the fields selected by "fields" parameter.
+ *
+ * Fields are filtered while serializing, so unselected subtrees(e.g. resource data) are never visited nor encoded.
+ * Message converters write this with an ObjectMapper from {@link #createObjectMapper(JsonFactory, boolean)}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class FieldProjection {
+
+	private static final String FILTER_ID = "fieldProjection";
+
+	private final Object value;
+	private final FieldSelector selector;
+
+	public FieldProjection(Object value, FieldSelector selector) {
+		this.value = value;
+		this.selector = selector;
+	}
+
+	/**
+	 * @return projection of the value, or value itself when no fields are specified or value has no properties
+	 */
+	public static Object of(Object value, String fields) {
+		if (value == null || fields == null || fields.trim().length() == 0 || !hasProperties(value)) {
+			return value;
+		}
+		return new FieldProjection(value, FieldSelector.parse(fields));
+	}
+
+	/**
+	 * Scalars(e.g. String, numbers) and collections of them have nothing to select, and are written as they are.
+	 */
+	private static boolean hasProperties(Object value) {
+		if (value instanceof Collection) {
+			for (Object element : (Collection<?>) value) {
+				if (element != null) {
+					return hasProperties(element);
+				}
+			}
+			return false;
+		}
+		return !(value instanceof CharSequence || value instanceof Number || value instanceof Boolean
+				|| value instanceof Character || value instanceof Enum || value instanceof byte[]);
+	}
+
+	/**
+	 * @return value of the projection, or the object itself if it is not a projection
+	 */
+	public static Object unwrap(Object object) {
+		return object instanceof FieldProjection ? ((FieldProjection) object).getValue() : object;
+	}
+
+	public Object getValue() {
+		return value;
+	}
+
+	public FieldSelector getSelector() {
+		return selector;
+	}
+
+	/**
+	 * Write the value with ObjectMapper created by {@link #createObjectMapper(JsonFactory, boolean)}.
+	 */
+	public void write(ObjectMapper projectionObjectMapper, JsonGenerator generator) throws IOException {
+		final FilterProvider filters = new SimpleFilterProvider().addFilter(FILTER_ID, new SelectorPropertyFilter(this.selector));
+		projectionObjectMapper.writer(filters).writeValue(generator, this.value);
+	}
+
+	/**
+	 * Same serialization rules as {@link Application#createObjectMapper(JsonFactory, boolean)}, plus filtering by
+	 * selector.
+	 */
+	public static ObjectMapper createObjectMapper(JsonFactory jsonFactory, boolean skipUnsetFields) {
+		final ObjectMapper mapper = Application.createObjectMapper(jsonFactory, skipUnsetFields);
+		mapper.addMixInAnnotations(Object.class, ProjectionMixin.class);  // replaces thrift mix-in
+		return mapper;
+	}
+
+	@JsonFilter(FILTER_ID)
+	@JsonIgnoreProperties("__isset_vector")
+	private static abstract class ProjectionMixin {
+	}
+
+	/**
+	 * Resolve the path of the object being written from generator's output context, and write only selected fields.
+	 */
+	private static class SelectorPropertyFilter implements PropertyFilter {
+
+		private final FieldSelector root;
+
+		private SelectorPropertyFilter(FieldSelector root) {
+			this.root = root;
+		}
+
+		@Override
+		public void serializeAsField(Object pojo, JsonGenerator jgen, SerializerProvider prov, PropertyWriter writer)
+				throws Exception {
+			final FieldSelector selector = resolve(jgen.getOutputContext());
+			if (selector != null && selector.child(writer.getName()) != null) {
+				writer.serializeAsField(pojo, jgen, prov);
+			}
+		}
+
+		/**
+		 * @param context context of the object whose fields are being written
+		 * @return selector for the object, null if not selected
+		 */
+		private FieldSelector resolve(JsonStreamContext context) {
+			JsonStreamContext parent = context.getParent();
+			while (parent != null && parent.inArray()) {
+				parent = parent.getParent();  // list elements share the selector of the list
+			}
+			if (parent == null || parent.inRoot()) {
+				return this.root;
+			}
+			final FieldSelector parentSelector = resolve(parent);
+			return parentSelector == null ? null : parentSelector.child(parent.getCurrentName());
+		}
+
+		@Override
+		public void serializeAsElement(Object elementValue, JsonGenerator jgen, SerializerProvider prov,
+									   PropertyWriter writer) throws Exception {
+			writer.serializeAsElement(elementValue, jgen, prov);
+		}
+
+		@Override
+		@Deprecated
+		public void depositSchemaProperty(PropertyWriter writer, ObjectNode propertiesNode, SerializerProvider provider)
+				throws JsonMappingException {
+			writer.depositSchemaProperty(propertiesNode, provider);
+		}
+
+		@Override
+		public void depositSchemaProperty(PropertyWriter writer, JsonObjectFormatVisitor objectVisitor,
+										  SerializerProvider provider) throws JsonMappingException {
+			writer.depositSchemaProperty(objectVisitor);
+		}
+	}
+
+}
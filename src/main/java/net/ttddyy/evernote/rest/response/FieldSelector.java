@@ -0,0 +1,63 @@
+package net.ttddyy.evernote.rest.response;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tree of field names selected by "fields" parameter. (e.g. "guid,title,resources.guid")
+ *
+ * Dotted name selects a nested field. Lists are transparent, so "resources.guid" selects guid of every resource.
+ * Selecting a field without nested names selects its whole subtree.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class FieldSelector {
+
+	private static final FieldSelector ALL = new FieldSelector(null);
+
+	private final Map<String, FieldSelector> children;  // null means every field
+
+	private FieldSelector(Map<String, FieldSelector> children) {
+		this.children = children;
+	}
+
+	/**
+	 * @param fields comma separated field names
+	 */
+	public static FieldSelector parse(String fields) {
+		final FieldSelector root = new FieldSelector(new HashMap<String, FieldSelector>());
+		for (String field : fields.split(",")) {
+			field = field.trim();
+			if (field.length() == 0) {
+				continue;
+			}
+			final String[] names = field.split("\\.");
+			FieldSelector node = root;
+			for (int i = 0; i < names.length && !node.isAll(); i++) {
+				if (i == names.length - 1) {
+					node.children.put(names[i], ALL);
+				} else {
+					FieldSelector child = node.children.get(names[i]);
+					if (child == null) {
+						child = new FieldSelector(new HashMap<String, FieldSelector>());
+						node.children.put(names[i], child);
+					}
+					node = child;
+				}
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * @return selector for the nested field, or null when the field is not selected
+	 */
+	public FieldSelector child(String name) {
+		return this.children == null ? this : this.children.get(name);
+	}
+
+	public boolean isAll() {
+		return this.children == null;
+	}
+
+}
@@ -0,0 +1,116 @@
+package net.ttddyy.evernote.rest.response;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.ttddyy.evernote.rest.jfr.FlightRecorderEvent;
+import net.ttddyy.evernote.rest.jfr.FlightRecorderEvents;
+import net.ttddyy.evernote.rest.metrics.RequestTiming;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+
+/**
+ * Reads and writes jackson binary data formats such as smile and cbor.
+ *
+ * Supported media type carries low quality value(q=0.5) so that json is chosen for "Accept: *&#47;*" or no "Accept"
+ * header. Binary format is only used when a client explicitly asks for it.
+ *
+ * Not a subclass of {@link org.springframework.http.converter.json.MappingJackson2HttpMessageConverter}, since
+ * spring-boot replaces the default json converter with any additional converter of that type.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class JacksonBinaryHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+	private final ObjectMapper objectMapper;
+	private ObjectMapper projectionObjectMapper;
+	private int flushThresholdBytes;
+	private FlightRecorderEvents flightRecorderEvents;
+
+	public JacksonBinaryHttpMessageConverter(ObjectMapper objectMapper, MediaType mediaType) {
+		super(new MediaType(mediaType, Collections.<String, String>singletonMap("q", "0.5")));
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return true;
+	}
+
+	@Override
+	protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+		final JavaType javaType = this.objectMapper.getTypeFactory().constructType(clazz);
+		final long start = System.nanoTime();
+		try {
+			return this.objectMapper.readValue(inputMessage.getBody(), javaType);
+		} catch (IOException e) {
+			throw new HttpMessageNotReadableException("Could not read " + getSupportedMediaTypes() + ": " + e.getMessage(), e);
+		} finally {
+			RequestTiming.addCurrent(RequestTiming.Phase.BIND, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	protected void writeInternal(Object object, HttpOutputMessage outputMessage) throws IOException {
+		final FlightRecorderEvent.Serialize event = this.flightRecorderEvents == null ? null : this.flightRecorderEvents.beginSerialize();
+		final long start = System.nanoTime();
+		final CountingOutputStream body = event == null ? null : new CountingOutputStream(outputMessage.getBody());
+		final OutputStream out = new ThresholdFlushingOutputStream(body == null ? outputMessage.getBody() : body, this.flushThresholdBytes);
+		final JsonGenerator generator = this.objectMapper.getFactory().createGenerator(out);
+		try {
+			if (object instanceof FieldProjection && this.projectionObjectMapper != null) {
+				((FieldProjection) object).write(this.projectionObjectMapper, generator);
+			} else if (object instanceof FieldProjection) {
+				this.objectMapper.writeValue(generator, ((FieldProjection) object).getValue());
+			} else {
+				this.objectMapper.writeValue(generator, object);
+			}
+			generator.flush();
+			if (event != null) {
+				this.flightRecorderEvents.commitSerialize(event, FieldProjection.unwrap(object),
+						String.valueOf(outputMessage.getHeaders().getContentType()), body.getCount());
+			}
+		} catch (IOException e) {
+			throw new HttpMessageNotWritableException("Could not write " + getSupportedMediaTypes() + ": " + e.getMessage(), e);
+		} finally {
+			RequestTiming.addCurrent(RequestTiming.Phase.SERIALIZE, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	protected MediaType getDefaultContentType(Object o) throws IOException {
+		final MediaType mediaType = getSupportedMediaTypes().get(0);
+		return new MediaType(mediaType.getType(), mediaType.getSubtype(), Collections.<String, String>emptyMap());
+	}
+
+	public void setFlushThresholdBytes(int flushThresholdBytes) {
+		this.flushThresholdBytes = flushThresholdBytes;
+	}
+
+	/**
+	 * @see FieldProjection#createObjectMapper(com.fasterxml.jackson.core.JsonFactory, boolean)
+	 */
+	public void setProjectionObjectMapper(ObjectMapper projectionObjectMapper) {
+		this.projectionObjectMapper = projectionObjectMapper;
+	}
+
+	/**
+	 * @param flightRecorderEvents null not to record serialization events
+	 */
+	public void setFlightRecorderEvents(FlightRecorderEvents flightRecorderEvents) {
+		this.flightRecorderEvents = flightRecorderEvents;
+	}
+
+	public ObjectMapper getObjectMapper() {
+		return objectMapper;
+	}
+
+}
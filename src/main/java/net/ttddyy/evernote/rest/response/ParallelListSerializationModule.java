@@ -0,0 +1,333 @@
+package net.ttddyy.evernote.rest.response;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.core.json.UTF8JsonGenerator;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.ResolvableSerializer;
+import com.fasterxml.jackson.databind.type.CollectionType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Jackson module to serialize large lists(e.g. notes, notebooks and tags of a full account {@code SyncChunk}) on
+ * multiple threads.
+ *
+ * A list with at least {@code minElements} elements is split into slices of {@code sliceSize} elements. Each slice is
+ * serialized as a json array by its own generator into a pooled buffer, and the elements are copied to the response
+ * stream in order. Output is byte-for-byte the same as the normal serialization.
+ *
+ * Slices run on the given executor. The writing thread runs a slice itself when the executor has not started it yet,
+ * so busy executor threads only reduce parallelism. At most {@code maxPendingSlices} slices of a list are buffered.
+ * Lists inside a slice are serialized normally.
+ *
+ * Only used for json written with UTF-8 to a stream without pretty printing. Otherwise, the list is serialized
+ * normally.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class ParallelListSerializationModule extends Module {
+
+	private static final ThreadLocal<Boolean> IN_SLICE = new ThreadLocal<Boolean>();
+
+	private final Executor executor;
+	private final int minElements;
+	private final int sliceSize;
+	private final int maxPendingSlices;
+	private final BufferPool bufferPool;
+
+	private ObjectMapper objectMapper;
+
+	/**
+	 * @param minElements smaller lists are serialized normally
+	 * @param sliceSize   number of elements serialized by one task
+	 */
+	public ParallelListSerializationModule(Executor executor, int minElements, int sliceSize, int maxPendingSlices) {
+		this.executor = executor;
+		this.minElements = minElements;
+		this.sliceSize = Math.max(1, sliceSize);
+		this.maxPendingSlices = Math.max(1, maxPendingSlices);
+		this.bufferPool = new BufferPool(maxPendingSlices);
+	}
+
+	@Override
+	public String getModuleName() {
+		return "ParallelListSerializationModule";
+	}
+
+	@Override
+	public Version version() {
+		return Version.unknownVersion();
+	}
+
+	@Override
+	public void setupModule(SetupContext context) {
+		// slices are written by the mapper this module is registered to
+		this.objectMapper = context.getOwner();
+		context.addBeanSerializerModifier(new BeanSerializerModifier() {
+			@Override
+			public JsonSerializer<?> modifyCollectionSerializer(SerializationConfig config, CollectionType valueType,
+																BeanDescription beanDesc, JsonSerializer<?> serializer) {
+				if (!List.class.isAssignableFrom(valueType.getRawClass())) {
+					return serializer;
+				}
+				return new ParallelListSerializer(valueType, serializer);
+			}
+		});
+	}
+
+	public int getIdleBufferCount() {
+		return this.bufferPool.idleCount.get();
+	}
+
+	private class ParallelListSerializer extends JsonSerializer<Object> implements ContextualSerializer, ResolvableSerializer {
+
+		private final JavaType listType;
+		private final JsonSerializer<Object> delegate;
+		private volatile ObjectWriter sliceWriter;
+
+		@SuppressWarnings("unchecked")
+		private ParallelListSerializer(JavaType listType, JsonSerializer<?> delegate) {
+			this.listType = listType;
+			this.delegate = (JsonSerializer<Object>) delegate;
+		}
+
+		@Override
+		public JsonSerializer<?> createContextual(SerializerProvider prov, BeanProperty property) throws JsonMappingException {
+			if (!(this.delegate instanceof ContextualSerializer)) {
+				return this;
+			}
+			final JsonSerializer<?> contextual = ((ContextualSerializer) this.delegate).createContextual(prov, property);
+			return contextual == this.delegate ? this : new ParallelListSerializer(this.listType, contextual);
+		}
+
+		@Override
+		public void resolve(SerializerProvider provider) throws JsonMappingException {
+			if (this.delegate instanceof ResolvableSerializer) {
+				((ResolvableSerializer) this.delegate).resolve(provider);
+			}
+		}
+
+		@Override
+		public Class<Object> handledType() {
+			return this.delegate.handledType();
+		}
+
+		@Override
+		public boolean isEmpty(Object value) {
+			return this.delegate.isEmpty(value);
+		}
+
+		@Override
+		public void serializeWithType(Object value, JsonGenerator jgen, SerializerProvider provider,
+									  TypeSerializer typeSer) throws IOException {
+			this.delegate.serializeWithType(value, jgen, provider, typeSer);
+		}
+
+		@Override
+		public void serialize(Object value, JsonGenerator jgen, SerializerProvider provider) throws IOException {
+			if (!isParallel(value, jgen)) {
+				this.delegate.serialize(value, jgen, provider);
+				return;
+			}
+
+			// write "[", then flush the generator so that elements can be written to its stream directly
+			jgen.writeStartArray();
+			final boolean flushPassedToStream = jgen.isEnabled(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+			jgen.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+			jgen.flush();
+			if (flushPassedToStream) {
+				jgen.enable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+			}
+			writeSlices((List<?>) value, (OutputStream) jgen.getOutputTarget());
+			jgen.writeEndArray();
+		}
+
+		private boolean isParallel(Object value, JsonGenerator jgen) {
+			return value instanceof List && value instanceof RandomAccess
+					&& ((List<?>) value).size() >= minElements
+					&& IN_SLICE.get() == null
+					&& jgen instanceof UTF8JsonGenerator  // json with UTF-8
+					&& jgen.getOutputTarget() instanceof OutputStream
+					&& jgen.getPrettyPrinter() == null;
+		}
+
+		private void writeSlices(List<?> list, OutputStream out) throws IOException {
+			final ObjectWriter writer = getSliceWriter();
+			final LinkedList<FutureTask<Buffer>> pending = new LinkedList<FutureTask<Buffer>>();
+			int next = 0;
+			boolean first = true;
+			try {
+				while (next < list.size() || !pending.isEmpty()) {
+					while (next < list.size() && pending.size() < maxPendingSlices) {
+						final List<?> slice = list.subList(next, Math.min(next + sliceSize, list.size()));
+						final FutureTask<Buffer> task = new FutureTask<Buffer>(new SliceTask(writer, slice));
+						executor.execute(task);
+						pending.add(task);
+						next += slice.size();
+					}
+
+					final FutureTask<Buffer> task = pending.removeFirst();
+					task.run();  // runs it here unless already started by the executor
+					final Buffer buffer = getResult(task);
+					try {
+						if (!first) {
+							out.write(',');
+						}
+						buffer.writeElementsTo(out);
+						first = false;
+					} finally {
+						bufferPool.release(buffer);
+					}
+				}
+			} finally {
+				for (FutureTask<Buffer> task : pending) {
+					task.cancel(false);
+				}
+			}
+		}
+
+		private ObjectWriter getSliceWriter() {
+			if (this.sliceWriter == null) {
+				// slices are sublists of the list
+				this.sliceWriter = objectMapper.writerWithType(
+						objectMapper.getTypeFactory().constructCollectionType(List.class, this.listType.getContentType()));
+			}
+			return this.sliceWriter;
+		}
+
+	}
+
+	private static Buffer getResult(FutureTask<Buffer> task) throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while serializing list", e);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	private class SliceTask implements Callable<Buffer> {
+
+		private final ObjectWriter writer;
+		private final List<?> slice;
+
+		private SliceTask(ObjectWriter writer, List<?> slice) {
+			this.writer = writer;
+			this.slice = slice;
+		}
+
+		@Override
+		public Buffer call() throws Exception {
+			final Buffer buffer = bufferPool.borrow();
+			final Boolean inSlice = IN_SLICE.get();
+			IN_SLICE.set(Boolean.TRUE);
+			try {
+				this.writer.writeValue(buffer, this.slice);
+				return buffer;
+			} catch (Exception e) {
+				bufferPool.release(buffer);
+				throw e;
+			} finally {
+				if (inSlice == null) {
+					IN_SLICE.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Serialized slice. Contains a json array.
+	 */
+	private static class Buffer extends ByteArrayOutputStream {
+
+		private Buffer() {
+			super(8 * 1024);
+		}
+
+		/**
+		 * Write without the enclosing "[" and "]".
+		 */
+		private void writeElementsTo(OutputStream out) throws IOException {
+			out.write(this.buf, 1, this.count - 2);
+		}
+
+		private int capacity() {
+			return this.buf.length;
+		}
+	}
+
+	/**
+	 * Keeps idle buffers for reuse. Same as {@link DeflaterPool}.
+	 */
+	private static class BufferPool {
+
+		private static final int MAX_IDLE_CAPACITY = 1024 * 1024;  // do not keep buffers grown by huge slices
+
+		private final int maxIdle;
+		private final Queue<Buffer> idle = new ConcurrentLinkedQueue<Buffer>();
+		private final AtomicInteger idleCount = new AtomicInteger();
+
+		private BufferPool(int maxIdle) {
+			this.maxIdle = maxIdle;
+		}
+
+		private Buffer borrow() {
+			final Buffer buffer = this.idle.poll();
+			if (buffer == null) {
+				return new Buffer();
+			}
+			this.idleCount.decrementAndGet();
+			return buffer;
+		}
+
+		private void release(Buffer buffer) {
+			if (buffer.capacity() > MAX_IDLE_CAPACITY) {
+				return;
+			}
+			buffer.reset();
+			if (this.idleCount.incrementAndGet() <= this.maxIdle) {
+				this.idle.offer(buffer);
+			} else {
+				this.idleCount.decrementAndGet();
+			}
+		}
+	}
+
+}
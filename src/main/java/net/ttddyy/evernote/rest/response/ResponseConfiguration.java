@@ -0,0 +1,170 @@
+package net.ttddyy.evernote.rest.response;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import net.ttddyy.evernote.rest.Application;
+import net.ttddyy.evernote.rest.jfr.FlightRecorderEvents;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Configuration for reading requests and writing responses.
+ *
+ * Besides json, smile and cbor are available by "Accept" and "Content-Type".
+ * Every format writes {@link FieldProjection} with only the fields selected by "fields" parameter.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+@Configuration
+public class ResponseConfiguration {
+
+	public static final MediaType SMILE = new MediaType("application", "x-jackson-smile");
+	public static final MediaType CBOR = new MediaType("application", "cbor");
+
+	@Autowired
+	public ResponsePropertiesConfiguration responsePropertiesConfiguration;
+
+	@Autowired
+	public RequestPropertiesConfiguration requestPropertiesConfiguration;
+
+	@Autowired(required = false)
+	public ParallelListSerializationModule parallelListSerializationModule;
+
+	@Autowired(required = false)
+	public FlightRecorderEvents flightRecorderEvents;
+
+
+	@Configuration
+	@ConfigurationProperties("evernote.response")
+	public static class ResponsePropertiesConfiguration {
+
+		public int flushThresholdBytes = 32 * 1024;  // 0 to disable flushing while writing json
+		public boolean smile = true;  // application/x-jackson-smile
+		public boolean cbor = true;  // application/cbor
+		public boolean skipUnsetFields = false;  // omit unset fields of thrift structs instead of writing 0, false or null
+		public int parallelMinElements = 0;  // serialize json lists of this many elements on multiple threads. 0 to disable
+		public int parallelSliceSize = 256;  // elements serialized by one task
+		public int parallelThreads = Runtime.getRuntime().availableProcessors();
+
+		public void setFlushThresholdBytes(int flushThresholdBytes) {
+			this.flushThresholdBytes = flushThresholdBytes;
+		}
+
+		public void setSmile(boolean smile) {
+			this.smile = smile;
+		}
+
+		public void setCbor(boolean cbor) {
+			this.cbor = cbor;
+		}
+
+		public void setSkipUnsetFields(boolean skipUnsetFields) {
+			this.skipUnsetFields = skipUnsetFields;
+		}
+
+		public void setParallelMinElements(int parallelMinElements) {
+			this.parallelMinElements = parallelMinElements;
+		}
+
+		public void setParallelSliceSize(int parallelSliceSize) {
+			this.parallelSliceSize = parallelSliceSize;
+		}
+
+		public void setParallelThreads(int parallelThreads) {
+			this.parallelThreads = parallelThreads;
+		}
+
+	}
+
+	@Configuration
+	@ConfigurationProperties("evernote.request")
+	public static class RequestPropertiesConfiguration {
+
+		public boolean generatedMutators = false;  // bind request bodies to thrift structs through generated setters instead of reflection
+
+		public void setGeneratedMutators(boolean generatedMutators) {
+			this.generatedMutators = generatedMutators;
+		}
+
+	}
+
+	/**
+	 * Replaces spring-boot's default json converter.
+	 *
+	 * With parallel list serialization, the converter uses its own ObjectMapper with the same rules.
+	 *
+	 * @see org.springframework.boot.autoconfigure.web.HttpMessageConvertersAutoConfiguration
+	 */
+	@Bean
+	public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(
+			ObjectMapper objectMapper, @Value("${http.mappers.jsonPrettyPrint:false}") boolean prettyPrint) {
+		final ResponsePropertiesConfiguration properties = this.responsePropertiesConfiguration;
+		final StreamingMappingJackson2HttpMessageConverter converter = new StreamingMappingJackson2HttpMessageConverter();
+		if (this.parallelListSerializationModule == null) {
+			converter.setObjectMapper(objectMapper);
+		} else {
+			final ObjectMapper parallelObjectMapper = Application.createObjectMapper(null, properties.skipUnsetFields,
+					this.requestPropertiesConfiguration.generatedMutators);
+			parallelObjectMapper.registerModule(this.parallelListSerializationModule);
+			converter.setObjectMapper(parallelObjectMapper);
+		}
+		converter.setPrettyPrint(prettyPrint);
+		converter.setProjectionObjectMapper(FieldProjection.createObjectMapper(null, properties.skipUnsetFields));
+		converter.setFlushThresholdBytes(properties.flushThresholdBytes);
+		converter.setFlightRecorderEvents(this.flightRecorderEvents);
+		return converter;
+	}
+
+	@Bean
+	@ConditionalOnExpression("${evernote.response.parallelMinElements:0} > 0")
+	public ThreadPoolTaskExecutor parallelSerializationExecutor() {
+		final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(this.responsePropertiesConfiguration.parallelThreads);
+		executor.setThreadNamePrefix("evernote-serializer-");
+		executor.setDaemon(true);
+		return executor;
+	}
+
+	@Bean
+	@ConditionalOnExpression("${evernote.response.parallelMinElements:0} > 0")
+	public ParallelListSerializationModule parallelListSerializationModule() {
+		final ResponsePropertiesConfiguration properties = this.responsePropertiesConfiguration;
+		return new ParallelListSerializationModule(parallelSerializationExecutor(), properties.parallelMinElements,
+				properties.parallelSliceSize, properties.parallelThreads * 2);
+	}
+
+	@Bean
+	@ConditionalOnExpression("${evernote.response.smile:true}")
+	public JacksonBinaryHttpMessageConverter smileHttpMessageConverter() {
+		return binaryHttpMessageConverter(new SmileFactory(), SMILE);
+	}
+
+	@Bean
+	@ConditionalOnExpression("${evernote.response.cbor:true}")
+	public JacksonBinaryHttpMessageConverter cborHttpMessageConverter() {
+		return binaryHttpMessageConverter(new CBORFactory(), CBOR);
+	}
+
+	private JacksonBinaryHttpMessageConverter binaryHttpMessageConverter(JsonFactory jsonFactory, MediaType mediaType) {
+		// same serialization rules as json
+		final ResponsePropertiesConfiguration properties = this.responsePropertiesConfiguration;
+		final ObjectMapper objectMapper =
+				Application.createObjectMapper(jsonFactory, properties.skipUnsetFields,
+						this.requestPropertiesConfiguration.generatedMutators);
+		final JacksonBinaryHttpMessageConverter converter = new JacksonBinaryHttpMessageConverter(objectMapper, mediaType);
+		converter.setProjectionObjectMapper(FieldProjection.createObjectMapper(jsonFactory, properties.skipUnsetFields));
+		converter.setFlushThresholdBytes(properties.flushThresholdBytes);
+		converter.setFlightRecorderEvents(this.flightRecorderEvents);
+		return converter;
+	}
+
+}
@@ -0,0 +1,141 @@
+package net.ttddyy.evernote.rest.response;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.ttddyy.evernote.rest.jfr.FlightRecorderEvent;
+import net.ttddyy.evernote.rest.jfr.FlightRecorderEvents;
+import net.ttddyy.evernote.rest.metrics.RequestTiming;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+/**
+ * {@link MappingJackson2HttpMessageConverter} which flushes response while serializing.
+ *
+ * Jackson writes list elements to the response stream as it goes, but the servlet container keeps them in its
+ * response buffer until the buffer is full or the response completes. Flushing every
+ * {@code evernote.response.flushThresholdBytes} makes large results such as {@code SyncChunk} or {@code Note} with
+ * resources go out as chunks. The same {@code ObjectMapper} serializes, so json stays the same.
+ *
+ * {@link FieldProjection} is written by projection {@code ObjectMapper} with only the selected fields.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class StreamingMappingJackson2HttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+	private int flushThresholdBytes;
+	private ObjectMapper projectionObjectMapper;
+	private boolean prettyPrint;
+	private FlightRecorderEvents flightRecorderEvents;
+
+	public void setFlushThresholdBytes(int flushThresholdBytes) {
+		this.flushThresholdBytes = flushThresholdBytes;
+	}
+
+	/**
+	 * @see FieldProjection#createObjectMapper(com.fasterxml.jackson.core.JsonFactory, boolean)
+	 */
+	public void setProjectionObjectMapper(ObjectMapper projectionObjectMapper) {
+		this.projectionObjectMapper = projectionObjectMapper;
+	}
+
+	/**
+	 * @param flightRecorderEvents null not to record serialization events
+	 */
+	public void setFlightRecorderEvents(FlightRecorderEvents flightRecorderEvents) {
+		this.flightRecorderEvents = flightRecorderEvents;
+	}
+
+	@Override
+	public void setPrettyPrint(boolean prettyPrint) {
+		super.setPrettyPrint(prettyPrint);
+		this.prettyPrint = prettyPrint;
+	}
+
+	@Override
+	public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage)
+			throws IOException, HttpMessageNotReadableException {
+		final long start = System.nanoTime();
+		try {
+			return super.read(type, contextClass, inputMessage);
+		} finally {
+			RequestTiming.addCurrent(RequestTiming.Phase.BIND, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	protected void writeInternal(Object object, HttpOutputMessage outputMessage)
+			throws IOException, HttpMessageNotWritableException {
+		final FlightRecorderEvent.Serialize event = this.flightRecorderEvents == null ? null : this.flightRecorderEvents.beginSerialize();
+		final long start = System.nanoTime();
+		try {
+			if (event == null) {
+				writeBody(object, outputMessage);
+			} else {
+				final CountingOutputStream body = new CountingOutputStream(outputMessage.getBody());
+				writeBody(object, withBody(outputMessage, body));
+				this.flightRecorderEvents.commitSerialize(event, FieldProjection.unwrap(object),
+						String.valueOf(outputMessage.getHeaders().getContentType()), body.getCount());
+			}
+		} finally {
+			RequestTiming.addCurrent(RequestTiming.Phase.SERIALIZE, System.nanoTime() - start);
+		}
+	}
+
+	private void writeBody(Object object, HttpOutputMessage outputMessage) throws IOException {
+		if (object instanceof FieldProjection) {
+			writeProjection((FieldProjection) object, outputMessage);
+			return;
+		}
+
+		if (this.flushThresholdBytes <= 0) {
+			super.writeInternal(object, outputMessage);
+			return;
+		}
+
+		final OutputStream body = new ThresholdFlushingOutputStream(outputMessage.getBody(), this.flushThresholdBytes);
+		super.writeInternal(object, withBody(outputMessage, body));
+	}
+
+	private static HttpOutputMessage withBody(final HttpOutputMessage outputMessage, final OutputStream body) {
+		return new HttpOutputMessage() {
+			@Override
+			public OutputStream getBody() throws IOException {
+				return body;
+			}
+
+			@Override
+			public HttpHeaders getHeaders() {
+				return outputMessage.getHeaders();
+			}
+		};
+	}
+
+	private void writeProjection(FieldProjection projection, HttpOutputMessage outputMessage) throws IOException {
+		if (this.projectionObjectMapper == null) {
+			super.writeInternal(projection.getValue(), outputMessage);
+			return;
+		}
+
+		final OutputStream body = new ThresholdFlushingOutputStream(outputMessage.getBody(), this.flushThresholdBytes);
+		final JsonGenerator generator = this.projectionObjectMapper.getFactory()
+				.createGenerator(body, getJsonEncoding(outputMessage.getHeaders().getContentType()));
+		if (this.prettyPrint) {
+			generator.useDefaultPrettyPrinter();
+		}
+		try {
+			projection.write(this.projectionObjectMapper, generator);
+			generator.flush();
+		} catch (IOException e) {
+			throw new HttpMessageNotWritableException("Could not write JSON: " + e.getMessage(), e);
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+package net.ttddyy.evernote.rest.response;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Flushes the underlying stream every time given number of bytes have been written.
+ *
+ * On servlet output stream, flushing before the response completes sends what has been written so far as a chunk
+ * (chunked transfer encoding), instead of keeping the whole body in the container's response buffer.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class ThresholdFlushingOutputStream extends FilterOutputStream {
+
+	private final int flushThresholdBytes;
+	private int unflushedBytes;
+
+	/**
+	 * @param flushThresholdBytes flush after this many bytes. 0 or negative never flushes by itself.
+	 */
+	public ThresholdFlushingOutputStream(OutputStream out, int flushThresholdBytes) {
+		super(out);
+		this.flushThresholdBytes = flushThresholdBytes;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		this.out.write(b);
+		written(1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		this.out.write(b, off, len);  // FilterOutputStream writes byte by byte
+		written(len);
+	}
+
+	private void written(int len) throws IOException {
+		if (this.flushThresholdBytes <= 0) {
+			return;
+		}
+		this.unflushedBytes += len;
+		if (this.unflushedBytes >= this.flushThresholdBytes) {
+			flush();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		this.unflushedBytes = 0;
+		this.out.flush();
+	}
+
+}
@@ -0,0 +1,113 @@
+package net.ttddyy.evernote.rest.thrift;
+
+import com.evernote.clients.NoteStoreClient;
+import com.evernote.clients.UserStoreClient;
+import com.evernote.thrift.TServiceClient;
+import com.evernote.thrift.protocol.TProtocol;
+import com.evernote.thrift.transport.TTransport;
+import com.evernote.thrift.transport.TTransportException;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+
+/**
+ * Thrift transport counting bytes sent to and received from evernote.
+ *
+ * evernote's {@code ClientFactory} creates the http transport inside of ~StoreClient without a hook, so the counting
+ * transport is put between the protocol and the http transport of a created client.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class CountingTransport extends TTransport {
+
+	private static final Field NOTE_STORE_CLIENT_FIELD = findField(NoteStoreClient.class, "client");
+	private static final Field USER_STORE_CLIENT_FIELD = findField(UserStoreClient.class, "client");
+	private static final Field TRANSPORT_FIELD = findField(TProtocol.class, "trans_");
+
+	private final TTransport transport;
+	private long sentBytes;
+	private long receivedBytes;
+
+	public CountingTransport(TTransport transport) {
+		this.transport = transport;
+	}
+
+	private static Field findField(Class<?> clazz, String fieldName) {
+		final Field field = ReflectionUtils.findField(clazz, fieldName);
+		if (field != null) {
+			ReflectionUtils.makeAccessible(field);
+		}
+		return field;
+	}
+
+	/**
+	 * Wrap the transport of the ~StoreClient with a counting transport.
+	 *
+	 * @param storeClient {@code NoteStoreClient} or {@code UserStoreClient}
+	 * @return installed transport, or null if the client is not supported
+	 */
+	public static CountingTransport install(Object storeClient) {
+		final Field clientField = storeClient instanceof NoteStoreClient ? NOTE_STORE_CLIENT_FIELD :
+				storeClient instanceof UserStoreClient ? USER_STORE_CLIENT_FIELD : null;
+		if (clientField == null || TRANSPORT_FIELD == null) {
+			return null;
+		}
+		final Object client = ReflectionUtils.getField(clientField, storeClient);
+		if (!(client instanceof TServiceClient)) {
+			return null;
+		}
+
+		// ClientFactory uses one protocol for input and output
+		final TProtocol protocol = ((TServiceClient) client).getInputProtocol();
+		if (protocol != ((TServiceClient) client).getOutputProtocol()) {
+			return null;
+		}
+		final CountingTransport transport = new CountingTransport(protocol.getTransport());
+		ReflectionUtils.setField(TRANSPORT_FIELD, protocol, transport);
+		return transport;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return this.transport.isOpen();
+	}
+
+	@Override
+	public void open() throws TTransportException {
+		this.transport.open();
+	}
+
+	@Override
+	public void close() {
+		this.transport.close();
+	}
+
+	@Override
+	public int read(byte[] buf, int off, int len) throws TTransportException {
+		final int read = this.transport.read(buf, off, len);
+		if (read > 0) {
+			this.receivedBytes += read;
+		}
+		return read;
+	}
+
+	@Override
+	public void write(byte[] buf, int off, int len) throws TTransportException {
+		this.transport.write(buf, off, len);
+		this.sentBytes += len;
+	}
+
+	@Override
+	public void flush() throws TTransportException {
+		this.transport.flush();
+	}
+
+	public long getSentBytes() {
+		return sentBytes;
+	}
+
+	public long getReceivedBytes() {
+		return receivedBytes;
+	}
+
+}
@@ -0,0 +1,60 @@
+package net.ttddyy.evernote.rest.thrift;
+
+import com.evernote.thrift.transport.TTransport;
+import com.evernote.thrift.transport.TTransportException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Thrift transport over plain streams. (evernote's thrift library only ships an http transport)
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class StreamTransport extends TTransport {
+
+	private final InputStream in;
+	private final OutputStream out;
+
+	StreamTransport(InputStream in, OutputStream out) {
+		this.in = in;
+		this.out = out;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return true;
+	}
+
+	@Override
+	public void open() {
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public int read(byte[] buf, int off, int len) throws TTransportException {
+		try {
+			final int read = this.in.read(buf, off, len);
+			if (read < 0) {
+				throw new TTransportException(TTransportException.END_OF_FILE);
+			}
+			return read;
+		} catch (IOException e) {
+			throw new TTransportException(e);
+		}
+	}
+
+	@Override
+	public void write(byte[] buf, int off, int len) throws TTransportException {
+		try {
+			this.out.write(buf, off, len);
+		} catch (IOException e) {
+			throw new TTransportException(e);
+		}
+	}
+
+}
@@ -0,0 +1,48 @@
+package net.ttddyy.evernote.rest.thrift;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Thrift binary passthrough endpoint. Enabled by "evernote.thrift.enabled=true".
+ *
+ * @author Tadaya Tsuyukubo
+ */
+@Configuration
+@ConditionalOnExpression("${evernote.thrift.enabled:false}")
+public class ThriftPassthroughConfiguration {
+
+	@Configuration
+	@ConfigurationProperties("evernote.thrift")
+	public static class ThriftPassthroughPropertiesConfiguration {
+
+		public boolean enabled;
+		public String userStoreUrl;  // default is "<evernote.environment host>/edam/user"
+		public int connectTimeoutMillis = 10000;
+		public int readTimeoutMillis = 60000;
+		public int noteStoreUrlCacheSize = 1000;  // note store urls resolved per access token
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public void setUserStoreUrl(String userStoreUrl) {
+			this.userStoreUrl = userStoreUrl;
+		}
+
+		public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+			this.connectTimeoutMillis = connectTimeoutMillis;
+		}
+
+		public void setReadTimeoutMillis(int readTimeoutMillis) {
+			this.readTimeoutMillis = readTimeoutMillis;
+		}
+
+		public void setNoteStoreUrlCacheSize(int noteStoreUrlCacheSize) {
+			this.noteStoreUrlCacheSize = noteStoreUrlCacheSize;
+		}
+
+	}
+
+}
@@ -0,0 +1,485 @@
+package net.ttddyy.evernote.rest.thrift;
+
+import com.evernote.thrift.TException;
+import com.evernote.thrift.protocol.TBinaryProtocol;
+import com.evernote.thrift.protocol.TField;
+import com.evernote.thrift.protocol.TList;
+import com.evernote.thrift.protocol.TMap;
+import com.evernote.thrift.protocol.TMessage;
+import com.evernote.thrift.protocol.TMessageType;
+import com.evernote.thrift.protocol.TSet;
+import com.evernote.thrift.protocol.TType;
+import net.ttddyy.evernote.rest.Application;
+import net.ttddyy.evernote.rest.EvernoteRestException;
+import net.ttddyy.evernote.rest.RequestIdentity;
+import net.ttddyy.evernote.rest.index.LocalNoteIndexService;
+import net.ttddyy.evernote.rest.metrics.InFlightCalls;
+import net.ttddyy.evernote.rest.metrics.RequestTiming;
+import net.ttddyy.evernote.rest.metrics.StoreMethodMetrics;
+import net.ttddyy.evernote.rest.metrics.StoreMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.social.evernote.api.Evernote;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Forwards thrift binary protocol requests to evernote as they are, with the access token of this app.
+ *
+ * Only the message header and "authenticationToken" field of the request are rewritten. The rest of the request and the
+ * whole response are streamed without deserializing thrift objects. The reply header is
+ * peeked to record "evernote.api.[userStore|noteStore].<method>.[succeeded|failed]" metrics. Bytes sent to and received
+ * from evernote are recorded to the upstream byte histograms of the method and to the {@link RequestTiming} of the request.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+@RestController
+@RequestMapping("/{storeName:noteStore|userStore}/thrift")
+@ConditionalOnExpression("${evernote.thrift.enabled:false}")
+public class ThriftPassthroughController {
+
+	private static final String CONTENT_TYPE = "application/x-thrift";
+	private static final int MAX_HEADER_STRING_LENGTH = 64 * 1024;  // method name or token
+	private static final short NO_TOKEN_FIELD = -1;
+
+	@Autowired
+	private Evernote evernote;
+
+	@Autowired
+	private StoreMetrics storeMetrics;
+
+	@Autowired
+	private InFlightCalls inFlightCalls;
+
+	@Autowired
+	private Application.EvernotePropertiesConfiguration evernotePropertiesConfiguration;
+
+	@Autowired
+	private ThriftPassthroughConfiguration.ThriftPassthroughPropertiesConfiguration thriftPropertiesConfiguration;
+
+	@Autowired(required = false)
+	private LocalNoteIndexService localNoteIndexService;
+
+	private final ConcurrentMap<String, TField> tokenFields = new ConcurrentHashMap<String, TField>();
+	private Map<String, String> noteStoreUrls;
+
+
+	@RequestMapping(value = "/{methodName}", method = RequestMethod.POST)
+	public Object invoke(@PathVariable String storeName, @PathVariable String methodName,
+						 HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+		final TField tokenField = getAuthenticationTokenField(storeName, methodName);
+		if (tokenField == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND, "Unknown method. method=[" + methodName + "]");
+			return null;
+		}
+
+		final CountingInputStream in = new CountingInputStream(request.getInputStream());
+		final String token = this.evernotePropertiesConfiguration.resolveAccessToken(request.getHeader(RequestIdentity.ACCESS_TOKEN_HEADER));
+
+		// rewrite message header and the token
+		final ByteArrayOutputStream header = new ByteArrayOutputStream();
+		try {
+			rewriteHeader(methodName, tokenField, token, in, header);
+		} catch (TException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid thrift request. " + e.getMessage());
+			return null;
+		}
+
+		final StoreMethodMetrics metrics = this.storeMetrics.get(storeName, methodName);
+		final RequestTiming timing = RequestTiming.get(request);
+		timing.setMetrics(metrics);
+		final String url;
+		try {
+			url = "noteStore".equals(storeName) ? resolveNoteStoreUrl(request) : resolveUserStoreUrl();
+		} catch (IllegalArgumentException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			return null;
+		}
+
+		final String tokenHash = RequestIdentity.resolve(request, this.evernotePropertiesConfiguration).getTokenHash();
+		final InFlightCalls.Call call = this.inFlightCalls.start(storeName, methodName,
+				"noteStore".equals(storeName) ? url : null, tokenHash);
+		final long start = System.nanoTime();
+		final boolean succeeded;
+		try {
+			final int contentLength = request.getContentLength();
+			final int length = contentLength < 0 ? -1 : contentLength - (int) in.getCount() + header.size();
+			succeeded = forward(url, header, in, length, response, metrics, timing);
+		} catch (IOException e) {
+			metrics.failed();
+			timing.failed(e);
+			throw new EvernoteRestException("Failed to forward thrift request. method=[" + methodName + "] caused-by=[" + e.getMessage() + "]", e);
+		} finally {
+			this.inFlightCalls.end(call);
+			timing.add(RequestTiming.Phase.UPSTREAM, System.nanoTime() - start);
+		}
+		final long elapsed = System.nanoTime() - start;
+
+		if (succeeded) {
+			metrics.succeeded(elapsed);
+			timing.setOutcome(RequestTiming.Outcome.SUCCEEDED);
+			if (this.localNoteIndexService != null && "noteStore".equals(storeName)) {
+				this.localNoteIndexService.afterInvoke(tokenHash, methodName);
+			}
+		} else {
+			metrics.failed();
+			timing.setOutcome(RequestTiming.Outcome.FAILED);
+		}
+		return null;  // response is already written
+	}
+
+	/**
+	 * Read message header and the fields up to the token field, then write them back with the token.
+	 *
+	 * Generated clients write fields in id order, so the fields before the token are copied as they are. The token
+	 * field is not always the first one. (e.g. "shareKey"(id 1) comes first in "authenticateToSharedNotebook")
+	 * Nothing is rewritten but the message header when the method does not take the token.
+	 */
+	private void rewriteHeader(String methodName, TField tokenField, String token, InputStream in, OutputStream out)
+			throws TException {
+		final TBinaryProtocol reader = new TBinaryProtocol(new StreamTransport(in, null));
+		reader.setReadLength(MAX_HEADER_STRING_LENGTH);
+		final TMessage message = reader.readMessageBegin();
+		if (!methodName.equals(message.name) || message.type != TMessageType.CALL) {
+			throw new TException("Expected call to [" + methodName + "] but was " + message);
+		}
+		reader.readStructBegin();
+
+		final TBinaryProtocol writer = new TBinaryProtocol(new StreamTransport(null, out));
+		writer.writeMessageBegin(message);
+		while (true) {
+			final TField field = reader.readFieldBegin();
+			if (field.type == TType.STOP || field.id > tokenField.id) {
+				// client did not send the token. keep the id order by writing it before the next field
+				writeToken(writer, tokenField, token);
+				if (field.type == TType.STOP) {
+					writer.writeFieldStop();
+				} else {
+					writer.writeFieldBegin(field);
+				}
+				return;
+			}
+			if (field.id == tokenField.id && field.type == TType.STRING) {
+				final String clientToken = reader.readString();
+				writeToken(writer, tokenField, token != null ? token : clientToken);
+				return;
+			}
+			writer.writeFieldBegin(field);
+			copyValue(reader, writer, field.type);
+		}
+	}
+
+	private static void writeToken(TBinaryProtocol writer, TField tokenField, String token) throws TException {
+		if (token != null && tokenField.id != NO_TOKEN_FIELD) {
+			writer.writeFieldBegin(tokenField);
+			writer.writeString(token);
+		}
+	}
+
+	/**
+	 * Copy a value of the given type including nested structs and containers.
+	 */
+	private static void copyValue(TBinaryProtocol reader, TBinaryProtocol writer, byte type) throws TException {
+		switch (type) {
+			case TType.BOOL:
+				writer.writeBool(reader.readBool());
+				break;
+			case TType.BYTE:
+				writer.writeByte(reader.readByte());
+				break;
+			case TType.I16:
+				writer.writeI16(reader.readI16());
+				break;
+			case TType.I32:
+				writer.writeI32(reader.readI32());
+				break;
+			case TType.I64:
+				writer.writeI64(reader.readI64());
+				break;
+			case TType.DOUBLE:
+				writer.writeDouble(reader.readDouble());
+				break;
+			case TType.STRING:
+				writer.writeBinary(reader.readBinary());
+				break;
+			case TType.STRUCT:
+				while (true) {
+					final TField field = reader.readFieldBegin();
+					if (field.type == TType.STOP) {
+						writer.writeFieldStop();
+						break;
+					}
+					writer.writeFieldBegin(field);
+					copyValue(reader, writer, field.type);
+				}
+				break;
+			case TType.MAP:
+				final TMap map = reader.readMapBegin();
+				writer.writeMapBegin(map);
+				for (int i = 0; i < map.size; i++) {
+					copyValue(reader, writer, map.keyType);
+					copyValue(reader, writer, map.valueType);
+				}
+				break;
+			case TType.SET:
+				final TSet set = reader.readSetBegin();
+				writer.writeSetBegin(set);
+				for (int i = 0; i < set.size; i++) {
+					copyValue(reader, writer, set.elemType);
+				}
+				break;
+			case TType.LIST:
+				final TList list = reader.readListBegin();
+				writer.writeListBegin(list);
+				for (int i = 0; i < list.size; i++) {
+					copyValue(reader, writer, list.elemType);
+				}
+				break;
+			default:
+				throw new TException("Unknown field type. type=[" + type + "]");
+		}
+	}
+
+	/**
+	 * @return true when evernote replied a successful result
+	 */
+	private boolean forward(String url, ByteArrayOutputStream header, InputStream body, int length,
+							HttpServletResponse response, StoreMethodMetrics metrics, RequestTiming timing)
+			throws IOException {
+
+		final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setConnectTimeout(this.thriftPropertiesConfiguration.connectTimeoutMillis);
+		connection.setReadTimeout(this.thriftPropertiesConfiguration.readTimeoutMillis);
+		connection.setRequestProperty("Content-Type", CONTENT_TYPE);
+		connection.setRequestProperty("Accept", CONTENT_TYPE);
+		if (this.evernotePropertiesConfiguration.userAgent != null) {
+			connection.setRequestProperty("User-Agent", this.evernotePropertiesConfiguration.userAgent);
+		}
+		for (Map.Entry<String, String> entry : this.evernotePropertiesConfiguration.getCustomHeaders().entrySet()) {
+			connection.setRequestProperty(entry.getKey(), entry.getValue());
+		}
+		if (length >= 0) {
+			connection.setFixedLengthStreamingMode(length);
+		} else {
+			connection.setChunkedStreamingMode(8 * 1024);
+		}
+
+		final long sentBytes;
+		final OutputStream out = connection.getOutputStream();
+		try {
+			header.writeTo(out);
+			sentBytes = header.size() + copy(body, out);
+			metrics.recordPayload(StoreMethodMetrics.Payload.UPSTREAM_SENT, sentBytes);
+		} finally {
+			out.close();
+		}
+
+		final int status = connection.getResponseCode();
+		final InputStream upstream = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+		response.setStatus(status);
+		if (connection.getContentType() != null) {
+			response.setContentType(connection.getContentType());
+		}
+		if (connection.getContentLength() >= 0) {
+			response.setContentLength(connection.getContentLength());
+		}
+		if (upstream == null) {
+			timing.upstreamCall(sentBytes, 0);
+			return false;
+		}
+
+		try {
+			final BufferedInputStream reply = new BufferedInputStream(upstream, 8 * 1024);
+			reply.mark(MAX_HEADER_STRING_LENGTH + 64);
+			final boolean succeeded = status == HttpServletResponse.SC_OK && isSuccessfulReply(reply);
+			reply.reset();
+			final long receivedBytes = copy(reply, response.getOutputStream());
+			metrics.recordPayload(StoreMethodMetrics.Payload.UPSTREAM_RECEIVED, receivedBytes);
+			timing.upstreamCall(sentBytes, receivedBytes);
+			return succeeded;
+		} finally {
+			upstream.close();
+		}
+	}
+
+	/**
+	 * Result struct has "success"(id 0) field, or no field for void methods. Other fields are declared exceptions.
+	 */
+	private static boolean isSuccessfulReply(InputStream in) {
+		final TBinaryProtocol reader = new TBinaryProtocol(new StreamTransport(in, null));
+		reader.setReadLength(MAX_HEADER_STRING_LENGTH);
+		try {
+			final TMessage message = reader.readMessageBegin();
+			if (message.type != TMessageType.REPLY) {
+				return false;
+			}
+			reader.readStructBegin();
+			final TField field = reader.readFieldBegin();
+			return field.type == TType.STOP || field.id == 0;
+		} catch (TException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return "authenticationToken" field of the method arguments, a field with id -1 when the method does not take the
+	 * token, or null when the method does not exist.
+	 */
+	private TField getAuthenticationTokenField(String storeName, String methodName) {
+		final String key = storeName + "." + methodName;
+		TField tokenField = this.tokenFields.get(key);
+		if (tokenField == null) {
+			final String argsClassName = "noteStore".equals(storeName) ?
+					"com.evernote.edam.notestore.NoteStore$" + methodName + "_args" :
+					"com.evernote.edam.userstore.UserStore$" + methodName + "_args";
+			if (!ClassUtils.isPresent(argsClassName, getClass().getClassLoader())) {
+				return null;
+			}
+			final Class<?> argsClass = ClassUtils.resolveClassName(argsClassName, getClass().getClassLoader());
+			final Field field = ReflectionUtils.findField(argsClass, "AUTHENTICATION_TOKEN_FIELD_DESC");
+			if (field == null) {
+				tokenField = new TField("", TType.STOP, NO_TOKEN_FIELD);
+			} else {
+				ReflectionUtils.makeAccessible(field);
+				tokenField = (TField) ReflectionUtils.getField(field, null);
+			}
+			this.tokenFields.put(key, tokenField);
+		}
+		return tokenField;
+	}
+
+	private String resolveUserStoreUrl() {
+		if (this.thriftPropertiesConfiguration.userStoreUrl != null) {
+			return this.thriftPropertiesConfiguration.userStoreUrl;
+		}
+		return this.evernotePropertiesConfiguration.environment.getHost() + "/edam/user";
+	}
+
+	/**
+	 * Note store url from the request header, or the one of the token.
+	 *
+	 * The header is ignored when the access token from config is used, not to send the token to a url chosen by the
+	 * client. Otherwise, the url needs to be on the host of "evernote.environment", or of "evernote.thrift.userStoreUrl"
+	 * when it is set.
+	 *
+	 * @throws IllegalArgumentException when the note store url in the header is not on the evernote host
+	 */
+	private String resolveNoteStoreUrl(HttpServletRequest request) {
+		final String requestedToken = request.getHeader(RequestIdentity.ACCESS_TOKEN_HEADER);
+		final String noteStoreUrl = request.getHeader(RequestIdentity.NOTE_STORE_URL_HEADER);
+		if (noteStoreUrl != null && !this.evernotePropertiesConfiguration.isTokenFromConfig(requestedToken)) {
+			if (!isEvernoteHost(noteStoreUrl)) {
+				throw new IllegalArgumentException("Note store url is not on the evernote host. url=[" + noteStoreUrl + "]");
+			}
+			return noteStoreUrl;
+		}
+		final String key = RequestIdentity.resolve(request, this.evernotePropertiesConfiguration).getTokenHash();
+		final Map<String, String> cache = getNoteStoreUrls();
+		String url = key == null ? null : cache.get(key);
+		if (url == null) {
+			url = this.evernote.userStoreOperations().getNoteStoreUrl();  // one extra call per token
+			if (key != null) {
+				cache.put(key, url);
+			}
+		}
+		return url;
+	}
+
+	private boolean isEvernoteHost(String url) {
+		final URL evernoteUrl;
+		final URL requestedUrl;
+		try {
+			evernoteUrl = new URL(resolveUserStoreUrl());
+			requestedUrl = new URL(url);
+		} catch (MalformedURLException e) {
+			return false;
+		}
+		return evernoteUrl.getProtocol().equals(requestedUrl.getProtocol())
+				&& evernoteUrl.getHost().equalsIgnoreCase(requestedUrl.getHost());
+	}
+
+	private synchronized Map<String, String> getNoteStoreUrls() {
+		if (this.noteStoreUrls == null) {
+			final int maxSize = this.thriftPropertiesConfiguration.noteStoreUrlCacheSize;
+			this.noteStoreUrls = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+					return size() > maxSize;
+				}
+			});
+		}
+		return this.noteStoreUrls;
+	}
+
+	/**
+	 * @return number of bytes copied
+	 */
+	private static long copy(InputStream in, OutputStream out) throws IOException {
+		final byte[] buffer = new byte[8 * 1024];
+		long count = 0;
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+			count += read;
+		}
+		out.flush();
+		return count;
+	}
+
+	private static class CountingInputStream extends FilterInputStream {
+
+		private long count;
+
+		private CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = super.read();
+			if (b >= 0) {
+				this.count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			final int read = super.read(b, off, len);
+			if (read > 0) {
+				this.count += read;
+			}
+			return read;
+		}
+
+		long getCount() {
+			return this.count;
+		}
+	}
+
+}
@@ -0,0 +1,268 @@
+package net.ttddyy.evernote.rest.warmup;
+
+import com.evernote.clients.NoteStoreClient;
+import com.evernote.clients.UserStoreClient;
+import com.evernote.thrift.TBase;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.ttddyy.evernote.rest.ParameterJavaTypeDiscoverer;
+import net.ttddyy.evernote.rest.response.JacksonBinaryHttpMessageConverter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.social.evernote.api.NoteStoreOperations;
+import org.springframework.social.evernote.api.UserStoreOperations;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StopWatch;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Prepares everything the first call of each store method would otherwise pay for, once the application context has
+ * been refreshed:
+ * <ul>
+ * <li>"metadata": parameter names(class file reading) and parameter {@link JavaType}s of every public method of
+ * ~StoreClient classes that the controller can invoke</li>
+ * <li>"deserializers": jackson deserializers of parameter types and thrift structs they contain</li>
+ * <li>"serializers": jackson serializers of return types and thrift structs they contain</li>
+ * </ul>
+ * (De)serializers are built in the json mapper and in the smile/cbor mappers. Elapsed time of each phase is logged,
+ * submitted as "evernote.warmup.[phase]" gauge, and reported by {@link WarmUpHealthIndicator}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class StoreClientWarmUp implements ApplicationListener<ContextRefreshedEvent> {
+
+	private static final Log log = LogFactory.getLog(StoreClientWarmUp.class);
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private ParameterNameDiscoverer parameterNameDiscoverer;
+
+	@Autowired
+	private ParameterJavaTypeDiscoverer parameterJavaTypeDiscoverer;
+
+	@Autowired
+	private GaugeService gaugeService;
+
+	@Autowired(required = false)
+	private List<MappingJackson2HttpMessageConverter> jsonHttpMessageConverters = Collections.emptyList();
+
+	@Autowired(required = false)
+	private List<JacksonBinaryHttpMessageConverter> binaryHttpMessageConverters = Collections.emptyList();
+
+	private final boolean async;
+
+	private final AtomicBoolean started = new AtomicBoolean();
+	private final CountDownLatch completed = new CountDownLatch(1);
+	private volatile Map<String, Object> details = Collections.emptyMap();
+	private volatile Exception failure;
+
+	public StoreClientWarmUp(boolean async) {
+		this.async = async;
+	}
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		// also published by child contexts. only warm up once.
+		if (!this.started.compareAndSet(false, true)) {
+			return;
+		}
+		if (!this.async) {
+			run();
+			return;
+		}
+		final Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				StoreClientWarmUp.this.run();
+			}
+		}, "evernote-warmup");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void run() {
+		try {
+			this.details = warmUp();
+			log.info("Warmed up store operations " + this.details);
+		} catch (Exception e) {
+			this.failure = e;
+			log.warn("Failed to warm up store operations", e);
+		} finally {
+			this.completed.countDown();
+		}
+	}
+
+	private Map<String, Object> warmUp() {
+		final List<ObjectMapper> objectMappers = new ArrayList<ObjectMapper>();
+		objectMappers.add(this.objectMapper);
+		for (MappingJackson2HttpMessageConverter converter : this.jsonHttpMessageConverters) {
+			if (converter.getObjectMapper() != this.objectMapper) {
+				objectMappers.add(converter.getObjectMapper());  // e.g. with parallel list serialization
+			}
+		}
+		for (JacksonBinaryHttpMessageConverter converter : this.binaryHttpMessageConverters) {
+			objectMappers.add(converter.getObjectMapper());
+		}
+
+		final StopWatch stopWatch = new StopWatch();
+
+		stopWatch.start("metadata");
+		final List<Method> methods = new ArrayList<Method>();
+		methods.addAll(findStoreMethods(NoteStoreClient.class, NoteStoreOperations.class));
+		methods.addAll(findStoreMethods(UserStoreClient.class, UserStoreOperations.class));
+		final Set<JavaType> parameterTypes = new LinkedHashSet<JavaType>();
+		final Set<Class<?>> returnTypes = new LinkedHashSet<Class<?>>();
+		for (Method method : methods) {
+			this.parameterNameDiscoverer.getParameterNames(method);
+			Collections.addAll(parameterTypes, this.parameterJavaTypeDiscoverer.getParameterJavaTypes(method));
+			collectClasses(ResolvableType.forMethodReturnType(method), returnTypes);
+		}
+		stopWatch.stop();
+
+		stopWatch.start("deserializers");
+		final Set<Class<?>> structs = new LinkedHashSet<Class<?>>();
+		for (JavaType parameterType : parameterTypes) {
+			for (ObjectMapper mapper : objectMappers) {
+				mapper.canDeserialize(parameterType);
+			}
+			collectStructs(parameterType.getRawClass(), structs);
+			for (int i = 0; i < parameterType.containedTypeCount(); i++) {
+				collectStructs(parameterType.containedType(i).getRawClass(), structs);
+			}
+		}
+		for (Class<?> struct : structs) {
+			for (ObjectMapper mapper : objectMappers) {
+				mapper.canDeserialize(mapper.constructType(struct));
+			}
+		}
+		stopWatch.stop();
+
+		stopWatch.start("serializers");
+		structs.clear();
+		for (Class<?> returnType : returnTypes) {
+			if (returnType.isPrimitive()) {
+				continue;  // includes void
+			}
+			for (ObjectMapper mapper : objectMappers) {
+				mapper.canSerialize(returnType);
+			}
+			collectStructs(returnType, structs);
+		}
+		for (Class<?> struct : structs) {
+			for (ObjectMapper mapper : objectMappers) {
+				mapper.canSerialize(struct);
+			}
+		}
+		stopWatch.stop();
+
+		final Map<String, Object> details = new LinkedHashMap<String, Object>();
+		details.put("methods", methods.size());
+		details.put("objectMappers", objectMappers.size());
+		for (StopWatch.TaskInfo taskInfo : stopWatch.getTaskInfo()) {
+			details.put(taskInfo.getTaskName() + "Millis", taskInfo.getTimeMillis());
+			this.gaugeService.submit("evernote.warmup." + taskInfo.getTaskName(), taskInfo.getTimeMillis());
+		}
+		details.put("totalMillis", stopWatch.getTotalTimeMillis());
+		this.gaugeService.submit("evernote.warmup.total", stopWatch.getTotalTimeMillis());
+		return Collections.unmodifiableMap(details);
+	}
+
+	/**
+	 * Same lookup as the controller: public methods of ~StoreClient class that ~StoreOperations also has.
+	 */
+	private static List<Method> findStoreMethods(Class<?> storeClientClass, Class<?> storeOperationsClass) {
+		final List<Method> methods = new ArrayList<Method>();
+		for (Method method : storeClientClass.getMethods()) {
+			if (method.getDeclaringClass() != Object.class
+					&& ReflectionUtils.findMethod(storeOperationsClass, method.getName(), (Class<?>[]) null) != null) {
+				methods.add(method);
+			}
+		}
+		return methods;
+	}
+
+	/**
+	 * Collect the given type and its generic types, e.g. List and Note for {@code List<Note>}.
+	 */
+	private static void collectClasses(ResolvableType type, Set<Class<?>> classes) {
+		final Class<?> resolved = type.resolve();
+		if (resolved == null || !classes.add(resolved)) {
+			return;
+		}
+		for (ResolvableType generic : type.getGenerics()) {
+			collectClasses(generic, classes);
+		}
+	}
+
+	/**
+	 * Collect the given thrift struct and thrift structs in its fields, recursively.
+	 */
+	private static void collectStructs(Class<?> type, Set<Class<?>> structs) {
+		if (!TBase.class.isAssignableFrom(type) || !structs.add(type)) {
+			return;
+		}
+		for (Field field : type.getDeclaredFields()) {
+			if (Modifier.isStatic(field.getModifiers())) {
+				continue;
+			}
+			final Set<Class<?>> fieldClasses = new LinkedHashSet<Class<?>>();
+			collectClasses(ResolvableType.forField(field), fieldClasses);
+			for (Class<?> fieldClass : fieldClasses) {
+				collectStructs(fieldClass, structs);
+			}
+		}
+	}
+
+	/**
+	 * @return true if the warm-up has completed, successfully or not
+	 */
+	public boolean isCompleted() {
+		return this.completed.getCount() == 0;
+	}
+
+	/**
+	 * Wait for the warm-up to complete.
+	 *
+	 * @return true if completed, false if timed out
+	 */
+	public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+		return this.completed.await(timeout, unit);
+	}
+
+	/**
+	 * @return number of methods, elapsed time of each phase. empty until completed.
+	 */
+	public Map<String, Object> getDetails() {
+		return this.details;
+	}
+
+	/**
+	 * @return exception thrown by the warm-up, or null
+	 */
+	public Exception getFailure() {
+		return this.failure;
+	}
+
+}
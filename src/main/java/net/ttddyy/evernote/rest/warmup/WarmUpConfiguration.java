@@ -0,0 +1,51 @@
+package net.ttddyy.evernote.rest.warmup;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Startup warm-up of store method metadata and jackson (de)serializers. Disabled by "evernote.warmup.enabled=false".
+ *
+ * "/management/health" reports OUT_OF_SERVICE until the warm-up has completed.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+@Configuration
+@ConditionalOnExpression("${evernote.warmup.enabled:true}")
+public class WarmUpConfiguration {
+
+	@Autowired
+	public WarmUpPropertiesConfiguration warmUpPropertiesConfiguration;
+
+
+	@Configuration
+	@ConfigurationProperties("evernote.warmup")
+	public static class WarmUpPropertiesConfiguration {
+
+		public boolean enabled = true;
+		public boolean async = true;  // warm up in background thread, instead of blocking the startup
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public void setAsync(boolean async) {
+			this.async = async;
+		}
+
+	}
+
+	@Bean
+	public StoreClientWarmUp storeClientWarmUp() {
+		return new StoreClientWarmUp(this.warmUpPropertiesConfiguration.async);
+	}
+
+	@Bean
+	public WarmUpHealthIndicator warmUpHealthIndicator() {
+		return new WarmUpHealthIndicator(storeClientWarmUp());
+	}
+
+}
@@ -0,0 +1,39 @@
+package net.ttddyy.evernote.rest.warmup;
+
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+
+import java.util.Map;
+
+/**
+ * OUT_OF_SERVICE until {@link StoreClientWarmUp} has completed, so that a load balancer checking
+ * "/management/health" does not route requests to a cold instance.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class WarmUpHealthIndicator extends AbstractHealthIndicator {
+
+	private final StoreClientWarmUp storeClientWarmUp;
+
+	public WarmUpHealthIndicator(StoreClientWarmUp storeClientWarmUp) {
+		this.storeClientWarmUp = storeClientWarmUp;
+	}
+
+	@Override
+	protected void doHealthCheck(Health.Builder builder) throws Exception {
+		if (!this.storeClientWarmUp.isCompleted()) {
+			builder.outOfService();
+			return;
+		}
+		builder.up();
+		if (this.storeClientWarmUp.getFailure() != null) {
+			// requests still work, only the first call of some methods is slower
+			builder.withException(this.storeClientWarmUp.getFailure());
+			return;
+		}
+		for (Map.Entry<String, Object> entry : this.storeClientWarmUp.getDetails().entrySet()) {
+			builder.withDetail(entry.getKey(), entry.getValue());
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+package net.ttddyy.evernote.rest;
+
+import com.evernote.edam.error.EDAMNotFoundException;
+import com.evernote.edam.type.Data;
+import com.evernote.edam.type.Resource;
+import net.ttddyy.evernote.rest.metrics.PayloadMetricsFilter;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.social.evernote.api.EvernoteException;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class ResourceDataControllerIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
+
+	private static final byte[] BODY = "0123456789".getBytes();
+
+	@Autowired
+	private Application.EvernotePropertiesConfiguration evernotePropertiesConfiguration;
+
+	private void prepareResource() {
+		Data data = new Data();
+		data.setBody(BODY);
+		data.setBodyHash(new byte[]{(byte) 0xca, (byte) 0xfe});
+		data.setSize(BODY.length);
+		Resource resource = new Resource();
+		resource.setGuid("RESOURCE_GUID");
+		resource.setMime("image/png");
+		resource.setData(data);
+		when(noteStoreOperations.getResource("RESOURCE_GUID", true, false, false, false)).thenReturn(resource);
+	}
+
+	@Test
+	public void testData() throws Exception {
+		prepareResource();
+		mockMvc.perform(get("/noteStore/resource/RESOURCE_GUID/data"))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType("image/png"))
+				.andExpect(header().string("ETag", "\"cafe\""))
+				.andExpect(header().string("Accept-Ranges", "bytes"))
+				.andExpect(header().string("Content-Length", "10"))
+				.andExpect(content().bytes(BODY));
+	}
+
+	@Test
+	public void testRange() throws Exception {
+		prepareResource();
+		mockMvc.perform(get("/noteStore/resource/RESOURCE_GUID/data").header("Range", "bytes=2-4"))
+				.andExpect(status().isPartialContent())
+				.andExpect(header().string("Content-Range", "bytes 2-4/10"))
+				.andExpect(content().string("234"));
+
+		mockMvc.perform(get("/noteStore/resource/RESOURCE_GUID/data").header("Range", "bytes=7-"))
+				.andExpect(status().isPartialContent())
+				.andExpect(header().string("Content-Range", "bytes 7-9/10"))
+				.andExpect(content().string("789"));
+
+		mockMvc.perform(get("/noteStore/resource/RESOURCE_GUID/data").header("Range", "bytes=-2"))
+				.andExpect(status().isPartialContent())
+				.andExpect(content().string("89"));
+
+		mockMvc.perform(get("/noteStore/resource/RESOURCE_GUID/data").header("Range", "bytes=20-"))
+				.andExpect(status().isRequestedRangeNotSatisfiable())
+				.andExpect(header().string("Content-Range", "bytes */10"));
+
+		// multiple ranges are not supported, returns whole content
+		mockMvc.perform(get("/noteStore/resource/RESOURCE_GUID/data").header("Range", "bytes=0-1,5-6"))
+				.andExpect(status().isOk())
+				.andExpect(content().bytes(BODY));
+	}
+
+	@Test
+	public void testConditional() throws Exception {
+		prepareResource();
+		mockMvc.perform(get("/noteStore/resource/RESOURCE_GUID/data").header("If-None-Match", "\"cafe\""))
+				.andExpect(status().isNotModified());
+		mockMvc.perform(get("/noteStore/resource/RESOURCE_GUID/data").header("If-None-Match", "W/\"cafe\""))
+				.andExpect(status().isNotModified());  // weak tag of a compressed body
+
+		// If-Range with different etag returns whole content
+		mockMvc.perform(get("/noteStore/resource/RESOURCE_GUID/data").header("Range", "bytes=2-4").header("If-Range", "\"beef\""))
+				.andExpect(status().isOk())
+				.andExpect(content().bytes(BODY));
+	}
+
+	@Test
+	public void testAlternateData() throws Exception {
+		Data data = new Data();
+		data.setBody(BODY);
+		Resource resource = new Resource();
+		resource.setAlternateData(data);
+		when(noteStoreOperations.getResource("RESOURCE_GUID", false, false, false, true)).thenReturn(resource);
+
+		mockMvc.perform(get("/noteStore/resource/RESOURCE_GUID/alternateData"))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType("application/octet-stream"))
+				.andExpect(header().doesNotExist("ETag"))
+				.andExpect(content().bytes(BODY));
+	}
+
+	@Test
+	public void testEdamException() throws Exception {
+		EvernoteException evernoteException = new EvernoteException("MESSAGE", new EDAMNotFoundException());
+		when(noteStoreOperations.getResource("RESOURCE_GUID", true, false, false, false)).thenThrow(evernoteException);
+
+		mockMvc.perform(get("/noteStore/resource/RESOURCE_GUID/data")).andExpect(forwardedUrl("/error"));
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		prepareResource();
+		MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(this.wac)
+				.addFilters(new PayloadMetricsFilter(null, evernotePropertiesConfiguration)).build();
+		mockMvc.perform(get("/noteStore/resource/RESOURCE_GUID/data").header("Range", "bytes=2-4"))
+				.andExpect(status().isPartialContent());
+
+		String prefix = "$.['histogram.evernote.api.noteStore.getResource.";
+		mockMvc.perform(get("/management/metrics"))
+				.andExpect(jsonPath("$.['counter.evernote.api.noteStore.getResource.succeeded']").exists())
+				.andExpect(jsonPath(prefix + "bytes.responseOut.count']").value(1))
+				.andExpect(jsonPath(prefix + "bytes.responseOut.max']").value(3.0))
+				.andExpect(jsonPath(prefix + "phase.upstream.count']").exists());
+	}
+
+}
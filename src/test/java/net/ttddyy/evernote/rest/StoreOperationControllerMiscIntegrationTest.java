@@ -1,7 +1,13 @@
 package net.ttddyy.evernote.rest;
 
+import net.ttddyy.evernote.rest.response.StreamingMappingJackson2HttpMessageConverter;
 import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.web.HttpMessageConverters;
+import org.springframework.http.converter.HttpMessageConverter;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -13,6 +19,9 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
  */
 public class StoreOperationControllerMiscIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
 
+	@Autowired
+	private HttpMessageConverters httpMessageConverters;
+
 	@Test
 	public void testNoInputForNoParameterMethod() throws Exception {
 		given(userStoreOperations.isBusinessUser()).willReturn(true);
@@ -20,4 +29,13 @@ public class StoreOperationControllerMiscIntegrationTest extends AbstractStoreOp
 		verify(userStoreOperations).isBusinessUser();
 	}
 
+	@Test
+	public void testStreamingJsonConverter() {
+		boolean found = false;
+		for (HttpMessageConverter<?> converter : httpMessageConverters.getConverters()) {
+			found |= converter instanceof StreamingMappingJackson2HttpMessageConverter;
+		}
+		assertThat(found, is(true));
+	}
+
 }
@@ -0,0 +1,116 @@
+package net.ttddyy.evernote.rest;
+
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.Resource;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.DigestUtils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.fileUpload;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class StoreOperationControllerMultipartIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
+
+	private static final byte[] BODY_1 = "first resource body".getBytes();
+	private static final byte[] BODY_2 = "second resource body".getBytes();
+
+	@Test
+	public void testCreateNote() throws Exception {
+		Note created = new Note();
+		created.setGuid("NOTE_GUID");
+		when(noteStoreOperations.createNote(any(Note.class))).thenReturn(created);
+
+		String json = "{\"note\": {\"title\": \"TITLE\", \"resources\": [{\"mime\": \"image/gif\"}]}}";
+		mockMvc.perform(fileUpload("/noteStore/createNote")
+				.file(new MockMultipartFile("resources[0]", "a.png", "image/png", BODY_1))
+				.file(new MockMultipartFile("resources[1]", "b.png", "image/png", BODY_2))
+				.param("json", json))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.guid").value("NOTE_GUID"));
+
+		ArgumentCaptor<Note> captor = ArgumentCaptor.forClass(Note.class);
+		verify(noteStoreOperations).createNote(captor.capture());
+		Note note = captor.getValue();
+		assertThat(note.getTitle(), is("TITLE"));
+		assertThat(note.getResources(), hasSize(2));
+
+		Resource first = note.getResources().get(0);
+		assertThat(first.getMime(), is("image/gif"));  // json value wins over part content type
+		assertThat(first.getData().getBody(), is(BODY_1));
+		assertThat(first.getData().getBodyHash(), is(DigestUtils.md5Digest(BODY_1)));
+		assertThat(first.getData().getSize(), is(BODY_1.length));
+
+		Resource second = note.getResources().get(1);
+		assertThat(second.getMime(), is("image/png"));
+		assertThat(second.getData().getBody(), is(BODY_2));
+		assertThat(second.getData().getBodyHash(), is(DigestUtils.md5Digest(BODY_2)));
+	}
+
+	@Test
+	public void testUpdateNoteWithJsonFilePart() throws Exception {
+		when(noteStoreOperations.updateNote(any(Note.class))).thenReturn(new Note());
+
+		String json = "{\"note\": {\"guid\": \"NOTE_GUID\"}}";
+		mockMvc.perform(fileUpload("/noteStore/updateNote")
+				.file(new MockMultipartFile("json", "", "application/json", json.getBytes()))
+				.file(new MockMultipartFile("resources[0]", "a.png", "image/png", BODY_1)))
+				.andExpect(status().isOk());
+
+		ArgumentCaptor<Note> captor = ArgumentCaptor.forClass(Note.class);
+		verify(noteStoreOperations).updateNote(captor.capture());
+		assertThat(captor.getValue().getGuid(), is("NOTE_GUID"));
+		assertThat(captor.getValue().getResources().get(0).getData().getBody(), is(BODY_1));
+	}
+
+	@Test
+	public void testUpdateResource() throws Exception {
+		when(noteStoreOperations.updateResource(any(Resource.class))).thenReturn(10);
+
+		mockMvc.perform(fileUpload("/noteStore/updateResource")
+				.file(new MockMultipartFile("data", "a.png", "image/png", BODY_1))
+				.param("json", "{\"resource\": {\"guid\": \"RESOURCE_GUID\"}}"))
+				.andExpect(status().isOk());
+
+		ArgumentCaptor<Resource> captor = ArgumentCaptor.forClass(Resource.class);
+		verify(noteStoreOperations).updateResource(captor.capture());
+		Resource resource = captor.getValue();
+		assertThat(resource.getGuid(), is("RESOURCE_GUID"));
+		assertThat(resource.getData().getBody(), is(BODY_1));
+		assertThat(resource.getData().getBodyHash(), is(DigestUtils.md5Digest(BODY_1)));
+	}
+
+	@Test
+	public void testInvalidResourceIndex() throws Exception {
+		String json = "{\"note\": {\"title\": \"TITLE\", \"resources\": [{\"mime\": \"image/gif\"}]}}";
+		mockMvc.perform(fileUpload("/noteStore/createNote")
+				.file(new MockMultipartFile("resources[2000000000]", "a.png", "image/png", BODY_1))
+				.param("json", json))
+				.andExpect(status().isBadRequest());
+
+		mockMvc.perform(fileUpload("/noteStore/createNote")
+				.file(new MockMultipartFile("resources[99999999999]", "a.png", "image/png", BODY_1))
+				.param("json", json))
+				.andExpect(status().isBadRequest());
+
+		// resources[1] is missing
+		mockMvc.perform(fileUpload("/noteStore/createNote")
+				.file(new MockMultipartFile("resources[0]", "a.png", "image/png", BODY_1))
+				.file(new MockMultipartFile("resources[2]", "b.png", "image/png", BODY_2))
+				.param("json", json))
+				.andExpect(status().isBadRequest());
+
+		verify(noteStoreOperations, never()).createNote(any(Note.class));
+	}
+
+}
@@ -0,0 +1,97 @@
+package net.ttddyy.evernote.rest;
+
+import com.evernote.edam.notestore.SyncChunk;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.NoteAttributes;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class ThriftIsSetSerializerModifierTest {
+
+	private final ObjectMapper objectMapper = Application.createObjectMapper(null, true);
+
+	private static Iterable<String> names(final JsonNode node) {
+		return new Iterable<String>() {
+			@Override
+			public Iterator<String> iterator() {
+				return node.fieldNames();
+			}
+		};
+	}
+
+	@Test
+	public void testUnsetFieldsAreOmitted() throws Exception {
+		NoteAttributes attributes = new NoteAttributes();
+		attributes.setAuthor("AUTHOR");
+		attributes.setLatitude(0);  // set to zero, still written
+		attributes.setShareDate(100L);
+
+		JsonNode node = this.objectMapper.readTree(this.objectMapper.writeValueAsBytes(attributes));
+		assertThat(names(node), containsInAnyOrder("author", "latitude", "shareDate"));
+		assertThat(node.get("latitude").asDouble(), is(0.0));
+	}
+
+	@Test
+	public void testNestedStruct() throws Exception {
+		NoteAttributes attributes = new NoteAttributes();
+		attributes.setSource("SOURCE");
+		Note note = new Note();
+		note.setGuid("NOTE_GUID");
+		note.setActive(false);
+		note.setAttributes(attributes);
+		note.setTagGuids(Arrays.asList("TAG_1"));
+		SyncChunk syncChunk = new SyncChunk();
+		syncChunk.setCurrentTime(10L);
+		syncChunk.setUpdateCount(20);
+		syncChunk.setNotes(Arrays.asList(note));
+
+		JsonNode node = this.objectMapper.readTree(this.objectMapper.writeValueAsBytes(syncChunk));
+		assertThat(names(node), containsInAnyOrder("currentTime", "updateCount", "notes"));
+		JsonNode noteNode = node.get("notes").get(0);
+		assertThat(names(noteNode), containsInAnyOrder("guid", "active", "attributes", "tagGuids"));
+		assertThat(noteNode.get("active").asBoolean(), is(false));
+		assertThat(names(noteNode.get("attributes")), containsInAnyOrder("source"));
+
+		ObjectMapper defaultMapper = Application.createObjectMapper(null);
+		assertThat(this.objectMapper.writeValueAsBytes(syncChunk).length, lessThan(defaultMapper.writeValueAsBytes(syncChunk).length));
+	}
+
+	@Test
+	public void testWithoutGeneratedAccessors() throws Exception {
+		ObjectMapper reflectionMapper = Application.createObjectMapper(null, true, false);
+		Note note = new Note();
+		note.setGuid("NOTE_GUID");
+		note.setActive(false);
+		note.setContentLength(0);
+
+		JsonNode node = reflectionMapper.readTree(reflectionMapper.writeValueAsBytes(note));
+		assertThat(names(node), containsInAnyOrder("guid", "active", "contentLength"));
+		assertThat(node.get("active").asBoolean(), is(false));
+
+		note.unsetContentLength();
+		note.setTitle("TITLE");
+		node = reflectionMapper.readTree(reflectionMapper.writeValueAsBytes(note));
+		assertThat(names(node), containsInAnyOrder("guid", "title", "active"));
+	}
+
+	@Test
+	public void testDefaultWritesUnsetFields() throws Exception {
+		ObjectMapper defaultMapper = Application.createObjectMapper(null);
+		JsonNode node = defaultMapper.readTree(defaultMapper.writeValueAsBytes(new NoteAttributes()));
+		assertThat(node.has("author"), is(true));
+		assertThat(node.get("subjectDate").asLong(), is(0L));
+	}
+
+}
@@ -0,0 +1,111 @@
+package net.ttddyy.evernote.rest;
+
+import com.evernote.edam.notestore.SyncChunk;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.Notebook;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares deserialization throughput of reflection and generated mutators.
+ *
+ * Values are "input/notebook_full.json", "input/note.json" and a SyncChunk of the notes.
+ *
+ * Not a unit test. Run with: {@code java -cp ... net.ttddyy.evernote.rest.ThriftMutatorBenchmark [notes]}
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class ThriftMutatorBenchmark {
+
+	private interface Task {
+		void run() throws IOException;
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int noteCount = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+
+		final ObjectMapper jsonMapper = Application.createObjectMapper(null);
+		final Notebook notebook = jsonMapper.treeToValue(
+				jsonMapper.readTree(new ClassPathResource("input/notebook_full.json").getInputStream()).get("notebook"), Notebook.class);
+		final Note note = jsonMapper.treeToValue(
+				jsonMapper.readTree(new ClassPathResource("input/note.json").getInputStream()).get("note"), Note.class);
+		final List<Note> notes = new ArrayList<Note>();
+		for (int i = 0; i < noteCount; i++) {
+			notes.add(note);
+		}
+		final SyncChunk syncChunk = new SyncChunk();
+		syncChunk.setNotes(notes);
+
+		final Map<String, Object> values = new LinkedHashMap<String, Object>();
+		values.put("notebook_full.json", notebook);
+		values.put("note.json", note);
+		values.put("SyncChunk(" + noteCount + " notes)", syncChunk);
+
+		System.out.printf("%-24s %-6s %-6s %14s %14s %8s%n", "value", "format", "op", "reflective/s", "generated/s", "speedup");
+		for (final Map.Entry<String, Object> entry : values.entrySet()) {
+			for (String format : new String[]{"json", "smile"}) {
+				final SmileFactory factory = "smile".equals(format) ? new SmileFactory() : null;
+				final ObjectMapper reflective = Application.createObjectMapper(factory, false, false);
+				final ObjectMapper generated = Application.createObjectMapper(factory, false, true);
+				final byte[] bytes = reflective.writeValueAsBytes(entry.getValue());
+
+				final double[] read = measure(new Task() {
+					@Override
+					public void run() throws IOException {
+						reflective.readValue(bytes, entry.getValue().getClass());
+					}
+				}, new Task() {
+					@Override
+					public void run() throws IOException {
+						generated.readValue(bytes, entry.getValue().getClass());
+					}
+				});
+				System.out.printf("%-24s %-6s %-6s %,14.0f %,14.0f %7.2fx%n", entry.getKey(), format, "read",
+						read[0], read[1], read[1] / read[0]);
+			}
+		}
+	}
+
+	/**
+	 * Runs both tasks alternately, since a single run is easily skewed by the other load on the machine.
+	 *
+	 * @return median ops per second of reflective and generated
+	 */
+	private static double[] measure(Task reflective, Task generated) throws IOException {
+		for (int i = 0; i < 20000; i++) {
+			reflective.run();  // warm up
+			generated.run();
+		}
+		final int rounds = 15;
+		final double[] reflectiveResults = new double[rounds];
+		final double[] generatedResults = new double[rounds];
+		for (int round = 0; round < rounds; round++) {
+			reflectiveResults[round] = run(reflective);
+			generatedResults[round] = run(generated);
+		}
+		Arrays.sort(reflectiveResults);
+		Arrays.sort(generatedResults);
+		return new double[]{reflectiveResults[rounds / 2], generatedResults[rounds / 2]};
+	}
+
+	private static double run(Task task) throws IOException {
+		int iterations = 0;
+		final long start = System.nanoTime();
+		long elapsed;
+		do {
+			task.run();
+			iterations++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < 200000000L);
+		return iterations / (elapsed / 1e9);
+	}
+
+}
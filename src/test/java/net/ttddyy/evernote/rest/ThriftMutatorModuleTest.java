@@ -0,0 +1,150 @@
+package net.ttddyy.evernote.rest;
+
+import com.evernote.edam.notestore.NoteFilter;
+import com.evernote.edam.notestore.NoteMetadata;
+import com.evernote.edam.notestore.NotesMetadataList;
+import com.evernote.edam.notestore.NotesMetadataResultSpec;
+import com.evernote.edam.notestore.SyncChunk;
+import com.evernote.edam.notestore.SyncChunkFilter;
+import com.evernote.edam.type.LinkedNotebook;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.Notebook;
+import com.evernote.edam.type.Resource;
+import com.evernote.edam.type.SavedSearch;
+import com.evernote.edam.type.Tag;
+import com.evernote.edam.type.User;
+import com.evernote.edam.type.UserAttributes;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+/**
+ * Generated mutators must read the same values as reflective deserialization.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class ThriftMutatorModuleTest {
+
+	private static <T> T fixture(String name, String field, Class<T> type) throws Exception {
+		ObjectMapper mapper = Application.createObjectMapper(null);
+		return mapper.treeToValue(mapper.readTree(new ClassPathResource("input/" + name).getInputStream()).get(field), type);
+	}
+
+	private static List<Object> values() throws Exception {
+		Note note = fixture("note.json", "note", Note.class);
+		Notebook notebook = fixture("notebook_full.json", "notebook", Notebook.class);
+		Tag tag = fixture("tag.json", "tag", Tag.class);
+		LinkedNotebook linkedNotebook = fixture("linkedNotebook.json", "linkedNotebook", LinkedNotebook.class);
+		SavedSearch search = fixture("savedSearch.json", "search", SavedSearch.class);
+
+		Note emptyNote = new Note();  // unset fields and nulls
+		emptyNote.setActive(false);
+
+		NoteMetadata noteMetadata = new NoteMetadata();
+		noteMetadata.setGuid("NOTE_GUID");
+		noteMetadata.setContentLength(123);
+		noteMetadata.setLargestResourceSize(456);
+		noteMetadata.setTagGuids(Arrays.asList("TAG_1", "TAG_2"));
+		NotesMetadataList metadataList = new NotesMetadataList();
+		metadataList.setNotes(Arrays.asList(noteMetadata));
+		metadataList.setTotalNotes(1);
+
+		UserAttributes userAttributes = new UserAttributes();
+		userAttributes.setDailyEmailLimit(10);
+		userAttributes.setDateAgreedToTermsOfService(20L);
+		userAttributes.setViewedPromotions(Arrays.asList("PROMOTION"));
+		User user = new User();
+		user.setId(1);
+		user.setUsername("USERNAME");
+		user.setActive(true);
+		user.setAttributes(userAttributes);
+
+		SyncChunk syncChunk = new SyncChunk();
+		syncChunk.setCurrentTime(100L);
+		syncChunk.setChunkHighUSN(200);
+		syncChunk.setUpdateCount(300);
+		syncChunk.setNotes(Arrays.asList(note, emptyNote));
+		syncChunk.setNotebooks(Arrays.asList(notebook));
+		syncChunk.setTags(Arrays.asList(tag));
+		syncChunk.setSearches(Arrays.asList(search));
+		syncChunk.setLinkedNotebooks(Arrays.asList(linkedNotebook));
+		syncChunk.setExpungedNotes(Arrays.asList("EXPUNGED"));
+
+		List<Object> values = new ArrayList<Object>();
+		values.addAll(Arrays.asList(note, emptyNote, notebook, new Notebook(), tag, linkedNotebook, metadataList, user, syncChunk));
+		return values;
+	}
+
+	private static void assertSameValue(String name, String field, Class<?> type) throws Exception {
+		ObjectMapper reflective = Application.createObjectMapper(null, false, false);
+		ObjectMapper generated = Application.createObjectMapper(null, false, true);
+		JsonNode node = reflective.readTree(new ClassPathResource("input/" + name).getInputStream()).get(field);
+		assertThat(name, generated.treeToValue(node, type), is((Object) reflective.treeToValue(node, type)));
+		byte[] bytes = reflective.writeValueAsBytes(node);
+		assertThat(name, generated.readValue(bytes, type), is((Object) reflective.readValue(bytes, type)));
+	}
+
+	@Test
+	public void testDeserializeParameters() throws Exception {
+		assertSameValue("findNotesMetadata.json", "filter", NoteFilter.class);
+		assertSameValue("findNotesMetadata.json", "resultSpec", NotesMetadataResultSpec.class);
+		assertSameValue("getFilteredSyncChunk.json", "filter", SyncChunkFilter.class);
+		assertSameValue("updateResource.json", "resource", Resource.class);
+		assertSameValue("note.json", "note", Note.class);
+		assertSameValue("notebook_full.json", "notebook", Notebook.class);  // List<Long> sharedNotebookIds
+		assertSameValue("linkedNotebook.json", "linkedNotebook", LinkedNotebook.class);
+	}
+
+	@Test
+	public void testDeserializeSerialized() throws Exception {
+		ObjectMapper reflective = Application.createObjectMapper(null, false, false);
+		ObjectMapper generated = Application.createObjectMapper(null, false, true);
+		for (Object value : values()) {
+			byte[] bytes = reflective.writeValueAsBytes(value);
+			assertThat(value.getClass().getSimpleName(), generated.readValue(bytes, value.getClass()),
+					is((Object) reflective.readValue(bytes, value.getClass())));
+		}
+	}
+
+	@Test
+	public void testDeserializeSmile() throws Exception {
+		ObjectMapper reflective = Application.createObjectMapper(new SmileFactory(), false, false);
+		ObjectMapper generated = Application.createObjectMapper(new SmileFactory(), false, true);
+		for (Object value : values()) {
+			byte[] bytes = reflective.writeValueAsBytes(value);
+			assertThat(value.getClass().getSimpleName(), generated.readValue(bytes, value.getClass()),
+					is((Object) reflective.readValue(bytes, value.getClass())));
+		}
+	}
+
+	@Test
+	public void testDeserializeLenientValues() throws Exception {
+		ObjectMapper generated = Application.createObjectMapper(null, false, true);
+		// values not read directly go through jackson's deserializers
+		String json = "{\"guid\":123, \"contentLength\":\"10\", \"created\":\"20\", \"active\":\"true\", \"title\":null}";
+		Note note = generated.readValue(json, Note.class);
+		assertThat(note.getGuid(), is("123"));
+		assertThat(note.getContentLength(), is(10));
+		assertThat(note.getCreated(), is(20L));
+		assertThat(note.isActive(), is(true));
+
+		try {
+			generated.readValue("{\"contentLength\":\"abc\"}", Note.class);
+			fail();
+		} catch (JsonMappingException e) {
+			// same error as reflective deserialization
+		}
+	}
+
+}
@@ -0,0 +1,164 @@
+package net.ttddyy.evernote.rest.cursor;
+
+import com.evernote.edam.error.EDAMUserException;
+import com.evernote.edam.notestore.NoteFilter;
+import com.evernote.edam.notestore.NoteMetadata;
+import com.evernote.edam.notestore.NotesMetadataList;
+import com.evernote.edam.notestore.NotesMetadataResultSpec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.ttddyy.evernote.rest.AbstractStoreOperationControllerIntegrationTest;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.http.MediaType;
+import org.springframework.social.evernote.api.EvernoteException;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class NotesMetadataCursorControllerIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
+
+	private static final int TOTAL_NOTES = 120;
+
+	private void prepareNotes() {
+		when(noteStoreOperations.findNotesMetadata(any(NoteFilter.class), anyInt(), anyInt(), any(NotesMetadataResultSpec.class)))
+				.thenAnswer(new Answer<NotesMetadataList>() {
+					@Override
+					public NotesMetadataList answer(InvocationOnMock invocation) throws Throwable {
+						int offset = (Integer) invocation.getArguments()[1];
+						int maxNotes = (Integer) invocation.getArguments()[2];
+						List<NoteMetadata> notes = new ArrayList<NoteMetadata>();
+						for (int i = offset; i < Math.min(offset + maxNotes, TOTAL_NOTES); i++) {
+							notes.add(new NoteMetadata("GUID_" + i));
+						}
+						NotesMetadataList list = new NotesMetadataList();
+						list.setStartIndex(offset);
+						list.setTotalNotes(TOTAL_NOTES);
+						list.setNotes(notes);
+						return list;
+					}
+				});
+	}
+
+	@Test
+	public void testJsonArray() throws Exception {
+		prepareNotes();
+
+		MvcResult result = mockMvc.perform(post("/noteStore/cursor/findNotesMetadata")
+				.content("{\"filter\":{\"notebookGuid\":\"NOTEBOOK\"},\"resultSpec\":{\"includeTitle\":true}}")
+				.contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+				.andExpect(jsonPath("$[0].guid").value("GUID_0"))
+				.andReturn();
+
+		List<?> elements = (List<?>) objectMapperRead(result.getResponse().getContentAsString());
+		List<String> guids = guids(elements);
+		assertThat(guids.size(), is(TOTAL_NOTES));
+		assertThat(guids.get(TOTAL_NOTES - 1), is("GUID_" + (TOTAL_NOTES - 1)));
+		assertThat(elements.size(), greaterThan(TOTAL_NOTES));  // has continuation tokens between pages
+	}
+
+	@Test
+	public void testNdjsonAndResume() throws Exception {
+		prepareNotes();
+
+		String json = "{\"filter\":{\"notebookGuid\":\"NOTEBOOK\"}}";
+		MvcResult result = mockMvc.perform(post("/noteStore/cursor/findNotesMetadata")
+				.content(json).contentType(MediaType.APPLICATION_JSON).accept("application/x-ndjson"))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+				.andReturn();
+
+		String[] lines = result.getResponse().getContentAsString().split("\n");
+		assertThat(((Map<?, ?>) objectMapperRead(lines[0])).get("guid"), is((Object) "GUID_0"));
+
+		// first continuation token, resume from it
+		String token = null;
+		int received = 0;
+		for (String line : lines) {
+			if (line.contains("continuationToken")) {
+				token = ((Map<?, ?>) objectMapperRead(line)).get("continuationToken").toString();
+				break;
+			}
+			received++;
+		}
+		assertThat(token, notNullValue());
+
+		String resumeJson = "{\"filter\":{\"notebookGuid\":\"NOTEBOOK\"},\"continuationToken\":\"" + token + "\"}";
+		result = mockMvc.perform(post("/noteStore/cursor/findNotesMetadata")
+				.content(resumeJson).contentType(MediaType.APPLICATION_JSON).accept("application/x-ndjson"))
+				.andExpect(status().isOk())
+				.andReturn();
+		lines = result.getResponse().getContentAsString().split("\n");
+		assertThat(((Map<?, ?>) objectMapperRead(lines[0])).get("guid"), is((Object) ("GUID_" + received)));
+	}
+
+	@Test
+	public void testTokenForDifferentFilter() throws Exception {
+		prepareNotes();
+
+		String json = "{\"filter\":{\"notebookGuid\":\"NOTEBOOK\"}}";
+		MvcResult result = mockMvc.perform(post("/noteStore/cursor/findNotesMetadata")
+				.content(json).contentType(MediaType.APPLICATION_JSON)).andReturn();
+		List<?> elements = (List<?>) objectMapperRead(result.getResponse().getContentAsString());
+		String token = null;
+		for (Object element : elements) {
+			Object value = ((Map<?, ?>) element).get("continuationToken");
+			if (value != null) {
+				token = value.toString();
+				break;
+			}
+		}
+
+		String otherJson = "{\"filter\":{\"notebookGuid\":\"OTHER\"},\"continuationToken\":\"" + token + "\"}";
+		try {
+			mockMvc.perform(post("/noteStore/cursor/findNotesMetadata").content(otherJson).contentType(MediaType.APPLICATION_JSON));
+		} catch (Exception e) {
+			assertThat(e.getCause().getMessage(), containsString("Continuation token does not match"));
+			return;
+		}
+		throw new AssertionError("exception should be thrown");
+	}
+
+	@Test
+	public void testEdamExceptionOnFirstPage() throws Exception {
+		EvernoteException evernoteException = new EvernoteException("MESSAGE", new EDAMUserException());
+		when(noteStoreOperations.findNotesMetadata(any(NoteFilter.class), anyInt(), anyInt(), any(NotesMetadataResultSpec.class)))
+				.thenThrow(evernoteException);
+
+		mockMvc.perform(post("/noteStore/cursor/findNotesMetadata").content("{}").contentType(MediaType.APPLICATION_JSON))
+				.andExpect(forwardedUrl("/error"));
+		verify(noteStoreOperations).findNotesMetadata(any(NoteFilter.class), anyInt(), anyInt(), any(NotesMetadataResultSpec.class));
+	}
+
+	private Object objectMapperRead(String json) throws Exception {
+		return new ObjectMapper().readValue(json, Object.class);
+	}
+
+	private static List<String> guids(List<?> elements) {
+		List<String> guids = new ArrayList<String>();
+		for (Object element : elements) {
+			Object guid = ((Map<?, ?>) element).get("guid");
+			if (guid != null) {
+				guids.add(guid.toString());
+			}
+		}
+		return guids;
+	}
+
+}
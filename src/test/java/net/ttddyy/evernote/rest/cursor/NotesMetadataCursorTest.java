@@ -0,0 +1,154 @@
+package net.ttddyy.evernote.rest.cursor;
+
+import com.evernote.edam.notestore.NoteFilter;
+import com.evernote.edam.notestore.NoteMetadata;
+import com.evernote.edam.notestore.NotesMetadataList;
+import com.evernote.edam.notestore.NotesMetadataResultSpec;
+import net.ttddyy.evernote.rest.metrics.InFlightCalls;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.social.evernote.api.NoteStoreOperations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class NotesMetadataCursorTest {
+
+	private ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+	@After
+	public void tearDown() {
+		executorService.shutdownNow();
+	}
+
+	private static NotesMetadataList page(int startIndex, int size, int total) {
+		List<NoteMetadata> notes = new ArrayList<NoteMetadata>();
+		for (int i = startIndex; i < startIndex + size; i++) {
+			notes.add(new NoteMetadata("GUID_" + i));
+		}
+		NotesMetadataList list = new NotesMetadataList();
+		list.setStartIndex(startIndex);
+		list.setTotalNotes(total);
+		list.setNotes(notes);
+		return list;
+	}
+
+	@Test
+	public void testAdaptivePageSize() {
+		AdaptivePageSize pageSize = new AdaptivePageSize(50, 10, 250, 1000);
+		assertThat(pageSize.getPageSize(), is(50));
+		assertThat(pageSize.update(100), is(100));  // fast
+		assertThat(pageSize.update(100), is(200));
+		assertThat(pageSize.update(100), is(250));  // max
+		assertThat(pageSize.update(700), is(250));  // within target
+		assertThat(pageSize.update(1500), is(125));  // slow
+		assertThat(pageSize.update(5000), is(62));
+		assertThat(pageSize.update(5000), is(31));
+		assertThat(pageSize.update(5000), is(15));
+		assertThat(pageSize.update(5000), is(10));  // min
+	}
+
+	@Test
+	public void testReadAhead() throws Exception {
+		NoteStoreOperations noteStoreOperations = mock(NoteStoreOperations.class);
+		NoteFilter filter = new NoteFilter();
+		NotesMetadataResultSpec spec = new NotesMetadataResultSpec();
+		when(noteStoreOperations.findNotesMetadata(eq(filter), eq(0), anyInt(), eq(spec))).thenReturn(page(0, 10, 25));
+		final CountDownLatch secondPageRequested = new CountDownLatch(1);
+		when(noteStoreOperations.findNotesMetadata(eq(filter), eq(10), anyInt(), eq(spec))).thenAnswer(new Answer<NotesMetadataList>() {
+			@Override
+			public NotesMetadataList answer(InvocationOnMock invocation) throws Throwable {
+				secondPageRequested.countDown();
+				return page(10, 10, 25);
+			}
+		});
+		when(noteStoreOperations.findNotesMetadata(eq(filter), eq(20), anyInt(), eq(spec))).thenReturn(page(20, 5, 25));
+
+		AdaptivePageSize pageSize = new AdaptivePageSize(10, 10, 10, 1000);
+		NotesMetadataCursor cursor = new NotesMetadataCursor(noteStoreOperations, filter, spec, 0, pageSize, executorService);
+
+		NotesMetadataCursor.Page page = cursor.next();
+		assertThat(page.getNotes(), hasSize(10));
+		assertThat(page.getNextOffset(), is(10));
+		assertThat(page.isLast(), is(false));
+		// second page is requested before the caller asks for it
+		assertThat(secondPageRequested.await(1, TimeUnit.SECONDS), is(true));
+
+		page = cursor.next();
+		assertThat(page.getNotes().get(0).getGuid(), is("GUID_10"));
+		page = cursor.next();
+		assertThat(page.getNotes(), hasSize(5));
+		assertThat(page.isLast(), is(true));
+		assertThat(cursor.next(), is(nullValue()));
+
+		verify(noteStoreOperations, times(3)).findNotesMetadata(any(NoteFilter.class), anyInt(), anyInt(), any(NotesMetadataResultSpec.class));
+	}
+
+	@Test
+	public void testResumeFromOffset() {
+		NoteStoreOperations noteStoreOperations = mock(NoteStoreOperations.class);
+		when(noteStoreOperations.findNotesMetadata(any(NoteFilter.class), eq(20), anyInt(), any(NotesMetadataResultSpec.class))).thenReturn(page(20, 5, 25));
+
+		AdaptivePageSize pageSize = new AdaptivePageSize(10, 10, 10, 1000);
+		NotesMetadataCursor cursor = new NotesMetadataCursor(noteStoreOperations, new NoteFilter(), new NotesMetadataResultSpec(), 20, pageSize, executorService);
+
+		NotesMetadataCursor.Page page = cursor.next();
+		assertThat(page.getNotes().get(0).getGuid(), is("GUID_20"));
+		assertThat(page.isLast(), is(true));
+	}
+
+	@Test
+	public void testReadAheadInFlight() throws Exception {
+		final InFlightCalls inFlightCalls = new InFlightCalls();
+		final List<String> inFlight = new ArrayList<String>();
+		NoteStoreOperations noteStoreOperations = mock(NoteStoreOperations.class);
+		when(noteStoreOperations.findNotesMetadata(any(NoteFilter.class), anyInt(), anyInt(), any(NotesMetadataResultSpec.class))).thenAnswer(new Answer<NotesMetadataList>() {
+			@Override
+			public NotesMetadataList answer(InvocationOnMock invocation) throws Throwable {
+				for (InFlightCalls.Call call : inFlightCalls.getCalls()) {
+					Map<String, Object> map = call.toMap();
+					inFlight.add(map.get("method") + "@" + map.get("thread"));
+				}
+				int offset = (Integer) invocation.getArguments()[1];
+				return page(offset, 10, 20);
+			}
+		});
+
+		AdaptivePageSize pageSize = new AdaptivePageSize(10, 10, 10, 1000);
+		NotesMetadataCursor cursor = new NotesMetadataCursor(noteStoreOperations, new NoteFilter(), new NotesMetadataResultSpec(), 0, pageSize, executorService);
+		cursor.trackInFlight(inFlightCalls, null, "TOKEN_HASH");
+
+		cursor.next();
+		cursor.next();  // read-ahead
+		assertThat(inFlight, hasSize(2));
+		assertThat(inFlight.get(0), is("findNotesMetadata@" + Thread.currentThread().getName()));
+		assertThat(inFlight.get(1), org.hamcrest.Matchers.startsWith("findNotesMetadata@"));
+		assertThat(inFlight.get(1), not(is(inFlight.get(0))));
+		assertThat(inFlightCalls.getCalls(), is(empty()));
+	}
+
+	@Test
+	public void testContinuationToken() {
+		ContinuationToken token = ContinuationToken.parse(new ContinuationToken(1234, "abcdef").toString());
+		assertThat(token.getOffset(), is(1234));
+		assertThat(token.getFingerprint(), is("abcdef"));
+	}
+
+}
@@ -0,0 +1,121 @@
+package net.ttddyy.evernote.rest.index;
+
+import com.evernote.edam.notestore.NoteFilter;
+import com.evernote.edam.notestore.NotesMetadataResultSpec;
+import com.evernote.edam.notestore.SyncChunk;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.NoteSortOrder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Rough measurement of {@link LocalNoteIndex} memory per note and query throughput.
+ *
+ * Not a unit test. Run with: {@code java -cp ... net.ttddyy.evernote.rest.index.LocalNoteIndexBenchmark [notes]}
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class LocalNoteIndexBenchmark {
+
+	private static final String[] WORDS = {"tokyo", "meeting", "recipe", "travel", "invoice", "project", "idea",
+			"book", "shopping", "report", "draft", "photo", "budget", "plan", "todo", "memo"};
+
+	public static void main(String[] args) {
+		final int noteCount = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		final Random random = new Random(1);
+
+		final long before = usedMemory();
+		final LocalNoteIndex index = new LocalNoteIndex();
+		final int chunkSize = 1000;
+		for (int offset = 0; offset < noteCount; offset += chunkSize) {
+			final List<Note> notes = new ArrayList<Note>(chunkSize);
+			for (int i = offset; i < Math.min(offset + chunkSize, noteCount); i++) {
+				notes.add(note(i, random));
+			}
+			final SyncChunk chunk = new SyncChunk();
+			chunk.setNotes(notes);
+			chunk.setChunkHighUSN(offset + notes.size());
+			chunk.setUpdateCount(noteCount);
+			index.apply(chunk);
+		}
+		final long after = usedMemory();
+		System.out.printf("notes: %d, heap: %,d bytes, %.1f bytes/note%n", index.getNoteCount(), after - before,
+				(after - before) / (double) index.getNoteCount());
+
+		final NoteFilter countsFilter = new NoteFilter();
+		final NoteFilterQuery countsQuery = NoteFilterQuery.parse(countsFilter);
+		run("findNoteCounts(all notes)", new Runnable() {
+			@Override
+			public void run() {
+				index.findNoteCounts(countsQuery, true);
+			}
+		});
+
+		final NoteFilter updatedFilter = new NoteFilter();
+		updatedFilter.setOrder(NoteSortOrder.UPDATED.getValue());
+		final NoteFilterQuery updatedQuery = NoteFilterQuery.parse(updatedFilter);
+		final NotesMetadataResultSpec spec = new NotesMetadataResultSpec();
+		spec.setIncludeTitle(true);
+		spec.setIncludeUpdated(true);
+		run("findNotesMetadata(all notes, order=UPDATED, 50)", new Runnable() {
+			@Override
+			public void run() {
+				index.findNotesMetadata(updatedQuery, 0, 50, spec);
+			}
+		});
+
+		final NoteFilter wordFilter = new NoteFilter();
+		wordFilter.setWords("tokyo meeting");
+		wordFilter.setNotebookGuid("NOTEBOOK_3");
+		wordFilter.setOrder(NoteSortOrder.UPDATED.getValue());
+		final NoteFilterQuery wordQuery = NoteFilterQuery.parse(wordFilter);
+		run("findNotesMetadata(words+notebook, order=UPDATED, 50)", new Runnable() {
+			@Override
+			public void run() {
+				index.findNotesMetadata(wordQuery, 0, 50, spec);
+			}
+		});
+	}
+
+	private static Note note(int i, Random random) {
+		final Note note = new Note();
+		note.setGuid(String.format("%08x-0000-4000-8000-%012x", i, (long) i * 7919));
+		note.setTitle(WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i);
+		note.setContentLength(random.nextInt(10000));
+		note.setCreated(1400000000000L + random.nextInt(1000000000));
+		note.setUpdated(note.getCreated() + random.nextInt(1000000));
+		note.setUpdateSequenceNum(i + 1);
+		note.setNotebookGuid("NOTEBOOK_" + random.nextInt(20));
+		note.setTagGuids(Arrays.asList("TAG_" + random.nextInt(100), "TAG_" + random.nextInt(100)));
+		note.setActive(random.nextInt(20) != 0);
+		return note;
+	}
+
+	private static void run(String name, Runnable task) {
+		for (int i = 0; i < 20; i++) {
+			task.run();  // warm up
+		}
+		int iterations = 0;
+		final long start = System.nanoTime();
+		long elapsed;
+		do {
+			task.run();
+			iterations++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < 2000000000L);
+		System.out.printf("%s: %.1f ops/s, %.3f ms/op%n", name, iterations / (elapsed / 1e9),
+				elapsed / 1e6 / iterations);
+	}
+
+	private static long usedMemory() {
+		final Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
@@ -0,0 +1,129 @@
+package net.ttddyy.evernote.rest.index;
+
+import com.evernote.edam.notestore.NoteFilter;
+import com.evernote.edam.notestore.NotesMetadataList;
+import com.evernote.edam.notestore.NotesMetadataResultSpec;
+import com.evernote.edam.notestore.SyncChunk;
+import com.evernote.edam.notestore.SyncChunkFilter;
+import com.evernote.edam.type.Note;
+import net.ttddyy.evernote.rest.AbstractStoreOperationControllerIntegrationTest;
+import org.junit.Test;
+import org.springframework.boot.test.EnvironmentTestUtils;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.Arrays;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+@ContextConfiguration(initializers = LocalNoteIndexIntegrationTest.LocalIndexInitializer.class)
+public class LocalNoteIndexIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
+
+	public static class LocalIndexInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+		@Override
+		public void initialize(ConfigurableApplicationContext applicationContext) {
+			EnvironmentTestUtils.addEnvironment(applicationContext, "evernote.localIndex.enabled:true");
+		}
+	}
+
+	private static final String FIND_NOTES_METADATA_JSON =
+			"{\"filter\":{\"words\":\"tokyo\",\"order\":2,\"ascending\":true},\"offset\":0,\"maxNotes\":10," +
+					"\"resultSpec\":{\"includeTitle\":true}}";
+
+	private void sync(String token) throws Exception {
+		Note note = new Note();
+		note.setGuid("NOTE_GUID");
+		note.setTitle("Trip to Tokyo");
+		note.setNotebookGuid("NOTEBOOK_GUID");
+		note.setUpdated(100);
+		note.setActive(true);
+
+		SyncChunk chunk = new SyncChunk();
+		chunk.setUpdateCount(5);
+		chunk.setChunkHighUSN(5);
+		chunk.setNotes(Arrays.asList(note));
+
+		when(noteStoreOperations.getFilteredSyncChunk(eq(0), anyInt(), any(SyncChunkFilter.class))).thenReturn(chunk);
+		when(noteStoreOperations.getNoteSearchText("NOTE_GUID", false, true)).thenReturn("");
+
+		mockMvc.perform(post("/noteStore/localIndex/sync").header("evernote-rest-accesstoken", token))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.notes").value(1))
+				.andExpect(jsonPath("$.updateCount").value(5));
+	}
+
+	private void performFindNotesMetadata(String token) throws Exception {
+		performRequestWithToken("/noteStore/findNotesMetadata", FIND_NOTES_METADATA_JSON, token)
+				.andExpect(jsonPath("$.totalNotes").value(1))
+				.andExpect(jsonPath("$.notes[0].guid").value("NOTE_GUID"))
+				.andExpect(jsonPath("$.notes[0].title").value("Trip to Tokyo"));
+	}
+
+	@Test
+	public void testFindNotesMetadataFromLocalIndex() throws Exception {
+		sync("TOKEN_LOCAL");
+		performFindNotesMetadata("TOKEN_LOCAL");
+
+		verify(noteStoreOperations, never()).findNotesMetadata(any(NoteFilter.class), anyInt(), anyInt(), any(NotesMetadataResultSpec.class));
+	}
+
+	@Test
+	public void testModifyingOperationInvalidatesIndex() throws Exception {
+		sync("TOKEN_INVALIDATE");
+		performRequestWithToken("/noteStore/expungeNote", "{\"guid\":\"NOTE_GUID\"}", "TOKEN_INVALIDATE");
+
+		NotesMetadataList list = new NotesMetadataList();
+		list.setTotalNotes(0);
+		when(noteStoreOperations.findNotesMetadata(any(NoteFilter.class), anyInt(), anyInt(), any(NotesMetadataResultSpec.class))).thenReturn(list);
+
+		performRequestWithToken("/noteStore/findNotesMetadata", FIND_NOTES_METADATA_JSON, "TOKEN_INVALIDATE")
+				.andExpect(jsonPath("$.totalNotes").value(0));
+		verify(noteStoreOperations).findNotesMetadata(any(NoteFilter.class), anyInt(), anyInt(), any(NotesMetadataResultSpec.class));
+	}
+
+	@Test
+	public void testUnsupportedFilterFallsBack() throws Exception {
+		sync("TOKEN_FALLBACK");
+
+		NotesMetadataList list = new NotesMetadataList();
+		list.setTotalNotes(3);
+		when(noteStoreOperations.findNotesMetadata(any(NoteFilter.class), anyInt(), anyInt(), any(NotesMetadataResultSpec.class))).thenReturn(list);
+
+		String json = "{\"filter\":{\"words\":\"notebook:travel\",\"order\":2},\"offset\":0,\"maxNotes\":10,\"resultSpec\":{}}";
+		performRequestWithToken("/noteStore/findNotesMetadata", json, "TOKEN_FALLBACK")
+				.andExpect(jsonPath("$.totalNotes").value(3));
+		verify(noteStoreOperations).findNotesMetadata(any(NoteFilter.class), anyInt(), anyInt(), any(NotesMetadataResultSpec.class));
+	}
+
+	@Test
+	public void testNoIndexForOtherUser() throws Exception {
+		sync("TOKEN_OWNER");
+
+		NotesMetadataList list = new NotesMetadataList();
+		list.setTotalNotes(7);
+		when(noteStoreOperations.findNotesMetadata(any(NoteFilter.class), anyInt(), anyInt(), any(NotesMetadataResultSpec.class))).thenReturn(list);
+
+		performRequestWithToken("/noteStore/findNotesMetadata", FIND_NOTES_METADATA_JSON, "TOKEN_OTHER")
+				.andExpect(jsonPath("$.totalNotes").value(7));
+		verify(noteStoreOperations).findNotesMetadata(any(NoteFilter.class), anyInt(), anyInt(), any(NotesMetadataResultSpec.class));
+	}
+
+	private ResultActions performRequestWithToken(String url, String content, String token) throws Exception {
+		return mockMvc.perform(post(url).header("evernote-rest-accesstoken", token).content(content).contentType(MediaType.APPLICATION_JSON));
+	}
+
+}
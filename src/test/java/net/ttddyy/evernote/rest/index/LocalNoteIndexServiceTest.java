@@ -0,0 +1,106 @@
+package net.ttddyy.evernote.rest.index;
+
+import com.evernote.edam.notestore.NoteFilter;
+import com.evernote.edam.notestore.SyncChunk;
+import com.evernote.edam.notestore.SyncChunkFilter;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.NoteSortOrder;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.social.evernote.api.NoteStoreOperations;
+
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class LocalNoteIndexServiceTest {
+
+	private static SyncChunk chunk() {
+		Note note = new Note();
+		note.setGuid("NOTE_GUID");
+		note.setTitle("Trip to Tokyo");
+		note.setNotebookGuid("NOTEBOOK_GUID");
+		note.setUpdated(100);
+		note.setActive(true);
+
+		SyncChunk chunk = new SyncChunk();
+		chunk.setUpdateCount(5);
+		chunk.setChunkHighUSN(5);
+		chunk.setNotes(Arrays.asList(note));
+		return chunk;
+	}
+
+	private static Object[] findNotesMetadataParams(String words) {
+		NoteFilter filter = new NoteFilter();
+		filter.setOrder(NoteSortOrder.UPDATED.getValue());
+		if (words != null) {
+			filter.setWords(words);
+		}
+		return new Object[]{filter, 0, 10, null};
+	}
+
+	@Test
+	public void testInvalidatedDuringSync() throws Exception {
+		final LocalNoteIndexService service = new LocalNoteIndexService(new LocalNoteIndexConfiguration.LocalNoteIndexPropertiesConfiguration());
+		NoteStoreOperations noteStoreOperations = mock(NoteStoreOperations.class);
+		when(noteStoreOperations.getFilteredSyncChunk(eq(0), anyInt(), any(SyncChunkFilter.class))).thenAnswer(new Answer<SyncChunk>() {
+			@Override
+			public SyncChunk answer(InvocationOnMock invocation) {
+				service.afterInvoke("USER", "updateNote");  // write made through this webapp while syncing
+				return chunk();
+			}
+		});
+		when(noteStoreOperations.getNoteSearchText("NOTE_GUID", false, true)).thenReturn("");
+
+		LocalNoteIndex index = service.sync("USER", noteStoreOperations);
+
+		assertThat(index.getNoteCount(), is(1));
+		assertThat(index.getSyncedAt(), is(0L));
+		assertThat(service.query("USER", "findNotesMetadata", findNotesMetadataParams(null)), is(nullValue()));
+	}
+
+	@Test
+	public void testWordsWithoutSearchText() throws Exception {
+		LocalNoteIndexConfiguration.LocalNoteIndexPropertiesConfiguration properties = new LocalNoteIndexConfiguration.LocalNoteIndexPropertiesConfiguration();
+		properties.setIndexSearchText(false);
+		LocalNoteIndexService service = new LocalNoteIndexService(properties);
+		NoteStoreOperations noteStoreOperations = mock(NoteStoreOperations.class);
+		when(noteStoreOperations.getFilteredSyncChunk(eq(0), anyInt(), any(SyncChunkFilter.class))).thenReturn(chunk());
+
+		service.sync("USER", noteStoreOperations);
+
+		assertThat(service.query("USER", "findNotesMetadata", findNotesMetadataParams("tokyo")), is(nullValue()));
+		assertThat(service.query("USER", "findNotesMetadata", findNotesMetadataParams(null)), is(notNullValue()));
+	}
+
+	@Test
+	public void testIndexPerNoteStoreUrl() throws Exception {
+		LocalNoteIndexService service = new LocalNoteIndexService(new LocalNoteIndexConfiguration.LocalNoteIndexPropertiesConfiguration());
+		NoteStoreOperations noteStoreOperations = mock(NoteStoreOperations.class);
+		when(noteStoreOperations.getFilteredSyncChunk(eq(0), anyInt(), any(SyncChunkFilter.class))).thenReturn(chunk());
+		when(noteStoreOperations.getNoteSearchText("NOTE_GUID", false, true)).thenReturn("");
+
+		String linkedKey = LocalNoteIndexService.userKey("USER", "https://www.evernote.com/shard/s2/notestore");
+		service.sync(linkedKey, noteStoreOperations);
+
+		assertThat(service.query("USER", "findNotesMetadata", findNotesMetadataParams(null)), is(nullValue()));
+		assertThat(service.query(linkedKey, "findNotesMetadata", findNotesMetadataParams(null)), is(notNullValue()));
+
+		// writes by the token make indexes for any note store stale
+		service.afterInvoke("USER", "updateNote");
+		assertThat(service.query(linkedKey, "findNotesMetadata", findNotesMetadataParams(null)), is(nullValue()));
+	}
+
+}
@@ -0,0 +1,192 @@
+package net.ttddyy.evernote.rest.index;
+
+import com.evernote.edam.notestore.NoteCollectionCounts;
+import com.evernote.edam.notestore.NoteFilter;
+import com.evernote.edam.notestore.NotesMetadataList;
+import com.evernote.edam.notestore.NotesMetadataResultSpec;
+import com.evernote.edam.notestore.SyncChunk;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.NoteSortOrder;
+import com.evernote.edam.type.Tag;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class LocalNoteIndexTest {
+
+	private LocalNoteIndex index;
+
+	@Before
+	public void setUp() {
+		Tag tag = new Tag();
+		tag.setGuid("TAG_TRAVEL");
+		tag.setName("Travel Plans");
+
+		SyncChunk chunk = new SyncChunk();
+		chunk.setUpdateCount(10);
+		chunk.setChunkHighUSN(10);
+		chunk.setTags(Arrays.asList(tag));
+		chunk.setNotes(Arrays.asList(
+				note("N1", "Trip to Tokyo", "NB1", 100, true, "TAG_TRAVEL"),
+				note("N2", "Shopping list", "NB1", 200, true),
+				note("N3", "Tokyo restaurants", "NB2", 300, true),
+				note("N4", "Old tokyo memo", "NB1", 400, false)
+		));
+
+		this.index = new LocalNoteIndex();
+		this.index.apply(chunk);
+		this.index.putSearchText("N2", "milk eggs apples");
+	}
+
+	private static Note note(String guid, String title, String notebookGuid, long updated, boolean active, String... tagGuids) {
+		Note note = new Note();
+		note.setGuid(guid);
+		note.setTitle(title);
+		note.setNotebookGuid(notebookGuid);
+		note.setCreated(updated - 50);
+		note.setUpdated(updated);
+		note.setActive(active);
+		note.setUpdateSequenceNum((int) updated / 100);
+		if (tagGuids.length > 0) {
+			note.setTagGuids(new ArrayList<String>(Arrays.asList(tagGuids)));
+		}
+		return note;
+	}
+
+	private static NoteFilter filter(String words, NoteSortOrder order, boolean ascending) {
+		NoteFilter filter = new NoteFilter();
+		if (words != null) {
+			filter.setWords(words);
+		}
+		filter.setOrder(order.getValue());
+		filter.setAscending(ascending);
+		return filter;
+	}
+
+	private static List<String> guids(NotesMetadataList list) {
+		List<String> guids = new ArrayList<String>();
+		for (int i = 0; i < list.getNotesSize(); i++) {
+			guids.add(list.getNotes().get(i).getGuid());
+		}
+		return guids;
+	}
+
+	@Test
+	public void testWordsInTitleAndSearchText() {
+		NotesMetadataList result = index.findNotesMetadata(NoteFilterQuery.parse(filter("tokyo", NoteSortOrder.UPDATED, false)), 0, 10, null);
+		assertThat(guids(result), contains("N3", "N1"));  // N4 is in trash
+		assertThat(result.getTotalNotes(), is(2));
+
+		result = index.findNotesMetadata(NoteFilterQuery.parse(filter("EGGS", NoteSortOrder.UPDATED, false)), 0, 10, null);
+		assertThat(guids(result), contains("N2"));
+	}
+
+	@Test
+	public void testPrefixAndTagName() {
+		NotesMetadataList result = index.findNotesMetadata(NoteFilterQuery.parse(filter("tok*", NoteSortOrder.CREATED, true)), 0, 10, null);
+		assertThat(guids(result), contains("N1", "N3"));
+
+		// tag name "Travel Plans"
+		result = index.findNotesMetadata(NoteFilterQuery.parse(filter("travel", NoteSortOrder.TITLE, true)), 0, 10, null);
+		assertThat(guids(result), contains("N1"));
+	}
+
+	@Test
+	public void testNotebookAndTagsAndPaging() {
+		NoteFilter filter = filter(null, NoteSortOrder.UPDATED, true);
+		filter.setNotebookGuid("NB1");
+
+		NotesMetadataResultSpec spec = new NotesMetadataResultSpec();
+		spec.setIncludeTitle(true);
+
+		NotesMetadataList result = index.findNotesMetadata(NoteFilterQuery.parse(filter), 1, 1, spec);
+		assertThat(result.getStartIndex(), is(1));
+		assertThat(result.getTotalNotes(), is(2));
+		assertThat(guids(result), contains("N2"));
+		assertThat(result.getNotes().get(0).getTitle(), is("Shopping list"));
+		assertThat(result.getNotes().get(0).isSetNotebookGuid(), is(false));
+
+		filter.setTagGuids(Arrays.asList("TAG_TRAVEL"));
+		result = index.findNotesMetadata(NoteFilterQuery.parse(filter), 0, 10, spec);
+		assertThat(guids(result), contains("N1"));
+	}
+
+	@Test
+	public void testUnknownNotebookOrTag() {
+		NoteFilter filter = filter(null, NoteSortOrder.UPDATED, true);
+		filter.setNotebookGuid("NB_WITHOUT_NOTES");
+		assertThat(index.findNotesMetadata(NoteFilterQuery.parse(filter), 0, 10, null), is(nullValue()));
+		assertThat(index.findNoteCounts(NoteFilterQuery.parse(filter), true), is(nullValue()));
+
+		filter = filter(null, NoteSortOrder.UPDATED, true);
+		filter.setTagGuids(Arrays.asList("TAG_NOT_SYNCED"));
+		assertThat(index.findNotesMetadata(NoteFilterQuery.parse(filter), 0, 10, null), is(nullValue()));
+
+		// synchronized tag without notes is answered
+		Tag tag = new Tag();
+		tag.setGuid("TAG_EMPTY");
+		tag.setName("Empty");
+		SyncChunk chunk = new SyncChunk();
+		chunk.setUpdateCount(11);
+		chunk.setTags(Arrays.asList(tag));
+		index.apply(chunk);
+		filter.setTagGuids(Arrays.asList("TAG_EMPTY"));
+		assertThat(index.findNotesMetadata(NoteFilterQuery.parse(filter), 0, 10, null).getTotalNotes(), is(0));
+	}
+
+	@Test
+	public void testInactive() {
+		NoteFilter filter = filter("tokyo", NoteSortOrder.UPDATED, true);
+		filter.setInactive(true);
+		NotesMetadataList result = index.findNotesMetadata(NoteFilterQuery.parse(filter), 0, 10, null);
+		assertThat(guids(result), contains("N4"));
+	}
+
+	@Test
+	public void testFindNoteCounts() {
+		NoteCollectionCounts counts = index.findNoteCounts(NoteFilterQuery.parse(filter("tokyo", NoteSortOrder.UPDATED, true)), true);
+		assertThat(counts.getNotebookCounts(), hasEntry("NB1", 1));
+		assertThat(counts.getNotebookCounts(), hasEntry("NB2", 1));
+		assertThat(counts.getTagCounts(), hasEntry("TAG_TRAVEL", 1));
+		assertThat(counts.getTrashCount(), is(1));
+	}
+
+	@Test
+	public void testExpunge() {
+		SyncChunk chunk = new SyncChunk();
+		chunk.setUpdateCount(11);
+		chunk.setChunkHighUSN(11);
+		chunk.setExpungedNotes(Arrays.asList("N1"));
+		chunk.setNotes(Arrays.asList(note("N3", "Osaka restaurants", "NB2", 500, true)));
+		index.apply(chunk);
+
+		NotesMetadataList result = index.findNotesMetadata(NoteFilterQuery.parse(filter("tokyo", NoteSortOrder.UPDATED, true)), 0, 10, null);
+		assertThat(result.getTotalNotes(), is(0));
+		assertThat(result.getUpdateCount(), is(11));
+		assertThat(index.getNoteCount(), is(3));
+		assertThat(index.getHighUsn(), is(11));
+	}
+
+	@Test
+	public void testUnsupportedFilter() {
+		assertThat(NoteFilterQuery.parse(filter("tag:travel", NoteSortOrder.UPDATED, true)), is(nullValue()));
+		assertThat(NoteFilterQuery.parse(filter("-tokyo", NoteSortOrder.UPDATED, true)), is(nullValue()));
+		assertThat(NoteFilterQuery.parse(filter("\"tokyo trip\"", NoteSortOrder.UPDATED, true)), is(nullValue()));
+		assertThat(NoteFilterQuery.parse(filter("tokyo", NoteSortOrder.RELEVANCE, true)), is(nullValue()));
+
+		NotesMetadataResultSpec spec = new NotesMetadataResultSpec();
+		spec.setIncludeAttributes(true);
+		NoteFilterQuery query = NoteFilterQuery.parse(filter("tokyo", NoteSortOrder.UPDATED, true));
+		assertThat(index.findNotesMetadata(query, 0, 10, spec), is(nullValue()));
+	}
+
+}
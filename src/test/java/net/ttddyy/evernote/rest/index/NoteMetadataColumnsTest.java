@@ -0,0 +1,133 @@
+package net.ttddyy.evernote.rest.index;
+
+import com.evernote.edam.notestore.NoteMetadata;
+import com.evernote.edam.notestore.NotesMetadataResultSpec;
+import com.evernote.edam.type.Data;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.NoteSortOrder;
+import com.evernote.edam.type.Resource;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class NoteMetadataColumnsTest {
+
+	private static Note note(String guid, long updated, String notebookGuid, String... tagGuids) {
+		Note note = new Note();
+		note.setGuid(guid);
+		note.setTitle("title " + guid);
+		note.setUpdated(updated);
+		note.setNotebookGuid(notebookGuid);
+		note.setActive(true);
+		if (tagGuids.length > 0) {
+			note.setTagGuids(Arrays.asList(tagGuids));
+		}
+		return note;
+	}
+
+	@Test
+	public void testSort() {
+		NoteMetadataColumns columns = new NoteMetadataColumns();
+		// more than initial capacity, with duplicated updated values
+		for (int i = 0; i < 100; i++) {
+			columns.add(note(String.format("G%03d", i), (i * 37) % 10, "NB"));
+		}
+
+		int[] docs = columns.sort(columns.docs(false), NoteSortOrder.UPDATED, true, 100);
+		assertThat(docs.length, is(100));
+		for (int i = 1; i < docs.length; i++) {
+			assertOrdered(columns, docs[i - 1], docs[i]);
+		}
+
+		int[] descending = columns.sort(columns.docs(false), NoteSortOrder.UPDATED, false, 100);
+		for (int i = 0; i < docs.length; i++) {
+			assertThat(descending[i], is(docs[docs.length - 1 - i]));
+		}
+
+		// partial sort for a small page
+		int[] top = columns.sort(columns.docs(false), NoteSortOrder.UPDATED, true, 7);
+		assertThat(top, is(Arrays.copyOf(docs, 7)));
+		top = columns.sort(columns.docs(false), NoteSortOrder.UPDATED, false, 7);
+		assertThat(top, is(Arrays.copyOf(descending, 7)));
+	}
+
+	private static void assertOrdered(NoteMetadataColumns columns, int left, int right) {
+		NotesMetadataResultSpec spec = new NotesMetadataResultSpec();
+		spec.setIncludeUpdated(true);
+		NoteMetadata leftNote = columns.toNoteMetadata(left, spec);
+		NoteMetadata rightNote = columns.toNoteMetadata(right, spec);
+		assertThat(leftNote.getUpdated(), lessThanOrEqualTo(rightNote.getUpdated()));
+		if (leftNote.getUpdated() == rightNote.getUpdated()) {
+			assertThat(leftNote.getGuid(), lessThan(rightNote.getGuid()));
+		}
+	}
+
+	@Test
+	public void testCountAndSlotReuse() {
+		NoteMetadataColumns columns = new NoteMetadataColumns();
+		columns.add(note("A", 1, "NB1", "T1", "T2"));
+		columns.add(note("B", 2, "NB1", "T2"));
+		columns.add(note("C", 3, "NB2"));
+
+		assertThat(columns.remove("A"), is(0));
+		assertThat(columns.remove("A"), is(-1));
+		assertThat(columns.add(note("D", 4, "NB2", "T1")), is(0));
+
+		BitSet matched = columns.docs(false);
+		Map<String, Integer> notebookCounts = columns.countByNotebook(matched);
+		assertThat(notebookCounts.size(), is(2));
+		assertThat(notebookCounts, hasEntry("NB1", 1));
+		assertThat(notebookCounts, hasEntry("NB2", 2));
+
+		Map<String, Integer> tagCounts = columns.countByTag(matched);
+		assertThat(tagCounts.size(), is(2));
+		assertThat(tagCounts, hasEntry("T1", 1));
+		assertThat(tagCounts, hasEntry("T2", 1));
+
+		assertThat(columns.tagDocs("T1").cardinality(), is(1));
+		assertThat(columns.notebookDocs("NB3"), is(nullValue()));
+	}
+
+	@Test
+	public void testToNoteMetadata() {
+		Resource small = new Resource();
+		small.setMime("image/png");
+		small.setData(new Data());
+		small.getData().setSize(10);
+		Resource large = new Resource();
+		large.setMime("application/pdf");
+		large.setData(new Data());
+		large.getData().setSize(100);
+
+		Note note = note("A", 1, "NB1", "T1");
+		note.setResources(Arrays.asList(small, large));
+
+		NoteMetadataColumns columns = new NoteMetadataColumns();
+		int docId = columns.add(note);
+
+		NotesMetadataResultSpec spec = new NotesMetadataResultSpec();
+		spec.setIncludeTitle(true);
+		spec.setIncludeNotebookGuid(true);
+		spec.setIncludeTagGuids(true);
+		spec.setIncludeLargestResourceMime(true);
+		spec.setIncludeLargestResourceSize(true);
+
+		NoteMetadata metadata = columns.toNoteMetadata(docId, spec);
+		assertThat(metadata.getGuid(), is("A"));
+		assertThat(metadata.getTitle(), is("title A"));
+		assertThat(metadata.getNotebookGuid(), is("NB1"));
+		assertThat(metadata.getTagGuids(), contains("T1"));
+		assertThat(metadata.getLargestResourceMime(), is("application/pdf"));
+		assertThat(metadata.getLargestResourceSize(), is(100));
+		assertThat(metadata.isSetUpdated(), is(false));
+	}
+
+}
@@ -0,0 +1,61 @@
+package net.ttddyy.evernote.rest.jfr;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class FlightRecorderEventsTest {
+
+	@Before
+	public void checkAvailable() {
+		assumeTrue(FlightRecorderEvents.isAvailable());
+	}
+
+	@Test
+	public void testGeneratedEvent() throws Exception {
+		FlightRecorderEvents events = new FlightRecorderEvents();
+		FlightRecorderEvent.Upstream event = events.beginUpstream();
+		assertThat(event.getClass().getSuperclass().getName(), is("jdk.jfr.Event"));
+		assertThat(event.getClass().getInterfaces()[0] == FlightRecorderEvent.Upstream.class, is(true));
+
+		// each call creates a new event
+		assertThat(events.beginUpstream() != event, is(true));
+	}
+
+	@Test
+	public void testShouldCommitWhileRecording() throws Exception {
+		FlightRecorderEvents events = new FlightRecorderEvents();
+
+		FlightRecorderEvent.Upstream event = events.beginUpstream();
+		event.end();
+		assertThat(event.shouldCommit(), is(false));  // no recording
+
+		Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+		Object recording = recordingClass.newInstance();
+		try {
+			recordingClass.getMethod("enable", String.class).invoke(recording, "net.ttddyy.evernote.Upstream");
+			recordingClass.getMethod("disable", String.class).invoke(recording, "net.ttddyy.evernote.Bind");
+			recordingClass.getMethod("start").invoke(recording);
+
+			event = events.beginUpstream();
+			events.commitUpstream(event, "noteStore", "getNote", "s1", true);
+			assertThat(event.shouldCommit(), is(true));
+
+			FlightRecorderEvent.Bind bind = events.beginBind();
+			bind.end();
+			assertThat(bind.shouldCommit(), is(false));  // disabled in the recording
+		} finally {
+			Method close = recordingClass.getMethod("close");
+			close.invoke(recording);
+		}
+	}
+
+}
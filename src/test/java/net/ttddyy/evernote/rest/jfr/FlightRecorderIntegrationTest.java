@@ -0,0 +1,48 @@
+package net.ttddyy.evernote.rest.jfr;
+
+import com.evernote.edam.type.Note;
+import net.ttddyy.evernote.rest.AbstractStoreOperationControllerIntegrationTest;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.EnvironmentTestUtils;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+@ContextConfiguration(initializers = FlightRecorderIntegrationTest.FlightRecorderInitializer.class)
+public class FlightRecorderIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
+
+	public static class FlightRecorderInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+		@Override
+		public void initialize(ConfigurableApplicationContext applicationContext) {
+			EnvironmentTestUtils.addEnvironment(applicationContext, "evernote.jfr.enabled:true");
+		}
+	}
+
+	@Autowired
+	private FlightRecorderEvents flightRecorderEvents;
+
+	@Test
+	public void testRequestWithEvents() throws Exception {
+		assertThat(flightRecorderEvents, notNullValue());
+
+		Note note = new Note();
+		note.setGuid("NOTE_GUID");
+		when(noteStoreOperations.getNote("NOTE_GUID", true, false, false, false)).thenReturn(note);
+		String json = "{\"guid\":\"NOTE_GUID\", \"withContent\":true, \"withResourcesData\":false," +
+				" \"withResourcesRecognition\":false, \"withResourcesAlternateData\":false}";
+		performRequest("/noteStore/getNote", json)
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.guid").value("NOTE_GUID"));
+	}
+
+}
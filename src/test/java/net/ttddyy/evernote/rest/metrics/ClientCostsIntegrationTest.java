@@ -0,0 +1,42 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import net.ttddyy.evernote.rest.AbstractStoreOperationControllerIntegrationTest;
+import net.ttddyy.evernote.rest.StoreOperationController;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class ClientCostsIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
+
+	@Test
+	public void testClientCosts() throws Exception {
+		when(noteStoreOperations.getNoteTagNames("GUID_FOO")).thenReturn(Arrays.asList("FOO", "BAR"));
+		for (int i = 0; i < 2; i++) {
+			String header = mockMvc.perform(post("/noteStore/getNoteTagNames").content("{\"guid\":\"GUID_FOO\"}")
+					.contentType(MediaType.APPLICATION_JSON).header(ClientCosts.CLIENT_ID_HEADER, "COST_CLIENT"))
+					.andExpect(status().isOk())
+					.andReturn().getResponse().getHeader(StoreOperationController.COST_HEADER);
+			assertThat(header, header.matches("calls=1, hits=0, misses=0, upstreamMillis=[0-9.]+, sentBytes=0, receivedBytes=0"), is(true));
+		}
+
+		mockMvc.perform(get("/management/clientcosts"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.COST_CLIENT.requests").value(2))
+				.andExpect(jsonPath("$.COST_CLIENT.upstreamCalls").value(2))
+				.andExpect(jsonPath("$.COST_CLIENT.cacheHits").value(0))
+				.andExpect(jsonPath("$.COST_CLIENT.upstreamMillis").exists());
+	}
+
+}
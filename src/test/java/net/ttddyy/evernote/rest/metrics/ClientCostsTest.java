@@ -0,0 +1,59 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class ClientCostsTest {
+
+	@Test
+	public void testRecord() {
+		ClientCosts clientCosts = new ClientCosts(10);
+		RequestTiming timing = new RequestTiming();
+		timing.cacheMiss();
+		timing.upstreamCall(100, 2000);
+		timing.add(RequestTiming.Phase.UPSTREAM, 5000000);
+		clientCosts.record("A", timing);
+		clientCosts.record("A", timing);
+		clientCosts.record(null, new RequestTiming());
+
+		Map<String, Object> snapshot = clientCosts.snapshot();
+		assertThat(snapshot.keySet(), contains("A", ClientCosts.UNKNOWN_CLIENT));
+		@SuppressWarnings("unchecked")
+		Map<String, Object> cost = (Map<String, Object>) snapshot.get("A");
+		assertThat(cost.get("requests"), is((Object) 2L));
+		assertThat(cost.get("upstreamCalls"), is((Object) 2L));
+		assertThat(cost.get("cacheMisses"), is((Object) 2L));
+		assertThat(cost.get("upstreamMillis"), is((Object) 10.0));
+		assertThat(cost.get("sentBytes"), is((Object) 200L));
+		assertThat(cost.get("receivedBytes"), is((Object) 4000L));
+	}
+
+	@Test
+	public void testMaxClients() {
+		ClientCosts clientCosts = new ClientCosts(2);
+		for (String clientId : new String[]{"A", "B", "C", "D", "A"}) {
+			clientCosts.record(clientId, new RequestTiming());
+		}
+
+		Map<String, Object> snapshot = clientCosts.snapshot();
+		assertThat(snapshot.keySet(), contains("A", "B", ClientCosts.OTHER_CLIENTS));
+		assertThat(((Map<?, ?>) snapshot.get("A")).get("requests"), is((Object) 2L));
+		assertThat(((Map<?, ?>) snapshot.get(ClientCosts.OTHER_CLIENTS)).get("requests"), is((Object) 2L));
+	}
+
+	@Test
+	public void testCostHeader() {
+		RequestTiming timing = new RequestTiming();
+		timing.cacheHit();
+		assertThat(timing.toCostHeader(), is("calls=0, hits=1, misses=0, upstreamMillis=0.0, sentBytes=0, receivedBytes=0"));
+	}
+
+}
@@ -0,0 +1,30 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class CumulativeHistogramTest {
+
+	@Test
+	public void testCumulativeCounts() {
+		CumulativeHistogram histogram = new CumulativeHistogram(new long[]{1, 50, 10000, 1000000});
+		assertThat(histogram.getCumulativeCounts(), is(new long[]{0, 0, 0, 0, 0}));
+
+		histogram.record(10);
+		histogram.record(50);  // bound is inclusive
+		histogram.record(5000);
+		histogram.record(2000000);
+		histogram.record(-1);  // counted as 0
+		assertThat(histogram.getCumulativeCounts(), is(new long[]{1, 3, 4, 4, 5}));
+		assertThat(histogram.getSum(), is(2005060L));
+
+		histogram.record(20);
+		assertThat(histogram.getCumulativeCounts(), is(new long[]{1, 4, 5, 5, 6}));
+	}
+
+}
@@ -0,0 +1,62 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import com.evernote.edam.type.Notebook;
+import net.ttddyy.evernote.rest.AbstractStoreOperationControllerIntegrationTest;
+import net.ttddyy.evernote.rest.Application;
+import net.ttddyy.evernote.rest.RequestIdentity;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class HeavyHittersIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
+
+	@Autowired
+	private HeavyHitters heavyHitters;
+
+	@Autowired
+	private Application.EvernotePropertiesConfiguration evernotePropertiesConfiguration;
+
+	@Test
+	public void testHeavyHitters() throws Exception {
+		MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(this.wac)
+				.addFilters(new PayloadMetricsFilter(heavyHitters, evernotePropertiesConfiguration)).build();
+
+		when(noteStoreOperations.listNotebooks()).thenReturn(Arrays.asList(new Notebook()));
+		String json = "{}";
+		for (int i = 0; i < 3; i++) {
+			mockMvc.perform(post("/noteStore/listNotebooks").content(json).contentType(MediaType.APPLICATION_JSON)
+					.header(RequestIdentity.ACCESS_TOKEN_HEADER, "HEAVY_TOKEN")
+					.header(RequestIdentity.NOTE_STORE_URL_HEADER, "https://www.evernote.com/shard/s9/notestore"));
+		}
+		mockMvc.perform(post("/noteStore/listNotebooks").content(json).contentType(MediaType.APPLICATION_JSON)
+				.header(RequestIdentity.ACCESS_TOKEN_HEADER, "LIGHT_TOKEN"));
+
+		mockMvc.perform(get("/management/heavyhitters"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.tokens.requests", hasSize(2)))
+				.andExpect(jsonPath("$.tokens.requests[0].key").value(not("HEAVY_TOKEN")))  // hashed
+				.andExpect(jsonPath("$.tokens.requests[0].count").value(3))
+				.andExpect(jsonPath("$.tokens.requests[1].count").value(1))
+				.andExpect(jsonPath("$.tokens.bytes[0].count").value(greaterThan(0)))
+				.andExpect(jsonPath("$.shards.requests[0].key").value("s9"))
+				.andExpect(jsonPath("$.shards.requests[0].count").value(3))
+				.andExpect(jsonPath("$.shards.requests[1].key").value("default"));
+	}
+
+}
@@ -0,0 +1,88 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import com.evernote.edam.type.Tag;
+import net.ttddyy.evernote.rest.AbstractStoreOperationControllerIntegrationTest;
+import net.ttddyy.evernote.rest.RequestIdentity;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class InFlightCallsIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
+
+	@Autowired
+	private InFlightCalls inFlightCalls;
+
+	@Test
+	public void testInFlightCalls() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		when(noteStoreOperations.listTags()).thenAnswer(new Answer<List<Tag>>() {
+			@Override
+			public List<Tag> answer(InvocationOnMock invocation) throws Throwable {
+				release.await(10, TimeUnit.SECONDS);
+				return Collections.emptyList();
+			}
+		});
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> future = executor.submit(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					return mockMvc.perform(post("/noteStore/listTags").content("{}").contentType(MediaType.APPLICATION_JSON)
+							.header(RequestIdentity.ACCESS_TOKEN_HEADER, "TOKEN")
+							.header(RequestIdentity.NOTE_STORE_URL_HEADER, "https://www.evernote.com/shard/s7/notestore"));
+				}
+			});
+			for (int i = 0; i < 1000 && inFlightCalls.getCalls().isEmpty(); i++) {
+				Thread.sleep(10);
+			}
+
+			mockMvc.perform(get("/management/inflight"))
+					.andExpect(jsonPath("$", hasSize(1)))
+					.andExpect(jsonPath("$[0].store").value("noteStore"))
+					.andExpect(jsonPath("$[0].method").value("listTags"))
+					.andExpect(jsonPath("$[0].shard").value("s7"))
+					.andExpect(jsonPath("$[0].token").value(not("TOKEN")))  // hashed
+					.andExpect(jsonPath("$[0].ageMillis").exists());
+			mockMvc.perform(get("/management/metrics"))
+					.andExpect(jsonPath("$.['gauge.evernote.api.inflight']").value(1))
+					.andExpect(jsonPath("$.['gauge.evernote.api.noteStore.listTags.inflight']").value(1))
+					.andExpect(jsonPath("$.['gauge.evernote.api.shard.s7.inflight']").value(1));
+
+			release.countDown();
+			future.get(10, TimeUnit.SECONDS);
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+
+		assertThat(inFlightCalls.getCalls().isEmpty(), is(true));
+		mockMvc.perform(get("/management/metrics"))
+				.andExpect(jsonPath("$.['gauge.evernote.api.inflight']").value(0))
+				.andExpect(jsonPath("$.['gauge.evernote.api.noteStore.listTags.inflight']").doesNotExist());
+	}
+
+}
@@ -0,0 +1,109 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		int previousIndex = -1;
+		for (long value = 0; value < 100000; value++) {
+			int index = LatencyHistogram.index(value);
+			assertThat(index - previousIndex, lessThanOrEqualTo(1));  // no gap
+			assertThat(LatencyHistogram.highestValue(index), greaterThanOrEqualTo(value));
+			assertThat((double) LatencyHistogram.highestValue(index), lessThanOrEqualTo(value * 1.032 + 1));
+			previousIndex = index;
+		}
+		int maxIndex = LatencyHistogram.index(LatencyHistogram.MAX_VALUE);
+		assertThat(LatencyHistogram.highestValue(maxIndex), greaterThanOrEqualTo(LatencyHistogram.MAX_VALUE));
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram(60000, 6);
+		for (long value = 1; value <= 1000; value++) {
+			histogram.record(value * 1000, 0);  // 1ms to 1000ms
+		}
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot(0);
+		assertThat(snapshot.getCount(), is(1000L));
+		assertThat(snapshot.getMax(), is(1000000L));
+		assertThat(snapshot.getMean(), is(500500.0));
+		assertWithin(snapshot.getValueAtPercentile(50), 500000);
+		assertWithin(snapshot.getValueAtPercentile(99), 990000);
+		assertWithin(snapshot.getValueAtPercentile(99.9), 999000);
+		assertThat(snapshot.getValueAtPercentile(100), is(1000000L));
+	}
+
+	private static void assertWithin(long actual, long expected) {
+		assertThat(actual, greaterThanOrEqualTo(expected));
+		assertThat((double) actual, lessThanOrEqualTo(expected * 1.032));
+	}
+
+	@Test
+	public void testRollingWindow() {
+		LatencyHistogram histogram = new LatencyHistogram(60000, 6);  // 10 second intervals
+		histogram.record(100, 0);
+		histogram.record(200, 15000);
+		assertThat(histogram.snapshot(15000).getCount(), is(2L));
+		assertThat(histogram.snapshot(59999).getCount(), is(2L));
+
+		// first interval is out of the window
+		assertThat(histogram.snapshot(60000).getCount(), is(1L));
+		assertThat(histogram.snapshot(60000).getMax(), is(200L));
+
+		// reuses the array of the first interval
+		histogram.record(300, 61000);
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot(61000);
+		assertThat(snapshot.getCount(), is(2L));
+		assertThat(snapshot.getValueAtPercentile(1), is(LatencyHistogram.highestValue(LatencyHistogram.index(200))));
+
+		assertThat(histogram.snapshot(200000).getCount(), is(0L));
+		assertThat(histogram.snapshot(200000).getValueAtPercentile(99), is(0L));
+	}
+
+	@Test
+	public void testOutOfRange() {
+		LatencyHistogram histogram = new LatencyHistogram(60000, 6);
+		histogram.record(-1, 0);
+		histogram.record(Long.MAX_VALUE, 0);
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot(0);
+		assertThat(snapshot.getValueAtPercentile(50), is(0L));
+		assertThat(snapshot.getMax(), is(LatencyHistogram.MAX_VALUE));
+	}
+
+	@Test
+	public void testConcurrentRecording() throws Exception {
+		final LatencyHistogram histogram = new LatencyHistogram(60000, 6);
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						histogram.record(j, 0);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertThat(histogram.snapshot(0).getCount(), is(40000L));
+	}
+
+	@Test
+	public void testPercentileName() {
+		assertThat(StoreMethodMetrics.percentileName(50), is("50"));
+		assertThat(StoreMethodMetrics.percentileName(99.9), is("999"));
+	}
+
+}
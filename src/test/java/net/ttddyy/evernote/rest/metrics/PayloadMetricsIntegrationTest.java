@@ -0,0 +1,52 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import com.evernote.edam.type.SavedSearch;
+import net.ttddyy.evernote.rest.AbstractStoreOperationControllerIntegrationTest;
+import net.ttddyy.evernote.rest.Application;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class PayloadMetricsIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
+
+	@Autowired
+	private Application.EvernotePropertiesConfiguration evernotePropertiesConfiguration;
+
+	@Test
+	public void testPayloadHistograms() throws Exception {
+		MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(this.wac)
+				.addFilters(new PayloadMetricsFilter(null, evernotePropertiesConfiguration)).build();
+
+		SavedSearch search = new SavedSearch();
+		search.setName("SEARCH_NAME");
+		when(noteStoreOperations.listSearches()).thenReturn(Arrays.asList(search));
+		String json = "{}";
+		for (int i = 0; i < 2; i++) {
+			mockMvc.perform(post("/noteStore/listSearches").content(json).contentType(MediaType.APPLICATION_JSON))
+					.andExpect(status().isOk());
+		}
+
+		String prefix = "$.['histogram.evernote.api.noteStore.listSearches.bytes.";
+		mockMvc.perform(get("/management/metrics"))
+				.andExpect(jsonPath(prefix + "requestIn.count']").value(2))
+				.andExpect(jsonPath(prefix + "requestIn.max']").value(2.0))
+				.andExpect(jsonPath(prefix + "responseOut.count']").value(2))
+				.andExpect(jsonPath(prefix + "responseOut.mean']").value(greaterThan(0.0)))
+				.andExpect(jsonPath(prefix + "upstreamSent.count']").doesNotExist());  // mocked store operations
+	}
+
+}
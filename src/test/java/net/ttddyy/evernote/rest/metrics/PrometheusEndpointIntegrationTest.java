@@ -0,0 +1,66 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import com.evernote.edam.type.Tag;
+import net.ttddyy.evernote.rest.AbstractStoreOperationControllerIntegrationTest;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class PrometheusEndpointIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
+
+	@Test
+	public void testPrometheus() throws Exception {
+		when(noteStoreOperations.listTagsByNotebook("NOTEBOOK_GUID")).thenReturn(Arrays.asList(new Tag()));
+		performRequest("/noteStore/listTagsByNotebook", "{\"notebookGuid\":\"NOTEBOOK_GUID\"}");
+
+		String body = mockMvc.perform(get("/management/prometheus"))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Content-Type", startsWith("text/plain")))
+				.andReturn().getResponse().getContentAsString();
+
+		String labels = "store=\"noteStore\",method=\"listTagsByNotebook\"";
+		assertThat(body, containsString("# TYPE evernote_api_requests_total counter\n"));
+		assertThat(body, containsString("# TYPE evernote_api_response_seconds histogram\n"));
+		long succeeded = value(body, "evernote_api_requests_total{" + labels + ",outcome=\"succeeded\"}");
+		assertThat(succeeded > 0, is(true));
+
+		// buckets are cumulative, "+Inf" is the count
+		long previous = 0;
+		for (String le : PrometheusFormat.SECONDS_LE) {
+			long bucket = value(body, "evernote_api_response_seconds_bucket{" + labels + ",le=\"" + le + "\"}");
+			assertThat(bucket >= previous, is(true));
+			previous = bucket;
+		}
+		assertThat(value(body, "evernote_api_response_seconds_count{" + labels + "}"), is(previous));
+		assertThat(body, containsString("evernote_api_response_seconds_sum{" + labels + "} "));
+		assertThat(body, containsString("evernote_api_phase_seconds_count{" + labels + ",phase=\"upstream\"} "));
+		assertThat(body, containsString("# TYPE evernote_api_inflight gauge\n"));
+
+		// counted since start
+		performRequest("/noteStore/listTagsByNotebook", "{\"notebookGuid\":\"NOTEBOOK_GUID\"}");
+		body = mockMvc.perform(get("/management/prometheus")).andReturn().getResponse().getContentAsString();
+		assertThat(value(body, "evernote_api_response_seconds_count{" + labels + "}"), is(previous + 1));
+		assertThat(value(body, "evernote_api_response_seconds_bucket{" + labels + ",le=\"+Inf\"}"), is(previous + 1));
+	}
+
+	private static long value(String body, String sample) {
+		Matcher matcher = Pattern.compile("^" + Pattern.quote(sample) + " (\\d+)$", Pattern.MULTILINE).matcher(body);
+		assertThat(sample, matcher.find(), is(true));
+		return Long.parseLong(matcher.group(1));
+	}
+
+}
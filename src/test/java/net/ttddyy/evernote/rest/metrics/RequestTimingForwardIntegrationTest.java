@@ -0,0 +1,77 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import com.evernote.edam.error.EDAMUserException;
+import net.ttddyy.evernote.rest.AbstractStoreOperationControllerIntegrationTest;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.EnvironmentTestUtils;
+import org.springframework.boot.test.IntegrationTest;
+import org.springframework.boot.test.TestRestTemplate;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.social.evernote.api.EvernoteException;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.when;
+
+/**
+ * EDAM errors are forwarded to "/error", which goes through the dispatcher servlet and its interceptors again.
+ * MockMvc does not perform forwards, so this runs on the embedded server.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+@IntegrationTest
+@ContextConfiguration(initializers = RequestTimingForwardIntegrationTest.EmbeddedServerInitializer.class)
+public class RequestTimingForwardIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
+
+	/**
+	 * Also makes the context differ from the shared MockMvc one, which ignores {@link IntegrationTest}.
+	 */
+	public static class EmbeddedServerInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+		@Override
+		public void initialize(ConfigurableApplicationContext applicationContext) {
+			EnvironmentTestUtils.addEnvironment(applicationContext, "server.port:0", "management.security.enabled:false");
+		}
+	}
+
+	@Value("${local.server.port}")
+	private int port;
+
+	private final TestRestTemplate restTemplate = new TestRestTemplate();
+
+	@Test
+	public void testRecordedOnceWithErrorForward() throws Exception {
+		when(userStoreOperations.getUser()).thenThrow(new EvernoteException("MESSAGE", new EDAMUserException()));
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		headers.set(ClientCosts.CLIENT_ID_HEADER, "FORWARD_CLIENT");
+		ResponseEntity<String> response = this.restTemplate.postForEntity(url("/userStore/getUser"),
+				new HttpEntity<String>("{}", headers), String.class);
+		assertThat(response.getStatusCode(), is(HttpStatus.BAD_REQUEST));
+
+		Map<?, ?> metrics = this.restTemplate.getForObject(url("/management/metrics"), Map.class);
+		String prefix = "histogram.evernote.api.userStore.getUser.phase.";
+		assertThat(((Number) metrics.get(prefix + "lookup.count")).intValue(), is(1));
+		assertThat(((Number) metrics.get(prefix + "upstream.count")).intValue(), is(1));
+
+		Map<?, ?> clientCosts = this.restTemplate.getForObject(url("/management/clientcosts"), Map.class);
+		Map<?, ?> cost = (Map<?, ?>) clientCosts.get("FORWARD_CLIENT");
+		assertThat(((Number) cost.get("requests")).intValue(), is(1));
+		assertThat(((Number) cost.get("upstreamCalls")).intValue(), is(1));
+	}
+
+	private String url(String path) {
+		return "http://localhost:" + this.port + path;
+	}
+
+}
@@ -0,0 +1,86 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import com.evernote.edam.error.EDAMUserException;
+import com.evernote.edam.type.Note;
+import net.ttddyy.evernote.rest.AbstractStoreOperationControllerIntegrationTest;
+import org.junit.Test;
+import org.springframework.boot.test.EnvironmentTestUtils;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.social.evernote.api.EvernoteException;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+@ContextConfiguration(initializers = RequestTimingIntegrationTest.ServerTimingInitializer.class)
+public class RequestTimingIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
+
+	public static class ServerTimingInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+		@Override
+		public void initialize(ConfigurableApplicationContext applicationContext) {
+			EnvironmentTestUtils.addEnvironment(applicationContext, "evernote.metrics.serverTiming:true",
+					"evernote.metrics.slowRequestThresholdMillis:0");  // record every request as slow
+		}
+	}
+
+	@Test
+	public void testServerTimingHeader() throws Exception {
+		when(noteStoreOperations.getNote("NOTE_GUID", true, false, false, false)).thenReturn(new Note());
+		String json = "{\"guid\":\"NOTE_GUID\", \"withContent\":true, \"withResourcesData\":false," +
+				" \"withResourcesRecognition\":false, \"withResourcesAlternateData\":false}";
+		MvcResult result = performRequest("/noteStore/getNote", json).andReturn();
+
+		String header = result.getResponse().getHeader("Server-Timing");
+		assertThat(header, header.matches("lookup;dur=[0-9.]+, bind;dur=[0-9.]+, client;dur=[0-9.]+, upstream;dur=[0-9.]+"), is(true));
+	}
+
+	@Test
+	public void testPhaseHistograms() throws Exception {
+		when(noteStoreOperations.getNote("NOTE_GUID", true, false, false, false)).thenReturn(new Note());
+		String json = "{\"guid\":\"NOTE_GUID\", \"withContent\":true, \"withResourcesData\":false," +
+				" \"withResourcesRecognition\":false, \"withResourcesAlternateData\":false}";
+		performRequest("/noteStore/getNote", json);
+		performRequest("/noteStore/getNote", json);
+
+		String prefix = "$.['histogram.evernote.api.noteStore.getNote.phase.";
+		mockMvc.perform(get("/management/metrics"))
+				.andExpect(jsonPath(prefix + "lookup.count']").value(2))
+				.andExpect(jsonPath(prefix + "bind.count']").value(2))
+				.andExpect(jsonPath(prefix + "client.count']").value(2))
+				.andExpect(jsonPath(prefix + "upstream.count']").value(2))
+				.andExpect(jsonPath(prefix + "serialize.count']").value(2))
+				.andExpect(jsonPath(prefix + "serialize.p99']").exists());
+	}
+
+	@Test
+	public void testSlowRequests() throws Exception {
+		when(userStoreOperations.getUser()).thenThrow(new EvernoteException("MESSAGE", new EDAMUserException()));
+		performRequest("/userStore/getUser", "{}");
+
+		when(noteStoreOperations.getNote("NOTE_GUID", true, false, false, false)).thenReturn(new Note());
+		String json = "{\"guid\":\"NOTE_GUID\", \"withContent\":true, \"withResourcesData\":false," +
+				" \"withResourcesRecognition\":false, \"withResourcesAlternateData\":false}";
+		performRequest("/noteStore/getNote", json);
+
+		mockMvc.perform(get("/management/slowrequests"))
+				.andExpect(jsonPath("$[0].store").value("noteStore"))
+				.andExpect(jsonPath("$[0].method").value("getNote"))
+				.andExpect(jsonPath("$[0].outcome").value("succeeded"))
+				.andExpect(jsonPath("$[0].phaseMillis.upstream").exists())
+				.andExpect(jsonPath("$[0].parameterSizes.guid").value(11))  // "NOTE_GUID" with quotes
+				.andExpect(jsonPath("$[0].requestBytes").value(json.length()))
+				.andExpect(jsonPath("$[1].method").value("getUser"))
+				.andExpect(jsonPath("$[1].outcome").value("failed"))
+				.andExpect(jsonPath("$[1].exception").value(EvernoteException.class.getName()))
+				.andExpect(jsonPath("$[1].cause").value(EDAMUserException.class.getName()));
+	}
+
+}
@@ -0,0 +1,87 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class RollingTopKTest {
+
+	@Test
+	public void testHeavyHittersAreKept() {
+		RollingTopK topK = new RollingTopK(60000, 6, 10);
+		for (int i = 0; i < 1000; i++) {
+			topK.add("HEAVY_1", 3, 0);
+			topK.add("HEAVY_2", 2, 0);
+			topK.add("LIGHT_" + i, 1, 0);  // more distinct keys than counters
+		}
+
+		List<RollingTopK.Entry> top = topK.top(2, 0);
+		assertThat(top.size(), is(2));
+		assertThat(top.get(0).getKey(), is("HEAVY_1"));
+		assertThat(top.get(1).getKey(), is("HEAVY_2"));
+		// overestimated by at most the error
+		assertThat(top.get(0).getCount(), greaterThanOrEqualTo(3000L));
+		assertThat(top.get(0).getCount() - top.get(0).getError(), is(3000L));
+	}
+
+	@Test
+	public void testRollingWindow() {
+		RollingTopK topK = new RollingTopK(60000, 6, 10);  // 10 second intervals
+		topK.add("FOO", 1, 0);
+		topK.add("BAR", 5, 15000);
+		topK.add("FOO", 10, 15000);
+
+		List<RollingTopK.Entry> top = topK.top(10, 59999);
+		assertThat(top.size(), is(2));
+		assertThat(top.get(0).getKey(), is("FOO"));
+		assertThat(top.get(0).getCount(), is(11L));
+
+		// first interval is out of the window
+		top = topK.top(10, 60000);
+		assertThat(top.get(0).getCount(), is(10L));
+
+		// reused interval starts over
+		topK.add("BAZ", 1, 60000);
+		top = topK.top(10, 60000);
+		assertThat(top.size(), is(3));
+		assertThat(top.get(2).getKey(), is("BAZ"));
+		assertThat(top.get(2).getCount(), is(1L));
+	}
+
+	@Test
+	public void testSummariesOfInterval() {
+		RollingTopK topK = new RollingTopK(60000, 6, 10, 2);
+		topK.add(new String[]{"FOO", "s1"}, new long[]{1, 100}, 0);
+		topK.add(new String[]{null, "s1"}, new long[]{1, 0}, 0);  // skipped
+		topK.add(new String[]{"BAR", "s2"}, new long[]{2, 50}, 15000);
+
+		List<RollingTopK.Entry> top = topK.topOf(0, 10, 15000);
+		assertThat(top.size(), is(2));
+		assertThat(top.get(0).getKey(), is("BAR"));
+		top = topK.topOf(1, 10, 15000);
+		assertThat(top.size(), is(2));
+		assertThat(top.get(0).getKey(), is("s1"));
+		assertThat(top.get(0).getCount(), is(100L));
+
+		// all summaries of a reused interval start over
+		topK.add(new String[]{"BAZ", "s3"}, new long[]{1, 1}, 60000);
+		assertThat(topK.topOf(0, 10, 60000).size(), is(2));
+		assertThat(topK.topOf(1, 10, 60000).size(), is(2));
+	}
+
+	@Test
+	public void testShardOf() {
+		assertThat(HeavyHitters.shardOf("https://www.evernote.com/shard/s1/notestore"), is("s1"));
+		assertThat(HeavyHitters.shardOf("https://sandbox.evernote.com/shard/s12"), is("s12"));
+		assertThat(HeavyHitters.shardOf("https://example.com/notestore"), is("example.com"));
+		assertThat(HeavyHitters.shardOf(null), is(HeavyHitters.DEFAULT_SHARD));
+	}
+
+}
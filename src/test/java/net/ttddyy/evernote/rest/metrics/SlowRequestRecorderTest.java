@@ -0,0 +1,37 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class SlowRequestRecorderTest {
+
+	@Test
+	public void testThreshold() {
+		SlowRequestRecorder recorder = new SlowRequestRecorder(1000, 4);
+		assertThat(recorder.isSlow(999), is(false));
+		assertThat(recorder.isSlow(1000), is(true));
+	}
+
+	@Test
+	public void testRingBuffer() {
+		SlowRequestRecorder recorder = new SlowRequestRecorder(0, 3);  // rounded up to 4
+		for (int i = 0; i < 6; i++) {
+			RequestTiming timing = new RequestTiming();
+			timing.setMetrics(new StoreMethodMetrics("noteStore", "method" + i, 60000, 6));
+			recorder.record(timing, i, -1);
+		}
+
+		List<SlowRequest> slowRequests = recorder.dump();
+		assertThat(slowRequests.size(), is(4));
+		assertThat(slowRequests.get(0).toMap().get("method"), is((Object) "method5"));
+		assertThat(slowRequests.get(3).toMap().get("method"), is((Object) "method2"));
+	}
+
+}
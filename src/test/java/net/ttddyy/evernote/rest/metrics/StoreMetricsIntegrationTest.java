@@ -0,0 +1,55 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import com.evernote.edam.error.EDAMUserException;
+import com.evernote.edam.type.Note;
+import net.ttddyy.evernote.rest.AbstractStoreOperationControllerIntegrationTest;
+import org.junit.Test;
+import org.springframework.social.evernote.api.EvernoteException;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class StoreMetricsIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
+
+	@Test
+	public void testMetrics() throws Exception {
+		when(noteStoreOperations.getNote("NOTE_GUID", true, false, false, false)).thenReturn(new Note());
+		String json = "{\"guid\":\"NOTE_GUID\", \"withContent\":true, \"withResourcesData\":false," +
+				" \"withResourcesRecognition\":false, \"withResourcesAlternateData\":false}";
+		for (int i = 0; i < 3; i++) {
+			performRequest("/noteStore/getNote", json);
+		}
+
+		String prefix = "$.['histogram.evernote.api.noteStore.getNote.response.";
+		mockMvc.perform(get("/management/metrics"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath(prefix + "count']").value(3))
+				.andExpect(jsonPath(prefix + "mean']").exists())
+				.andExpect(jsonPath(prefix + "p50']").exists())
+				.andExpect(jsonPath(prefix + "p90']").exists())
+				.andExpect(jsonPath(prefix + "p99']").exists())
+				.andExpect(jsonPath(prefix + "p999']").exists())
+				.andExpect(jsonPath(prefix + "max']").exists())
+				.andExpect(jsonPath("$.['counter.evernote.api.noteStore.getNote.succeeded']").value(3))
+				.andExpect(jsonPath("$.['gauge.evernote.api.noteStore.getNote.response']").exists())
+				.andExpect(jsonPath("$.['counter.evernote.api.noteStore.getNote.failed']").doesNotExist())
+				.andExpect(jsonPath("$.mem").exists());  // spring-boot's metrics
+	}
+
+	@Test
+	public void testFailed() throws Exception {
+		when(userStoreOperations.getUser()).thenThrow(new EvernoteException("MESSAGE", new EDAMUserException()));
+		performRequest("/userStore/getUser", "{}");
+
+		mockMvc.perform(get("/management/metrics"))
+				.andExpect(jsonPath("$.['counter.evernote.api.userStore.getUser.failed']").value(1))
+				.andExpect(jsonPath("$.['counter.evernote.api.userStore.getUser.succeeded']").doesNotExist())
+				.andExpect(jsonPath("$.['gauge.evernote.api.userStore.getUser.response']").doesNotExist());
+	}
+
+}
@@ -0,0 +1,44 @@
+package net.ttddyy.evernote.rest.metrics;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class StripedCounterTest {
+
+	@Test
+	public void testStripes() {
+		assertThat(StripedCounter.stripes(0), is(2));
+		assertThat(StripedCounter.stripes(1), is(2));
+		assertThat(StripedCounter.stripes(3), is(8));
+		assertThat(StripedCounter.stripes(4), is(8));
+		assertThat(StripedCounter.stripes(100), is(64));
+	}
+
+	@Test
+	public void testConcurrentIncrement() throws Exception {
+		final StripedCounter counter = new StripedCounter();
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						counter.increment();
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		counter.add(5);
+		assertThat(counter.sum(), is(80005L));
+	}
+
+}
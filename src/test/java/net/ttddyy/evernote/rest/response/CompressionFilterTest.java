@@ -0,0 +1,259 @@
+package net.ttddyy.evernote.rest.response;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.FileCopyUtils;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class CompressionFilterTest {
+
+	private static final String LARGE_JSON = largeJson();
+
+	private DeflaterPool gzipDeflaterPool;
+	private CompressionFilter filter;
+
+	private static String largeJson() {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < 500; i++) {
+			sb.append(i == 0 ? "" : ",").append("{\"guid\":\"NOTE_GUID_").append(i).append("\",\"title\":\"TITLE\"}");
+		}
+		return sb.append("]").toString();
+	}
+
+	/**
+	 * Writes given body with content type, in small pieces with flushes like a streaming converter.
+	 */
+	private static class WritingServlet extends HttpServlet {
+
+		private final String contentType;
+		private final String body;
+		private byte[] requestBody;
+
+		private WritingServlet(String contentType, String body) {
+			this.contentType = contentType;
+			this.body = body;
+		}
+
+		@Override
+		protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+			this.requestBody = FileCopyUtils.copyToByteArray(req.getInputStream());
+			resp.setContentType(this.contentType);
+			byte[] bytes = this.body.getBytes("UTF-8");
+			for (int offset = 0; offset < bytes.length; offset += 100) {
+				resp.getOutputStream().write(bytes, offset, Math.min(100, bytes.length - offset));
+				resp.getOutputStream().flush();
+			}
+		}
+	}
+
+	@Before
+	public void setUp() {
+		this.gzipDeflaterPool = new DeflaterPool(Deflater.DEFAULT_COMPRESSION, true, 2);
+		this.filter = new CompressionFilter(this.gzipDeflaterPool, new DeflaterPool(Deflater.DEFAULT_COMPRESSION, false, 2));
+		this.filter.setMimeTypes(new HashSet<String>(Arrays.asList("application/json")));
+	}
+
+	private MockHttpServletResponse perform(MockHttpServletRequest request, WritingServlet servlet) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.filter.doFilter(request, response, new MockFilterChain(servlet));
+		return response;
+	}
+
+	private static MockHttpServletRequest request(String uri, String acceptEncoding) {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", uri);
+		request.setContent(new byte[0]);
+		if (acceptEncoding != null) {
+			request.addHeader("Accept-Encoding", acceptEncoding);
+		}
+		return request;
+	}
+
+	@Test
+	public void testGzip() throws Exception {
+		MockHttpServletResponse response = perform(request("/noteStore/getSyncChunk", "gzip, deflate"),
+				new WritingServlet("application/json;charset=UTF-8", LARGE_JSON));
+
+		assertThat(response.getHeader("Content-Encoding"), is("gzip"));
+		assertThat(response.getHeader("Vary"), is("Accept-Encoding"));
+		assertThat(response.getHeader("Content-Length"), nullValue());
+		byte[] compressed = response.getContentAsByteArray();
+		assertThat(compressed.length, lessThan(LARGE_JSON.length() / 5));
+		byte[] inflated = FileCopyUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+		assertThat(new String(inflated, "UTF-8"), is(LARGE_JSON));
+
+		assertThat(this.gzipDeflaterPool.getIdleCount(), is(1));  // returned to pool
+		assertThat(this.gzipDeflaterPool.getIdleBufferCount(), is(2));
+
+		// reused deflater produces same result
+		MockHttpServletResponse second = perform(request("/noteStore/getSyncChunk", "gzip"),
+				new WritingServlet("application/json;charset=UTF-8", LARGE_JSON));
+		assertThat(second.getContentAsByteArray(), is(compressed));
+		assertThat(this.gzipDeflaterPool.getIdleCount(), is(1));
+		assertThat(this.gzipDeflaterPool.getIdleBufferCount(), is(2));
+	}
+
+	@Test
+	public void testSingleByteWrites() throws Exception {
+		MockHttpServletResponse response = perform(request("/noteStore/getSyncChunk", "gzip"), new WritingServlet(
+				"application/json", LARGE_JSON) {
+			@Override
+			protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+				resp.setContentType("application/json");
+				for (byte b : LARGE_JSON.getBytes("UTF-8")) {
+					resp.getOutputStream().write(b);
+				}
+			}
+		});
+
+		assertThat(response.getHeader("Content-Encoding"), is("gzip"));
+		byte[] inflated = FileCopyUtils.copyToByteArray(
+				new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray())));
+		assertThat(new String(inflated, "UTF-8"), is(LARGE_JSON));
+		assertThat(this.gzipDeflaterPool.getIdleBufferCount(), is(2));
+	}
+
+	@Test
+	public void testWeakETag() throws Exception {
+		MockHttpServletResponse response = perform(request("/noteStore/getSyncChunk", "gzip"), new WritingServlet(
+				"application/json", LARGE_JSON) {
+			@Override
+			protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				resp.setHeader("ETag", "\"HASH\"");
+				super.service(req, resp);
+			}
+		});
+		assertThat(response.getHeader("Content-Encoding"), is("gzip"));
+		assertThat(response.getHeader("ETag"), is("W/\"HASH\""));
+
+		// identity body keeps the strong tag
+		response = perform(request("/noteStore/getNote", "gzip"), new WritingServlet("application/json", "{}") {
+			@Override
+			protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+				resp.setHeader("ETag", "\"HASH\"");
+				super.service(req, resp);
+			}
+		});
+		assertThat(response.getHeader("Content-Encoding"), nullValue());
+		assertThat(response.getHeader("ETag"), is("\"HASH\""));
+	}
+
+	@Test
+	public void testLargeContentLength() throws Exception {
+		final String[] contentLength = new String[1];
+		MockHttpServletResponse response = new MockHttpServletResponse() {
+			@Override
+			public void setHeader(String name, String value) {
+				if ("Content-Length".equals(name)) {
+					contentLength[0] = value;  // mock response only holds int lengths
+				} else {
+					super.setHeader(name, value);
+				}
+			}
+		};
+		this.filter.doFilter(request("/noteStore/resource/GUID/data", "gzip"), response, new MockFilterChain(
+				new WritingServlet("image/png", "{}") {
+					@Override
+					protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+						resp.setHeader("Content-Length", "3000000000");
+						super.service(req, resp);
+					}
+				}));
+		assertThat(contentLength[0], is("3000000000"));
+	}
+
+	@Test
+	public void testDeflate() throws Exception {
+		MockHttpServletResponse response = perform(request("/noteStore/getSyncChunk", "gzip;q=0, deflate"),
+				new WritingServlet("application/json", LARGE_JSON));
+
+		assertThat(response.getHeader("Content-Encoding"), is("deflate"));
+		byte[] inflated = FileCopyUtils.copyToByteArray(new InflaterInputStream(new ByteArrayInputStream(response.getContentAsByteArray())));
+		assertThat(new String(inflated, "UTF-8"), is(LARGE_JSON));
+	}
+
+	@Test
+	public void testSmallResponseIsNotCompressed() throws Exception {
+		MockHttpServletResponse response = perform(request("/noteStore/getNote", "gzip"),
+				new WritingServlet("application/json", "{\"guid\":\"NOTE_GUID\"}"));
+
+		assertThat(response.getHeader("Content-Encoding"), nullValue());
+		assertThat(response.getContentAsString(), is("{\"guid\":\"NOTE_GUID\"}"));
+		assertThat(response.getContentLength(), is(20));
+	}
+
+	@Test
+	public void testNotAccepted() throws Exception {
+		MockHttpServletResponse response = perform(request("/noteStore/getSyncChunk", null),
+				new WritingServlet("application/json", LARGE_JSON));
+		assertThat(response.getHeader("Content-Encoding"), nullValue());
+		assertThat(response.getContentAsString(), is(LARGE_JSON));
+	}
+
+	@Test
+	public void testNotCompressibleMimeType() throws Exception {
+		MockHttpServletResponse response = perform(request("/noteStore/resource/GUID/data", "gzip"),
+				new WritingServlet("image/png", LARGE_JSON));
+		assertThat(response.getHeader("Content-Encoding"), nullValue());
+		assertThat(response.getContentAsString(), is(LARGE_JSON));
+	}
+
+	@Test
+	public void testMethodOverride() throws Exception {
+		this.filter.setMethodMinSizeBytes(Collections.singletonMap("getSyncChunk", -1));
+		MockHttpServletResponse response = perform(request("/noteStore/getSyncChunk", "gzip"),
+				new WritingServlet("application/json", LARGE_JSON));
+		assertThat(response.getHeader("Content-Encoding"), nullValue());
+
+		this.filter.setMethodMinSizeBytes(Collections.singletonMap("getNote", 0));
+		response = perform(request("/noteStore/getNote", "gzip"), new WritingServlet("application/json", "{}"));
+		assertThat(response.getHeader("Content-Encoding"), is("gzip"));
+	}
+
+	@Test
+	public void testGzipRequestBody() throws Exception {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(compressed);
+		out.write(LARGE_JSON.getBytes("UTF-8"));
+		out.close();
+
+		MockHttpServletRequest request = request("/noteStore/createNote", null);
+		request.addHeader("Content-Encoding", "gzip");
+		request.setContent(compressed.toByteArray());
+		WritingServlet servlet = new WritingServlet("application/json", "{}");
+		perform(request, servlet);
+		assertThat(new String(servlet.requestBody, "UTF-8"), is(LARGE_JSON));
+
+		// inflated size limit
+		this.filter.setMaxDecompressedRequestBytes(1000);
+		try {
+			perform(request, new WritingServlet("application/json", "{}"));
+			throw new AssertionError("should fail");
+		} catch (IOException e) {
+			assertThat(e.getMessage(), containsString("exceeds"));
+		}
+	}
+
+}
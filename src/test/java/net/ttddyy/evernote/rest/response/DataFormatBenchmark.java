@@ -0,0 +1,128 @@
+package net.ttddyy.evernote.rest.response;
+
+import com.evernote.edam.notestore.SyncChunk;
+import com.evernote.edam.type.Note;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import net.ttddyy.evernote.rest.Application;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares encoded size and serialization/deserialization throughput of json, smile and cbor.
+ *
+ * Request bodies are the fixtures under "src/test/resources/input" read as trees(as the controller does). Response is
+ * a SyncChunk of notes built from "input/note.json".
+ *
+ * Not a unit test. Run with: {@code java -cp ... net.ttddyy.evernote.rest.response.DataFormatBenchmark [notes]}
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class DataFormatBenchmark {
+
+	private interface Task {
+		void run() throws IOException;
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int noteCount = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+
+		final Map<String, ObjectMapper> mappers = new LinkedHashMap<String, ObjectMapper>();
+		mappers.put("json", Application.createObjectMapper(null));
+		mappers.put("smile", Application.createObjectMapper(new SmileFactory()));
+		mappers.put("cbor", Application.createObjectMapper(new CBORFactory()));
+		final ObjectMapper jsonMapper = mappers.get("json");
+
+		// request bodies
+		final List<JsonNode> requests = new ArrayList<JsonNode>();
+		for (Resource resource : new PathMatchingResourcePatternResolver().getResources("classpath:/input/*.json")) {
+			requests.add(jsonMapper.readTree(resource.getInputStream()));
+		}
+
+		// response
+		final JsonNode noteJson = jsonMapper.readTree(
+				new PathMatchingResourcePatternResolver().getResource("classpath:/input/note.json").getInputStream()).get("note");
+		final List<Note> notes = new ArrayList<Note>();
+		for (int i = 0; i < noteCount; i++) {
+			final Note note = jsonMapper.treeToValue(noteJson, Note.class);
+			note.setGuid("NOTE_GUID_" + i);
+			notes.add(note);
+		}
+		final SyncChunk syncChunk = new SyncChunk();
+		syncChunk.setNotes(notes);
+
+		System.out.printf("%-6s %12s %14s %14s %12s %14s %14s%n", "format", "req bytes", "req ser/s", "req deser/s",
+				"resp bytes", "resp ser/s", "resp deser/s");
+		for (Map.Entry<String, ObjectMapper> entry : mappers.entrySet()) {
+			final ObjectMapper mapper = entry.getValue();
+
+			final List<byte[]> encodedRequests = new ArrayList<byte[]>();
+			int requestBytes = 0;
+			for (JsonNode request : requests) {
+				final byte[] bytes = mapper.writeValueAsBytes(request);
+				encodedRequests.add(bytes);
+				requestBytes += bytes.length;
+			}
+			final double requestSer = measure(new Task() {
+				@Override
+				public void run() throws IOException {
+					for (JsonNode request : requests) {
+						mapper.writeValueAsBytes(request);
+					}
+				}
+			});
+			final double requestDeser = measure(new Task() {
+				@Override
+				public void run() throws IOException {
+					for (byte[] bytes : encodedRequests) {
+						mapper.readTree(bytes);
+					}
+				}
+			});
+
+			final byte[] encodedResponse = mapper.writeValueAsBytes(syncChunk);
+			final double responseSer = measure(new Task() {
+				@Override
+				public void run() throws IOException {
+					mapper.writeValueAsBytes(syncChunk);
+				}
+			});
+			final double responseDeser = measure(new Task() {
+				@Override
+				public void run() throws IOException {
+					mapper.readValue(encodedResponse, SyncChunk.class);
+				}
+			});
+
+			System.out.printf("%-6s %,12d %,14.0f %,14.0f %,12d %,14.0f %,14.0f%n", entry.getKey(), requestBytes,
+					requestSer, requestDeser, encodedResponse.length, responseSer, responseDeser);
+		}
+	}
+
+	/**
+	 * @return ops per second
+	 */
+	private static double measure(Task task) throws IOException {
+		for (int i = 0; i < 200; i++) {
+			task.run();  // warm up
+		}
+		int iterations = 0;
+		final long start = System.nanoTime();
+		long elapsed;
+		do {
+			task.run();
+			iterations++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < 1000000000L);
+		return iterations / (elapsed / 1e9);
+	}
+
+}
@@ -0,0 +1,104 @@
+package net.ttddyy.evernote.rest.response;
+
+import com.evernote.edam.type.Note;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import net.ttddyy.evernote.rest.AbstractStoreOperationControllerIntegrationTest;
+import net.ttddyy.evernote.rest.Application;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class DataFormatIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
+
+	private static Note note() {
+		Note note = new Note();
+		note.setGuid("NOTE_GUID");
+		note.setTitle("NOTE_TITLE");
+		note.setContentHash(new byte[]{1, 2, 3});
+		note.setUpdated(100L);
+		note.setTagGuids(Arrays.asList("TAG_1", "TAG_2"));
+		return note;
+	}
+
+	private MvcResult perform(MediaType accept) throws Exception {
+		when(noteStoreOperations.getNote("NOTE_GUID", true, false, false, false)).thenReturn(note());
+		String json = "{\"guid\":\"NOTE_GUID\", \"withContent\":true, \"withResourcesData\":false," +
+				" \"withResourcesRecognition\":false, \"withResourcesAlternateData\":false}";
+		return mockMvc.perform(post("/noteStore/getNote").content(json).contentType(MediaType.APPLICATION_JSON).accept(accept))
+				.andExpect(status().isOk()).andReturn();
+	}
+
+	private void assertSameAsJson(MvcResult result, ObjectMapper mapper) throws Exception {
+		ObjectMapper jsonMapper = Application.createObjectMapper(null);
+		JsonNode expected = jsonMapper.readTree(jsonMapper.writeValueAsBytes(note()));
+		JsonNode actual = mapper.readTree(result.getResponse().getContentAsByteArray());
+		// binary values are base64 text in json tree
+		assertThat(jsonMapper.readTree(jsonMapper.writeValueAsBytes(actual)), is(expected));
+		assertThat(actual.get("__isset_vector"), nullValue());
+		assertThat(actual.has("content"), is(true));  // unset fields are written as json
+	}
+
+	@Test
+	public void testSmile() throws Exception {
+		MvcResult result = perform(ResponseConfiguration.SMILE);
+		assertThat(result.getResponse().getContentType(), is("application/x-jackson-smile"));
+		assertSameAsJson(result, new ObjectMapper(new SmileFactory()));
+	}
+
+	@Test
+	public void testCbor() throws Exception {
+		MvcResult result = perform(ResponseConfiguration.CBOR);
+		assertThat(result.getResponse().getContentType(), is("application/cbor"));
+		assertSameAsJson(result, new ObjectMapper(new CBORFactory()));
+	}
+
+	@Test
+	public void testJsonIsDefault() throws Exception {
+		when(noteStoreOperations.getNote("NOTE_GUID", true, false, false, false)).thenReturn(note());
+		String json = "{\"guid\":\"NOTE_GUID\", \"withContent\":true, \"withResourcesData\":false," +
+				" \"withResourcesRecognition\":false, \"withResourcesAlternateData\":false}";
+		mockMvc.perform(post("/noteStore/getNote").content(json).contentType(MediaType.APPLICATION_JSON).accept(MediaType.ALL))
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+		mockMvc.perform(post("/noteStore/getNote").content(json).contentType(MediaType.APPLICATION_JSON))
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+	}
+
+	@Test
+	public void testBinaryRequestBody() throws Exception {
+		when(noteStoreOperations.createNote(any(Note.class))).thenReturn(note());
+
+		ObjectMapper cborMapper = Application.createObjectMapper(new CBORFactory());
+		byte[] body = cborMapper.writeValueAsBytes(cborMapper.createObjectNode().putPOJO("note", note()));
+
+		mockMvc.perform(post("/noteStore/createNote").content(body).contentType(ResponseConfiguration.CBOR)
+				.accept(ResponseConfiguration.SMILE))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(ResponseConfiguration.SMILE));
+
+		ArgumentCaptor<Note> captor = ArgumentCaptor.forClass(Note.class);
+		verify(noteStoreOperations).createNote(captor.capture());
+		assertThat(captor.getValue().getTitle(), is("NOTE_TITLE"));
+		assertThat(captor.getValue().getContentHash(), is(new byte[]{1, 2, 3}));  // binary value in cbor
+		assertThat(captor.getValue().getTagGuids(), is(Arrays.asList("TAG_1", "TAG_2")));
+	}
+
+}
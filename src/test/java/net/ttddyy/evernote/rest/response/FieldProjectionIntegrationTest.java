@@ -0,0 +1,141 @@
+package net.ttddyy.evernote.rest.response;
+
+import com.evernote.edam.type.Data;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.NoteAttributes;
+import com.evernote.edam.type.Notebook;
+import com.evernote.edam.type.Resource;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import net.ttddyy.evernote.rest.AbstractStoreOperationControllerIntegrationTest;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class FieldProjectionIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
+
+	private static final String GET_NOTE_JSON = "{\"guid\":\"NOTE_GUID\", \"withContent\":true, \"withResourcesData\":true," +
+			" \"withResourcesRecognition\":false, \"withResourcesAlternateData\":false}";
+
+	private static Resource resource(String guid) {
+		Data data = new Data();
+		data.setBody(new byte[]{1, 2, 3});
+		data.setSize(3);
+		Resource resource = new Resource();
+		resource.setGuid(guid);
+		resource.setMime("image/png");
+		resource.setData(data);
+		return resource;
+	}
+
+	private static Note note() {
+		NoteAttributes attributes = new NoteAttributes();
+		attributes.setAuthor("AUTHOR");
+		attributes.setSource("SOURCE");
+		Note note = new Note();
+		note.setGuid("NOTE_GUID");
+		note.setTitle("NOTE_TITLE");
+		note.setContent("CONTENT");
+		note.setAttributes(attributes);
+		note.setResources(Arrays.asList(resource("RES_1"), resource("RES_2")));
+		return note;
+	}
+
+	private JsonNode getNote(String fields, MediaType accept, ObjectMapper mapper) throws Exception {
+		when(noteStoreOperations.getNote("NOTE_GUID", true, true, false, false)).thenReturn(note());
+		String url = "/noteStore/getNote" + (fields == null ? "" : "?fields=" + fields);
+		MvcResult result = mockMvc.perform(post(url).content(GET_NOTE_JSON).contentType(MediaType.APPLICATION_JSON).accept(accept))
+				.andExpect(status().isOk()).andReturn();
+		return mapper.readTree(result.getResponse().getContentAsByteArray());
+	}
+
+	private static Iterable<String> names(final JsonNode node) {
+		return new Iterable<String>() {
+			@Override
+			public Iterator<String> iterator() {
+				return node.fieldNames();
+			}
+		};
+	}
+
+	@Test
+	public void testNestedFields() throws Exception {
+		JsonNode node = getNote("guid,title,resources.guid,attributes.author", MediaType.APPLICATION_JSON, new ObjectMapper());
+
+		assertThat(names(node), containsInAnyOrder("guid", "title", "resources", "attributes"));
+		assertThat(node.get("title").asText(), is("NOTE_TITLE"));
+		assertThat(node.get("resources").size(), is(2));
+		assertThat(names(node.get("resources").get(0)), contains("guid"));
+		assertThat(node.get("resources").get(1).get("guid").asText(), is("RES_2"));
+		assertThat(names(node.get("attributes")), contains("author"));
+	}
+
+	@Test
+	public void testWholeSubtree() throws Exception {
+		JsonNode node = getNote("resources.data", MediaType.APPLICATION_JSON, new ObjectMapper());
+
+		assertThat(names(node), contains("resources"));
+		JsonNode data = node.get("resources").get(0).get("data");
+		assertThat(data.get("size").asInt(), is(3));
+		assertThat(data.get("body").binaryValue(), is(new byte[]{1, 2, 3}));
+		assertThat(data.get("__isset_vector"), nullValue());
+	}
+
+	@Test
+	public void testWithoutFields() throws Exception {
+		JsonNode node = getNote(null, MediaType.APPLICATION_JSON, new ObjectMapper());
+		assertThat(node.get("content").asText(), is("CONTENT"));
+		assertThat(node.get("resources").get(0).has("data"), is(true));
+	}
+
+	@Test
+	public void testSmile() throws Exception {
+		JsonNode node = getNote("guid,resources.mime", ResponseConfiguration.SMILE, new ObjectMapper(new SmileFactory()));
+		assertThat(names(node), containsInAnyOrder("guid", "resources"));
+		assertThat(names(node.get("resources").get(0)), contains("mime"));
+	}
+
+	@Test
+	public void testList() throws Exception {
+		Notebook notebook = new Notebook();
+		notebook.setGuid("NOTEBOOK_GUID");
+		notebook.setName("NOTEBOOK_NAME");
+		notebook.setStack("STACK");
+		when(noteStoreOperations.listNotebooks()).thenReturn(Arrays.asList(notebook));
+
+		MvcResult result = mockMvc.perform(post("/noteStore/listNotebooks?fields=guid,name"))
+				.andExpect(status().isOk()).andReturn();
+		JsonNode node = new ObjectMapper().readTree(result.getResponse().getContentAsByteArray());
+		assertThat(node.size(), is(1));
+		assertThat(names(node.get(0)), containsInAnyOrder("guid", "name"));
+	}
+
+	@Test
+	public void testWithoutProperties() throws Exception {
+		when(noteStoreOperations.getNoteContent("NOTE_GUID")).thenReturn("CONTENT");
+		mockMvc.perform(post("/noteStore/getNoteContent?fields=guid").content("{\"guid\":\"NOTE_GUID\"}")
+				.contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()).andExpect(content().string("CONTENT"));  // not quoted
+
+		assertThat(FieldProjection.of(Arrays.asList("FOO", "BAR"), "guid"), is((Object) Arrays.asList("FOO", "BAR")));
+		assertThat(FieldProjection.of(100, "guid"), is((Object) 100));
+	}
+
+}
@@ -0,0 +1,125 @@
+package net.ttddyy.evernote.rest.response;
+
+import com.evernote.edam.notestore.SyncChunk;
+import com.evernote.edam.type.Note;
+import com.evernote.edam.type.Resource;
+import com.evernote.edam.type.Tag;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import net.ttddyy.evernote.rest.Application;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class ParallelListSerializationModuleTest {
+
+	private final ExecutorService executorService = Executors.newFixedThreadPool(3);
+
+	@After
+	public void tearDown() {
+		this.executorService.shutdownNow();
+	}
+
+	private static SyncChunk syncChunk(int noteCount) {
+		List<Note> notes = new ArrayList<Note>();
+		for (int i = 0; i < noteCount; i++) {
+			Resource resource = new Resource();
+			resource.setGuid("RESOURCE_" + i);
+			resource.setMime("image/png");
+			Note note = new Note();
+			note.setGuid("NOTE_" + i);
+			note.setTitle("TITLE 東京 " + i);  // multi-byte characters
+			note.setUpdated(i);
+			note.setTagGuids(Arrays.asList("TAG_1", "TAG_2"));
+			note.setResources(Arrays.asList(resource, resource));
+			notes.add(note);
+		}
+		Tag tag = new Tag();
+		tag.setGuid("TAG_1");
+		tag.setName("TAG_NAME");
+
+		SyncChunk syncChunk = new SyncChunk();
+		syncChunk.setCurrentTime(100L);
+		syncChunk.setNotes(notes);
+		syncChunk.setTags(Arrays.asList(tag));
+		syncChunk.setExpungedNotes(new ArrayList<String>());
+		return syncChunk;
+	}
+
+	private static ObjectMapper parallelObjectMapper(ParallelListSerializationModule module, boolean skipUnsetFields) {
+		ObjectMapper mapper = Application.createObjectMapper(null, skipUnsetFields);
+		mapper.registerModule(module);
+		return mapper;
+	}
+
+	private static byte[] write(ObjectMapper mapper, Object value) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		mapper.writeValue(out, value);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testSameBytes() throws Exception {
+		ObjectMapper serial = Application.createObjectMapper(null);
+		ParallelListSerializationModule module = new ParallelListSerializationModule(this.executorService, 10, 7, 4);
+		ObjectMapper parallel = parallelObjectMapper(module, false);
+
+		for (int noteCount : new int[]{0, 1, 9, 10, 11, 14, 100, 1000}) {
+			SyncChunk syncChunk = syncChunk(noteCount);
+			assertThat("notes=" + noteCount, write(parallel, syncChunk), is(write(serial, syncChunk)));
+			assertThat("notes=" + noteCount, write(parallel, syncChunk.getNotes()), is(write(serial, syncChunk.getNotes())));
+		}
+		assertThat(module.getIdleBufferCount(), greaterThan(0));
+	}
+
+	@Test
+	public void testSkipUnsetFields() throws Exception {
+		ObjectMapper serial = Application.createObjectMapper(null, true);
+		ObjectMapper parallel = parallelObjectMapper(new ParallelListSerializationModule(this.executorService, 10, 7, 4), true);
+
+		SyncChunk syncChunk = syncChunk(100);
+		assertThat(write(parallel, syncChunk), is(write(serial, syncChunk)));
+	}
+
+	@Test
+	public void testWritingThreadRunsSlices() throws Exception {
+		Executor neverRuns = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+			}
+		};
+		ObjectMapper serial = Application.createObjectMapper(null);
+		ObjectMapper parallel = parallelObjectMapper(new ParallelListSerializationModule(neverRuns, 10, 7, 4), false);
+
+		SyncChunk syncChunk = syncChunk(100);
+		assertThat(write(parallel, syncChunk), is(write(serial, syncChunk)));
+	}
+
+	@Test
+	public void testPrettyPrint() throws Exception {
+		ObjectMapper serial = Application.createObjectMapper(null);
+		serial.enable(SerializationFeature.INDENT_OUTPUT);
+		ObjectMapper parallel = parallelObjectMapper(new ParallelListSerializationModule(this.executorService, 10, 7, 4), false);
+		parallel.enable(SerializationFeature.INDENT_OUTPUT);
+
+		// serialized normally
+		SyncChunk syncChunk = syncChunk(100);
+		assertThat(write(parallel, syncChunk), is(write(serial, syncChunk)));
+		assertThat(parallel.writeValueAsString(syncChunk), is(serial.writeValueAsString(syncChunk)));
+	}
+
+}
@@ -0,0 +1,112 @@
+package net.ttddyy.evernote.rest.response;
+
+import com.evernote.edam.notestore.SyncChunk;
+import com.evernote.edam.type.Note;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.ttddyy.evernote.rest.Application;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares json serialization time of a SyncChunk with normal and parallel list serialization for growing number of
+ * notes, to find the number of elements where parallel serialization starts to pay off
+ * ("evernote.response.parallelMinElements").
+ *
+ * Notes are "input/note.json" with different guids. Output goes to a discarding stream.
+ *
+ * Not a unit test. Run with:
+ * {@code java -cp ... net.ttddyy.evernote.rest.response.ParallelSerializationBenchmark [threads] [sliceSize]}
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class ParallelSerializationBenchmark {
+
+	private static final OutputStream DISCARD = new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
+	public static void main(String[] args) throws Exception {
+		final int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		final int sliceSize = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+
+		final ObjectMapper serial = Application.createObjectMapper(null);
+		final Note note = serial.treeToValue(
+				serial.readTree(new ClassPathResource("input/note.json").getInputStream()).get("note"), Note.class);
+
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final ObjectMapper parallel = Application.createObjectMapper(null);
+		parallel.registerModule(new ParallelListSerializationModule(executor, 0, sliceSize, threads * 2));
+
+		System.out.printf("threads=%d, sliceSize=%d, availableProcessors=%d%n", threads, sliceSize,
+				Runtime.getRuntime().availableProcessors());
+		System.out.printf("%8s %14s %14s %8s%n", "notes", "normal(us)", "parallel(us)", "speedup");
+		Integer crossover = null;
+		for (int noteCount : new int[]{100, 250, 500, 1000, 2500, 5000, 10000}) {
+			final List<Note> notes = new ArrayList<Note>();
+			for (int i = 0; i < noteCount; i++) {
+				final Note copy = note.deepCopy();
+				copy.setGuid(note.getGuid() + i);
+				notes.add(copy);
+			}
+			final SyncChunk syncChunk = new SyncChunk();
+			syncChunk.setNotes(notes);
+
+			final double[] micros = measure(serial, parallel, syncChunk);
+			final double speedup = micros[0] / micros[1];
+			System.out.printf("%,8d %,14.0f %,14.0f %7.2fx%n", noteCount, micros[0], micros[1], speedup);
+			if (crossover == null && speedup > 1.0) {
+				crossover = noteCount;
+			}
+		}
+		System.out.println(crossover == null ? "parallel serialization did not pay off" : "crossover: " + crossover + " notes");
+		executor.shutdown();
+	}
+
+	/**
+	 * Runs both alternately, since a single run is easily skewed by the other load on the machine.
+	 *
+	 * @return median microseconds per serialization of normal and parallel
+	 */
+	private static double[] measure(ObjectMapper serial, ObjectMapper parallel, Object value) throws IOException {
+		for (int i = 0; i < 20; i++) {
+			serial.writeValue(DISCARD, value);  // warm up
+			parallel.writeValue(DISCARD, value);
+		}
+		final int rounds = 15;
+		final double[] serialResults = new double[rounds];
+		final double[] parallelResults = new double[rounds];
+		for (int round = 0; round < rounds; round++) {
+			serialResults[round] = run(serial, value);
+			parallelResults[round] = run(parallel, value);
+		}
+		Arrays.sort(serialResults);
+		Arrays.sort(parallelResults);
+		return new double[]{serialResults[rounds / 2], parallelResults[rounds / 2]};
+	}
+
+	private static double run(ObjectMapper mapper, Object value) throws IOException {
+		int iterations = 0;
+		final long start = System.nanoTime();
+		long elapsed;
+		do {
+			mapper.writeValue(DISCARD, value);
+			iterations++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < 100000000L);
+		return elapsed / 1e3 / iterations;
+	}
+
+}
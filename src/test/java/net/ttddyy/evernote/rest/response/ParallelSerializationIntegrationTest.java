@@ -0,0 +1,53 @@
+package net.ttddyy.evernote.rest.response;
+
+import com.evernote.edam.notestore.SyncChunk;
+import com.evernote.edam.type.Note;
+import net.ttddyy.evernote.rest.AbstractStoreOperationControllerIntegrationTest;
+import net.ttddyy.evernote.rest.Application;
+import org.junit.Test;
+import org.springframework.boot.test.EnvironmentTestUtils;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+@ContextConfiguration(initializers = ParallelSerializationIntegrationTest.ParallelInitializer.class)
+public class ParallelSerializationIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
+
+	public static class ParallelInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+		@Override
+		public void initialize(ConfigurableApplicationContext applicationContext) {
+			EnvironmentTestUtils.addEnvironment(applicationContext,
+					"evernote.response.parallelMinElements:100", "evernote.response.parallelSliceSize:30");
+		}
+	}
+
+	@Test
+	public void testGetSyncChunk() throws Exception {
+		List<Note> notes = new ArrayList<Note>();
+		for (int i = 0; i < 500; i++) {
+			Note note = new Note();
+			note.setGuid("NOTE_" + i);
+			note.setTitle("TITLE_" + i);
+			notes.add(note);
+		}
+		SyncChunk syncChunk = new SyncChunk();
+		syncChunk.setNotes(notes);
+		when(noteStoreOperations.getSyncChunk(0, 1000, true)).thenReturn(syncChunk);
+
+		MvcResult result = performRequest("/noteStore/getSyncChunk", "{\"afterUSN\":0, \"maxEntries\":1000, \"fullSyncOnly\":true}")
+				.andReturn();
+		assertThat(result.getResponse().getContentAsString(), is(Application.createObjectMapper(null).writeValueAsString(syncChunk)));
+	}
+
+}
@@ -0,0 +1,116 @@
+package net.ttddyy.evernote.rest.response;
+
+import com.evernote.edam.notestore.SyncChunk;
+import com.evernote.edam.type.Note;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.ttddyy.evernote.rest.Application;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class StreamingMappingJackson2HttpMessageConverterTest {
+
+	private static class FlushCountingOutputMessage implements HttpOutputMessage {
+
+		private final HttpHeaders headers = new HttpHeaders();
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private int flushCount;
+
+		private final OutputStream body = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				bytes.write(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				bytes.write(b, off, len);
+			}
+
+			@Override
+			public void flush() throws IOException {
+				flushCount++;
+			}
+		};
+
+		@Override
+		public OutputStream getBody() throws IOException {
+			return body;
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return headers;
+		}
+	}
+
+	private static SyncChunk largeSyncChunk() {
+		List<Note> notes = new ArrayList<Note>();
+		for (int i = 0; i < 2000; i++) {
+			Note note = new Note();
+			note.setGuid("NOTE_GUID_" + i);
+			note.setTitle("NOTE_TITLE_" + i);
+			notes.add(note);
+		}
+		SyncChunk syncChunk = new SyncChunk();
+		syncChunk.setNotes(notes);
+		return syncChunk;
+	}
+
+	@Test
+	public void testSameJsonWithFlushes() throws Exception {
+		ObjectMapper objectMapper = Application.createObjectMapper(null);
+		SyncChunk syncChunk = largeSyncChunk();
+
+		MappingJackson2HttpMessageConverter plain = new MappingJackson2HttpMessageConverter();
+		plain.setObjectMapper(objectMapper);
+		FlushCountingOutputMessage expected = new FlushCountingOutputMessage();
+		plain.write(syncChunk, MediaType.APPLICATION_JSON, expected);
+
+		StreamingMappingJackson2HttpMessageConverter streaming = new StreamingMappingJackson2HttpMessageConverter();
+		streaming.setObjectMapper(objectMapper);
+		streaming.setFlushThresholdBytes(16 * 1024);
+		FlushCountingOutputMessage actual = new FlushCountingOutputMessage();
+		streaming.write(syncChunk, MediaType.APPLICATION_JSON, actual);
+
+		assertThat(actual.bytes.toString("UTF-8"), is(expected.bytes.toString("UTF-8")));
+		int size = actual.bytes.size();
+		assertThat(size, greaterThan(100 * 1024));
+		// jackson hands over its buffer every 8000 bytes, so a flush happens at least every 2*16KB
+		assertThat(actual.flushCount, greaterThan(expected.flushCount + size / (2 * 16 * 1024)));
+		assertThat(actual.headers.getContentLength(), is(-1L));  // no content-length, sent as chunks
+	}
+
+	@Test
+	public void testNoFlushWhenDisabled() throws Exception {
+		ObjectMapper objectMapper = Application.createObjectMapper(null);
+
+		MappingJackson2HttpMessageConverter plain = new MappingJackson2HttpMessageConverter();
+		plain.setObjectMapper(objectMapper);
+		FlushCountingOutputMessage expected = new FlushCountingOutputMessage();
+		plain.write(largeSyncChunk(), MediaType.APPLICATION_JSON, expected);
+
+		StreamingMappingJackson2HttpMessageConverter streaming = new StreamingMappingJackson2HttpMessageConverter();
+		streaming.setObjectMapper(objectMapper);
+		streaming.setFlushThresholdBytes(0);
+		FlushCountingOutputMessage actual = new FlushCountingOutputMessage();
+		streaming.write(largeSyncChunk(), MediaType.APPLICATION_JSON, actual);
+
+		assertThat(actual.flushCount, is(expected.flushCount));
+	}
+
+}
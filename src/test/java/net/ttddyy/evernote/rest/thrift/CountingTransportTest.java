@@ -0,0 +1,67 @@
+package net.ttddyy.evernote.rest.thrift;
+
+import com.evernote.auth.EvernoteAuth;
+import com.evernote.auth.EvernoteService;
+import com.evernote.clients.ClientFactory;
+import com.evernote.clients.UserStoreClient;
+import com.evernote.thrift.TServiceClient;
+import com.evernote.thrift.protocol.TBinaryProtocol;
+import com.evernote.thrift.protocol.TMessage;
+import com.evernote.thrift.protocol.TMessageType;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class CountingTransportTest {
+
+	@Test
+	public void testCount() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CountingTransport writeTransport = new CountingTransport(new StreamTransport(null, out));
+		TBinaryProtocol writer = new TBinaryProtocol(writeTransport);
+		writer.writeMessageBegin(new TMessage("getUser", TMessageType.CALL, 1));
+		writer.writeMessageEnd();
+		writeTransport.flush();
+
+		assertThat(writeTransport.getSentBytes(), is((long) out.size()));
+		assertThat(writeTransport.getReceivedBytes(), is(0L));
+
+		CountingTransport readTransport = new CountingTransport(new StreamTransport(new ByteArrayInputStream(out.toByteArray()), null));
+		TMessage message = new TBinaryProtocol(readTransport).readMessageBegin();
+
+		assertThat(message.name, is("getUser"));
+		assertThat(readTransport.getReceivedBytes(), is((long) out.size()));
+		assertThat(readTransport.getSentBytes(), is(0L));
+	}
+
+	@Test
+	public void testInstall() throws Exception {
+		UserStoreClient userStoreClient = new ClientFactory(new EvernoteAuth(EvernoteService.SANDBOX, "TOKEN")).createUserStoreClient();
+
+		CountingTransport transport = CountingTransport.install(userStoreClient);
+
+		assertThat(transport, notNullValue());
+		TServiceClient client = (TServiceClient) ReflectionTestUtils.getField(userStoreClient, "client");
+		assertThat(client.getInputProtocol().getTransport(), instanceOf(CountingTransport.class));
+		assertThat(client.getOutputProtocol().getTransport(), sameInstance(client.getInputProtocol().getTransport()));
+	}
+
+	@Test
+	public void testInstallToUnsupportedClient() {
+		assertThat(CountingTransport.install(new Object()), nullValue());
+		assertThat(CountingTransport.install(null), nullValue());
+	}
+
+}
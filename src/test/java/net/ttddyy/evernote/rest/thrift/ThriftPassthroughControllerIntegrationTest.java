@@ -0,0 +1,307 @@
+package net.ttddyy.evernote.rest.thrift;
+
+import com.evernote.edam.error.EDAMNotFoundException;
+import com.evernote.edam.type.Note;
+import com.evernote.thrift.protocol.TBinaryProtocol;
+import com.evernote.thrift.protocol.TField;
+import com.evernote.thrift.protocol.TMessage;
+import com.evernote.thrift.protocol.TMessageType;
+import com.evernote.thrift.protocol.TProtocolUtil;
+import com.evernote.thrift.protocol.TStruct;
+import com.evernote.thrift.protocol.TType;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import net.ttddyy.evernote.rest.AbstractStoreOperationControllerIntegrationTest;
+import net.ttddyy.evernote.rest.Application;
+import net.ttddyy.evernote.rest.RequestIdentity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.test.EnvironmentTestUtils;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+@ContextConfiguration(initializers = ThriftPassthroughControllerIntegrationTest.ThriftInitializer.class)
+public class ThriftPassthroughControllerIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
+
+	public static class ThriftInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+		@Override
+		public void initialize(ConfigurableApplicationContext applicationContext) {
+			EnvironmentTestUtils.addEnvironment(applicationContext, "evernote.thrift.enabled:true",
+					"evernote.thrift.userStoreUrl:http://localhost/edam/user");
+		}
+	}
+
+	/**
+	 * Fake evernote note store. Records received string fields, then replies a note or a not-found exception.
+	 */
+	private class FakeNoteStore implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				TBinaryProtocol in = new TBinaryProtocol(new StreamTransport(exchange.getRequestBody(), null));
+				TMessage message = in.readMessageBegin();
+				in.readStructBegin();
+				TField field;
+				while ((field = in.readFieldBegin()).type != TType.STOP) {
+					if (field.type == TType.STRING) {
+						receivedFields.put(field.id, in.readString());
+					} else {
+						TProtocolUtil.skip(in, field.type);
+					}
+				}
+				if ("getNote".equals(message.name)) {
+					receivedToken = receivedFields.get((short) 1);
+					receivedGuid = receivedFields.get((short) 2);
+				}
+
+				ByteArrayOutputStream reply = new ByteArrayOutputStream();
+				TBinaryProtocol out = new TBinaryProtocol(new StreamTransport(null, reply));
+				out.writeMessageBegin(new TMessage(message.name, TMessageType.REPLY, message.seqid));
+				out.writeStructBegin(new TStruct("getNote_result"));
+				if ("NOTE_GUID".equals(receivedGuid)) {
+					Note note = new Note();
+					note.setGuid("NOTE_GUID");
+					note.setTitle("NOTE_TITLE");
+					out.writeFieldBegin(new TField("success", TType.STRUCT, (short) 0));
+					note.write(out);
+				} else {
+					EDAMNotFoundException exception = new EDAMNotFoundException();
+					exception.setIdentifier("Note.guid");
+					out.writeFieldBegin(new TField("notFoundException", TType.STRUCT, (short) 3));
+					exception.write(out);
+				}
+				out.writeFieldStop();
+
+				exchange.getResponseHeaders().add("Content-Type", "application/x-thrift");
+				exchange.sendResponseHeaders(200, reply.size());
+				OutputStream body = exchange.getResponseBody();
+				reply.writeTo(body);
+				body.close();
+			} catch (Exception e) {
+				exchange.sendResponseHeaders(500, -1);
+			}
+		}
+	}
+
+	private static final MediaType THRIFT = new MediaType("application", "x-thrift");
+
+	@Autowired
+	private PublicMetrics publicMetrics;
+
+	private HttpServer server;
+	private String receivedToken;
+	private String receivedGuid;
+	private final Map<Short, String> receivedFields = new HashMap<Short, String>();
+
+	@Before
+	public void startServer() throws Exception {
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.createContext("/shard/s1/notestore", new FakeNoteStore());
+		this.server.start();
+	}
+
+	@After
+	public void stopServer() {
+		this.server.stop(0);
+	}
+
+	private static byte[] getNoteCall(String token, String guid) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TBinaryProtocol out = new TBinaryProtocol(new StreamTransport(null, bytes));
+		out.writeMessageBegin(new TMessage("getNote", TMessageType.CALL, 7));
+		out.writeStructBegin(new TStruct("getNote_args"));
+		if (token != null) {
+			out.writeFieldBegin(new TField("authenticationToken", TType.STRING, (short) 1));
+			out.writeString(token);
+		}
+		out.writeFieldBegin(new TField("guid", TType.STRING, (short) 2));
+		out.writeString(guid);
+		out.writeFieldBegin(new TField("withContent", TType.BOOL, (short) 3));
+		out.writeBool(true);
+		out.writeFieldStop();
+		return bytes.toByteArray();
+	}
+
+	private String noteStoreUrl(String shard) {
+		return "http://localhost:" + this.server.getAddress().getPort() + "/shard/" + shard + "/notestore";
+	}
+
+	/**
+	 * Call with string fields in the given order. (field id is the index + 1)
+	 */
+	private static byte[] call(String methodName, String... fields) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TBinaryProtocol out = new TBinaryProtocol(new StreamTransport(null, bytes));
+		out.writeMessageBegin(new TMessage(methodName, TMessageType.CALL, 9));
+		out.writeStructBegin(new TStruct(methodName + "_args"));
+		for (int i = 0; i < fields.length; i++) {
+			if (fields[i] != null) {
+				out.writeFieldBegin(new TField("", TType.STRING, (short) (i + 1)));
+				out.writeString(fields[i]);
+			}
+		}
+		out.writeFieldStop();
+		return bytes.toByteArray();
+	}
+
+	private MvcResult perform(byte[] body) throws Exception {
+		return perform("getNote", body);
+	}
+
+	private MvcResult perform(String methodName, byte[] body) throws Exception {
+		String noteStoreUrl = noteStoreUrl("s1");
+		return mockMvc.perform(post("/noteStore/thrift/" + methodName).content(body).contentType(THRIFT)
+				.header(RequestIdentity.ACCESS_TOKEN_HEADER, "SERVER_SIDE_TOKEN")
+				.header(RequestIdentity.NOTE_STORE_URL_HEADER, noteStoreUrl))
+				.andExpect(status().isOk()).andReturn();
+	}
+
+	@Test
+	public void testPassthrough() throws Exception {
+		MvcResult result = perform(getNoteCall("CLIENT_TOKEN", "NOTE_GUID"));
+
+		assertThat(this.receivedToken, is("SERVER_SIDE_TOKEN"));  // replaced
+		assertThat(this.receivedGuid, is("NOTE_GUID"));
+
+		assertThat(result.getResponse().getContentType(), is("application/x-thrift"));
+		TBinaryProtocol in = new TBinaryProtocol(new StreamTransport(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()), null));
+		TMessage message = in.readMessageBegin();
+		assertThat(message.seqid, is(7));
+		in.readStructBegin();
+		assertThat(in.readFieldBegin().id, is((short) 0));
+		Note note = new Note();
+		note.read(in);
+		assertThat(note.getTitle(), is("NOTE_TITLE"));
+
+		assertThat(findMetric("counter.evernote.api.noteStore.getNote.succeeded"), notNullValue());
+		assertThat(findMetric("gauge.evernote.api.noteStore.getNote.response"), notNullValue());
+	}
+
+	@Test
+	public void testTokenInserted() throws Exception {
+		perform(getNoteCall(null, "NOTE_GUID"));
+		assertThat(this.receivedToken, is("SERVER_SIDE_TOKEN"));
+		assertThat(this.receivedGuid, is("NOTE_GUID"));
+	}
+
+	@Test
+	public void testTokenAfterOtherField() throws Exception {
+		// shareKey(1), authenticationToken(2)
+		perform("authenticateToSharedNotebook", call("authenticateToSharedNotebook", "SHARE_KEY", "CLIENT_TOKEN"));
+		assertThat(this.receivedFields.get((short) 1), is("SHARE_KEY"));
+		assertThat(this.receivedFields.get((short) 2), is("SERVER_SIDE_TOKEN"));
+		assertThat(this.receivedFields.size(), is(2));
+
+		// guid(1), noteKey(2), authenticationToken(3)
+		this.receivedFields.clear();
+		perform("authenticateToSharedNote", call("authenticateToSharedNote", "NOTE_GUID", "NOTE_KEY", "CLIENT_TOKEN"));
+		assertThat(this.receivedFields.get((short) 1), is("NOTE_GUID"));
+		assertThat(this.receivedFields.get((short) 2), is("NOTE_KEY"));
+		assertThat(this.receivedFields.get((short) 3), is("SERVER_SIDE_TOKEN"));
+		assertThat(this.receivedFields.size(), is(3));
+	}
+
+	@Test
+	public void testTokenInsertedAfterOtherField() throws Exception {
+		perform("authenticateToSharedNote", call("authenticateToSharedNote", "NOTE_GUID", "NOTE_KEY"));
+		assertThat(this.receivedFields.get((short) 1), is("NOTE_GUID"));
+		assertThat(this.receivedFields.get((short) 2), is("NOTE_KEY"));
+		assertThat(this.receivedFields.get((short) 3), is("SERVER_SIDE_TOKEN"));
+
+		// token goes before the field with a larger id
+		this.receivedFields.clear();
+		perform("authenticateToSharedNote", call("authenticateToSharedNote", "NOTE_GUID", null, null, "FIELD_4"));
+		assertThat(this.receivedFields.get((short) 1), is("NOTE_GUID"));
+		assertThat(this.receivedFields.get((short) 3), is("SERVER_SIDE_TOKEN"));
+		assertThat(this.receivedFields.get((short) 4), is("FIELD_4"));
+	}
+
+	@Test
+	public void testDeclaredExceptionIsFailure() throws Exception {
+		Number before = failedCount();
+		perform(getNoteCall("CLIENT_TOKEN", "UNKNOWN_GUID"));
+		assertThat(failedCount().intValue(), is(before.intValue() + 1));
+	}
+
+	private Number failedCount() {
+		Metric<?> metric = findMetric("counter.evernote.api.noteStore.getNote.failed");
+		return metric == null ? 0 : metric.getValue();
+	}
+
+	private Metric<?> findMetric(String name) {
+		for (Metric<?> metric : this.publicMetrics.metrics()) {
+			if (metric.getName().equals(name)) {
+				return metric;
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void testNoteStoreUrlOnOtherHost() throws Exception {
+		mockMvc.perform(post("/noteStore/thrift/getNote").content(getNoteCall(null, "NOTE_GUID")).contentType(THRIFT)
+				.header(RequestIdentity.ACCESS_TOKEN_HEADER, "SERVER_SIDE_TOKEN")
+				.header(RequestIdentity.NOTE_STORE_URL_HEADER, "http://internal.example.com/shard/s1/notestore"))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(post("/noteStore/thrift/getNote").content(getNoteCall(null, "NOTE_GUID")).contentType(THRIFT)
+				.header(RequestIdentity.ACCESS_TOKEN_HEADER, "SERVER_SIDE_TOKEN")
+				.header(RequestIdentity.NOTE_STORE_URL_HEADER, "not a url"))
+				.andExpect(status().isBadRequest());
+		assertThat(this.receivedGuid, nullValue());
+	}
+
+	@Test
+	public void testNoteStoreUrlIgnoredWithTokenFromConfig() throws Exception {
+		Application.EvernotePropertiesConfiguration config = wac.getBean(Application.EvernotePropertiesConfiguration.class);
+		config.setAccessToken("CONFIG_TOKEN_FOR_NOTE_STORE_URL");
+		config.setFallbackToTokenFromConfig(true);
+		try {
+			when(this.userStoreOperations.getNoteStoreUrl()).thenReturn(noteStoreUrl("s1"));
+
+			// no context for "s2". the url resolved for the token is used instead
+			mockMvc.perform(post("/noteStore/thrift/getNote").content(getNoteCall(null, "NOTE_GUID")).contentType(THRIFT)
+					.header(RequestIdentity.NOTE_STORE_URL_HEADER, noteStoreUrl("s2")))
+					.andExpect(status().isOk());
+			assertThat(this.receivedToken, is("CONFIG_TOKEN_FOR_NOTE_STORE_URL"));
+		} finally {
+			config.setAccessToken(null);
+			config.setFallbackToTokenFromConfig(false);
+		}
+	}
+
+	@Test
+	public void testInvalidRequest() throws Exception {
+		mockMvc.perform(post("/noteStore/thrift/getNote").content(new byte[]{1, 2, 3}).contentType(THRIFT))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(post("/noteStore/thrift/noSuchMethod").content(getNoteCall(null, "NOTE_GUID")).contentType(THRIFT))
+				.andExpect(status().isNotFound());
+	}
+
+}
@@ -0,0 +1,48 @@
+package net.ttddyy.evernote.rest.warmup;
+
+import net.ttddyy.evernote.rest.AbstractStoreOperationControllerIntegrationTest;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Status;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class WarmUpIntegrationTest extends AbstractStoreOperationControllerIntegrationTest {
+
+	@Autowired
+	private StoreClientWarmUp storeClientWarmUp;
+
+	@Test
+	public void testWarmUp() throws Exception {
+		assertThat(this.storeClientWarmUp.awaitCompletion(30, TimeUnit.SECONDS), is(true));
+		assertThat(this.storeClientWarmUp.getFailure(), nullValue());
+		assertThat((Integer) this.storeClientWarmUp.getDetails().get("methods"), greaterThan(80));
+		assertThat((Integer) this.storeClientWarmUp.getDetails().get("objectMappers"), is(3));  // json, smile, cbor
+		assertThat(this.storeClientWarmUp.getDetails(), hasKey("serializersMillis"));
+
+		mockMvc.perform(get("/management/health"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.status.status").value("UP"))  // app's ObjectMapper writes Status fields
+				.andExpect(jsonPath("$.methods").exists())
+				.andExpect(jsonPath("$.totalMillis").exists());
+	}
+
+	@Test
+	public void testOutOfServiceUntilCompleted() {
+		StoreClientWarmUp notStarted = new StoreClientWarmUp(true);
+		assertThat(new WarmUpHealthIndicator(notStarted).health().getStatus(), is(Status.OUT_OF_SERVICE));
+	}
+
+}